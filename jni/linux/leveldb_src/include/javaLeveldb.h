@@ -37,6 +37,9 @@ jint java_leveldb_property( JNIEnv* env, jlong db , jlong cmd, jint len, jlongAr
 /** vacuum的な処理. **/
 void java_leveldb_vacuum( jlong db, jlong start,jint startLen, jlong end, jint endLen ) ;
 
+/** 範囲削除処理. **/
+jlong java_leveldb_remove_range( jlong db, jint type, jint mode, jlong start, jint startLen, jlong end, jint endLen ) ;
+
 /** Iterator作成. **/
 jlong java_leveldb_iterator( jlong db ) ;
 
@@ -57,6 +60,7 @@ jint java_leveldb_itr_valid( jlong itr ) ;
 
 /** Iteratorカーソルを次に移動. **/
 void java_leveldb_itr_next( jlong itr ) ;
+jint java_leveldb_itr_skip( jlong itr, jint count ) ;
 
 /** Iteratorカーソルを前に移動. **/
 void java_leveldb_itr_before( jlong itr ) ;
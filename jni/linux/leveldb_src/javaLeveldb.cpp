@@ -482,6 +482,29 @@ public:
     inline void FindShortSuccessor(std::string*) const {}
 } ;
 
+/** マルチキー用Comparator. **/
+/** Multiキーは順序を保持したバイナリで格納されるため、バイナリ比較で処理. **/
+class MultiKeyComparatr : public leveldb::Comparator {
+public:
+    MultiKeyComparatr(){}
+    // if a < b: negative result -1
+    // if a > b: positive result +1 
+    // else: zero result          0
+    inline int Compare(const leveldb::Slice& a, const leveldb::Slice& b) const {
+        const int aSize = a.size() ;
+        const int bSize = b.size() ;
+        const int min = ( aSize < bSize ) ? aSize : bSize ;
+        const int ret = memcmp( a.data(), b.data(), min ) ;
+        if( ret == 0 ) {
+            return aSize - bSize ;
+        }
+        return ret ;
+    }
+    inline const char* Name() const { return (const char*)"multiKey" ; } ;
+    inline void FindShortestSeparator(std::string*, const leveldb::Slice&) const {}
+    inline void FindShortSuccessor(std::string*) const {}
+} ;
+
 // １キー用.
 static StringKeyComparatr sortString = StringKeyComparatr() ;
 static Number32KeyComparator sortN32 = Number32KeyComparator() ;
@@ -502,6 +525,46 @@ static Number64StringKeyComparatr sortN64Str = Number64StringKeyComparatr() ;
 static Number64Number32KeyComparatr sortN64N32 = Number64Number32KeyComparatr() ;
 static Number64Number64KeyComparatr sortN64N64 = Number64Number64KeyComparatr() ;
 
+// マルチキー用.
+static MultiKeyComparatr sortMulti = MultiKeyComparatr() ;
+
+/** タイプに対するComparatorを取得. **/
+inline const leveldb::Comparator* getComparator( jint type ) {
+    switch( type ) {
+        case 0 : return &sortString ;
+        case 1 : return &sortN32 ;
+        case 2 : return &sortN64 ;
+        
+        case 3 : return &sortStrStr ;
+        case 4 : return &sortStrN32 ;
+        case 5 : return &sortStrN64 ;
+        
+        case 6 : return &sortN32Str ;
+        case 7 : return &sortN32N32 ;
+        case 8 : return &sortN32N64 ;
+        
+        case 9 : return &sortN64Str ;
+        case 10 : return &sortN64N32 ;
+        case 11 : return &sortN64N64 ;
+        
+        case 19 : return &sortMulti ;
+    }
+    return NULL ;
+}
+
+/** ２キータイプの先頭キー長を取得. **/
+inline int firstKeyLength( jint type, const char* data, int len ) {
+    switch( type ) {
+        case 3 : case 4 : case 5 :
+            return ( len < 4 ) ? -1 : (int)( decodeFixed32( data + len - 4 ) & 0x7fffffff ) ;
+        case 6 : case 7 : case 8 :
+            return 4 ;
+        case 9 : case 10 : case 11 :
+            return 8 ;
+    }
+    return len ;
+}
+
 /** オプション定義. **/
 inline void setOption( leveldb::Options* op,jint type,jint write_buffer_size,
     jint max_open_files,jint block_size,jint block_restart_interval,jint block_cache ) {
@@ -541,23 +604,12 @@ inline void setOption( leveldb::Options* op,jint type,jint write_buffer_size,
      * type : 9 =>  number64-string.
      * type : 10 => number64-number32.
      * type : 11 => number64-number64.
+     *
+     * type : 19 => multi.
      */
-    switch( type ) {
-        case 0 : op->comparator = &sortString ; break ;
-        case 1 : op->comparator = &sortN32 ; break ;
-        case 2 : op->comparator = &sortN64 ; break ;
-        
-        case 3 : op->comparator = &sortStrStr ; break ;
-        case 4 : op->comparator = &sortStrN32 ; break ;
-        case 5 : op->comparator = &sortStrN64 ; break ;
-        
-        case 6 : op->comparator = &sortN32Str ; break ;
-        case 7 : op->comparator = &sortN32N32 ; break ;
-        case 8 : op->comparator = &sortN32N64 ; break ;
-        
-        case 9 : op->comparator = &sortN64Str ; break ;
-        case 10 : op->comparator = &sortN64N32 ; break ;
-        case 11 : op->comparator = &sortN64N64 ; break ;
+    const leveldb::Comparator* cmp = getComparator( type ) ;
+    if( cmp != NULL ) {
+        op->comparator = cmp ;
     }
 }
 
@@ -629,6 +681,27 @@ jint java_leveldb_put( jlong db, jlong key, jint kLen, jlong value , jint vLen )
     return -1 ;
 }
 
+/** 返却用のメモリを確保.
+    Java側のNativeAllocatorと同じサイズクラス(16byte-1MBの２の累乗)で確保し、
+    確保したアドレスを out[0]、メモリ長を out[1] に設定する. **/
+static char* java_leveldb_out_alloc( JNIEnv* env, jlongArray out, size_t size ) {
+    size_t cap = size ;
+    if( size <= 1048576 ) {
+        cap = 16 ;
+        while( cap < size ) {
+            cap <<= 1 ;
+        }
+    }
+    char* b = (char*)malloc( cap ) ;
+    jlong n = (jlong)b ;
+    env->SetLongArrayRegion( out,0,1,&n ) ;
+    if( env->GetArrayLength( out ) > 1 ) {
+        n = (jlong)cap ;
+        env->SetLongArrayRegion( out,1,1,&n ) ;
+    }
+    return b ;
+}
+
 /** Leveldb要素取得. **/
 jint java_leveldb_get( JNIEnv* env, jlong db , jlong key, jint len, jlongArray buf, jint bufLen ) {
     leveldb::DB* vdb = (leveldb::DB*)db ;
@@ -649,9 +722,7 @@ jint java_leveldb_get( JNIEnv* env, jlong db , jlong key, jint len, jlongArray b
         char* b = (char*)n ;
         
         if( v.size() > bufLen ) {
-            b = (char*)malloc( v.size() ) ;
-            n = (jlong)b ;
-            env->SetLongArrayRegion( buf,0,1,&n ) ;
+            b = java_leveldb_out_alloc( env,buf,v.size() ) ;
         }
         memcpy( b,v.c_str(),v.size() ) ;
         return v.size() ;
@@ -691,9 +762,7 @@ jint java_leveldb_property( JNIEnv* env, jlong db , jlong cmd, jint len, jlongAr
         char* b = (char*)n ;
         
         if( v.size() > bufLen ) {
-            b = (char*)malloc( v.size() ) ;
-            n = (jlong)b ;
-            env->SetLongArrayRegion( buf,0,1,&n ) ;
+            b = java_leveldb_out_alloc( env,buf,v.size() ) ;
         }
         memcpy( b,v.c_str(),v.size() ) ;
         return v.size() ;
@@ -723,6 +792,86 @@ void java_leveldb_vacuum( jlong db, jlong start,jint startLen, jlong end, jint e
     }
 }
 
+/** 範囲削除の１回の書き込み件数. **/
+#define REMOVE_RANGE_BATCH_COUNT 10000
+
+/** 範囲削除の１回の書き込みキー長. **/
+#define REMOVE_RANGE_BATCH_BYTES 4194304
+
+/** 範囲削除処理.
+    mode : 0 => [start, end) の範囲. 長さ0の場合は先頭/最後まで.
+    mode : 1 => startで始まるキー(バイト比較).
+    mode : 2 => startと先頭キーが一致するキー(２キータイプ).
+    WriteBatchで一定件数毎に削除を反映し、削除件数を返却する. **/
+jlong java_leveldb_remove_range( jlong db, jint type, jint mode, jlong start, jint startLen, jlong end, jint endLen ) {
+    leveldb::DB* vdb = (leveldb::DB*)db ;
+    const leveldb::Comparator* cmp = getComparator( type ) ;
+    if( !vdb || !cmp ) {
+        return -1 ;
+    }
+    leveldb::Slice startKey( (const char*)start,startLen ) ;
+    leveldb::Slice endKey( (const char*)end,endLen ) ;
+    int first = -1 ;
+    if( mode == 2 ) {
+        if( ( first = firstKeyLength( type,startKey.data(),startLen ) ) < 0 || first > startLen ) {
+            return -1 ;
+        }
+    }
+    
+    leveldb::Iterator* it = vdb->NewIterator( leveldb::ReadOptions() ) ;
+    if( start != 0 && startLen != 0 ) {
+        it->Seek( startKey ) ;
+    } else {
+        it->SeekToFirst() ;
+    }
+    
+    leveldb::WriteBatch batch ;
+    jlong ret = 0 ;
+    int count = 0 ;
+    size_t bytes = 0 ;
+    int len ;
+    bool ok = true ;
+    while( it->Valid() ) {
+        leveldb::Slice key = it->key() ;
+        if( mode == 0 ) {
+            if( end != 0 && endLen != 0 && cmp->Compare( key,endKey ) >= 0 ) {
+                break ;
+            }
+        } else if( mode == 1 ) {
+            if( !key.starts_with( startKey ) ) {
+                break ;
+            }
+        } else {
+            len = firstKeyLength( type,key.data(),key.size() ) ;
+            if( len != first || len > (int)key.size() || memcmp( key.data(),startKey.data(),len ) != 0 ) {
+                break ;
+            }
+        }
+        batch.Delete( key ) ;
+        count ++ ;
+        bytes += key.size() ;
+        ret ++ ;
+        if( count >= REMOVE_RANGE_BATCH_COUNT || bytes >= REMOVE_RANGE_BATCH_BYTES ) {
+            if( !vdb->Write( leveldb::WriteOptions(),&batch ).ok() ) {
+                ok = false ;
+                break ;
+            }
+            batch.Clear() ;
+            count = 0 ;
+            bytes = 0 ;
+        }
+        it->Next() ;
+    }
+    if( ok && !it->status().ok() ) {
+        ok = false ;
+    }
+    delete it ;
+    if( ok && count > 0 ) {
+        ok = vdb->Write( leveldb::WriteOptions(),&batch ).ok() ;
+    }
+    return ok ? ret : -1 ;
+}
+
 /** Iterator作成. **/
 jlong java_leveldb_iterator( jlong db ) {
     leveldb::DB* vdb = (leveldb::DB*)db ;
@@ -784,6 +933,19 @@ void java_leveldb_itr_next( jlong itr ) {
     }
 }
 
+/** Iteratorカーソルを指定件数分次に移動. **/
+jint java_leveldb_itr_skip( jlong itr, jint count ) {
+    leveldb::Iterator* it = (leveldb::Iterator*)itr ;
+    jint ret = 0 ;
+    if( it ) {
+        while( ret < count && it->Valid() ) {
+            it->Next() ;
+            ret ++ ;
+        }
+    }
+    return ret ;
+}
+
 /** Iteratorカーソルを前に移動. **/
 void java_leveldb_itr_before( jlong itr ) {
     leveldb::Iterator* it = (leveldb::Iterator*)itr ;
@@ -813,9 +975,7 @@ jint java_leveldb_itr_key( JNIEnv* env, jlong itr , jlongArray out, jint bufLen
     char* b = (char*)n ;
     
     if( ret.size() > bufLen ) {
-        b = (char*)malloc( ret.size() ) ;
-        n = (jlong)b ;
-        env->SetLongArrayRegion( out,0,1,&n ) ;
+        b = java_leveldb_out_alloc( env,out,ret.size() ) ;
     }
     memcpy( b,ret.data(),ret.size() ) ;
     return ret.size() ;
@@ -842,9 +1002,7 @@ jint java_leveldb_itr_value( JNIEnv* env, jlong itr, jlongArray out, jint bufLen
     char* b = (char*)n ;
     
     if( ret.size() > bufLen ) {
-        b = (char*)malloc( ret.size() ) ;
-        n = (jlong)b ;
-        env->SetLongArrayRegion( out,0,1,&n ) ;
+        b = java_leveldb_out_alloc( env,out,ret.size() ) ;
     }
     memcpy( b,ret.data(),ret.size() ) ;
     return ret.size() ;
@@ -194,6 +194,38 @@ JNIEXPORT jint JNICALL Java_org_maachang_leveldb_jni_lz4Decompress
     return 0 ;
 }
 
+/** lz4辞書生成. **/
+JNIEXPORT jlong JNICALL Java_org_maachang_leveldb_jni_lz4CreateDict
+  (JNIEnv* env, jclass c, jlong dict, jint dict_len) {
+    return (jlong)_lz4CreateDict((char*)dict, (int)dict_len);
+}
+
+/** lz4辞書破棄. **/
+JNIEXPORT void JNICALL Java_org_maachang_leveldb_jni_lz4FreeDict
+  (JNIEnv* env, jclass c, jlong dict) {
+    _lz4FreeDict((void*)dict);
+}
+
+/** lz4辞書圧縮. **/
+JNIEXPORT jint JNICALL Java_org_maachang_leveldb_jni_lz4CompressDict
+  (JNIEnv* env, jclass c, jlong dict, jlong src, jint src_len, jlong dst, jintArray dst_len) {
+    int out;
+    out = _lz4CompressDict((void*)dict, (char*)src, (char*)dst, (int)src_len);
+    env->SetIntArrayRegion(dst_len, 0, 1, &out);
+    return (jint)0 ;
+}
+
+/** lz4辞書解凍. **/
+JNIEXPORT jint JNICALL Java_org_maachang_leveldb_jni_lz4DecompressDict
+  (JNIEnv* env, jclass c, jlong dict, jlong src, jint src_len, jlong dst, jintArray dst_len) {
+    int out = _lz4UncompressDict((void*)dict, (char*)src, src_len, (char*)dst) ;
+    if( out == -1 ) {
+        return -1 ;
+    }
+    env->SetIntArrayRegion(dst_len, 0, 1, (const jint*)&out) ;
+    return 0 ;
+}
+
 /** Leveldb破棄. **/
 JNIEXPORT void JNICALL Java_org_maachang_leveldb_jni_leveldb_1destroy
   (JNIEnv * env , jclass c , jlong name, jint type, jint write_buffer_size,
@@ -263,6 +295,13 @@ JNIEXPORT void JNICALL Java_org_maachang_leveldb_jni_leveldb_1vacuum
     java_leveldb_vacuum( db,start,startLen,end,endLen ) ;
 }
 
+/** Leveldbの範囲削除処理. **/
+JNIEXPORT jlong JNICALL Java_org_maachang_leveldb_jni_leveldb_1remove_1range
+  (JNIEnv * env , jclass c , jlong db , jint type, jint mode, jlong start,jint startLen, jlong end, jint endLen ) {
+    
+    return java_leveldb_remove_range( db,type,mode,start,startLen,end,endLen ) ;
+}
+
 
 /** Iterator作成. **/
 JNIEXPORT jlong JNICALL Java_org_maachang_leveldb_jni_leveldb_1iterator
@@ -313,6 +352,13 @@ JNIEXPORT void JNICALL Java_org_maachang_leveldb_jni_leveldb_1itr_1next
     java_leveldb_itr_next( itr ) ;
 }
 
+/** Iteratorカーソルを指定件数分次に移動. **/
+JNIEXPORT jint JNICALL Java_org_maachang_leveldb_jni_leveldb_1itr_1skip
+  (JNIEnv * env , jclass c , jlong itr , jint count ) {
+    
+    return java_leveldb_itr_skip( itr,count ) ;
+}
+
 /** Iteratorカーソルを前に移動. **/
 JNIEXPORT void JNICALL Java_org_maachang_leveldb_jni_leveldb_1itr_1before
   (JNIEnv * env , jclass c , jlong itr ) {
@@ -189,6 +189,34 @@ JNIEXPORT jint JNICALL Java_org_maachang_leveldb_jni_lz4Compress
 JNIEXPORT jint JNICALL Java_org_maachang_leveldb_jni_lz4Decompress
   (JNIEnv *, jclass, jlong, jint, jlong, jintArray);
 
+/*
+ * Class:     org_maachang_leveldb_jni
+ * Method:    lz4CreateDict
+ */
+JNIEXPORT jlong JNICALL Java_org_maachang_leveldb_jni_lz4CreateDict
+  (JNIEnv *, jclass, jlong, jint);
+
+/*
+ * Class:     org_maachang_leveldb_jni
+ * Method:    lz4FreeDict
+ */
+JNIEXPORT void JNICALL Java_org_maachang_leveldb_jni_lz4FreeDict
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     org_maachang_leveldb_jni
+ * Method:    lz4CompressDict
+ */
+JNIEXPORT jint JNICALL Java_org_maachang_leveldb_jni_lz4CompressDict
+  (JNIEnv *, jclass, jlong, jlong, jint, jlong, jintArray);
+
+/*
+ * Class:     org_maachang_leveldb_jni
+ * Method:    lz4DecompressDict
+ */
+JNIEXPORT jint JNICALL Java_org_maachang_leveldb_jni_lz4DecompressDict
+  (JNIEnv *, jclass, jlong, jlong, jint, jlong, jintArray);
+
 /*
  * Class:     org_maachang_leveldb_jni
  * Method:    leveldb_destroy
@@ -259,6 +287,13 @@ JNIEXPORT jlong JNICALL Java_org_maachang_leveldb_jni_leveldb_1iterator
 JNIEXPORT void JNICALL Java_org_maachang_leveldb_jni_leveldb_1vacuum
   (JNIEnv *, jclass, jlong, jlong, jint, jlong, jint );
 
+/*
+ * Class:     org_maachang_leveldb_jni
+ * Method:    leveldb_remove_range
+ */
+JNIEXPORT jlong JNICALL Java_org_maachang_leveldb_jni_leveldb_1remove_1range
+  (JNIEnv *, jclass, jlong, jint, jint, jlong, jint, jlong, jint );
+
 /*
  * Class:     org_maachang_leveldb_jni
  * Method:    leveldb_itr_delete
@@ -301,6 +336,13 @@ JNIEXPORT jint JNICALL Java_org_maachang_leveldb_jni_leveldb_1itr_1valid
 JNIEXPORT void JNICALL Java_org_maachang_leveldb_jni_leveldb_1itr_1next
   (JNIEnv *, jclass, jlong);
 
+/*
+ * Class:     org_maachang_leveldb_jni
+ * Method:    leveldb_itr_skip
+ */
+JNIEXPORT jint JNICALL Java_org_maachang_leveldb_jni_leveldb_1itr_1skip
+  (JNIEnv *, jclass, jlong, jint);
+
 /*
  * Class:     org_maachang_leveldb_jni
  * Method:    leveldb_itr_before
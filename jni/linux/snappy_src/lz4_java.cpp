@@ -1,9 +1,18 @@
 /* lz4 java. */
 
 #include <memory.h>
+#include <stdlib.h>
 #include "lz4_java.h"
+#define LZ4_STATIC_LINKING_ONLY
 #include "lz4.h"
 
+/* lz4 dictionary. */
+typedef struct {
+    LZ4_stream_t stream ;
+    char* dict ;
+    int length ;
+} LZ4_JAVA_DICT ;
+
 /* lz4 max compress length */
 size_t _lz4MaxCompressedLength(size_t one_compress_length) {
     return LZ4_COMPRESSBOUND(one_compress_length) + 4 ;
@@ -70,3 +79,74 @@ int _lz4UncompressOnly(const char* src,const size_t length,char* dest,int dest_l
     }
     return dest_len ;
 }
+
+/* lz4 create dictionary */
+void* _lz4CreateDict(const char* dict, int dictLen) {
+    LZ4_JAVA_DICT* ret = (LZ4_JAVA_DICT*)malloc(sizeof(LZ4_JAVA_DICT)) ;
+    if(ret == NULL) {
+        return NULL ;
+    }
+    /** LZ4_loadDict does not copy the dictionary. **/
+    ret->dict = (char*)malloc(dictLen > 0 ? dictLen : 1) ;
+    if(ret->dict == NULL) {
+        free(ret) ;
+        return NULL ;
+    }
+    memcpy(ret->dict, dict, dictLen) ;
+    ret->length = dictLen ;
+    LZ4_initStream(&ret->stream, sizeof(LZ4_stream_t)) ;
+    LZ4_loadDict(&ret->stream, ret->dict, dictLen) ;
+    return ret ;
+}
+
+/* lz4 free dictionary */
+void _lz4FreeDict(void* dict) {
+    LZ4_JAVA_DICT* d = (LZ4_JAVA_DICT*)dict ;
+    if(d != NULL) {
+        free(d->dict) ;
+        free(d) ;
+    }
+}
+
+/* lz4 compress using dictionary */
+int _lz4CompressDict(void* dict, const char* src, char* dest, int srcLen) {
+    LZ4_JAVA_DICT* d = (LZ4_JAVA_DICT*)dict ;
+    LZ4_stream_t work ;
+    LZ4_initStream(&work, sizeof(LZ4_stream_t)) ;
+    /** attach the prepared dictionary without rehashing it. **/
+    LZ4_attach_dictionary(&work, &d->stream) ;
+    int ret = LZ4_compress_fast_continue(&work, src, dest + 4, srcLen, _lz4MaxCompressedLength(srcLen), 1) ;
+    if(ret <= 0) {
+        return ret ;
+    }
+    /** add header 4byte to src length. **/
+#if __BYTE_ORDER == __LITTLE_ENDIAN
+    memcpy(dest, &srcLen, 4) ;
+#else
+    dest[ 0 ] = srcLen & 0x000000ff ;
+    dest[ 1 ] = ( srcLen & 0x0000ff00 ) >> 8 ;
+    dest[ 2 ] = ( srcLen & 0x00ff0000 ) >> 16 ;
+    dest[ 3 ] = ( srcLen & 0xff000000 ) >> 24 ;
+#endif
+    return ret + 4 ;
+}
+
+/* lz4 un compress using dictionary */
+int _lz4UncompressDict(void* dict, const char* src, const size_t length, char* dest) {
+    LZ4_JAVA_DICT* d = (LZ4_JAVA_DICT*)dict ;
+    size_t dest_len ;
+#if __BYTE_ORDER == __LITTLE_ENDIAN
+    dest_len = 0 ;
+    memcpy(&dest_len, src, 4) ;
+#else
+    dest_len = (size_t)( ( src[ 0 ] & 0x000000ff ) |
+        ( ( src[ 1 ] & 0x000000ff ) << 8 ) |
+        ( ( src[ 2 ] & 0x000000ff ) << 16 ) |
+        ( ( src[ 3 ] & 0x000000ff ) << 24 ) ) ;
+#endif
+    int res = LZ4_decompress_safe_usingDict(src + 4, dest, length - 4, dest_len, d->dict, d->length) ;
+    if(res < 0) {
+        return -1 ;
+    }
+    return dest_len ;
+}
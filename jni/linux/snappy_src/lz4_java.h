@@ -24,6 +24,18 @@ int _lz4Uncompress( const char* src,const size_t length,char* dest ) ;
 /* lz4 un compress */
 int _lz4UncompressOnly( const char* src,const size_t length,char* dest,int dest_len ) ;
 
+/* lz4 create dictionary */
+void* _lz4CreateDict( const char* dict,int dictLen ) ;
+
+/* lz4 free dictionary */
+void _lz4FreeDict( void* dict ) ;
+
+/* lz4 compress using dictionary */
+int _lz4CompressDict( void* dict,const char* src,char* dest,int srcLen ) ;
+
+/* lz4 un compress using dictionary */
+int _lz4UncompressDict( void* dict,const char* src,const size_t length,char* dest ) ;
+
 #ifdef __cplusplus
 }
 #endif
@@ -5,6 +5,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 
@@ -22,6 +23,15 @@ public class JniBuffer extends OutputStream {
 	private long address;
 	private int length;
 	private int position;
+
+	/** JniBufferPoolで管理されるバッファの場合[true]. **/
+	boolean pooled = false;
+
+	/** JniBufferPoolから貸出中の場合[true]. **/
+	final AtomicBoolean leased = new AtomicBoolean(false);
+
+	/** GC時のメモリ開放用. **/
+	private NativeResource.Memory memory;
 	
 	/**
 	 * ファイル内容を読み込んで取得.
@@ -188,32 +198,40 @@ public class JniBuffer extends OutputStream {
 		length = 0;
 		position = 0;
 		if (len > 0) {
-			address = jni.malloc(len);
-			length = len;
+			address = NativeAllocator.malloc(len);
+			length = NativeAllocator.capacity(len);
+			update();
 		}
 	}
 
-	/**
-	 * デストラクタ.
-	 */
-//	protected void finalize() throws Exception {
-//		destroy();
-//	}
+	// GC時のメモリ開放情報を更新.
+	private final void update() {
+		if (memory == null) {
+			if (address == 0L) {
+				return;
+			}
+			memory = NativeResource.register(this);
+		}
+		memory.set(address, length);
+	}
 
 	/**
 	 * メモリ領域を直接セット.
+	 * <p>
+	 * 対象のメモリは、NativeAllocatorの管理対象として追加されます.
+	 * </p>
 	 * 
 	 * @param addr
 	 *            対象のアドレスを設定します.
 	 * @param len
-	 *            新しい長さを設定します.
+	 *            新しい長さ(確保されたメモリ長)を設定します.
 	 * @param pos
 	 *            対象のポジションを設定します.
 	 */
 	protected void set(long addr, int len, int pos) {
 		// 前回のメモリが存在する場合.
 		if (address != 0L) {
-			jni.free(address);
+			NativeAllocator.free(address, length);
 			address = 0L;
 			length = 0;
 			position = 0;
@@ -221,6 +239,7 @@ public class JniBuffer extends OutputStream {
 
 		// 対象メモリが存在する場合.
 		if (addr != 0L) {
+			NativeAllocator.adopt(len);
 			address = addr;
 			length = len;
 			position = pos;
@@ -230,6 +249,7 @@ public class JniBuffer extends OutputStream {
 			length = 0;
 			position = 0;
 		}
+		update();
 	}
 
 	/**
@@ -246,48 +266,15 @@ public class JniBuffer extends OutputStream {
 		if (length >= newLen) {
 			return address;
 		}
-		// 小さすぎる値の場合.
-		else if (newLen < 8) {
-			if (length >= 8) {
-				return address;
-			}
-			newLen = 8;
-		}
-		// 一定以上の場合.
-		else {
-
-			// newLenの1.5倍のサイズで生成.
+		// サイズクラスを超える場合は、newLenの1.5倍のサイズで生成.
+		else if (newLen > NativeAllocator.MAX_CLASS_SIZE) {
 			newLen = newLen + (newLen >> 1);
 		}
 
-		// 前回の情報をコピーする場合.
-		if (copy) {
-
-			// 前回のメモリ情報が存在する場合.
-			if (address != 0L) {
-
-				long t = jni.malloc(newLen);
-				jni.memcpy(t, address, length);
-				jni.free(address);
-				address = t;
-			}
-			// メモリが生成されていない場合.
-			else {
-
-				address = jni.malloc(newLen);
-			}
-		}
-		// 前回の情報をコピーしない場合.
-		else {
-
-			// 前回のメモリ情報が存在する場合.
-			if (address != 0L) {
-
-				jni.free(address);
-			}
-			address = jni.malloc(newLen);
-		}
-		length = newLen;
+		// サイズクラス単位で再確保(サイズクラスを超える場合はreallocで拡張).
+		address = NativeAllocator.realloc(address, length, newLen, copy);
+		length = NativeAllocator.capacity(newLen);
+		update();
 		return address;
 	}
 
@@ -298,10 +285,11 @@ public class JniBuffer extends OutputStream {
 	 */
 	public JniBuffer destroy() {
 		if (address != 0L) {
-			jni.free(address);
+			NativeAllocator.free(address, length);
 			address = 0L;
 			length = 0;
 			position = 0;
+			update();
 		}
 		return this;
 	}
@@ -319,15 +307,16 @@ public class JniBuffer extends OutputStream {
 				position = 0;
 				return this;
 			}
-			jni.free(address);
+			NativeAllocator.free(address, length);
 			address = 0L;
 		}
 		if(len > 0) {
-			address = jni.malloc(len);
-			length = len;
+			address = NativeAllocator.malloc(len);
+			length = NativeAllocator.capacity(len);
 		} else {
 			length = 0;
 		}
+		update();
 		position = 0;
 		return this;
 	}
@@ -355,8 +344,9 @@ public class JniBuffer extends OutputStream {
 			// 一旦削除して、規定値のサイズで生成.
 			if (mode && length > CLEAR_BY_MAX_BUFFER) {
 				destroy();
-				address = jni.malloc(CLEAR_BY_MAX_BUFFER);
-				length = CLEAR_BY_MAX_BUFFER;
+				address = NativeAllocator.malloc(CLEAR_BY_MAX_BUFFER);
+				length = NativeAllocator.capacity(CLEAR_BY_MAX_BUFFER);
+				update();
 			} else {
 				position = 0;
 			}
@@ -1082,13 +1072,14 @@ public class JniBuffer extends OutputStream {
 	 * バッファのアドレスが[malloc]で再定義された場合の処理.
 	 * @param buf JniBufferを設定します.
 	 * @param addr jni側の処理結果の戻されたアドレスを設定します.
+	 *             [1]には、jni側で確保されたメモリ長が設定されます.
 	 * @param len jni側の処理結果の長さを設定します.
 	 */
 	protected static final void settingJniBuffer(final JniBuffer buf, long[] addr, int len) {
 		// バッファが拡張された場合.
 		if (len > buf.length()) {
 			// バッファ内容を再セット.
-			buf.set(addr[0], len, len);
+			buf.set(addr[0], (addr.length > 1 && addr[1] >= len) ? (int) addr[1] : len, len);
 		// バッファ範囲内の場合.
 		} else {
 			// ポジジョンだけをセット.
@@ -0,0 +1,320 @@
+package org.maachang.leveldb;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * JniBufferプール.
+ * <p>
+ * サイズクラス毎に、ストライプ分割したロックフリーのスロットでJniBufferを保持します.
+ * 保持数は上限で制限され、上限を超えた返却バッファや、最大サイズクラスを超えたバッファは破棄されます.
+ * </p>
+ * <p>
+ * 貸出中の件数の最大値(high-water mark)を管理し、一定回数の返却毎に
+ * 最大値を超えるアイドルバッファを破棄します.
+ * そのため、保持されるネイティブメモリはスレッド数ではなく、同時処理数に比例します.
+ * </p>
+ */
+public final class JniBufferPool {
+
+	/** サイズクラス(byte). **/
+	private static final int[] SIZE_CLASS = new int[] { 256, 4096, 65536, 1048576 };
+
+	/** プールで保持する最大バッファサイズ(byte). **/
+	private static final int MAX_POOL_LENGTH = SIZE_CLASS[SIZE_CLASS.length - 1] << 1;
+
+	/** デフォルトの１ストライプ・１サイズクラス毎の最大保持数. **/
+	public static final int DEFAULT_SLOT_SIZE = 8;
+
+	/** デフォルトの自動トリム間隔(返却回数). **/
+	public static final int DEFAULT_TRIM_INTERVAL = 8192;
+
+	private final int stripeMask;
+	private final int slotSize;
+	private final int trimInterval;
+
+	// [stripe * SIZE_CLASS.length + class]単位のスロット.
+	private final AtomicReferenceArray<JniBuffer>[] slots;
+
+	// 統計情報.
+	private final AtomicInteger leased = new AtomicInteger(0);
+	private final AtomicInteger highWater = new AtomicInteger(0);
+	private final AtomicInteger idle = new AtomicInteger(0);
+	private final AtomicLong idleBytes = new AtomicLong(0L);
+	private final AtomicLong allocCount = new AtomicLong(0L);
+	private final AtomicLong destroyCount = new AtomicLong(0L);
+	private final AtomicInteger releaseCount = new AtomicInteger(0);
+
+	/**
+	 * コンストラクタ.
+	 */
+	public JniBufferPool() {
+		this(Runtime.getRuntime().availableProcessors(), DEFAULT_SLOT_SIZE, DEFAULT_TRIM_INTERVAL);
+	}
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param stripe
+	 *            ストライプ数を設定します. ２の累乗に切り上げられます.
+	 * @param slotSize
+	 *            １ストライプ・１サイズクラス毎の最大保持数を設定します.
+	 * @param trimInterval
+	 *            自動トリムを行う返却回数を設定します. [0]以下の場合は自動トリムしません.
+	 */
+	@SuppressWarnings("unchecked")
+	public JniBufferPool(int stripe, int slotSize, int trimInterval) {
+		int n = 1;
+		while (n < stripe) {
+			n <<= 1;
+		}
+		if (slotSize <= 0) {
+			slotSize = DEFAULT_SLOT_SIZE;
+		}
+		this.stripeMask = n - 1;
+		this.slotSize = slotSize;
+		this.trimInterval = trimInterval;
+		this.slots = new AtomicReferenceArray[n * SIZE_CLASS.length];
+		for (int i = 0; i < slots.length; i++) {
+			slots[i] = new AtomicReferenceArray<JniBuffer>(slotSize);
+		}
+	}
+
+	/**
+	 * バッファを貸し出し.
+	 *
+	 * @param size
+	 *            最低限必要なバッファサイズを設定します.
+	 * @return JniBuffer バッファが返却されます.
+	 */
+	public JniBuffer lease(int size) {
+		int cls = sizeClass(size);
+		JniBuffer ret = null;
+		if (cls != -1) {
+			final int stripe = stripe();
+			final int clsLen = SIZE_CLASS.length;
+			// 自身のストライプから探し、存在しない場合は他のストライプから取得.
+			for (int s = 0; ret == null && s <= stripeMask; s++) {
+				final int base = ((stripe + s) & stripeMask) * clsLen;
+				for (int c = cls; c < clsLen; c++) {
+					if ((ret = poll(slots[base + c])) != null) {
+						break;
+					}
+				}
+			}
+		}
+		if (ret == null) {
+			ret = new JniBuffer(cls == -1 ? size : SIZE_CLASS[cls]);
+			ret.pooled = true;
+			allocCount.incrementAndGet();
+		} else {
+			idle.decrementAndGet();
+			idleBytes.addAndGet(-ret.length());
+		}
+		ret.leased.set(true);
+		// 最大貸出数を更新.
+		final int n = leased.incrementAndGet();
+		int h;
+		while ((h = highWater.get()) < n) {
+			if (highWater.compareAndSet(h, n)) {
+				break;
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * バッファを返却.
+	 * 貸出中でないバッファ(返却済みのものを含む)の場合は、処理しません.
+	 *
+	 * @param buf
+	 *            lease で貸し出されたバッファを設定します.
+	 */
+	public void release(JniBuffer buf) {
+		// 二重返却で、同じバッファが複数のスロットに格納されないようにする.
+		if (buf == null || !buf.pooled || !buf.leased.compareAndSet(true, false)) {
+			return;
+		}
+		leased.decrementAndGet();
+		final int len = buf.length();
+		int cls = -1;
+		// 格納するサイズクラスを取得(最大サイズクラスの２倍を超える場合は破棄).
+		if (len <= MAX_POOL_LENGTH) {
+			for (int i = SIZE_CLASS.length - 1; i >= 0; i--) {
+				if (len >= SIZE_CLASS[i]) {
+					cls = i;
+					break;
+				}
+			}
+		}
+		buf.clear();
+		idle.incrementAndGet();
+		idleBytes.addAndGet(len);
+		if (cls == -1 || !offer(slots[stripe() * SIZE_CLASS.length + cls], buf)) {
+			idle.decrementAndGet();
+			idleBytes.addAndGet(-len);
+			buf.destroy();
+			destroyCount.incrementAndGet();
+		}
+		// 一定回数毎にトリム.
+		if (trimInterval > 0 && releaseCount.incrementAndGet() % trimInterval == 0) {
+			trim();
+		}
+	}
+
+	/**
+	 * アイドルバッファをトリム.
+	 * <p>
+	 * 前回トリム以降の最大貸出数を超えるアイドルバッファを破棄し、最大貸出数を現在の貸出数でリセットします.
+	 * </p>
+	 *
+	 * @return int 破棄されたバッファ数が返却されます.
+	 */
+	public int trim() {
+		return trim(highWater.getAndSet(leased.get()));
+	}
+
+	/**
+	 * アイドルバッファをトリム.
+	 *
+	 * @param keep
+	 *            保持するアイドルバッファ数を設定します.
+	 * @return int 破棄されたバッファ数が返却されます.
+	 */
+	public int trim(int keep) {
+		int ret = 0;
+		JniBuffer b;
+		// 大きなサイズクラスから破棄する.
+		final int clsLen = SIZE_CLASS.length;
+		for (int c = clsLen - 1; c >= 0 && idle.get() > keep; c--) {
+			for (int s = 0; s <= stripeMask && idle.get() > keep; s++) {
+				final AtomicReferenceArray<JniBuffer> slot = slots[s * clsLen + c];
+				for (int i = 0; i < slotSize && idle.get() > keep; i++) {
+					if ((b = slot.get(i)) != null && slot.compareAndSet(i, b, null)) {
+						idle.decrementAndGet();
+						idleBytes.addAndGet(-b.length());
+						b.destroy();
+						destroyCount.incrementAndGet();
+						ret++;
+					}
+				}
+			}
+		}
+		// 破棄したバッファのメモリと、終了したスレッドのキャッシュを開放.
+		NativeAllocator.trim();
+		return ret;
+	}
+
+	/**
+	 * 全てのアイドルバッファを破棄.
+	 */
+	public void clear() {
+		trim(0);
+	}
+
+	/**
+	 * 貸出中のバッファ数を取得.
+	 *
+	 * @return int 貸出中のバッファ数が返却されます.
+	 */
+	public int getLeased() {
+		return leased.get();
+	}
+
+	/**
+	 * 前回トリム以降の最大貸出数を取得.
+	 *
+	 * @return int 最大貸出数が返却されます.
+	 */
+	public int getHighWater() {
+		return highWater.get();
+	}
+
+	/**
+	 * アイドルバッファ数を取得.
+	 *
+	 * @return int アイドルバッファ数が返却されます.
+	 */
+	public int getIdle() {
+		return idle.get();
+	}
+
+	/**
+	 * アイドルバッファの合計サイズを取得.
+	 *
+	 * @return long アイドルバッファの合計サイズが返却されます.
+	 */
+	public long getIdleBytes() {
+		return idleBytes.get();
+	}
+
+	/**
+	 * バッファ生成数を取得.
+	 *
+	 * @return long バッファ生成数が返却されます.
+	 */
+	public long getAllocCount() {
+		return allocCount.get();
+	}
+
+	/**
+	 * バッファ破棄数を取得.
+	 *
+	 * @return long バッファ破棄数が返却されます.
+	 */
+	public long getDestroyCount() {
+		return destroyCount.get();
+	}
+
+	/**
+	 * 文字列として出力.
+	 *
+	 * @return String 文字列が返却されます.
+	 */
+	public String toString() {
+		return new StringBuilder("leased:").append(leased.get()).append(" highWater:").append(highWater.get())
+			.append(" idle:").append(idle.get()).append(" idleBytes:").append(idleBytes.get())
+			.append(" alloc:").append(allocCount.get()).append(" destroy:").append(destroyCount.get())
+			.toString();
+	}
+
+	// サイズクラスを取得.
+	private static final int sizeClass(int size) {
+		final int len = SIZE_CLASS.length;
+		for (int i = 0; i < len; i++) {
+			if (size <= SIZE_CLASS[i]) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	// ストライプ位置を取得.
+	@SuppressWarnings("deprecation")
+	private final int stripe() {
+		final long id = Thread.currentThread().getId();
+		return (int) (id ^ (id >>> 16)) & stripeMask;
+	}
+
+	// スロットから取得.
+	private final JniBuffer poll(AtomicReferenceArray<JniBuffer> slot) {
+		JniBuffer b;
+		for (int i = 0; i < slotSize; i++) {
+			if ((b = slot.get(i)) != null && slot.compareAndSet(i, b, null)) {
+				return b;
+			}
+		}
+		return null;
+	}
+
+	// スロットに格納.
+	private final boolean offer(AtomicReferenceArray<JniBuffer> slot, JniBuffer b) {
+		for (int i = 0; i < slotSize; i++) {
+			if (slot.get(i) == null && slot.compareAndSet(i, null, b)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
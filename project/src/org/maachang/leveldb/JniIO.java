@@ -13,6 +13,13 @@ public final class JniIO {
 	protected static final boolean UnsafeMode = Unsafe.UNSAFE_MODE;
 	protected static final sun.misc.Unsafe unsafe = Unsafe.get();
 
+	/** 配列一括コピー可能(Unsafe利用 + LittleEndian). **/
+	private static final boolean BULK_COPY = UnsafeMode && !Unsafe.BIG_ENDIAN;
+	private static final long INT_ARRAY_OFFSET = UnsafeMode ? unsafe.arrayBaseOffset(int[].class) : 0L;
+	private static final long LONG_ARRAY_OFFSET = UnsafeMode ? unsafe.arrayBaseOffset(long[].class) : 0L;
+	private static final long FLOAT_ARRAY_OFFSET = UnsafeMode ? unsafe.arrayBaseOffset(float[].class) : 0L;
+	private static final long DOUBLE_ARRAY_OFFSET = UnsafeMode ? unsafe.arrayBaseOffset(double[].class) : 0L;
+
 	/**
 	 * メモリ生成.
 	 * 
@@ -526,6 +533,246 @@ public final class JniIO {
 		return getDouble(address, index);
 	}
 
+	/**
+	 * int配列を一括設定.
+	 * <p>
+	 * LittleEndianで格納します.
+	 * </p>
+	 * 
+	 * @param address
+	 *            対象のアドレスを設定します.
+	 * @param index
+	 *            対象のインデックス位置を設定します.
+	 * @param value
+	 *            設定対象の情報を設定します.
+	 * @param offset
+	 *            対象のオフセット値を設定します.
+	 * @param length
+	 *            対象の要素数を設定します.
+	 */
+	public static final void putInts(final long address, final int index, final int[] value, final int offset,
+			final int length) {
+		if (BULK_COPY) {
+			unsafe.copyMemory(value, INT_ARRAY_OFFSET + ((long) offset << 2L), null, address + index,
+					(long) length << 2L);
+		} else {
+			final boolean swap = Unsafe.BIG_ENDIAN;
+			for (int i = 0; i < length; i++) {
+				putInt(address, index + (i << 2), swap ? Unsafe.swap(value[offset + i]) : value[offset + i]);
+			}
+		}
+	}
+
+	/**
+	 * int配列を一括取得.
+	 * <p>
+	 * LittleEndianで格納された情報を取得します.
+	 * </p>
+	 * 
+	 * @param address
+	 *            対象のアドレスを設定します.
+	 * @param index
+	 *            対象のインデックス位置を設定します.
+	 * @param value
+	 *            取得対象の情報を設定します.
+	 * @param offset
+	 *            対象のオフセット値を設定します.
+	 * @param length
+	 *            対象の要素数を設定します.
+	 */
+	public static final void getInts(final long address, final int index, final int[] value, final int offset,
+			final int length) {
+		if (BULK_COPY) {
+			unsafe.copyMemory(null, address + index, value, INT_ARRAY_OFFSET + ((long) offset << 2L),
+					(long) length << 2L);
+		} else {
+			for (int i = 0; i < length; i++) {
+				value[offset + i] = getIntE(address, index + (i << 2));
+			}
+		}
+	}
+
+	/**
+	 * long配列を一括設定.
+	 * <p>
+	 * LittleEndianで格納します.
+	 * </p>
+	 * 
+	 * @param address
+	 *            対象のアドレスを設定します.
+	 * @param index
+	 *            対象のインデックス位置を設定します.
+	 * @param value
+	 *            設定対象の情報を設定します.
+	 * @param offset
+	 *            対象のオフセット値を設定します.
+	 * @param length
+	 *            対象の要素数を設定します.
+	 */
+	public static final void putLongs(final long address, final int index, final long[] value, final int offset,
+			final int length) {
+		if (BULK_COPY) {
+			unsafe.copyMemory(value, LONG_ARRAY_OFFSET + ((long) offset << 3L), null, address + index,
+					(long) length << 3L);
+		} else {
+			final boolean swap = Unsafe.BIG_ENDIAN;
+			for (int i = 0; i < length; i++) {
+				putLong(address, index + (i << 3), swap ? Unsafe.swap(value[offset + i]) : value[offset + i]);
+			}
+		}
+	}
+
+	/**
+	 * long配列を一括取得.
+	 * <p>
+	 * LittleEndianで格納された情報を取得します.
+	 * </p>
+	 * 
+	 * @param address
+	 *            対象のアドレスを設定します.
+	 * @param index
+	 *            対象のインデックス位置を設定します.
+	 * @param value
+	 *            取得対象の情報を設定します.
+	 * @param offset
+	 *            対象のオフセット値を設定します.
+	 * @param length
+	 *            対象の要素数を設定します.
+	 */
+	public static final void getLongs(final long address, final int index, final long[] value, final int offset,
+			final int length) {
+		if (BULK_COPY) {
+			unsafe.copyMemory(null, address + index, value, LONG_ARRAY_OFFSET + ((long) offset << 3L),
+					(long) length << 3L);
+		} else {
+			for (int i = 0; i < length; i++) {
+				value[offset + i] = getLongE(address, index + (i << 3));
+			}
+		}
+	}
+
+	/**
+	 * float配列を一括設定.
+	 * <p>
+	 * LittleEndianで格納します.
+	 * </p>
+	 * 
+	 * @param address
+	 *            対象のアドレスを設定します.
+	 * @param index
+	 *            対象のインデックス位置を設定します.
+	 * @param value
+	 *            設定対象の情報を設定します.
+	 * @param offset
+	 *            対象のオフセット値を設定します.
+	 * @param length
+	 *            対象の要素数を設定します.
+	 */
+	public static final void putFloats(final long address, final int index, final float[] value, final int offset,
+			final int length) {
+		if (BULK_COPY) {
+			unsafe.copyMemory(value, FLOAT_ARRAY_OFFSET + ((long) offset << 2L), null, address + index,
+					(long) length << 2L);
+		} else {
+			final boolean swap = Unsafe.BIG_ENDIAN;
+			int n;
+			for (int i = 0; i < length; i++) {
+				n = Float.floatToRawIntBits(value[offset + i]);
+				putInt(address, index + (i << 2), swap ? Unsafe.swap(n) : n);
+			}
+		}
+	}
+
+	/**
+	 * float配列を一括取得.
+	 * <p>
+	 * LittleEndianで格納された情報を取得します.
+	 * </p>
+	 * 
+	 * @param address
+	 *            対象のアドレスを設定します.
+	 * @param index
+	 *            対象のインデックス位置を設定します.
+	 * @param value
+	 *            取得対象の情報を設定します.
+	 * @param offset
+	 *            対象のオフセット値を設定します.
+	 * @param length
+	 *            対象の要素数を設定します.
+	 */
+	public static final void getFloats(final long address, final int index, final float[] value, final int offset,
+			final int length) {
+		if (BULK_COPY) {
+			unsafe.copyMemory(null, address + index, value, FLOAT_ARRAY_OFFSET + ((long) offset << 2L),
+					(long) length << 2L);
+		} else {
+			for (int i = 0; i < length; i++) {
+				value[offset + i] = Float.intBitsToFloat(getIntE(address, index + (i << 2)));
+			}
+		}
+	}
+
+	/**
+	 * double配列を一括設定.
+	 * <p>
+	 * LittleEndianで格納します.
+	 * </p>
+	 * 
+	 * @param address
+	 *            対象のアドレスを設定します.
+	 * @param index
+	 *            対象のインデックス位置を設定します.
+	 * @param value
+	 *            設定対象の情報を設定します.
+	 * @param offset
+	 *            対象のオフセット値を設定します.
+	 * @param length
+	 *            対象の要素数を設定します.
+	 */
+	public static final void putDoubles(final long address, final int index, final double[] value, final int offset,
+			final int length) {
+		if (BULK_COPY) {
+			unsafe.copyMemory(value, DOUBLE_ARRAY_OFFSET + ((long) offset << 3L), null, address + index,
+					(long) length << 3L);
+		} else {
+			final boolean swap = Unsafe.BIG_ENDIAN;
+			long n;
+			for (int i = 0; i < length; i++) {
+				n = Double.doubleToRawLongBits(value[offset + i]);
+				putLong(address, index + (i << 3), swap ? Unsafe.swap(n) : n);
+			}
+		}
+	}
+
+	/**
+	 * double配列を一括取得.
+	 * <p>
+	 * LittleEndianで格納された情報を取得します.
+	 * </p>
+	 * 
+	 * @param address
+	 *            対象のアドレスを設定します.
+	 * @param index
+	 *            対象のインデックス位置を設定します.
+	 * @param value
+	 *            取得対象の情報を設定します.
+	 * @param offset
+	 *            対象のオフセット値を設定します.
+	 * @param length
+	 *            対象の要素数を設定します.
+	 */
+	public static final void getDoubles(final long address, final int index, final double[] value, final int offset,
+			final int length) {
+		if (BULK_COPY) {
+			unsafe.copyMemory(null, address + index, value, DOUBLE_ARRAY_OFFSET + ((long) offset << 3L),
+					(long) length << 3L);
+		} else {
+			for (int i = 0; i < length; i++) {
+				value[offset + i] = Double.longBitsToDouble(getLongE(address, index + (i << 3)));
+			}
+		}
+	}
+
 	/**
 	 * 現在のEndianを取得.
 	 * 
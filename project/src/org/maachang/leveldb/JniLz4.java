@@ -105,4 +105,70 @@ public final class JniLz4 {
 		}
 	}
 
+	/**
+	 * 辞書の生成.
+	 * 
+	 * @param dict
+	 *            辞書内容のメモリポインタを設定します.
+	 * @param dict_len
+	 *            辞書内容の長さを設定します.
+	 * @return long 生成された辞書のハンドルが返却されます.<br>
+	 *         また[0]が返却された場合、生成に失敗しました.
+	 */
+	public static long createDict(long dict, int dict_len) {
+		return jni.lz4CreateDict(dict, dict_len);
+	}
+
+	/**
+	 * 辞書の破棄.
+	 * 
+	 * @param dict
+	 *            対象の辞書ハンドルを設定します.
+	 */
+	public static void freeDict(long dict) {
+		if (dict != 0L) {
+			jni.lz4FreeDict(dict);
+		}
+	}
+
+	/**
+	 * 辞書を利用した圧縮処理.
+	 * 
+	 * @param dict
+	 *            辞書ハンドルを設定します.
+	 * @param src
+	 *            圧縮対象のメモリポインタを設定します.
+	 * @param src_len
+	 *            圧縮対象の長さを設定します.
+	 * @param dest
+	 *            圧縮結果のメモリポインタを設定します.
+	 * @return int 圧縮結果のサイズが返却されます.
+	 */
+	public static int compress(long dict, long src, int src_len, long dest) {
+		int[] ret = new int[1];
+		jni.lz4CompressDict(dict, src, src_len, dest, ret);
+		return ret[0];
+	}
+
+	/**
+	 * 辞書を利用した解凍処理.
+	 * 
+	 * @param dict
+	 *            辞書ハンドルを設定します.
+	 * @param src
+	 *            解凍対象のメモリポインタを設定します.
+	 * @param src_len
+	 *            解凍対象の長さを設定します.
+	 * @param dst
+	 *            解凍結果が格納されるメモリポインタを設定します.
+	 * @return int 解凍結果のサイズが返却されます.<br>
+	 *         また[-1]が返却された場合、解凍処理に失敗しました.
+	 */
+	public static int decompress(long dict, long src, int src_len, long dst) {
+		int[] ret = new int[1];
+		if (jni.lz4DecompressDict(dict, src, src_len, dst, ret) >= 0) {
+			return ret[0];
+		}
+		return -1;
+	}
 }
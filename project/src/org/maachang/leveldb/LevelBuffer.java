@@ -3,46 +3,86 @@ package org.maachang.leveldb;
 /**
  * LeveldbのKey/Value用バッファ管理. このオブジェクトでは、スレッド毎で安全に利用できる JniBufferを管理しています.
  * 普通にJniBufferをnewして利用するのも、問題ありませんが こちらを利用したほうが、再利用の観点から、有利となります.
+ * <p>
+ * バッファは処理開始時に JniBufferPool から貸し出され、release で返却されます.
+ * 同じスレッドで、返却前に再度取得した場合(呼び出し先の処理など)は、
+ * 別のバッファが貸し出されるため、呼び出し元のバッファが上書き・返却されることはありません.
+ * そのため、保持されるネイティブメモリはスレッド数ではなく、同時処理数に比例します.
+ * </p>
  */
 public final class LevelBuffer {
 	protected LevelBuffer() {
 	}
 
-	/** キーバッファを、ローカルストレージ単位で保持. **/
+	/** バッファプール. **/
+	private static final JniBufferPool pool = new JniBufferPool();
+
+	/** 貸出中のキーバッファを、ローカルストレージ単位で保持. **/
 	protected static final ThreadLocal<JniBuffer> keyBuffer = new ThreadLocal<JniBuffer>();
 
-	/** 要素バッファをローカルストレージ単位で保持. **/
+	/** 貸出中の要素バッファをローカルストレージ単位で保持. **/
 	protected static final ThreadLocal<JniBuffer> valueBuffer = new ThreadLocal<JniBuffer>();
 
+	/** 貸出中の作業用バッファをローカルストレージ単位で保持. **/
+	protected static final ThreadLocal<JniBuffer> workBuffer = new ThreadLocal<JniBuffer>();
+
 	/**
-	 * キャッシュクリア. ThreadLocalで管理しているキャッシュ情報をクリアします.
+	 * キャッシュクリア. 現在のスレッドで貸出中のバッファを全て返却します.
 	 */
 	public static final void clear() {
-		// ThreadLocalの内容をクリア.
-		JniBuffer v = keyBuffer.get();
-		if (v != null) {
-			keyBuffer.remove();
-			v.destroy();
+		release(keyBuffer);
+		release(valueBuffer);
+		release(workBuffer);
+	}
+
+	/**
+	 * バッファプールを取得.
+	 * 
+	 * @return JniBufferPool バッファプールが返却されます.
+	 */
+	public static final JniBufferPool pool() {
+		return pool;
+	}
+
+	// バッファを貸し出し.
+	// スレッドのバッファが貸出中の場合は、呼び出し毎に別のバッファを貸し出す.
+	private static final JniBuffer lease(ThreadLocal<JniBuffer> local) {
+		JniBuffer ret = pool.lease(0);
+		if (local.get() == null) {
+			local.set(ret);
 		}
-		v = valueBuffer.get();
+		return ret;
+	}
+
+	// 貸出中のバッファを返却.
+	private static final void release(ThreadLocal<JniBuffer> local) {
+		JniBuffer v = local.get();
 		if (v != null) {
-			valueBuffer.remove();
-			v.destroy();
+			local.remove();
+			pool.release(v);
 		}
 	}
 
+	// 対象のバッファが貸出中の場合は返却.
+	private static final boolean release(ThreadLocal<JniBuffer> local, JniBuffer buf) {
+		if (buf.pooled) {
+			if (local.get() == buf) {
+				local.remove();
+			}
+			// 返却済みの場合は、プール側で無視される.
+			pool.release(buf);
+			return true;
+		}
+		return false;
+	}
+
 	/**
 	 * KeyBufferを取得.
 	 * 
 	 * @return JniBuffer KeyBufferが返却されます.
 	 */
 	public static final JniBuffer key() {
-		JniBuffer ret = keyBuffer.get();
-		if (ret == null) {
-			ret = new JniBuffer();
-			keyBuffer.set(ret);
-		}
-		return ret;
+		return lease(keyBuffer);
 	}
 
 	/**
@@ -62,29 +102,77 @@ public final class LevelBuffer {
 	 * twoKey ２つ目のキーを設定します. @return JniBuffer KeyBufferが返却されます. @exception
 	 */
 	public static final JniBuffer key(int type, Object key, Object twoKey) throws Exception {
-		JniBuffer ret = keyBuffer.get();
-		if (ret == null) {
-			ret = new JniBuffer();
-			keyBuffer.set(ret);
-		}
+		JniBuffer ret = lease(keyBuffer);
 		if (key != null) {
 			LevelId.buf(type, ret, key, twoKey);
 		}
 		return ret;
 	}
 
+	/**
+	 * 数値キーのKeyBufferを取得.
+	 * <p>
+	 * 数値キータイプの場合、オブジェクト変換を行わずに直接キーを割り当てます.
+	 * </p>
+	 *
+	 * @param type
+	 *            キータイプを設定します.
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @param twoKey
+	 *            ２つ目のキーを設定します.
+	 * @return JniBuffer KeyBufferが返却されます. 数値キータイプでない場合は[null]が返却されます.
+	 */
+	public static final JniBuffer numberKey(int type, long key, long twoKey) {
+		JniBuffer ret;
+		switch (type) {
+		case LevelOption.TYPE_NUMBER32:
+			ret = key();
+			ret.setInt((int) key);
+			return ret;
+		case LevelOption.TYPE_NUMBER64:
+			ret = key();
+			ret.setLong(key);
+			return ret;
+		case LevelOption.TYPE_N32_N32:
+			ret = key();
+			ret.clear();
+			JniIO.putInt(ret.recreate(true, 8), 0, (int) key);
+			JniIO.putInt(ret.address(), 4, (int) twoKey);
+			ret.addPosition(8);
+			return ret;
+		case LevelOption.TYPE_N32_N64:
+			ret = key();
+			ret.clear();
+			JniIO.putInt(ret.recreate(true, 12), 0, (int) key);
+			JniIO.putLong(ret.address(), 4, twoKey);
+			ret.addPosition(12);
+			return ret;
+		case LevelOption.TYPE_N64_N32:
+			ret = key();
+			ret.clear();
+			JniIO.putLong(ret.recreate(true, 12), 0, key);
+			JniIO.putInt(ret.address(), 8, (int) twoKey);
+			ret.addPosition(12);
+			return ret;
+		case LevelOption.TYPE_N64_N64:
+			ret = key();
+			ret.clear();
+			JniIO.putLong(ret.recreate(true, 16), 0, key);
+			JniIO.putLong(ret.address(), 8, twoKey);
+			ret.addPosition(16);
+			return ret;
+		}
+		return null;
+	}
+
 	/**
 	 * ValueBufferを取得.
 	 * 
 	 * @return JniBuffer ValueBufferが返却されます.
 	 */
 	public static final JniBuffer value() {
-		JniBuffer ret = valueBuffer.get();
-		if (ret == null) {
-			ret = new JniBuffer();
-			valueBuffer.set(ret);
-		}
-		return ret;
+		return lease(valueBuffer);
 	}
 
 	/**
@@ -94,17 +182,24 @@ public final class LevelBuffer {
 	 * ValueBufferが返却されます. @exception
 	 */
 	public static final JniBuffer value(Object value) throws Exception {
-		JniBuffer ret = valueBuffer.get();
-		if (ret == null) {
-			ret = new JniBuffer();
-			valueBuffer.set(ret);
-		}
+		JniBuffer ret = lease(valueBuffer);
 		LevelValues.encode(ret, value);
 		return ret;
 	}
 
+	/**
+	 * 作業用Bufferを取得.
+	 * 圧縮／解凍などの一時領域として利用します.
+	 * 
+	 * @return JniBuffer 作業用Bufferが返却されます.
+	 */
+	public static final JniBuffer work() {
+		return lease(workBuffer);
+	}
+
 	/**
 	 * バッファ情報をクリア.
+	 * 同じ処理内でバッファを再利用する場合に呼び出します.
 	 * 
 	 * @param key
 	 * @param value
@@ -117,4 +212,35 @@ public final class LevelBuffer {
 			value.clear();
 		}
 	}
+
+	/**
+	 * バッファを返却.
+	 * 処理終了時に呼び出し、貸出中のバッファをプールに返却します.
+	 * 貸出中のバッファでない場合は、clearBufferと同様にクリアします.
+	 * 
+	 * @param key
+	 *            key で取得したバッファを設定します.
+	 * @param value
+	 *            value で取得したバッファを設定します.
+	 */
+	public static final void release(JniBuffer key, JniBuffer value) {
+		if (key != null && !release(keyBuffer, key)) {
+			key.clear(true);
+		}
+		if (value != null && !release(valueBuffer, value)) {
+			value.clear();
+		}
+	}
+
+	/**
+	 * 作業用バッファを返却.
+	 * 
+	 * @param work
+	 *            work で取得したバッファを設定します.
+	 */
+	public static final void releaseWork(JniBuffer work) {
+		if (work != null && !release(workBuffer, work)) {
+			work.clear(true);
+		}
+	}
 }
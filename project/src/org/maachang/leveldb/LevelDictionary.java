@@ -0,0 +1,503 @@
+package org.maachang.leveldb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.maachang.leveldb.util.ObjectList;
+
+/**
+ * Lz4共有辞書.
+ *
+ * 同一キー構成のMapなど、似通った小さな要素を圧縮するための辞書です.
+ * 辞書は対象Leveldbのパス名 + [.dict] のLeveldbにバージョン単位で格納され、
+ * 圧縮要素には辞書IDが付与されるので、古いバージョンの辞書で圧縮された
+ * 要素も解凍できます.
+ */
+@SuppressWarnings("rawtypes")
+public final class LevelDictionary {
+
+	/** 辞書格納先のフッダ. **/
+	public static final String DICTIONARY_FOODER = ".dict";
+
+	/** 辞書の最大サイズ(Lz4の参照可能距離). **/
+	public static final int MAX_DICTIONARY_SIZE = 65536;
+
+	/** デフォルトの辞書サイズ. **/
+	public static final int DEFAULT_DICTIONARY_SIZE = 16384;
+
+	/** デフォルトのサンプル数. **/
+	public static final int DEFAULT_SAMPLE_COUNT = 1024;
+
+	/** 集計単位のバイト長. **/
+	private static final int SHINGLE_LENGTH = 8;
+
+	/** 辞書に採用するセグメント長. **/
+	private static final int SEGMENT_LENGTH = 64;
+
+	/** ロード済みの辞書管理. **/
+	private static final Map<Long, LevelDictionary> MANAGER = new ConcurrentHashMap<Long, LevelDictionary>();
+
+	/** 辞書ID生成用. **/
+	private static final Random RANDOM = new Random();
+
+	private final long id;
+	private final int version;
+	private final String path;
+	private final byte[] dictionary;
+	private volatile long handle;
+
+	// 辞書ハンドルの利用数(辞書自身の参照を含む).
+	// 0 になった時点でハンドルを破棄する.
+	private final AtomicInteger users = new AtomicInteger(1);
+	private final AtomicBoolean closed = new AtomicBoolean(false);
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param id
+	 *            辞書IDを設定します.
+	 * @param version
+	 *            辞書バージョンを設定します.
+	 * @param path
+	 *            対象のLeveldbパス名を設定します.
+	 * @param dictionary
+	 *            辞書内容を設定します.
+	 */
+	private LevelDictionary(long id, int version, String path, byte[] dictionary) {
+		JniBuffer buf = new JniBuffer(dictionary.length + 1);
+		try {
+			buf.setBinary(dictionary);
+			this.handle = JniLz4.createDict(buf.address(), dictionary.length);
+		} finally {
+			buf.destroy();
+		}
+		if (handle == 0L) {
+			throw new LeveldbException("Failed to create lz4 dictionary.");
+		}
+		this.id = id;
+		this.version = version;
+		this.path = path;
+		this.dictionary = dictionary;
+	}
+
+	/**
+	 * 辞書を破棄.
+	 * 圧縮・解凍中の場合は、利用が終了した時点でハンドルが破棄されます.
+	 */
+	public void close() {
+		if (closed.compareAndSet(false, true)) {
+			MANAGER.remove(id);
+			releaseHandle();
+		}
+	}
+
+	/**
+	 * 辞書IDを取得.
+	 *
+	 * @return long 辞書IDが返却されます.
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * 辞書バージョンを取得.
+	 *
+	 * @return int 辞書バージョンが返却されます.
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * 辞書長を取得.
+	 *
+	 * @return int 辞書長が返却されます.
+	 */
+	public int getLength() {
+		return dictionary.length;
+	}
+
+	/**
+	 * 辞書ハンドルの利用を開始.
+	 * 利用後は、必ず releaseHandle を呼び出します.
+	 *
+	 * @return long 辞書ハンドルが返却されます.
+	 */
+	protected long acquireHandle() {
+		int n;
+		while ((n = users.get()) > 0) {
+			if (users.compareAndSet(n, n + 1)) {
+				return handle;
+			}
+		}
+		throw new LeveldbException("The dictionary has already been closed.");
+	}
+
+	/**
+	 * 辞書ハンドルの利用を終了.
+	 * 利用数が 0 になった場合は、ハンドルを破棄します.
+	 */
+	protected void releaseHandle() {
+		if (users.decrementAndGet() == 0) {
+			final long h = handle;
+			handle = 0L;
+			JniLz4.freeDict(h);
+		}
+	}
+
+	/**
+	 * ロード済みの辞書を取得.
+	 *
+	 * @param id
+	 *            対象の辞書IDを設定します.
+	 * @return LevelDictionary 辞書が返却されます. 存在しない場合は[null]が返却されます.
+	 */
+	public static final LevelDictionary get(long id) {
+		return MANAGER.get(id);
+	}
+
+	/**
+	 * 指定Leveldbの辞書をすべてロード.
+	 *
+	 * @param path
+	 *            対象のLeveldbパス名を設定します.
+	 * @return LevelDictionary 最新バージョンの辞書が返却されます. 存在しない場合は[null]が返却されます.
+	 */
+	public static final LevelDictionary load(String path) {
+		String dictPath = path + DICTIONARY_FOODER;
+		if (!new File(dictPath).isDirectory()) {
+			return null;
+		}
+		Leveldb db = null;
+		LeveldbIterator it = null;
+		JniBuffer keyBuf = null;
+		JniBuffer valBuf = null;
+		try {
+			db = new Leveldb(dictPath, LevelOption.create(LevelOption.TYPE_NUMBER32));
+			it = db.iterator();
+			keyBuf = new JniBuffer();
+			valBuf = new JniBuffer();
+			List value;
+			LevelDictionary dict, ret = null;
+			while (it.valid()) {
+				keyBuf.clear();
+				valBuf.clear();
+				it.key(keyBuf);
+				it.value(valBuf);
+				value = (List) LevelValues.decode(valBuf);
+				long id = (Long) value.get(0);
+				if ((dict = MANAGER.get(id)) == null) {
+					dict = new LevelDictionary(id, keyBuf.getIntE(), path, (byte[]) value.get(1));
+					MANAGER.put(id, dict);
+				}
+				ret = dict;
+				it.next();
+			}
+			return ret;
+		} catch (LeveldbException le) {
+			throw le;
+		} catch (Exception e) {
+			throw new LeveldbException(e);
+		} finally {
+			if (it != null) {
+				it.close();
+			}
+			if (db != null) {
+				db.close();
+			}
+			if (keyBuf != null) {
+				keyBuf.destroy();
+			}
+			if (valBuf != null) {
+				valBuf.destroy();
+			}
+		}
+	}
+
+	/**
+	 * 指定Leveldbのロード済み辞書をすべて破棄.
+	 *
+	 * @param path
+	 *            対象のLeveldbパス名を設定します.
+	 */
+	public static final void release(String path) {
+		Object[] list = MANAGER.values().toArray();
+		int len = list.length;
+		for (int i = 0; i < len; i++) {
+			if (path.equals(((LevelDictionary) list[i]).path)) {
+				((LevelDictionary) list[i]).close();
+			}
+		}
+	}
+
+	/**
+	 * 指定Leveldbの辞書格納先を削除.
+	 *
+	 * @param path
+	 *            対象のLeveldbパス名を設定します.
+	 */
+	public static final void destroy(String path) {
+		release(path);
+		String dictPath = path + DICTIONARY_FOODER;
+		if (new File(dictPath).isDirectory()) {
+			Leveldb.destroy(dictPath, LevelOption.create(LevelOption.TYPE_NUMBER32));
+		}
+	}
+
+	/**
+	 * 新しいバージョンの辞書を登録.
+	 *
+	 * @param path
+	 *            対象のLeveldbパス名を設定します.
+	 * @param dictionary
+	 *            辞書内容を設定します.
+	 * @return LevelDictionary 登録された辞書が返却されます.
+	 */
+	public static final LevelDictionary save(String path, byte[] dictionary) {
+		if (dictionary == null || dictionary.length == 0) {
+			throw new LeveldbException("Dictionary content does not exist.");
+		} else if (dictionary.length > MAX_DICTIONARY_SIZE) {
+			throw new LeveldbException("Dictionary size exceeds " + MAX_DICTIONARY_SIZE + " bytes:" + dictionary.length);
+		}
+		Leveldb db = null;
+		LeveldbIterator it = null;
+		JniBuffer keyBuf = null;
+		JniBuffer valBuf = null;
+		try {
+			db = new Leveldb(path + DICTIONARY_FOODER, LevelOption.create(LevelOption.TYPE_NUMBER32));
+			keyBuf = new JniBuffer();
+			valBuf = new JniBuffer();
+
+			// 最新バージョンを取得.
+			int version = 1;
+			it = db.iterator();
+			it.last();
+			if (it.valid()) {
+				it.key(keyBuf);
+				version = keyBuf.getIntE() + 1;
+			}
+			it.close();
+			it = null;
+
+			long id;
+			synchronized (RANDOM) {
+				while ((id = RANDOM.nextLong() & 0x7fffffffffffffffL) == 0L || MANAGER.containsKey(id))
+					;
+			}
+			LevelDictionary ret = new LevelDictionary(id, version, path, dictionary);
+			keyBuf.clear();
+			LevelId.buf(LevelOption.TYPE_NUMBER32, keyBuf, version, null);
+			LevelValues.encode(valBuf, new ObjectList(id, dictionary));
+			db.put(keyBuf, valBuf);
+			MANAGER.put(id, ret);
+			return ret;
+		} catch (LeveldbException le) {
+			throw le;
+		} catch (Exception e) {
+			throw new LeveldbException(e);
+		} finally {
+			if (it != null) {
+				it.close();
+			}
+			if (db != null) {
+				db.close();
+			}
+			if (keyBuf != null) {
+				keyBuf.destroy();
+			}
+			if (valBuf != null) {
+				valBuf.destroy();
+			}
+		}
+	}
+
+	/**
+	 * Leveldbの要素をサンプリング.
+	 * 全件を対象にリザーバサンプリングを行います.
+	 *
+	 * @param db
+	 *            対象のLeveldbを設定します.
+	 * @param count
+	 *            サンプル数を設定します.
+	 * @return List<byte[]> サンプリングされた要素が返却されます.
+	 */
+	public static final List<byte[]> sample(Leveldb db, int count) {
+		if (count <= 0) {
+			count = DEFAULT_SAMPLE_COUNT;
+		}
+		List<byte[]> ret = new ArrayList<byte[]>(count);
+		LeveldbIterator it = null;
+		JniBuffer valBuf = null;
+		try {
+			it = db.iterator();
+			valBuf = new JniBuffer();
+			Random r = new Random();
+			long n = 0;
+			int p;
+			while (it.valid()) {
+				valBuf.clear();
+				if (it.value(valBuf) > 0) {
+					if (ret.size() < count) {
+						ret.add(sampleBinary(valBuf));
+					} else if ((p = (int) ((r.nextLong() & 0x7fffffffffffffffL) % (n + 1))) < count) {
+						ret.set(p, sampleBinary(valBuf));
+					}
+					n++;
+				}
+				it.next();
+			}
+			return ret;
+		} catch (LeveldbException le) {
+			throw le;
+		} catch (Exception e) {
+			throw new LeveldbException(e);
+		} finally {
+			if (it != null) {
+				it.close();
+			}
+			if (valBuf != null) {
+				valBuf.destroy();
+			}
+		}
+	}
+
+	// サンプル要素を取得(圧縮されている場合は解凍).
+	private static final byte[] sampleBinary(JniBuffer valBuf) throws Exception {
+		if (LevelValues.isCompress(valBuf)) {
+			LevelValues.inflate(valBuf, 0, valBuf.position());
+		}
+		return valBuf.getBinary();
+	}
+
+	/**
+	 * サンプル要素から辞書を生成.
+	 *
+	 * サンプル間で共通して出現するバイト列の多いセグメントを優先して採用し、
+	 * 評価の高いセグメントほど辞書の後方(Lz4で優先される位置)に配置します.
+	 *
+	 * @param samples
+	 *            サンプル要素を設定します.
+	 * @param size
+	 *            辞書サイズを設定します.
+	 * @return byte[] 辞書内容が返却されます.
+	 */
+	public static final byte[] train(List<byte[]> samples, int size) {
+		if (size <= 0) {
+			size = DEFAULT_DICTIONARY_SIZE;
+		} else if (size > MAX_DICTIONARY_SIZE) {
+			size = MAX_DICTIONARY_SIZE;
+		}
+		int len = samples.size();
+		if (len == 0) {
+			throw new LeveldbException("There are no samples to train the dictionary.");
+		}
+
+		// サンプル単位での出現数を集計.
+		int i, j, slen;
+		byte[] b;
+		int[] n;
+		Set<Long> once = new HashSet<Long>();
+		Map<Long, int[]> freq = new HashMap<Long, int[]>();
+		for (i = 0; i < len; i++) {
+			b = samples.get(i);
+			slen = b.length - SHINGLE_LENGTH;
+			once.clear();
+			for (j = 0; j <= slen; j++) {
+				Long k = shingle(b, j);
+				if (once.add(k)) {
+					if ((n = freq.get(k)) == null) {
+						freq.put(k, new int[] { 1 });
+					} else {
+						n[0]++;
+					}
+				}
+			}
+		}
+
+		// セグメント単位で評価.
+		PriorityQueue<long[]> queue = new PriorityQueue<long[]>(64, new Comparator<long[]>() {
+			public int compare(long[] a, long[] c) {
+				return Long.compare(c[0], a[0]);
+			}
+		});
+		long score;
+		for (i = 0; i < len; i++) {
+			b = samples.get(i);
+			for (j = 0; j < b.length; j += SEGMENT_LENGTH) {
+				if ((score = segmentScore(freq, b, j)) > 0) {
+					queue.add(new long[] { score, i, j });
+				}
+			}
+		}
+
+		// 評価の高いセグメントから採用(採用済みのバイト列は再評価).
+		int total = 0;
+		long[] seg;
+		List<long[]> select = new ArrayList<long[]>();
+		while (total < size && (seg = queue.poll()) != null) {
+			b = samples.get((int) seg[1]);
+			score = segmentScore(freq, b, (int) seg[2]);
+			if (score <= 0) {
+				continue;
+			} else if (score < seg[0] && !queue.isEmpty() && score < queue.peek()[0]) {
+				seg[0] = score;
+				queue.add(seg);
+				continue;
+			}
+			slen = Math.min(Math.min(SEGMENT_LENGTH, b.length - (int) seg[2]), size - total);
+			for (j = 0; j + SHINGLE_LENGTH <= slen; j++) {
+				freq.remove(shingle(b, (int) seg[2] + j));
+			}
+			seg[0] = slen;
+			select.add(seg);
+			total += slen;
+		}
+		if (total == 0) {
+			throw new LeveldbException("Could not find common content to train the dictionary.");
+		}
+
+		// 評価の高い順に後方から配置.
+		byte[] ret = new byte[total];
+		int p = total;
+		len = select.size();
+		for (i = 0; i < len; i++) {
+			seg = select.get(i);
+			p -= (int) seg[0];
+			System.arraycopy(samples.get((int) seg[1]), (int) seg[2], ret, p, (int) seg[0]);
+		}
+		return ret;
+	}
+
+	// 集計単位のバイト列を取得.
+	private static final Long shingle(byte[] b, int off) {
+		return ((b[off] & 0xffL) << 56L) | ((b[off + 1] & 0xffL) << 48L) | ((b[off + 2] & 0xffL) << 40L)
+				| ((b[off + 3] & 0xffL) << 32L) | ((b[off + 4] & 0xffL) << 24L) | ((b[off + 5] & 0xffL) << 16L)
+				| ((b[off + 6] & 0xffL) << 8L) | (b[off + 7] & 0xffL);
+	}
+
+	// セグメントの評価値を取得.
+	private static final long segmentScore(Map<Long, int[]> freq, byte[] b, int off) {
+		int end = Math.min(off + SEGMENT_LENGTH, b.length) - SHINGLE_LENGTH;
+		long ret = 0L;
+		int[] n;
+		for (int i = off; i <= end; i++) {
+			// 複数サンプルで出現するもののみ評価.
+			if ((n = freq.get(shingle(b, i))) != null && n[0] > 1) {
+				ret += n[0];
+			}
+		}
+		return ret;
+	}
+}
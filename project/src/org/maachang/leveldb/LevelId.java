@@ -927,9 +927,111 @@ public final class LevelId {
 			public final void get(Object[] out, JniBuffer buf) throws Exception {
 				out[0] = buf.getBinary();
 			}
+		},
+		// [21]float
+		new ConvertCall() {
+			public final Object id(Object value, Object value2) {
+				if (Converter.isNumeric(value)) {
+					return Converter.convertFloat(value);
+				}
+				return 0f;
+			}
+
+			public final void buf(JniBuffer buf, Object value, Object value2) throws Exception {
+				if (Converter.isNumeric(value)) {
+					buf.setInt(sortFloat(Converter.convertFloat(value)));
+				} else {
+					buf.setInt(sortFloat(0f));
+				}
+			}
+
+			public final Object get(JniBuffer buf) throws Exception {
+				return restoreFloat(buf.getIntE());
+			}
+
+			public final void get(Object[] out, JniBuffer buf) throws Exception {
+				out[0] = restoreFloat(buf.getIntE());
+			}
+		},
+		// [22]double
+		new ConvertCall() {
+			public final Object id(Object value, Object value2) {
+				if (Converter.isNumeric(value)) {
+					return Converter.convertDouble(value);
+				}
+				return 0d;
+			}
+
+			public final void buf(JniBuffer buf, Object value, Object value2) throws Exception {
+				if (Converter.isNumeric(value)) {
+					buf.setLong(sortDouble(Converter.convertDouble(value)));
+				} else {
+					buf.setLong(sortDouble(0d));
+				}
+			}
+
+			public final Object get(JniBuffer buf) throws Exception {
+				return restoreDouble(buf.getLongE());
+			}
+
+			public final void get(Object[] out, JniBuffer buf) throws Exception {
+				out[0] = restoreDouble(buf.getLongE());
+			}
 		}
 	};
 
+	/**
+	 * 32bit浮動小数点を、符号付き整数の比較で順序が保たれる形式に変換.
+	 * <p>
+	 * 負数の場合は符号以外のビットを反転します. NaNは正規化され、最大値として扱われます.
+	 * </p>
+	 * 
+	 * @param value
+	 *            対象の値を設定します.
+	 * @return int 変換された値が返却されます.
+	 */
+	public static final int sortFloat(float value) {
+		final int n = Float.floatToIntBits(value);
+		return n ^ ((n >> 31) & 0x7fffffff);
+	}
+
+	/**
+	 * sortFloatで変換された値を復元.
+	 * 
+	 * @param value
+	 *            対象の値を設定します.
+	 * @return float 復元された値が返却されます.
+	 */
+	public static final float restoreFloat(int value) {
+		return Float.intBitsToFloat(value ^ ((value >> 31) & 0x7fffffff));
+	}
+
+	/**
+	 * 64bit浮動小数点を、符号付き整数の比較で順序が保たれる形式に変換.
+	 * <p>
+	 * 負数の場合は符号以外のビットを反転します. NaNは正規化され、最大値として扱われます.
+	 * </p>
+	 * 
+	 * @param value
+	 *            対象の値を設定します.
+	 * @return long 変換された値が返却されます.
+	 */
+	public static final long sortDouble(double value) {
+		final long n = Double.doubleToLongBits(value);
+		return n ^ ((n >> 63L) & 0x7fffffffffffffffL);
+	}
+
+	/**
+	 * sortDoubleで変換された値を復元.
+	 * 
+	 * @param value
+	 *            対象の値を設定します.
+	 * @return double 復元された値が返却されます.
+	 */
+	public static final double restoreDouble(long value) {
+		return Double.longBitsToDouble(value ^ ((value >> 63L) & 0x7fffffffffffffffL));
+	}
+
 	/**
 	 * 変換処理.
 	 * 
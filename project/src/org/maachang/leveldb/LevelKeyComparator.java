@@ -0,0 +1,124 @@
+package org.maachang.leveldb;
+
+import java.util.Comparator;
+
+/**
+ * エンコード済みキーの比較.
+ * <p>
+ * ネイティブ側のComparatorと同じ順序で、エンコード済みのキー(バイナリ)を比較します.
+ * 数値は、ネイティブ側と同じくリトルエンディアンの符号付き整数として比較します.
+ * </p>
+ */
+public final class LevelKeyComparator implements Comparator<byte[]> {
+
+	// Comparator種別毎のオブジェクト.
+	private static final LevelKeyComparator[] CACHE = new LevelKeyComparator[LevelOption.TYPE_MULTI + 1];
+	static {
+		for (int i = 0; i < CACHE.length; i++) {
+			CACHE[i] = new LevelKeyComparator(i);
+		}
+	}
+
+	// ネイティブ側のComparator種別.
+	private final int mode;
+
+	private LevelKeyComparator(int mode) {
+		this.mode = mode;
+	}
+
+	/**
+	 * キータイプに対する比較オブジェクトを取得.
+	 *
+	 * @param type
+	 *            キータイプを設定します.
+	 * @return LevelKeyComparator 比較オブジェクトが返却されます.
+	 */
+	public static final LevelKeyComparator get(int type) {
+		return CACHE[LevelOption.getLeveldbKeyType(type)];
+	}
+
+	/**
+	 * キーの比較.
+	 *
+	 * @param a
+	 *            比較元のキーを設定します.
+	 * @param b
+	 *            比較先のキーを設定します.
+	 * @return int 比較結果が返却されます.
+	 */
+	@Override
+	public int compare(byte[] a, byte[] b) {
+		int ret, aSize, bSize;
+		switch (mode) {
+		case LevelOption.TYPE_NUMBER32:
+			return Integer.compare(int32(a, 0), int32(b, 0));
+		case LevelOption.TYPE_NUMBER64:
+			return Long.compare(int64(a, 0), int64(b, 0));
+		case LevelOption.TYPE_STR_STR:
+		case LevelOption.TYPE_STR_N32:
+		case LevelOption.TYPE_STR_N64:
+			// 先頭の文字列長は、終端の 32bit整数で格納されている.
+			aSize = int32(a, a.length - 4) & 0x7fffffff;
+			bSize = int32(b, b.length - 4) & 0x7fffffff;
+			if ((ret = bin(a, 0, aSize, b, 0, bSize)) != 0) {
+				return ret;
+			}
+			if (mode == LevelOption.TYPE_STR_N32) {
+				return Integer.compare(int32(a, aSize), int32(b, bSize));
+			} else if (mode == LevelOption.TYPE_STR_N64) {
+				return Long.compare(int64(a, aSize), int64(b, bSize));
+			}
+			return bin(a, aSize, a.length - 4, b, bSize, b.length - 4);
+		case LevelOption.TYPE_N32_STR:
+		case LevelOption.TYPE_N32_N32:
+		case LevelOption.TYPE_N32_N64:
+			if ((ret = Integer.compare(int32(a, 0), int32(b, 0))) != 0) {
+				return ret;
+			}
+			if (mode == LevelOption.TYPE_N32_N32) {
+				return Integer.compare(int32(a, 4), int32(b, 4));
+			} else if (mode == LevelOption.TYPE_N32_N64) {
+				return Long.compare(int64(a, 4), int64(b, 4));
+			}
+			return bin(a, 4, a.length, b, 4, b.length);
+		case LevelOption.TYPE_N64_STR:
+		case LevelOption.TYPE_N64_N32:
+		case LevelOption.TYPE_N64_N64:
+			if ((ret = Long.compare(int64(a, 0), int64(b, 0))) != 0) {
+				return ret;
+			}
+			if (mode == LevelOption.TYPE_N64_N32) {
+				return Integer.compare(int32(a, 8), int32(b, 8));
+			} else if (mode == LevelOption.TYPE_N64_N64) {
+				return Long.compare(int64(a, 8), int64(b, 8));
+			}
+			return bin(a, 8, a.length, b, 8, b.length);
+		}
+		// 文字列・マルチキーはバイナリ比較.
+		return bin(a, 0, a.length, b, 0, b.length);
+	}
+
+	// バイナリ比較(memcmp + 長さ).
+	private static final int bin(byte[] a, int aOff, int aEnd, byte[] b, int bOff, int bEnd) {
+		final int aLen = aEnd - aOff;
+		final int bLen = bEnd - bOff;
+		final int min = aLen < bLen ? aLen : bLen;
+		int n;
+		for (int i = 0; i < min; i++) {
+			if ((n = (a[aOff + i] & 0xff) - (b[bOff + i] & 0xff)) != 0) {
+				return n;
+			}
+		}
+		return aLen - bLen;
+	}
+
+	// 32bit整数(リトルエンディアン)を取得.
+	private static final int int32(byte[] b, int off) {
+		return (b[off] & 0xff) | ((b[off + 1] & 0xff) << 8) | ((b[off + 2] & 0xff) << 16) | ((b[off + 3] & 0xff) << 24);
+	}
+
+	// 64bit整数(リトルエンディアン)を取得.
+	private static final long int64(byte[] b, int off) {
+		return (int32(b, off) & 0xffffffffL) | ((long) int32(b, off + 4) << 32);
+	}
+}
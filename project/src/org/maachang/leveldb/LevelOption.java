@@ -81,13 +81,37 @@ public final class LevelOption {
 	/** キー格納タイプ : 自由定義(Binary). **/
 	public static final int TYPE_FREE = 20;
 
+	/** キー格納タイプ : 浮動小数点(32bit). **/
+	public static final int TYPE_FLOAT32 = 21;
+
+	/** キー格納タイプ : 浮動小数点(64bit). **/
+	public static final int TYPE_FLOAT64 = 22;
+
 	/**
 	 * パラメータ長リスト. 0の場合は、マルチキー. 1の場合は単一キー. 2の場合は２キー.
 	 */
 	public static final int[] TYPE_PARAM_LENGTH = new int[] {
 		1, 1, 1, 2, 2, 2, 2, 2, 2, 2,
 		2, 2, 2, 2, 2, 2, 2, 2, 2, 0,
-		1 };
+		1, 1, 1 };
+
+	/** 要素圧縮タイプ : 圧縮なし. **/
+	public static final int COMPRESS_NONE = 0;
+
+	/** 要素圧縮タイプ : Snappy. **/
+	public static final int COMPRESS_SNAPPY = 1;
+
+	/** 要素圧縮タイプ : Lz4. **/
+	public static final int COMPRESS_LZ4 = 2;
+
+	/** 要素圧縮タイプ : Lz4共有辞書. **/
+	public static final int COMPRESS_LZ4_DICT = 3;
+
+	/** 要素圧縮を行うデフォルトの閾値(byte). **/
+	public static final int DEFAULT_COMPRESS_THRESHOLD = 4096;
+
+	/** 共有辞書で要素圧縮を行うデフォルトの閾値(byte). **/
+	public static final int DEFAULT_DICT_COMPRESS_THRESHOLD = 64;
 
 	/** block_cache最小値. **/
 	private static final int MIN_BLOCK_SIZE = 8;
@@ -99,6 +123,8 @@ public final class LevelOption {
 	protected int block_size = -1;
 	protected int block_cache = -1;
 	protected int block_restart_interval = -1;
+	protected int compress_type = LevelOption.COMPRESS_NONE;
+	protected int compress_threshold = -1;
 	
 	// 拡張オプション.
 	protected List expansion = null;
@@ -132,6 +158,8 @@ public final class LevelOption {
 	 *            args.get("openFiles") オープン最大ファイル数.
 	 *            args.get("blockSize") ブロックサイズ.
 	 *            args.get("blockCache") ブロックキャッシュ.
+	 *            args.get("compress") 要素圧縮タイプ.
+	 *            args.get("compressThreshold") 要素圧縮を行う閾値.
 	 */
 	public static final LevelOption create(Map<String, Object> args) {
 		return new LevelOption(args);
@@ -166,8 +194,22 @@ public final class LevelOption {
 			// map.get("blockSize") ブロックサイズ.
 			// map.get("blockCache") ブロックキャッシュ.
 			// map.get("blockRestartInterval");
+			// map.get("compress") 要素圧縮タイプ.
+			// map.get("compressThreshold") 要素圧縮を行う閾値.
 			_create(m.get("type"), m.get("bufferSize"), m.get("openFiles"), m.get("blockSize"),
 					m.get("blockCache"), m.get("blockRestartInterval"));
+			Object cmp = m.get("compress");
+			if(cmp != null) {
+				if (Converter.isNumeric(cmp)) {
+					setCompressType(Converter.convertInt(cmp));
+				} else {
+					setCompressType(Converter.convertString(cmp));
+				}
+			}
+			cmp = m.get("compressThreshold");
+			if(Converter.isNumeric(cmp)) {
+				setCompressThreshold(Converter.convertInt(cmp));
+			}
 			Object ex = m.get("expansion");
 			if(ex != null && ex.getClass().isArray() && Array.getLength(ex) > 0) {
 				len = Array.getLength(ex);
@@ -242,6 +284,11 @@ public final class LevelOption {
 			block_cache = (int)value.get(4);
 			block_restart_interval = (int)value.get(5);
 			expansion = (List)value.get(6);
+			// 要素圧縮定義が存在する場合.
+			if(value.size() > 8) {
+				compress_type = (int)value.get(7);
+				compress_threshold = (int)value.get(8);
+			}
 		} catch(Exception e) {
 			throw new LeveldbException(e);
 		}
@@ -257,7 +304,8 @@ public final class LevelOption {
 		try {
 			LevelValues.encode(out, new ObjectList(
 				type, write_buffer_size, max_open_files, block_size,
-				block_cache, block_restart_interval, expansion
+				block_cache, block_restart_interval, expansion,
+				compress_type, compress_threshold
 			));
 		} catch(Exception e) {
 			throw new LeveldbException(e);
@@ -268,6 +316,8 @@ public final class LevelOption {
 	private static final String[] PATTERN_STR = new String[] { "str", "string", "char" };
 	private static final String[] PATTERN_INT = new String[] { "n32", "int", "integer", "number32" };
 	private static final String[] PATTERN_LONG = new String[] { "n64", "long", "number64", "bigint" };
+	private static final String[] PATTERN_FLOAT = new String[] { "f32", "float", "float32" };
+	private static final String[] PATTERN_DOUBLE = new String[] { "f64", "double", "float64" };
 	private static final String[] PATTERN_BINARY = new String[] { "binary", "bin" };
 	private static final String[] PATTERN_MULTI = new String[] { "multi" };
 	private static final String[] PATTERN_FREE = new String[] { "free" };
@@ -320,6 +370,10 @@ public final class LevelOption {
 			return LevelOption.TYPE_NUMBER32;
 		} else if (pattern(0, PATTERN_LONG, value)) {
 			return LevelOption.TYPE_NUMBER64;
+		} else if (pattern(0, PATTERN_FLOAT, value)) {
+			return LevelOption.TYPE_FLOAT32;
+		} else if (pattern(0, PATTERN_DOUBLE, value)) {
+			return LevelOption.TYPE_FLOAT64;
 		} else if (pattern(1, PATTERN_STR, value) && pattern(2, PATTERN_STR, value)) {
 			return LevelOption.TYPE_STR_STR;
 		} else if (pattern(1, PATTERN_STR, value) && pattern(2, PATTERN_INT, value)) {
@@ -413,6 +467,10 @@ public final class LevelOption {
 			return "multi";
 		case LevelOption.TYPE_FREE:
 			return "binary";
+		case LevelOption.TYPE_FLOAT32:
+			return "float32";
+		case LevelOption.TYPE_FLOAT64:
+			return "float64";
 		default:
 			return "none";
 		}
@@ -469,6 +527,10 @@ public final class LevelOption {
 			return LevelOption.TYPE_NONE;
 		case LevelOption.TYPE_FREE:
 			return LevelOption.TYPE_NONE;
+		case LevelOption.TYPE_FLOAT32:
+			return LevelOption.TYPE_NONE;
+		case LevelOption.TYPE_FLOAT64:
+			return LevelOption.TYPE_NONE;
 		default:
 			return LevelOption.TYPE_NONE;
 		}
@@ -525,6 +587,10 @@ public final class LevelOption {
 			return LevelOption.TYPE_NONE;
 		case LevelOption.TYPE_FREE:
 			return LevelOption.TYPE_NONE;
+		case LevelOption.TYPE_FLOAT32:
+			return LevelOption.TYPE_NONE;
+		case LevelOption.TYPE_FLOAT64:
+			return LevelOption.TYPE_NONE;
 		default:
 			return LevelOption.TYPE_NONE;
 		}
@@ -582,6 +648,10 @@ public final class LevelOption {
 			return LevelOption.TYPE_MULTI;
 		case LevelOption.TYPE_FREE:
 			return LevelOption.TYPE_FREE;
+		case LevelOption.TYPE_FLOAT32:
+			return LevelOption.TYPE_FLOAT32;
+		case LevelOption.TYPE_FLOAT64:
+			return LevelOption.TYPE_FLOAT64;
 		}
 		return LevelOption.TYPE_NONE;
 	}
@@ -654,9 +724,14 @@ public final class LevelOption {
 		case LevelOption.TYPE_BIN_BIN:
 			return LevelOption.TYPE_STR_STR;
 		case LevelOption.TYPE_MULTI:
-			return LevelOption.TYPE_STRING;
+			return LevelOption.TYPE_MULTI;
 		case LevelOption.TYPE_FREE:
 			return LevelOption.TYPE_STRING;
+		// 浮動小数点は、符号付き整数の順序で比較できる形式で格納する.
+		case LevelOption.TYPE_FLOAT32:
+			return LevelOption.TYPE_NUMBER32;
+		case LevelOption.TYPE_FLOAT64:
+			return LevelOption.TYPE_NUMBER64;
 		}
 		return LevelOption.TYPE_STRING;
 	}
@@ -785,6 +860,109 @@ public final class LevelOption {
 		this.block_restart_interval = block_restart_interval;
 	}
 	
+	/**
+	 * 文字列から、要素圧縮タイプを取得.
+	 * 
+	 * @param value
+	 *            対象の文字列を設定します.
+	 * @return int 要素圧縮タイプが返却されます.
+	 */
+	public static final int convertCompressType(String value) {
+		if (value == null || (value = value.trim().toLowerCase()).length() <= 0) {
+			return LevelOption.COMPRESS_NONE;
+		} else if ("snappy".equals(value)) {
+			return LevelOption.COMPRESS_SNAPPY;
+		} else if ("lz4".equals(value)) {
+			return LevelOption.COMPRESS_LZ4;
+		} else if ("lz4dict".equals(value) || "dict".equals(value)) {
+			return LevelOption.COMPRESS_LZ4_DICT;
+		}
+		return LevelOption.COMPRESS_NONE;
+	}
+
+	/**
+	 * 要素圧縮タイプを文字列変換.
+	 * 
+	 * @param type
+	 *            対象の要素圧縮タイプを設定します.
+	 * @return String 文字列が返却されます.
+	 */
+	public static final String stringCompressType(int type) {
+		switch (type) {
+		case LevelOption.COMPRESS_SNAPPY:
+			return "snappy";
+		case LevelOption.COMPRESS_LZ4:
+			return "lz4";
+		case LevelOption.COMPRESS_LZ4_DICT:
+			return "lz4dict";
+		default:
+			return "none";
+		}
+	}
+
+	/**
+	 * 要素圧縮タイプを取得.
+	 * 
+	 * @return int 要素圧縮タイプが返却されます.
+	 */
+	public final int getCompressType() {
+		return compress_type;
+	}
+
+	/**
+	 * 要素圧縮タイプを設定.
+	 * 
+	 * @param compress_type
+	 *            要素圧縮タイプを設定します.
+	 */
+	public final void setCompressType(int compress_type) {
+		switch (compress_type) {
+		case LevelOption.COMPRESS_SNAPPY:
+		case LevelOption.COMPRESS_LZ4:
+		case LevelOption.COMPRESS_LZ4_DICT:
+			this.compress_type = compress_type;
+			break;
+		default:
+			this.compress_type = LevelOption.COMPRESS_NONE;
+		}
+	}
+
+	/**
+	 * 要素圧縮タイプを設定.
+	 * 
+	 * @param value
+	 *            要素圧縮タイプを文字列で設定します.
+	 */
+	public final void setCompressType(String value) {
+		compress_type = convertCompressType(value);
+	}
+
+	/**
+	 * 要素圧縮を行う閾値を取得.
+	 * 
+	 * @return int 要素圧縮を行う閾値が返却されます. この値以上の要素長の場合に圧縮されます.
+	 */
+	public final int getCompressThreshold() {
+		if (compress_threshold <= 0) {
+			return compress_type == LevelOption.COMPRESS_LZ4_DICT ?
+				LevelOption.DEFAULT_DICT_COMPRESS_THRESHOLD : LevelOption.DEFAULT_COMPRESS_THRESHOLD;
+		}
+		return compress_threshold;
+	}
+
+	/**
+	 * 要素圧縮を行う閾値を設定.
+	 * 
+	 * @param compress_threshold
+	 *            要素圧縮を行う閾値を設定します. [0]以下の場合は、デフォルト定義です.
+	 */
+	public final void setCompressThreshold(int compress_threshold) {
+		if (compress_threshold <= 0) {
+			compress_threshold = -1;
+		}
+		this.compress_threshold = compress_threshold;
+	}
+	
 	/**
 	 * 拡張オプションを設定.
 	 * @param o
@@ -815,6 +993,8 @@ public final class LevelOption {
 			.append(" write_buffer_size:").append(write_buffer_size).append(" max_open_files:")
 			.append(max_open_files).append(" block_size:").append(block_size).append(" block_cache:")
 			.append(block_cache).append(" block_restart_interval:").append(block_restart_interval)
+			.append(" compress:").append(stringCompressType(compress_type))
+			.append(" compress_threshold:").append(getCompressThreshold())
 			.append(" expansion:").append(Json.encode(expansion))
 			.toString();
 	}
@@ -832,6 +1012,8 @@ public final class LevelOption {
 		ret.block_size = block_size;
 		ret.block_cache = block_cache;
 		ret.block_restart_interval = block_restart_interval;
+		ret.compress_type = compress_type;
+		ret.compress_threshold = compress_threshold;
 		if(expansion != null) {
 			int len = expansion.size();
 			List ex = new ObjectList();
@@ -0,0 +1,127 @@
+package org.maachang.leveldb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 読み込み範囲の記録.
+ * <p>
+ * WriteBatchIndexIterator で読み込んだキーの範囲(エンコード済みキー)を記録します.
+ * 存在しないキーの検索も、検索位置から次のキーまでの範囲として記録されるため、
+ * 後から追加されたキーも検出できます.
+ * </p>
+ */
+public final class LevelReadSet {
+
+	/**
+	 * 読み込み範囲.
+	 * lo, hi が[null]の場合は、その方向の終端までを表します.
+	 */
+	static final class Range {
+		byte[] lo;
+		byte[] hi;
+		boolean loOpen;
+		boolean hiOpen;
+	}
+
+	private final LevelKeyComparator comparator;
+	private final List<Range> ranges = new ArrayList<Range>();
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param type
+	 *            キータイプを設定します.
+	 */
+	public LevelReadSet(int type) {
+		this.comparator = LevelKeyComparator.get(type);
+	}
+
+	/**
+	 * 読み込み範囲を追加.
+	 *
+	 * @param lo
+	 *            開始キーを設定します. [null]の場合は先頭からとなります.
+	 * @param hi
+	 *            終了キーを設定します. [null]の場合は最後までとなります.
+	 * @return Range 追加された範囲が返却されます.
+	 */
+	Range add(byte[] lo, byte[] hi) {
+		final Range r = new Range();
+		r.lo = lo;
+		r.loOpen = lo == null;
+		r.hi = hi;
+		r.hiOpen = hi == null;
+		ranges.add(r);
+		return r;
+	}
+
+	// 終了キーを拡張.
+	final void extendHi(Range r, byte[] key) {
+		if (r.hiOpen) {
+			return;
+		} else if (key == null) {
+			r.hiOpen = true;
+			r.hi = null;
+		} else if (comparator.compare(key, r.hi) > 0) {
+			r.hi = key;
+		}
+	}
+
+	// 開始キーを拡張.
+	final void extendLo(Range r, byte[] key) {
+		if (r.loOpen) {
+			return;
+		} else if (key == null) {
+			r.loOpen = true;
+			r.lo = null;
+		} else if (comparator.compare(key, r.lo) < 0) {
+			r.lo = key;
+		}
+	}
+
+	/**
+	 * 指定キーが読み込み範囲に含まれるかチェック.
+	 *
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @return boolean [true]の場合、読み込み範囲に含まれます.
+	 */
+	public boolean contains(byte[] key) {
+		final int len = ranges.size();
+		Range r;
+		for (int i = 0; i < len; i++) {
+			r = ranges.get(i);
+			if ((r.loOpen || comparator.compare(key, r.lo) >= 0) &&
+				(r.hiOpen || comparator.compare(key, r.hi) <= 0)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 読み込み範囲が存在しないかチェック.
+	 *
+	 * @return boolean [true]の場合、読み込みは行われていません.
+	 */
+	public boolean isEmpty() {
+		return ranges.isEmpty();
+	}
+
+	/**
+	 * 読み込み範囲数を取得.
+	 *
+	 * @return int 読み込み範囲数が返却されます.
+	 */
+	public int size() {
+		return ranges.size();
+	}
+
+	/**
+	 * 記録をクリア.
+	 */
+	public void clear() {
+		ranges.clear();
+	}
+}
@@ -0,0 +1,375 @@
+package org.maachang.leveldb;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * List・配列要素のカーソル.
+ * <p>
+ * エンコード済みのList・配列要素を、ネイティブメモリ上から 1件ずつ読み込みます.
+ * </p>
+ */
+public class LevelValueCursor implements Iterator<Object> {
+	private JniBuffer buf;
+	private boolean destroy;
+	private int code;
+	private int length;
+	private int count;
+	private int limit;
+	private final int[] pos = new int[1];
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param buf
+	 *            対象のバッファを設定します.
+	 * @param destroy
+	 *            [true]の場合、クローズ時にバッファを破棄します.
+	 * @exception Exception
+	 *                例外.
+	 */
+	protected LevelValueCursor(JniBuffer buf, boolean destroy) throws Exception {
+		int len = buf.position();
+		if (len > 0 && LevelValues.head(buf.address(), new int[] { 0 }) == LevelValues.COMPRESS_CODE) {
+			len = LevelValues.inflate(buf, 0, len);
+		}
+		if (len <= 0) {
+			throw new LeveldbException("The value does not exist.");
+		}
+		final long addr = buf.address();
+		pos[0] = 0;
+		int c = LevelValues.head(addr, pos);
+		switch (c) {
+		case 20:
+		case 21:
+		case 22:
+		case 23:
+		case 24:
+		case 25:
+		case 26:
+		case 27:
+		case 28:
+		case LevelValues.PACKED_INT_ARRAY:
+		case LevelValues.PACKED_LONG_ARRAY:
+		case LevelValues.PACKED_FLOAT_ARRAY:
+		case LevelValues.PACKED_DOUBLE_ARRAY:
+		case 51:
+		case 53:
+			break;
+		case 50:
+			// 配列型名を読み飛ばす.
+			LevelValues.byteString(addr, pos);
+			break;
+		default:
+			throw new LeveldbException("The value is not a list or array:" + c);
+		}
+		this.buf = buf;
+		this.destroy = destroy;
+		this.code = c;
+		this.length = LevelValues.byte4Int(addr, pos);
+		this.limit = len;
+		this.count = 0;
+	}
+
+	/**
+	 * クローズ処理.
+	 */
+	public void close() {
+		if (buf != null) {
+			if (destroy) {
+				buf.destroy();
+			}
+			buf = null;
+		}
+	}
+
+	/**
+	 * クローズ済みかチェック.
+	 *
+	 * @return boolean [true]の場合、クローズしています.
+	 */
+	public boolean isClose() {
+		return buf == null;
+	}
+
+	/**
+	 * 要素数を取得.
+	 *
+	 * @return int 要素数が返却されます.
+	 */
+	public int size() {
+		return length;
+	}
+
+	/**
+	 * 読み込み済みの件数を取得.
+	 *
+	 * @return int 読み込み済みの件数が返却されます.
+	 */
+	public int count() {
+		return count;
+	}
+
+	/**
+	 * 数値配列のカーソルかチェック.
+	 *
+	 * @return boolean [true]の場合、nextInt等のプリミティブ取得が利用できます.
+	 */
+	public boolean isPrimitive() {
+		switch (code) {
+		case 24:
+		case 25:
+		case 26:
+		case 27:
+		case LevelValues.PACKED_INT_ARRAY:
+		case LevelValues.PACKED_LONG_ARRAY:
+		case LevelValues.PACKED_FLOAT_ARRAY:
+		case LevelValues.PACKED_DOUBLE_ARRAY:
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 次の情報が存在するかチェック.
+	 *
+	 * @return boolean [true]の場合、存在します.
+	 */
+	@Override
+	public boolean hasNext() {
+		if (buf == null) {
+			return false;
+		}
+		if (count >= length) {
+			close();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * 次の情報を取得.
+	 *
+	 * @return Object 次の情報が返却されます.
+	 */
+	@Override
+	public Object next() {
+		check();
+		try {
+			final long addr = buf.address();
+			Object ret;
+			switch (code) {
+			case 20:
+				ret = (LevelValues.byte1Int(addr, pos) == 1);
+				break;
+			case 21:
+				ret = (byte) LevelValues.byte1Int(addr, pos);
+				break;
+			case 22:
+				ret = (char) LevelValues.byte2Int(addr, pos);
+				break;
+			case 23:
+				ret = (short) LevelValues.byte2Int(addr, pos);
+				break;
+			case 24:
+			case LevelValues.PACKED_INT_ARRAY:
+				ret = _nextInt(addr);
+				break;
+			case 25:
+			case LevelValues.PACKED_LONG_ARRAY:
+				ret = _nextLong(addr);
+				break;
+			case 26:
+			case LevelValues.PACKED_FLOAT_ARRAY:
+				ret = Float.intBitsToFloat(code == 26 ? LevelValues.byte4Int(addr, pos) : _nextIntE(addr));
+				break;
+			case 27:
+			case LevelValues.PACKED_DOUBLE_ARRAY:
+				ret = _nextDouble(addr);
+				break;
+			case 28:
+				ret = LevelValues.byteString(addr, pos);
+				break;
+			default:
+				ret = LevelValues.decodeObject(pos, buf, limit);
+				break;
+			}
+			count++;
+			return ret;
+		} catch (LeveldbException le) {
+			throw le;
+		} catch (Exception e) {
+			throw new LeveldbException(e);
+		}
+	}
+
+	/**
+	 * 次の情報をint型で取得.
+	 *
+	 * @return int 次の情報が返却されます.
+	 */
+	public int nextInt() {
+		check();
+		final long addr = buf.address();
+		int ret;
+		switch (code) {
+		case 24:
+		case LevelValues.PACKED_INT_ARRAY:
+			ret = _nextInt(addr);
+			break;
+		case 25:
+		case LevelValues.PACKED_LONG_ARRAY:
+			ret = (int) _nextLong(addr);
+			break;
+		case 26:
+		case LevelValues.PACKED_FLOAT_ARRAY:
+			ret = (int) Float.intBitsToFloat(code == 26 ? LevelValues.byte4Int(addr, pos) : _nextIntE(addr));
+			break;
+		case 27:
+		case LevelValues.PACKED_DOUBLE_ARRAY:
+			ret = (int) _nextDouble(addr);
+			break;
+		default:
+			throw new LeveldbException("The value is not a numeric array:" + code);
+		}
+		count++;
+		return ret;
+	}
+
+	/**
+	 * 次の情報をlong型で取得.
+	 *
+	 * @return long 次の情報が返却されます.
+	 */
+	public long nextLong() {
+		check();
+		final long addr = buf.address();
+		long ret;
+		switch (code) {
+		case 24:
+		case LevelValues.PACKED_INT_ARRAY:
+			ret = _nextInt(addr);
+			break;
+		case 25:
+		case LevelValues.PACKED_LONG_ARRAY:
+			ret = _nextLong(addr);
+			break;
+		case 26:
+		case LevelValues.PACKED_FLOAT_ARRAY:
+			ret = (long) Float.intBitsToFloat(code == 26 ? LevelValues.byte4Int(addr, pos) : _nextIntE(addr));
+			break;
+		case 27:
+		case LevelValues.PACKED_DOUBLE_ARRAY:
+			ret = (long) _nextDouble(addr);
+			break;
+		default:
+			throw new LeveldbException("The value is not a numeric array:" + code);
+		}
+		count++;
+		return ret;
+	}
+
+	/**
+	 * 次の情報をdouble型で取得.
+	 *
+	 * @return double 次の情報が返却されます.
+	 */
+	public double nextDouble() {
+		check();
+		final long addr = buf.address();
+		double ret;
+		switch (code) {
+		case 24:
+		case LevelValues.PACKED_INT_ARRAY:
+			ret = _nextInt(addr);
+			break;
+		case 25:
+		case LevelValues.PACKED_LONG_ARRAY:
+			ret = _nextLong(addr);
+			break;
+		case 26:
+		case LevelValues.PACKED_FLOAT_ARRAY:
+			ret = Float.intBitsToFloat(code == 26 ? LevelValues.byte4Int(addr, pos) : _nextIntE(addr));
+			break;
+		case 27:
+		case LevelValues.PACKED_DOUBLE_ARRAY:
+			ret = _nextDouble(addr);
+			break;
+		default:
+			throw new LeveldbException("The value is not a numeric array:" + code);
+		}
+		count++;
+		return ret;
+	}
+
+	/**
+	 * 次の情報を読み飛ばす.
+	 */
+	public void skip() {
+		switch (code) {
+		case 24:
+		case 25:
+		case 26:
+		case 27:
+		case LevelValues.PACKED_INT_ARRAY:
+		case LevelValues.PACKED_LONG_ARRAY:
+		case LevelValues.PACKED_FLOAT_ARRAY:
+		case LevelValues.PACKED_DOUBLE_ARRAY:
+			nextLong();
+			break;
+		default:
+			next();
+			break;
+		}
+	}
+
+	/**
+	 * この処理はサポートされていません.
+	 */
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	// 取得可能かチェック.
+	private final void check() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+	}
+
+	// int要素を取得.
+	private final int _nextInt(long addr) {
+		if (code == 24) {
+			return LevelValues.byte4Int(addr, pos);
+		}
+		return _nextIntE(addr);
+	}
+
+	// 固定長のint要素を取得.
+	private final int _nextIntE(long addr) {
+		final int ret = JniIO.getIntE(addr, pos[0]);
+		pos[0] += 4;
+		return ret;
+	}
+
+	// long要素を取得.
+	private final long _nextLong(long addr) {
+		if (code == 25) {
+			return LevelValues.byte8Long(addr, pos);
+		}
+		final long ret = JniIO.getLongE(addr, pos[0]);
+		pos[0] += 8;
+		return ret;
+	}
+
+	// double要素を取得.
+	private final double _nextDouble(long addr) {
+		if (code == 27) {
+			return Double.longBitsToDouble(LevelValues.byte8Long(addr, pos));
+		}
+		final double ret = Double.longBitsToDouble(JniIO.getLongE(addr, pos[0]));
+		pos[0] += 8;
+		return ret;
+	}
+}
@@ -0,0 +1,688 @@
+package org.maachang.leveldb;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import org.maachang.leveldb.util.Converter;
+
+/**
+ * 要素の参照ビュー.
+ * <p>
+ * エンコード済みの要素をネイティブメモリ上でそのまま参照します.
+ * オブジェクト変換は、パス指定された要素のみに対して行います.
+ * </p>
+ * <p>
+ * パスは[.]区切りで指定し、Mapの場合はキー名、List・配列の場合は 要素番号を指定します. (例: "items.0.name")
+ * </p>
+ */
+public class LevelValueView {
+	/** 出力用の一時バッファ長. **/
+	private static final int WRITE_BUFFER_LENGTH = 8192;
+
+	// 配列要素のヘッダコード(実際のヘッダを持たない要素).
+	private static final int ELEMENT_BOOLEAN = -20;
+	private static final int ELEMENT_BYTE = -21;
+	private static final int ELEMENT_CHAR = -22;
+	private static final int ELEMENT_SHORT = -23;
+	private static final int ELEMENT_INT = -24;
+	private static final int ELEMENT_LONG = -25;
+	private static final int ELEMENT_FLOAT = -26;
+	private static final int ELEMENT_DOUBLE = -27;
+	private static final int ELEMENT_STRING = -28;
+	private static final int ELEMENT_PACKED_INT = -30;
+	private static final int ELEMENT_PACKED_LONG = -31;
+	private static final int ELEMENT_PACKED_FLOAT = -32;
+	private static final int ELEMENT_PACKED_DOUBLE = -33;
+
+	private JniBuffer buf;
+	private boolean destroy;
+	private final int[] pos = new int[1];
+	private int code;
+
+	/**
+	 * コンストラクタ.
+	 */
+	public LevelValueView() {
+	}
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param buf
+	 *            対象のバッファを設定します.
+	 */
+	public LevelValueView(JniBuffer buf) {
+		set(buf, false);
+	}
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param buf
+	 *            対象のバッファを設定します.
+	 * @param destroy
+	 *            [true]の場合、クローズ時にバッファを破棄します.
+	 */
+	public LevelValueView(JniBuffer buf, boolean destroy) {
+		set(buf, destroy);
+	}
+
+	/**
+	 * 対象のバッファを設定.
+	 *
+	 * @param buf
+	 *            対象のバッファを設定します.
+	 * @param destroy
+	 *            [true]の場合、クローズ時にバッファを破棄します.
+	 * @return LevelValueView このオブジェクトが返却されます.
+	 */
+	public LevelValueView set(JniBuffer buf, boolean destroy) {
+		close();
+		this.buf = buf;
+		this.destroy = destroy;
+		return this;
+	}
+
+	/**
+	 * クローズ処理.
+	 */
+	public void close() {
+		if (buf != null) {
+			if (destroy) {
+				buf.destroy();
+			}
+			buf = null;
+		}
+	}
+
+	/**
+	 * クローズ済みかチェック.
+	 *
+	 * @return boolean [true]の場合、クローズしています.
+	 */
+	public boolean isClose() {
+		return buf == null;
+	}
+
+	/**
+	 * 要素のバッファを取得.
+	 *
+	 * @return JniBuffer 要素のバッファが返却されます.
+	 */
+	public JniBuffer getBuffer() {
+		check();
+		return buf;
+	}
+
+	/**
+	 * 要素のバイナリ長を取得.
+	 *
+	 * @return int バイナリ長が返却されます.
+	 */
+	public int length() {
+		check();
+		return buf.position();
+	}
+
+	/**
+	 * 指定パスの要素が存在するかチェック.
+	 *
+	 * @param path
+	 *            対象のパスを設定します.
+	 * @return boolean [true]の場合、存在します.
+	 */
+	public boolean contains(String path) {
+		return seek(path) != -1;
+	}
+
+	/**
+	 * 指定パスの要素のヘッダコードを取得.
+	 *
+	 * @param path
+	 *            対象のパスを設定します.
+	 * @return int ヘッダコードが返却されます. 存在しない場合は[-1]が返却されます.
+	 */
+	public int getCode(String path) {
+		if (seek(path) == -1) {
+			return -1;
+		}
+		return code < 0 ? elementCode(code) : code;
+	}
+
+	/**
+	 * 指定パスの要素を取得.
+	 *
+	 * @param path
+	 *            対象のパスを設定します.
+	 * @return Object 対象の要素が返却されます.
+	 */
+	public Object get(String path) {
+		try {
+			final int p = seek(path);
+			if (p == -1) {
+				return null;
+			}
+			final long addr = buf.address();
+			pos[0] = p;
+			switch (code) {
+			case ELEMENT_BOOLEAN:
+				return LevelValues.byte1Int(addr, pos) == 1;
+			case ELEMENT_BYTE:
+				return (byte) LevelValues.byte1Int(addr, pos);
+			case ELEMENT_CHAR:
+				return (char) LevelValues.byte2Int(addr, pos);
+			case ELEMENT_SHORT:
+				return (short) LevelValues.byte2Int(addr, pos);
+			case ELEMENT_INT:
+				return LevelValues.byte4Int(addr, pos);
+			case ELEMENT_LONG:
+				return LevelValues.byte8Long(addr, pos);
+			case ELEMENT_FLOAT:
+				return Float.intBitsToFloat(LevelValues.byte4Int(addr, pos));
+			case ELEMENT_DOUBLE:
+				return Double.longBitsToDouble(LevelValues.byte8Long(addr, pos));
+			case ELEMENT_STRING:
+				return LevelValues.byteString(addr, pos);
+			case ELEMENT_PACKED_INT:
+				return JniIO.getIntE(addr, p);
+			case ELEMENT_PACKED_LONG:
+				return JniIO.getLongE(addr, p);
+			case ELEMENT_PACKED_FLOAT:
+				return JniIO.getFloatE(addr, p);
+			case ELEMENT_PACKED_DOUBLE:
+				return JniIO.getDoubleE(addr, p);
+			}
+			return LevelValues.decodeObject(pos, buf, buf.position());
+		} catch (LeveldbException le) {
+			throw le;
+		} catch (Exception e) {
+			throw new LeveldbException(e);
+		}
+	}
+
+	/**
+	 * 指定パスの要素をBoolean型で取得.
+	 *
+	 * @param path
+	 *            対象のパスを設定します.
+	 * @return Boolean 対象の要素が返却されます.
+	 */
+	public Boolean getBoolean(String path) {
+		return Converter.convertBool(get(path));
+	}
+
+	/**
+	 * 指定パスの要素をInteger型で取得.
+	 *
+	 * @param path
+	 *            対象のパスを設定します.
+	 * @return Integer 対象の要素が返却されます.
+	 */
+	public Integer getInt(String path) {
+		return Converter.convertInt(get(path));
+	}
+
+	/**
+	 * 指定パスの要素をLong型で取得.
+	 *
+	 * @param path
+	 *            対象のパスを設定します.
+	 * @return Long 対象の要素が返却されます.
+	 */
+	public Long getLong(String path) {
+		return Converter.convertLong(get(path));
+	}
+
+	/**
+	 * 指定パスの要素をDouble型で取得.
+	 *
+	 * @param path
+	 *            対象のパスを設定します.
+	 * @return Double 対象の要素が返却されます.
+	 */
+	public Double getDouble(String path) {
+		return Converter.convertDouble(get(path));
+	}
+
+	/**
+	 * 指定パスの要素をString型で取得.
+	 *
+	 * @param path
+	 *            対象のパスを設定します.
+	 * @return String 対象の要素が返却されます.
+	 */
+	public String getString(String path) {
+		return Converter.convertString(get(path));
+	}
+
+	/**
+	 * 指定パスの要素と文字列が一致するかチェック.
+	 * <p>
+	 * 要素をオブジェクト変換せずに、バイナリで比較します.
+	 * </p>
+	 *
+	 * @param path
+	 *            対象のパスを設定します.
+	 * @param value
+	 *            比較対象の文字列を設定します.
+	 * @return boolean [true]の場合、一致します.
+	 */
+	public boolean equalsString(String path, String value) {
+		final int p = seek(path);
+		if (p == -1) {
+			return false;
+		}
+		if (value == null) {
+			return code == 0xff;
+		}
+		if (code != 1 && code != ELEMENT_STRING) {
+			return false;
+		}
+		try {
+			final long addr = buf.address();
+			pos[0] = code == 1 ? p + 1 : p;
+			final int len = LevelValues.byte4Int(addr, pos);
+			return equalsBinary(addr, pos[0], len, NativeString.toNative(value));
+		} catch (LeveldbException le) {
+			throw le;
+		} catch (Exception e) {
+			throw new LeveldbException(e);
+		}
+	}
+
+	/**
+	 * 要素全体をオブジェクト変換.
+	 *
+	 * @return Object 変換されたオブジェクトが返却されます.
+	 */
+	public Object decode() {
+		return get(null);
+	}
+
+	/**
+	 * 要素のバイナリを出力.
+	 * <p>
+	 * 格納されている形式のまま出力します. 出力内容は LevelValues.decode で変換できます.
+	 * </p>
+	 *
+	 * @param out
+	 *            出力先を設定します.
+	 * @return int 出力したバイト数が返却されます.
+	 * @exception IOException
+	 *                I/O例外.
+	 */
+	public int writeTo(OutputStream out) throws IOException {
+		check();
+		final long addr = buf.address();
+		final int len = buf.position();
+		final byte[] b = new byte[len < WRITE_BUFFER_LENGTH ? len : WRITE_BUFFER_LENGTH];
+		int n;
+		for (int off = 0; off < len; off += n) {
+			n = len - off < b.length ? len - off : b.length;
+			JniIO.getBinary(addr, off, b, 0, n);
+			out.write(b, 0, n);
+		}
+		return len;
+	}
+
+	/**
+	 * 要素のバイナリを出力.
+	 * <p>
+	 * 格納されている形式のまま出力します. 出力内容は LevelValues.decode で変換できます.
+	 * </p>
+	 *
+	 * @param out
+	 *            出力先を設定します.
+	 * @return int 出力したバイト数が返却されます.
+	 * @exception IOException
+	 *                I/O例外.
+	 */
+	public int writeTo(WritableByteChannel out) throws IOException {
+		check();
+		final long addr = buf.address();
+		final int len = buf.position();
+		final byte[] b = new byte[len < WRITE_BUFFER_LENGTH ? len : WRITE_BUFFER_LENGTH];
+		final ByteBuffer bb = ByteBuffer.wrap(b);
+		int n;
+		for (int off = 0; off < len; off += n) {
+			n = len - off < b.length ? len - off : b.length;
+			JniIO.getBinary(addr, off, b, 0, n);
+			bb.clear().limit(n);
+			while (bb.hasRemaining()) {
+				out.write(bb);
+			}
+		}
+		return len;
+	}
+
+	// クローズチェック.
+	private final void check() {
+		if (buf == null) {
+			throw new LeveldbException("The object has already been cleared.");
+		}
+	}
+
+	// 指定パスの要素位置を取得.
+	// 要素が存在しない場合は[-1]を返却し、存在する場合は codeに要素のヘッダコードをセットする.
+	private final int seek(String path) {
+		check();
+		try {
+			// 圧縮要素の場合は解凍.
+			if (LevelValues.isCompress(buf)) {
+				LevelValues.inflate(buf, 0, buf.position());
+			}
+			final int length = buf.position();
+			if (length == 0) {
+				return -1;
+			}
+			final long addr = buf.address();
+			int p = 0;
+			pos[0] = 0;
+			code = LevelValues.head(addr, pos);
+			if (path == null || path.length() == 0) {
+				return p;
+			}
+			int s = 0, e;
+			String name;
+			final int pathLen = path.length();
+			while (s <= pathLen) {
+				if ((e = path.indexOf('.', s)) == -1) {
+					e = pathLen;
+				}
+				name = path.substring(s, e);
+				s = e + 1;
+				if ((p = child(addr, p, name, length)) == -1) {
+					return -1;
+				}
+			}
+			return p;
+		} catch (LeveldbException le) {
+			throw le;
+		} catch (Exception e) {
+			throw new LeveldbException(e);
+		}
+	}
+
+	// 子要素の位置を取得.
+	private final int child(long addr, int p, String name, int length) throws Exception {
+		if (code < 0) {
+			// 配列要素は子要素を持たない.
+			return -1;
+		}
+		pos[0] = p + 1;
+		int len, no;
+		switch (code) {
+		case 52: {
+			// Map.
+			len = LevelValues.byte4Int(addr, pos);
+			final byte[] bin = NativeString.toNative(name);
+			int k, kLen;
+			for (int i = 0; i < len; i++) {
+				if (JniIO.get(addr, pos[0]) == 1) {
+					k = pos[0] + 1;
+					pos[0] = k;
+					kLen = LevelValues.byte4Int(addr, pos);
+					if (equalsBinary(addr, pos[0], kLen, bin)) {
+						pos[0] += kLen;
+						code = JniIO.get(addr, pos[0]) & 0xff;
+						return pos[0];
+					}
+					pos[0] += kLen;
+				} else {
+					// 文字列以外のキーは変換して比較.
+					if (name.equals(Converter.convertString(LevelValues.decodeObject(pos, buf, length)))) {
+						code = JniIO.get(addr, pos[0]) & 0xff;
+						return pos[0];
+					}
+				}
+				skip(buf, pos, length);
+			}
+			return -1;
+		}
+		case 50:
+			// 配列型名を読み飛ばす.
+			len = LevelValues.byte4Int(addr, pos);
+			pos[0] += len;
+		case 51:
+		case 53: {
+			// 配列, List, Set.
+			len = LevelValues.byte4Int(addr, pos);
+			if ((no = index(name, len)) == -1) {
+				return -1;
+			}
+			for (int i = 0; i < no; i++) {
+				skip(buf, pos, length);
+			}
+			code = JniIO.get(addr, pos[0]) & 0xff;
+			return pos[0];
+		}
+		case 20:
+		case 21:
+		case 22:
+		case 23:
+		case 24:
+		case 25:
+		case 26:
+		case 27:
+		case 28:
+		case LevelValues.PACKED_INT_ARRAY:
+		case LevelValues.PACKED_LONG_ARRAY:
+		case LevelValues.PACKED_FLOAT_ARRAY:
+		case LevelValues.PACKED_DOUBLE_ARRAY: {
+			// プリミティブ配列.
+			len = LevelValues.byte4Int(addr, pos);
+			if ((no = index(name, len)) == -1) {
+				return -1;
+			}
+			final int c = code;
+			int n;
+			code = -c;
+			switch (c) {
+			case 20:
+			case 21:
+				return pos[0] + no;
+			case 22:
+			case 23:
+				return pos[0] + (no << 1);
+			case LevelValues.PACKED_INT_ARRAY:
+			case LevelValues.PACKED_FLOAT_ARRAY:
+				return pos[0] + (no << 2);
+			case LevelValues.PACKED_LONG_ARRAY:
+			case LevelValues.PACKED_DOUBLE_ARRAY:
+				return pos[0] + (no << 3);
+			}
+			for (int i = 0; i < no; i++) {
+				switch (c) {
+				case 24:
+				case 26:
+					LevelValues.byte4Int(addr, pos);
+					break;
+				case 25:
+				case 27:
+					LevelValues.byte8Long(addr, pos);
+					break;
+				case 28:
+					n = LevelValues.byte4Int(addr, pos);
+					pos[0] += n;
+					break;
+				}
+			}
+			return pos[0];
+		}
+		}
+		return -1;
+	}
+
+	// 要素番号を取得.
+	private static final int index(String name, int len) {
+		final int no;
+		try {
+			no = Integer.parseInt(name);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+		return no < 0 || no >= len ? -1 : no;
+	}
+
+	// バイナリ比較.
+	private static final boolean equalsBinary(long addr, int off, int len, byte[] bin) {
+		if (len != bin.length) {
+			return false;
+		}
+		for (int i = 0; i < len; i++) {
+			if (JniIO.get(addr, off + i) != bin[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// 配列要素のヘッダコードを取得.
+	private static final int elementCode(int c) {
+		switch (c) {
+		case ELEMENT_BOOLEAN:
+			return 2;
+		case ELEMENT_BYTE:
+			return 4;
+		case ELEMENT_CHAR:
+			return 3;
+		case ELEMENT_SHORT:
+			return 5;
+		case ELEMENT_INT:
+		case ELEMENT_PACKED_INT:
+			return 6;
+		case ELEMENT_LONG:
+		case ELEMENT_PACKED_LONG:
+			return 7;
+		case ELEMENT_FLOAT:
+		case ELEMENT_PACKED_FLOAT:
+			return 8;
+		case ELEMENT_DOUBLE:
+		case ELEMENT_PACKED_DOUBLE:
+			return 9;
+		case ELEMENT_STRING:
+			return 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * エンコード済みの1要素を読み飛ばす.
+	 *
+	 * @param b
+	 *            対象のJNIバッファを設定します.
+	 * @param pos
+	 *            対象のポジションを設定します.
+	 * @param length
+	 *            対象の長さを設定します.
+	 * @exception Exception
+	 *                例外.
+	 */
+	public static final void skip(JniBuffer b, int[] pos, int length) throws Exception {
+		final long addr = b.address();
+		final int start = pos[0];
+		int len, n, i;
+		switch (LevelValues.head(addr, pos)) {
+		case 1:
+		case 12:
+		case 13:
+		case 21:
+		case 60:
+			len = LevelValues.byte4Int(addr, pos);
+			pos[0] += len;
+			return;
+		case 2:
+		case 4:
+			pos[0] += 1;
+			return;
+		case 3:
+		case 5:
+			pos[0] += 2;
+			return;
+		case 6:
+		case 8:
+		case 10:
+			LevelValues.byte4Int(addr, pos);
+			return;
+		case 7:
+		case 9:
+		case 11:
+			LevelValues.byte8Long(addr, pos);
+			return;
+		case 14:
+			pos[0] += 1;
+			LevelValues.byte8Long(addr, pos);
+			return;
+		case 20:
+			len = LevelValues.byte4Int(addr, pos);
+			pos[0] += len;
+			return;
+		case 22:
+		case 23:
+			len = LevelValues.byte4Int(addr, pos);
+			pos[0] += len << 1;
+			return;
+		case 24:
+		case 26:
+			len = LevelValues.byte4Int(addr, pos);
+			for (i = 0; i < len; i++) {
+				LevelValues.byte4Int(addr, pos);
+			}
+			return;
+		case 25:
+		case 27:
+			len = LevelValues.byte4Int(addr, pos);
+			for (i = 0; i < len; i++) {
+				LevelValues.byte8Long(addr, pos);
+			}
+			return;
+		case 28:
+			len = LevelValues.byte4Int(addr, pos);
+			for (i = 0; i < len; i++) {
+				n = LevelValues.byte4Int(addr, pos);
+				pos[0] += n;
+			}
+			return;
+		case LevelValues.PACKED_INT_ARRAY:
+		case LevelValues.PACKED_FLOAT_ARRAY:
+			len = LevelValues.byte4Int(addr, pos);
+			pos[0] += len << 2;
+			return;
+		case LevelValues.PACKED_LONG_ARRAY:
+		case LevelValues.PACKED_DOUBLE_ARRAY:
+			len = LevelValues.byte4Int(addr, pos);
+			pos[0] += len << 3;
+			return;
+		case 50:
+			len = LevelValues.byte4Int(addr, pos);
+			pos[0] += len;
+		case 51:
+		case 53:
+			len = LevelValues.byte4Int(addr, pos);
+			for (i = 0; i < len; i++) {
+				skip(b, pos, length);
+			}
+			return;
+		case 52:
+		case 70:
+			len = LevelValues.byte4Int(addr, pos);
+			for (i = 0; i < len; i++) {
+				skip(b, pos, length);
+				skip(b, pos, length);
+			}
+			return;
+		case 80:
+			pos[0] += 1;
+			len = LevelValues.byte4Int(addr, pos);
+			pos[0] += len;
+			return;
+		case 0xff:
+			return;
+		}
+		// その他の変換コードは、変換して読み飛ばす.
+		pos[0] = start;
+		LevelValues.decodeObject(pos, b, length);
+	}
+}
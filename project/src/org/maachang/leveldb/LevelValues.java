@@ -45,6 +45,18 @@ public final class LevelValues {
 	/** 拡張変換処理. **/
 	private static OriginCode ORIGIN_CODE = null;
 	
+	/** 圧縮要素のヘッダコード. **/
+	public static final int COMPRESS_CODE = 90;
+
+	/** 固定長(LittleEndian)で一括コピーする数値配列のヘッダコード. **/
+	public static final int PACKED_INT_ARRAY = 30;
+	public static final int PACKED_LONG_ARRAY = 31;
+	public static final int PACKED_FLOAT_ARRAY = 32;
+	public static final int PACKED_DOUBLE_ARRAY = 33;
+
+	/** この要素数未満のint,long配列は、可変長の方が小さい場合に可変長で格納する. **/
+	private static final int PACKED_VARIABLE_LENGTH = 256;
+	
 	/**
 	 * 拡張変換処理を追加.
 	 * @param code
@@ -108,6 +120,11 @@ public final class LevelValues {
 			throw new IllegalArgumentException("The specified length is out of range:"
 				+ len + "," + b.position());
 		}
+		// 圧縮要素の場合は、対象バッファに解凍.
+		if (off < len && head(b.address(), new int[] { off }) == COMPRESS_CODE) {
+			len = inflate(b, off, len);
+			off = 0;
+		}
 		int[] p = new int[] { off };
 		return decodeObject(p, b, len);
 	}
@@ -132,7 +149,203 @@ public final class LevelValues {
 		}
 		return decodeObject(outOff, b, len);
 	}
+
+	/**
+	 * List・配列要素をカーソルで取得.
+	 * <p>
+	 * 全体をオブジェクト変換せずに、要素を1件ずつ変換して取得します.
+	 * バッファ内容はカーソル利用中は変更しないでください.
+	 * </p>
+	 * 
+	 * @param b
+	 *            対象のJNIバッファを設定します.
+	 * @return LevelValueCursor カーソルが返却されます.
+	 * @exception Exception
+	 *                例外.
+	 */
+	public static final LevelValueCursor openList(JniBuffer b) throws Exception {
+		return new LevelValueCursor(b, false);
+	}
+
+	/**
+	 * List・配列要素をカーソルで取得.
+	 * 
+	 * @param b
+	 *            対象のJNIバッファを設定します.
+	 * @param destroy
+	 *            [true]の場合、カーソルのクローズ時にバッファを破棄します.
+	 * @return LevelValueCursor カーソルが返却されます.
+	 * @exception Exception
+	 *                例外.
+	 */
+	public static final LevelValueCursor openList(JniBuffer b, boolean destroy) throws Exception {
+		return new LevelValueCursor(b, destroy);
+	}
 	
+	/**
+	 * エンコード済みの要素を圧縮.
+	 * 指定閾値以上の長さで、圧縮効果がある場合のみ、バッファ内容を
+	 * 圧縮要素に置き換えます.
+	 * 
+	 * @param buf
+	 *            エンコード済みのバッファを設定します.
+	 * @param compressType
+	 *            圧縮タイプを設定します.
+	 * @param threshold
+	 *            圧縮を行う閾値を設定します.
+	 * @return int 圧縮で削減されたバイト数が返却されます.
+	 *            圧縮されなかった場合は[0]が返却されます.
+	 * @exception Exception
+	 *                例外.
+	 */
+	public static final int compress(JniBuffer buf, int compressType, int threshold) throws Exception {
+		return compress(buf, compressType, null, threshold);
+	}
+
+	/**
+	 * エンコード済みの要素を共有辞書で圧縮.
+	 * 
+	 * @param buf
+	 *            エンコード済みのバッファを設定します.
+	 * @param dict
+	 *            共有辞書を設定します.
+	 * @param threshold
+	 *            圧縮を行う閾値を設定します.
+	 * @return int 圧縮で削減されたバイト数が返却されます.
+	 *            圧縮されなかった場合は[0]が返却されます.
+	 * @exception Exception
+	 *                例外.
+	 */
+	public static final int compress(JniBuffer buf, LevelDictionary dict, int threshold) throws Exception {
+		return compress(buf, LevelOption.COMPRESS_LZ4_DICT, dict, threshold);
+	}
+
+	// 圧縮処理.
+	private static final int compress(JniBuffer buf, int compressType, LevelDictionary dict, int threshold)
+		throws Exception {
+		final int srcLen = buf.position();
+		if (compressType == LevelOption.COMPRESS_NONE || srcLen < threshold || srcLen <= 0
+			|| head(buf.address(), new int[] { 0 }) == COMPRESS_CODE) {
+			return 0;
+		}
+		JniBuffer w = LevelBuffer.work();
+		try {
+			w.clear();
+			head(w, COMPRESS_CODE);
+			byte1(w, compressType);
+			byte4(w, srcLen);
+			if (compressType == LevelOption.COMPRESS_LZ4_DICT) {
+				byte8(w, dict.getId());
+			}
+			final int hlen = w.position();
+			int len;
+			switch (compressType) {
+			case LevelOption.COMPRESS_SNAPPY:
+				w.recreate(true, hlen + JniSnappy.calcMaxCompressLength(srcLen));
+				len = JniSnappy.compress(buf.address(), srcLen, w.address() + hlen);
+				break;
+			case LevelOption.COMPRESS_LZ4:
+				w.recreate(true, hlen + JniLz4.calcMaxCompressLength(srcLen));
+				len = JniLz4.compress(buf.address(), srcLen, w.address() + hlen);
+				break;
+			case LevelOption.COMPRESS_LZ4_DICT:
+				w.recreate(true, hlen + JniLz4.calcMaxCompressLength(srcLen));
+				final long h = dict.acquireHandle();
+				try {
+					len = JniLz4.compress(h, buf.address(), srcLen, w.address() + hlen);
+				} finally {
+					dict.releaseHandle();
+				}
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown compress type:" + compressType);
+			}
+			// 圧縮効果が無い場合は、元の内容のままとする.
+			len += hlen;
+			if (len <= hlen || len >= srcLen) {
+				return 0;
+			}
+			buf.clear();
+			buf._write(true, w.address(), len);
+			return srcLen - len;
+		} finally {
+			LevelBuffer.releaseWork(w);
+		}
+	}
+
+	/**
+	 * 圧縮要素かチェック.
+	 * 
+	 * @param buf
+	 *            対象のバッファを設定します.
+	 * @return boolean [true]の場合、圧縮要素です.
+	 */
+	public static final boolean isCompress(JniBuffer buf) {
+		return buf.position() > 0 && head(buf.address(), new int[] { 0 }) == COMPRESS_CODE;
+	}
+
+	/**
+	 * 圧縮要素を対象バッファに解凍.
+	 * 
+	 * @param buf
+	 *            対象のバッファを設定します.
+	 *            解凍結果は、このバッファの先頭から格納されます.
+	 * @param off
+	 *            圧縮要素の開始位置を設定します.
+	 * @param length
+	 *            圧縮要素の終端位置を設定します.
+	 * @return int 解凍後の長さが返却されます.
+	 * @exception Exception
+	 *                例外.
+	 */
+	public static final int inflate(JniBuffer buf, int off, int length) throws Exception {
+		long addr = buf.address();
+		int[] pos = new int[] { off };
+		if (head(addr, pos) != COMPRESS_CODE) {
+			return length;
+		}
+		final int compressType = byte1Int(addr, pos);
+		final int srcLen = byte4Int(addr, pos);
+		final int len = length - pos[0];
+		JniBuffer w = LevelBuffer.work();
+		try {
+			w.clear(srcLen + 1);
+			int res;
+			switch (compressType) {
+			case LevelOption.COMPRESS_SNAPPY:
+				res = JniSnappy.decompress(addr + pos[0], len, w.address());
+				break;
+			case LevelOption.COMPRESS_LZ4:
+				res = JniLz4.decompress(addr + pos[0], len, w.address());
+				break;
+			case LevelOption.COMPRESS_LZ4_DICT: {
+				long id = byte8Long(addr, pos);
+				LevelDictionary dict = LevelDictionary.get(id);
+				if (dict == null) {
+					throw new IOException("The compression dictionary '" + id + "' is not loaded.");
+				}
+				final long h = dict.acquireHandle();
+				try {
+					res = JniLz4.decompress(h, addr + pos[0], length - pos[0], w.address());
+				} finally {
+					dict.releaseHandle();
+				}
+				break;
+			}
+			default:
+				throw new IOException("Unknown compress type '" + compressType + "' detected.");
+			}
+			if (res != srcLen) {
+				throw new IOException("Failed to decompress the element:" + res + "," + srcLen);
+			}
+			buf.clear();
+			buf._write(true, w.address(), srcLen);
+			return srcLen;
+		} finally {
+			LevelBuffer.releaseWork(w);
+		}
+	}
+
 	/** 1バイトバイナリ変換. **/
 	public static final void byte1(JniBuffer buf, int b) throws Exception {
 		buf.write((b & 0xff));
@@ -277,6 +490,28 @@ public final class LevelValues {
 		}
 	}
 
+	/** 4バイトバイナリ変換時の長さを取得. **/
+	public static final int byte4Length(int b) {
+		int bit = nlzs(b);
+		int src = (bit >> 3) + ((bit & 1) | ((bit >> 1) & 1) | ((bit >> 2) & 1));
+		bit = ((bit += 2) >> 3) + ((bit & 1) | ((bit >> 1) & 1) | ((bit >> 2) & 1));
+		if (bit == src) {
+			return bit;
+		}
+		return src <= 1 ? 2 : src + 1;
+	}
+
+	/** 8バイトバイナリ変換時の長さを取得. **/
+	public static final int byte8Length(long b) {
+		int bit = nlzs(b);
+		int src = (bit >> 3) + ((bit & 1) | ((bit >> 1) & 1) | ((bit >> 2) & 1));
+		bit = ((bit += 3) >> 3) + ((bit & 1) | ((bit >> 1) & 1) | ((bit >> 2) & 1));
+		if (bit == src) {
+			return bit;
+		}
+		return src <= 1 ? 2 : src + 1;
+	}
+
 	/**
 	 * 文字バイナリ変換.
 	 * 
@@ -800,20 +1035,36 @@ public final class LevelValues {
 		} else if (o.getClass().isArray()) {
 
 			if (o instanceof long[]) {
-				head(buf, 25); // long配列.
 				long[] c = (long[]) o;
 				int len = c.length;
-				byte4(buf, len); // 長さ.
-				for (int i = 0; i < len; i++) {
-					byte8(buf, c[i]);
+				if (isVariableLongArray(c)) {
+					head(buf, 25); // long配列.
+					byte4(buf, len); // 長さ.
+					for (int i = 0; i < len; i++) {
+						byte8(buf, c[i]);
+					}
+				} else {
+					head(buf, PACKED_LONG_ARRAY); // long配列(固定長).
+					byte4(buf, len); // 長さ.
+					buf.recreate(true, buf.position() + (len << 3));
+					JniIO.putLongs(buf.address(), buf.position(), c, 0, len);
+					buf.addPosition(len << 3);
 				}
 			} else if (o instanceof int[]) {
-				head(buf, 24); // int配列.
 				int[] c = (int[]) o;
 				int len = c.length;
-				byte4(buf, len); // 長さ.
-				for (int i = 0; i < len; i++) {
-					byte4(buf, c[i]);
+				if (isVariableIntArray(c)) {
+					head(buf, 24); // int配列.
+					byte4(buf, len); // 長さ.
+					for (int i = 0; i < len; i++) {
+						byte4(buf, c[i]);
+					}
+				} else {
+					head(buf, PACKED_INT_ARRAY); // int配列(固定長).
+					byte4(buf, len); // 長さ.
+					buf.recreate(true, buf.position() + (len << 2));
+					JniIO.putInts(buf.address(), buf.position(), c, 0, len);
+					buf.addPosition(len << 2);
 				}
 			} else if (o instanceof String[]) {
 				head(buf, 28); // String配列.
@@ -830,21 +1081,21 @@ public final class LevelValues {
 				buf.write(b, 0, b.length); // body.
 				b = null;
 			} else if (o instanceof double[]) {
-				head(buf, 27); // double配列.
+				head(buf, PACKED_DOUBLE_ARRAY); // double配列(固定長).
 				double[] c = (double[]) o;
 				int len = c.length;
 				byte4(buf, len); // 長さ.
-				for (int i = 0; i < len; i++) {
-					byte8(buf, Double.doubleToRawLongBits(c[i]));
-				}
+				buf.recreate(true, buf.position() + (len << 3));
+				JniIO.putDoubles(buf.address(), buf.position(), c, 0, len);
+				buf.addPosition(len << 3);
 			} else if (o instanceof float[]) {
-				head(buf, 26); // float配列.
+				head(buf, PACKED_FLOAT_ARRAY); // float配列(固定長).
 				float[] c = (float[]) o;
 				int len = c.length;
 				byte4(buf, len); // 長さ.
-				for (int i = 0; i < len; i++) {
-					byte4(buf, Float.floatToRawIntBits(c[i]));
-				}
+				buf.recreate(true, buf.position() + (len << 2));
+				JniIO.putFloats(buf.address(), buf.position(), c, 0, len);
+				buf.addPosition(len << 2);
 			} else if (o instanceof boolean[]) {
 				head(buf, 20); // boolean配列.
 				boolean[] c = (boolean[]) o;
@@ -1140,6 +1391,38 @@ public final class LevelValues {
 			}
 			return lst;
 		}
+		case PACKED_INT_ARRAY: {
+			// int配列(固定長).
+			len = byte4Int(addr, pos);
+			int[] lst = new int[len];
+			JniIO.getInts(addr, pos[0], lst, 0, len);
+			pos[0] += len << 2;
+			return lst;
+		}
+		case PACKED_LONG_ARRAY: {
+			// long配列(固定長).
+			len = byte4Int(addr, pos);
+			long[] lst = new long[len];
+			JniIO.getLongs(addr, pos[0], lst, 0, len);
+			pos[0] += len << 3;
+			return lst;
+		}
+		case PACKED_FLOAT_ARRAY: {
+			// float配列(固定長).
+			len = byte4Int(addr, pos);
+			float[] lst = new float[len];
+			JniIO.getFloats(addr, pos[0], lst, 0, len);
+			pos[0] += len << 2;
+			return lst;
+		}
+		case PACKED_DOUBLE_ARRAY: {
+			// double配列(固定長).
+			len = byte4Int(addr, pos);
+			double[] lst = new double[len];
+			JniIO.getDoubles(addr, pos[0], lst, 0, len);
+			pos[0] += len << 3;
+			return lst;
+		}
 		case 28: {
 			// String配列.
 			len = byte4Int(addr, pos);
@@ -1263,6 +1546,34 @@ public final class LevelValues {
 		return nlzs(xx) + 32;
 	}
 
+	// int配列を可変長で格納するかチェック.
+	// 一定数未満の要素数で、可変長の方が小さくなる場合は[true].
+	private static final boolean isVariableIntArray(int[] c) {
+		int len = c.length;
+		if (len >= PACKED_VARIABLE_LENGTH) {
+			return false;
+		}
+		int n = 0;
+		for (int i = 0; i < len; i++) {
+			n += byte4Length(c[i]);
+		}
+		return n < (len << 2);
+	}
+
+	// long配列を可変長で格納するかチェック.
+	// 一定数未満の要素数で、可変長の方が小さくなる場合は[true].
+	private static final boolean isVariableLongArray(long[] c) {
+		int len = c.length;
+		if (len >= PACKED_VARIABLE_LENGTH) {
+			return false;
+		}
+		int n = 0;
+		for (int i = 0; i < len; i++) {
+			n += byte8Length(c[i]);
+		}
+		return n < (len << 3);
+	}
+
 	/**
 	 * オブジェクト配列をエンコード.
 	 * 
@@ -1,6 +1,8 @@
 package org.maachang.leveldb;
 
 import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.maachang.leveldb.util.Flag;
 
@@ -18,6 +20,54 @@ public final class Leveldb {
 	
 	protected final Flag closeFlag = new Flag();
 
+	// ネイティブリソース.
+	protected final DbHandle handle;
+
+	/**
+	 * Leveldbのネイティブリソース.
+	 * クローズ時は、オープン中のIterator・Snapshotを先に開放します.
+	 */
+	static final class DbHandle extends NativeResource.Handle {
+		private long addr;
+		private final Set<NativeResource.Handle> children = new HashSet<NativeResource.Handle>();
+
+		DbHandle(long addr) {
+			super(NativeResource.LEVELDB);
+			this.addr = addr;
+		}
+
+		// アドレスを取得(クローズ済みの場合は[0]).
+		synchronized long addr() {
+			return addr;
+		}
+
+		// 子リソースを追加.
+		synchronized void add(NativeResource.Handle h) {
+			children.add(h);
+		}
+
+		// 子リソースを削除.
+		synchronized void remove(NativeResource.Handle h) {
+			children.remove(h);
+		}
+
+		@Override
+		protected void release() {
+			NativeResource.Handle[] list;
+			synchronized (this) {
+				list = children.toArray(new NativeResource.Handle[children.size()]);
+			}
+			for (int i = 0; i < list.length; i++) {
+				list[i].close();
+			}
+			synchronized (this) {
+				children.clear();
+				jni.leveldb_close(addr);
+				addr = 0L;
+			}
+		}
+	}
+
 	/**
 	 * コンストラクタ.
 	 * 
@@ -105,25 +155,20 @@ public final class Leveldb {
 			}
 		}
 		this.addr = a;
+		this.handle = NativeResource.register(this, new DbHandle(a));
 		this.path = s;
 		this.type = option.type;
 		this.option = option;
 		this.closeFlag.set(false);
 	}
 
-	/**
-	 * デストラクタ.
-	 */
-//	protected final void finalize() throws Exception {
-//		close();
-//	}
-
 	/**
 	 * クローズ.
+	 * オープン中のIterator・Snapshotもクローズされます.
 	 */
 	public final void close() {
 		if (!closeFlag.setToGetBefore(true)) {
-			jni.leveldb_close(addr);
+			handle.close();
 			addr = 0L;
 		}
 	}
@@ -207,7 +252,7 @@ public final class Leveldb {
 		if (key == null || key.position() == 0) {
 			throw new LeveldbException("Key information is not set.");
 		}
-		final long[] n = new long[] { out.address() };
+		final long[] n = new long[] { out.address(), 0L };
 		final int len = jni.leveldb_get(addr, key.address(), key.position(), n, out.length());
 		if (len <= 0) {
 			return 0;
@@ -232,6 +277,88 @@ public final class Leveldb {
 		return jni.leveldb_remove(addr, key.address(), key.position()) != -1;
 	}
 
+	/**
+	 * 範囲削除.
+	 * <p>
+	 * [start, end) の範囲のキーを、ネイティブ側でまとめて削除します.
+	 * 削除は一定件数毎にWriteBatchで反映されるため、処理全体はアトミックではありません.
+	 * </p>
+	 * 
+	 * @param start
+	 *            開始キーを設定します. [null]の場合は先頭から削除します.
+	 * @param end
+	 *            終了キー(このキーは含まない)を設定します. [null]の場合は最後まで削除します.
+	 * @return long 削除件数が返却されます.
+	 */
+	public final long removeRange(final JniBuffer start, final JniBuffer end) {
+		return _removeRange(0, start, end);
+	}
+
+	/**
+	 * 前方一致削除.
+	 * <p>
+	 * キーのバイナリが、指定キーのバイナリで始まる情報を削除します.
+	 * 文字列キー、マルチキーで利用できます.
+	 * </p>
+	 * 
+	 * @param prefix
+	 *            対象のキーを設定します.
+	 * @return long 削除件数が返却されます.
+	 */
+	public final long removePrefix(final JniBuffer prefix) {
+		if (prefix == null || prefix.position() == 0) {
+			throw new LeveldbException("Key information is not set.");
+		}
+		return _removeRange(1, prefix, null);
+	}
+
+	/**
+	 * 先頭キー一致削除.
+	 * <p>
+	 * ２キータイプで、先頭キーが指定キーと一致する情報を削除します.
+	 * 指定キーは、セカンドキーを最小値とした開始キーを設定します.
+	 * </p>
+	 * 
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @return long 削除件数が返却されます.
+	 */
+	public final long removeFirstKey(final JniBuffer key) {
+		if (key == null || key.position() == 0) {
+			throw new LeveldbException("Key information is not set.");
+		}
+		return _removeRange(2, key, null);
+	}
+
+	// 範囲削除.
+	private final long _removeRange(final int mode, final JniBuffer start, final JniBuffer end) {
+		checkClose();
+		final long ret = jni.leveldb_remove_range(addr, LevelOption.getLeveldbKeyType(type), mode,
+			start == null ? 0L : start.address(), start == null ? 0 : start.position(),
+			end == null ? 0L : end.address(), end == null ? 0 : end.position());
+		if (ret == -1L) {
+			throw new LeveldbException("Remove range processing failed.");
+		}
+		return ret;
+	}
+
+	/**
+	 * 指定範囲のコンパクション.
+	 * <p>
+	 * 削除済みの情報を、指定範囲のファイルから取り除きます.
+	 * </p>
+	 * 
+	 * @param start
+	 *            開始キーを設定します. [null]の場合は先頭から処理します.
+	 * @param end
+	 *            終了キーを設定します. [null]の場合は最後まで処理します.
+	 */
+	public final void vacuum(final JniBuffer start, final JniBuffer end) {
+		checkClose();
+		jni.leveldb_vacuum(addr, start == null ? 0L : start.address(), start == null ? 0 : start.position(),
+			end == null ? 0L : end.address(), end == null ? 0 : end.position());
+	}
+
 	/**
 	 * 状態取得
 	 * 
@@ -247,7 +374,7 @@ public final class Leveldb {
 		if (out == null || cmd == null || cmd.position() == 0) {
 			throw new LeveldbException("Command information is not set.");
 		}
-		final long[] n = new long[] { out.address() };
+		final long[] n = new long[] { out.address(), 0L };
 		final int len = jni.leveldb_property(addr, cmd.address(), cmd.position(), n, out.length());
 		if (len <= 0) {
 			return 0;
@@ -277,6 +404,16 @@ public final class Leveldb {
 		return new LeveldbIterator(true, this);
 	}
 
+	/**
+	 * 複数のIteratorで共有するSnapShotを取得.
+	 *
+	 * @return LeveldbSnapshot Snapshotオブジェクトが返却されます.
+	 */
+	public final LeveldbSnapshot sharedSnapshot() {
+		checkClose();
+		return new LeveldbSnapshot(this);
+	}
+
 	/**
 	 * 情報が空かチェック.
 	 * 
@@ -430,7 +567,8 @@ public final class Leveldb {
 		} catch (Exception e) {
 			throw new LeveldbException(e);
 		} finally {
-			LevelBuffer.clearBuffer(keyBuf, null);
+			// 呼び出し元のバッファは返却しない.
+			LevelBuffer.release(key instanceof JniBuffer ? null : keyBuf, null);
 		}
 	}
 }
@@ -11,6 +11,43 @@ public class LeveldbIterator {
 	protected long addr;
 	protected long snapShot;
 
+	// 共有スナップショット.
+	protected LeveldbSnapshot shared;
+
+	// ネイティブリソース.
+	private IteratorHandle handle;
+
+	/**
+	 * Iterator・Snapshotのネイティブリソース.
+	 */
+	private static final class IteratorHandle extends NativeResource.Handle {
+		private final Leveldb.DbHandle db;
+		private final long addr;
+		private final long snapShot;
+
+		IteratorHandle(Leveldb.DbHandle db, long addr, long snapShot) {
+			super(snapShot != 0L ? NativeResource.SNAPSHOT : NativeResource.ITERATOR);
+			this.db = db;
+			this.addr = addr;
+			this.snapShot = snapShot;
+		}
+
+		@Override
+		protected void release() {
+			// Leveldbがクローズ済みの場合は、Leveldb側で開放済み.
+			synchronized (db) {
+				final long d = db.addr();
+				if (d != 0L) {
+					jni.leveldb_itr_delete(addr);
+					if (snapShot != 0L) {
+						jni.leveldb_ss_destroy(d, snapShot);
+					}
+				}
+				db.remove(this);
+			}
+		}
+	}
+
 	/**
 	 * コンストラクタ.
 	 * 
@@ -24,40 +61,71 @@ public class LeveldbIterator {
 			throw new LeveldbException("The target Leveldb is already closed or invalid.");
 		}
 		parent = p;
-		// Snapshot用のIteratorを作成する場合.
-		if (mode) {
-			snapShot = jni.leveldb_ss_create(p.addr);
-			addr = jni.leveldb_ss_iterator(p.addr, snapShot);
-		}
-		// 通常のIteratorを作成する場合.
-		else {
-			snapShot = 0L;
-			addr = jni.leveldb_iterator(p.addr);
+		final Leveldb.DbHandle db = p.handle;
+		synchronized (db) {
+			final long d = db.addr();
+			if (d == 0L) {
+				throw new LeveldbException("The target Leveldb is already closed or invalid.");
+			}
+			// Snapshot用のIteratorを作成する場合.
+			if (mode) {
+				snapShot = jni.leveldb_ss_create(d);
+				addr = jni.leveldb_ss_iterator(d, snapShot);
+			}
+			// 通常のIteratorを作成する場合.
+			else {
+				snapShot = 0L;
+				addr = jni.leveldb_iterator(d);
+			}
+			handle = NativeResource.register(this, new IteratorHandle(db, addr, snapShot));
+			db.add(handle);
 		}
 		// 先頭に移動.
 		jni.leveldb_itr_first(addr);
 	}
 
 	/**
-	 * デストラクタ.
+	 * コンストラクタ.
+	 * 共有スナップショットのIteratorを生成します.
+	 * スナップショットは、LeveldbSnapshot側で開放されます.
+	 * 
+	 * @param ss
+	 *            共有スナップショットを設定します.
 	 */
-//	protected final void finalize() {
-//		close();
-//	}
+	protected LeveldbIterator(LeveldbSnapshot ss) {
+		final Leveldb p = ss.parent;
+		if (p == null || p.isClose()) {
+			throw new LeveldbException("The target Leveldb is already closed or invalid.");
+		}
+		parent = p;
+		shared = ss;
+		final Leveldb.DbHandle db = p.handle;
+		synchronized (db) {
+			final long d = db.addr();
+			if (d == 0L || ss.snapShot == 0L) {
+				throw new LeveldbException("The target snapshot is already closed or invalid.");
+			}
+			snapShot = 0L;
+			addr = jni.leveldb_ss_iterator(d, ss.snapShot);
+			handle = NativeResource.register(this, new IteratorHandle(db, addr, 0L));
+			db.add(handle);
+		}
+		// 先頭に移動.
+		jni.leveldb_itr_first(addr);
+	}
 
 	/**
 	 * クローズ.
 	 */
 	public void close() {
-		if (addr != 0L) {
-			jni.leveldb_itr_delete(addr);
-			addr = 0L;
-		}
-		if (snapShot != 0L) {
-			jni.leveldb_ss_destroy(parent.addr, snapShot);
-			snapShot = 0L;
+		if (handle != null) {
+			handle.close();
+			handle = null;
 		}
+		addr = 0L;
+		snapShot = 0L;
 		parent = null;
+		shared = null;
 	}
 
 	/**
@@ -115,6 +183,22 @@ public class LeveldbIterator {
 		jni.leveldb_itr_next(addr);
 	}
 
+	/**
+	 * 指定件数分、次のカーソル位置に移動.
+	 * キー・要素を取得せずに移動します.
+	 * 
+	 * @param count
+	 *            移動件数を設定します.
+	 * @return int 移動できた件数が返却されます.
+	 */
+	public int skip(int count) {
+		check();
+		if (count <= 0) {
+			return 0;
+		}
+		return jni.leveldb_itr_skip(addr, count);
+	}
+
 	/**
 	 * 前のカーソル位置に移動.
 	 */
@@ -145,7 +229,7 @@ public class LeveldbIterator {
 		if (out == null) {
 			return -1;
 		}
-		long[] n = new long[] { out.address() };
+		long[] n = new long[] { out.address(), 0L };
 		int len = jni.leveldb_itr_key(addr, n, out.length());
 		if (len <= 0) {
 			return 0;
@@ -167,7 +251,7 @@ public class LeveldbIterator {
 		if (out == null) {
 			return -1;
 		}
-		long[] n = new long[] { out.address() };
+		long[] n = new long[] { out.address(), 0L };
 		int len = jni.leveldb_itr_value(addr, n, out.length());
 		if (len <= 0) {
 			return 0;
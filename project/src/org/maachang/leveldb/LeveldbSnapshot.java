@@ -0,0 +1,98 @@
+package org.maachang.leveldb;
+
+/**
+ * Leveldb-Snapshot.
+ * <p>
+ * １つのスナップショットから、複数のIteratorを生成します.
+ * 生成されたIteratorは、全て同じ時点の内容を参照します.
+ * </p>
+ */
+public class LeveldbSnapshot {
+	protected Leveldb parent;
+	protected long snapShot;
+
+	// ネイティブリソース.
+	private SnapshotHandle handle;
+
+	/**
+	 * Snapshotのネイティブリソース.
+	 */
+	private static final class SnapshotHandle extends NativeResource.Handle {
+		private final Leveldb.DbHandle db;
+		private final long snapShot;
+
+		SnapshotHandle(Leveldb.DbHandle db, long snapShot) {
+			super(NativeResource.SNAPSHOT);
+			this.db = db;
+			this.snapShot = snapShot;
+		}
+
+		@Override
+		protected void release() {
+			// Leveldbがクローズ済みの場合は、Leveldb側で開放済み.
+			synchronized (db) {
+				final long d = db.addr();
+				if (d != 0L) {
+					jni.leveldb_ss_destroy(d, snapShot);
+				}
+				db.remove(this);
+			}
+		}
+	}
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param p
+	 *            Leveldbオブジェクトを設定します.
+	 */
+	protected LeveldbSnapshot(Leveldb p) {
+		if (p == null || p.isClose()) {
+			throw new LeveldbException("The target Leveldb is already closed or invalid.");
+		}
+		parent = p;
+		final Leveldb.DbHandle db = p.handle;
+		synchronized (db) {
+			final long d = db.addr();
+			if (d == 0L) {
+				throw new LeveldbException("The target Leveldb is already closed or invalid.");
+			}
+			snapShot = jni.leveldb_ss_create(d);
+			handle = NativeResource.register(this, new SnapshotHandle(db, snapShot));
+			db.add(handle);
+		}
+	}
+
+	/**
+	 * クローズ.
+	 * 生成済みのIteratorは、クローズ後も利用できます.
+	 */
+	public void close() {
+		if (handle != null) {
+			handle.close();
+			handle = null;
+		}
+		snapShot = 0L;
+	}
+
+	/**
+	 * クローズしているかチェック.
+	 *
+	 * @return boolean [true]の場合、クローズしています.
+	 */
+	public boolean isClose() {
+		return parent.closeFlag.get() || snapShot == 0L;
+	}
+
+	/**
+	 * Iteratorを取得.
+	 *
+	 * @return LeveldbIterator Iteratorオブジェクトが返却されます.
+	 */
+	public LeveldbIterator iterator() {
+		if (isClose()) {
+			throw new LeveldbException("Already closed.");
+		}
+		return new LeveldbIterator(this);
+	}
+}
@@ -0,0 +1,452 @@
+package org.maachang.leveldb;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ネイティブメモリのサイズクラス別アロケータ.
+ * <p>
+ * [16byte]から[1MB]までの２の累乗サイズをサイズクラスとして確保し、
+ * 開放されたメモリはスレッド毎のキャッシュ、または共有のデポに保持して再利用します.
+ * 終了したスレッドのキャッシュは、新しいスレッドのキャッシュ生成時と trim で共有デポに回収され、
+ * 仮想スレッドはスレッドキャッシュを利用しません.
+ * サイズクラスを超えるメモリは、直接 malloc/realloc/free で管理します.
+ * </p>
+ * <p>
+ * 同じサイズクラスのメモリだけを使いまわすため、サイズが混在する処理でも
+ * mallocのフラグメントによるメモリ使用量の増加を抑えます.
+ * JNIの返却処理(get/iterator)も同じサイズクラスで確保するため、
+ * 返却されたメモリもこのアロケータで再利用されます.
+ * </p>
+ */
+public final class NativeAllocator {
+	private NativeAllocator() {
+	}
+
+	/** 最小サイズクラスのビット数(16byte). **/
+	private static final int MIN_SHIFT = 4;
+
+	/** 最大サイズクラスのビット数(1MB). **/
+	private static final int MAX_SHIFT = 20;
+
+	/** 最小サイズクラス. **/
+	public static final int MIN_CLASS_SIZE = 1 << MIN_SHIFT;
+
+	/** 最大サイズクラス. **/
+	public static final int MAX_CLASS_SIZE = 1 << MAX_SHIFT;
+
+	/** サイズクラス数. **/
+	private static final int CLASS_LENGTH = MAX_SHIFT - MIN_SHIFT + 1;
+
+	/** スレッドキャッシュを利用する最大サイズクラス. **/
+	private static final int THREAD_CACHE_MAX_SIZE = 65536;
+
+	// サイズクラス毎のスレッドキャッシュ保持数.
+	private static final int[] THREAD_CACHE_COUNT = new int[CLASS_LENGTH];
+
+	// サイズクラス毎の共有デポ.
+	private static final AtomicLongArray[] depot = new AtomicLongArray[CLASS_LENGTH];
+
+	static {
+		int size;
+		for (int i = 0; i < CLASS_LENGTH; i++) {
+			size = 1 << (i + MIN_SHIFT);
+			if (size <= 4096) {
+				THREAD_CACHE_COUNT[i] = 8;
+				depot[i] = new AtomicLongArray(32);
+			} else if (size <= THREAD_CACHE_MAX_SIZE) {
+				THREAD_CACHE_COUNT[i] = 2;
+				depot[i] = new AtomicLongArray(8);
+			} else {
+				THREAD_CACHE_COUNT[i] = 0;
+				depot[i] = new AtomicLongArray(4);
+			}
+		}
+	}
+
+	// 仮想スレッドのクラス(仮想スレッドが存在しない場合は[null]).
+	// 仮想スレッドは数が多く短命なため、スレッドキャッシュを利用しない.
+	private static final Class<?> VIRTUAL_THREAD;
+
+	static {
+		Class<?> c = null;
+		final String[] names = new String[] { "java.lang.BaseVirtualThread", "java.lang.VirtualThread" };
+		for (int i = 0; i < names.length && c == null; i++) {
+			try {
+				c = Class.forName(names[i]);
+			} catch (Throwable t) {
+			}
+		}
+		VIRTUAL_THREAD = c;
+	}
+
+	// スレッドキャッシュ.
+	private static final ThreadLocal<ThreadCache> threadCache = new ThreadLocal<ThreadCache>();
+
+	// 生成済みのスレッドキャッシュ一覧(終了したスレッドのキャッシュ回収用).
+	private static final ConcurrentLinkedQueue<ThreadCache> caches = new ConcurrentLinkedQueue<ThreadCache>();
+
+	// 統計情報.
+	private static final LongAdder reserved = new LongAdder();
+	private static final LongAdder live = new LongAdder();
+	private static final LongAdder systemAlloc = new LongAdder();
+	private static final LongAdder systemFree = new LongAdder();
+	private static final LongAdder reuse = new LongAdder();
+
+	/**
+	 * スレッドキャッシュ.
+	 */
+	private static final class ThreadCache {
+		final WeakReference<Thread> owner;
+		final long[][] blocks = new long[CLASS_LENGTH][];
+		final int[] count = new int[CLASS_LENGTH];
+
+		ThreadCache(Thread t) {
+			owner = new WeakReference<Thread>(t);
+			for (int i = 0; i < CLASS_LENGTH; i++) {
+				blocks[i] = new long[THREAD_CACHE_COUNT[i]];
+			}
+		}
+
+		// オーナースレッドが終了しているかチェック.
+		boolean isDead() {
+			final Thread t = owner.get();
+			return t == null || !t.isAlive();
+		}
+
+		// キャッシュ内容を全て開放.
+		void drain() {
+			for (int c = 0; c < CLASS_LENGTH; c++) {
+				final long[] b = blocks[c];
+				while (count[c] > 0) {
+					final int n = --count[c];
+					freeDepot(c, b[n]);
+					b[n] = 0L;
+				}
+			}
+		}
+	}
+
+	/**
+	 * 確保されるメモリサイズを取得.
+	 *
+	 * @param len
+	 *            必要なメモリ長を設定します.
+	 * @return int サイズクラスに切り上げたメモリ長が返却されます.
+	 *         最大サイズクラスを超える場合は、そのままの長さが返却されます.
+	 */
+	public static final int capacity(final int len) {
+		if (len <= MIN_CLASS_SIZE) {
+			return MIN_CLASS_SIZE;
+		} else if (len > MAX_CLASS_SIZE) {
+			return len;
+		}
+		return Integer.highestOneBit(len - 1) << 1;
+	}
+
+	/**
+	 * メモリ生成.
+	 *
+	 * @param len
+	 *            生成メモリ長を設定します. 実際には capacity(len) のサイズで確保されます.
+	 * @return long 先頭アドレスが返却されます.
+	 */
+	public static final long malloc(final int len) {
+		final int cap = capacity(len);
+		final int cls = sizeClass(cap);
+		long ret = 0L;
+		if (cls != -1) {
+			// スレッドキャッシュから取得.
+			if (THREAD_CACHE_COUNT[cls] > 0) {
+				final ThreadCache tc = threadCache.get();
+				if (tc != null && tc.count[cls] > 0) {
+					final int n = --tc.count[cls];
+					ret = tc.blocks[cls][n];
+					tc.blocks[cls][n] = 0L;
+				}
+			}
+			// 共有デポから取得.
+			if (ret == 0L) {
+				ret = pollDepot(cls);
+			}
+			if (ret != 0L) {
+				reuse.increment();
+				live.add(cap);
+				return ret;
+			}
+		}
+		ret = jni.malloc(cap);
+		if (ret == 0L) {
+			throw new OutOfMemoryError("Failed to allocate native memory:" + cap);
+		}
+		systemAlloc.increment();
+		reserved.add(cap);
+		live.add(cap);
+		return ret;
+	}
+
+	/**
+	 * メモリ再生成.
+	 * <p>
+	 * 新しいサイズが同じサイズクラスの場合は、そのままのアドレスが返却されます.
+	 * 最大サイズクラスを超えるメモリ同士の場合は、reallocで可能な限りその場で拡張します.
+	 * </p>
+	 *
+	 * @param addr
+	 *            メモリアドレスを設定します.
+	 * @param cap
+	 *            現在のメモリ長(capacity)を設定します.
+	 * @param len
+	 *            新しく必要なメモリ長を設定します.
+	 * @param copy
+	 *            [true]の場合、前の情報をコピーします.
+	 * @return long 先頭アドレスが返却されます. 新しいメモリ長は capacity(len) となります.
+	 */
+	public static final long realloc(final long addr, final int cap, final int len, final boolean copy) {
+		if (addr == 0L) {
+			return malloc(len);
+		}
+		final int newCap = capacity(len);
+		if (newCap == cap) {
+			return addr;
+		}
+		// サイズクラスを超えるメモリ同士の場合はreallocを利用.
+		if (copy && cap > MAX_CLASS_SIZE && newCap > MAX_CLASS_SIZE) {
+			final long ret = jni.realloc(addr, newCap);
+			if (ret == 0L) {
+				throw new OutOfMemoryError("Failed to allocate native memory:" + newCap);
+			}
+			reserved.add(newCap - cap);
+			live.add(newCap - cap);
+			return ret;
+		}
+		final long ret = malloc(len);
+		if (copy) {
+			jni.memcpy(ret, addr, cap < newCap ? cap : newCap);
+		}
+		free(addr, cap);
+		return ret;
+	}
+
+	/**
+	 * メモリ開放.
+	 *
+	 * @param addr
+	 *            メモリアドレスを設定します.
+	 * @param cap
+	 *            メモリ長(capacity)を設定します.
+	 */
+	public static final void free(final long addr, final int cap) {
+		if (addr == 0L) {
+			return;
+		}
+		live.add(-cap);
+		final int cls = sizeClass(cap);
+		if (cls == -1) {
+			systemFree(addr, cap);
+			return;
+		}
+		// スレッドキャッシュに格納.
+		if (THREAD_CACHE_COUNT[cls] > 0) {
+			ThreadCache tc = threadCache.get();
+			if (tc == null) {
+				tc = createCache();
+			}
+			if (tc != null && tc.count[cls] < THREAD_CACHE_COUNT[cls]) {
+				tc.blocks[cls][tc.count[cls]++] = addr;
+				return;
+			}
+		}
+		freeDepot(cls, addr);
+	}
+
+	// 現在のスレッドのキャッシュを生成.
+	// 仮想スレッドの場合は[null]を返却する.
+	private static final ThreadCache createCache() {
+		final Thread t = Thread.currentThread();
+		if (VIRTUAL_THREAD != null && VIRTUAL_THREAD.isInstance(t)) {
+			return null;
+		}
+		// 新しいスレッドの登録時に、終了したスレッドのキャッシュを回収する.
+		sweep();
+		final ThreadCache ret = new ThreadCache(t);
+		threadCache.set(ret);
+		caches.offer(ret);
+		return ret;
+	}
+
+	// 終了したスレッドのキャッシュを共有デポに返却.
+	private static final void sweep() {
+		final Iterator<ThreadCache> it = caches.iterator();
+		while (it.hasNext()) {
+			final ThreadCache tc = it.next();
+			// 削除できたスレッドのみが返却する.
+			if (tc.isDead() && caches.remove(tc)) {
+				tc.drain();
+			}
+		}
+	}
+
+	/**
+	 * JNIの返却処理で確保されたメモリを管理対象に追加.
+	 *
+	 * @param cap
+	 *            メモリ長(capacity)を設定します.
+	 */
+	protected static final void adopt(final int cap) {
+		systemAlloc.increment();
+		reserved.add(cap);
+		live.add(cap);
+	}
+
+	/**
+	 * 現在のスレッドのキャッシュを共有デポに返却.
+	 */
+	public static final void flush() {
+		final ThreadCache tc = threadCache.get();
+		if (tc != null) {
+			threadCache.remove();
+			caches.remove(tc);
+			tc.drain();
+		}
+	}
+
+	/**
+	 * キャッシュ中のメモリを開放.
+	 * <p>
+	 * 終了したスレッドのキャッシュと、共有デポのメモリを開放します.
+	 * 実行中のスレッドのキャッシュは、各スレッドの flush で返却されます.
+	 * JniBufferPool のトリム時にも呼び出されます.
+	 * </p>
+	 *
+	 * @return long 開放されたメモリ長が返却されます.
+	 */
+	public static final long trim() {
+		// 終了したスレッドのキャッシュを回収.
+		sweep();
+		long ret = 0L;
+		long a;
+		for (int c = 0; c < CLASS_LENGTH; c++) {
+			final AtomicLongArray d = depot[c];
+			final int len = d.length();
+			for (int i = 0; i < len; i++) {
+				if ((a = d.get(i)) != 0L && d.compareAndSet(i, a, 0L)) {
+					systemFree(a, 1 << (c + MIN_SHIFT));
+					ret += 1 << (c + MIN_SHIFT);
+				}
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * 確保済みのメモリ長を取得.
+	 * キャッシュ中のメモリも含みます.
+	 *
+	 * @return long 確保済みのメモリ長が返却されます.
+	 */
+	public static final long getReserved() {
+		return reserved.sum();
+	}
+
+	/**
+	 * 利用中のメモリ長を取得.
+	 *
+	 * @return long 利用中のメモリ長が返却されます.
+	 */
+	public static final long getLive() {
+		return live.sum();
+	}
+
+	/**
+	 * キャッシュ中のメモリ長を取得.
+	 *
+	 * @return long キャッシュ中のメモリ長が返却されます.
+	 */
+	public static final long getCached() {
+		return reserved.sum() - live.sum();
+	}
+
+	/**
+	 * mallocの呼び出し回数を取得.
+	 *
+	 * @return long mallocの呼び出し回数が返却されます.
+	 */
+	public static final long getSystemAllocCount() {
+		return systemAlloc.sum();
+	}
+
+	/**
+	 * freeの呼び出し回数を取得.
+	 *
+	 * @return long freeの呼び出し回数が返却されます.
+	 */
+	public static final long getSystemFreeCount() {
+		return systemFree.sum();
+	}
+
+	/**
+	 * キャッシュからの再利用回数を取得.
+	 *
+	 * @return long キャッシュからの再利用回数が返却されます.
+	 */
+	public static final long getReuseCount() {
+		return reuse.sum();
+	}
+
+	/**
+	 * 統計情報を文字列で取得.
+	 *
+	 * @return String 文字列が返却されます.
+	 */
+	public static final String stats() {
+		final long r = reserved.sum();
+		final long l = live.sum();
+		return new StringBuilder("reserved:").append(r).append(" live:").append(l).append(" cached:")
+			.append(r - l).append(" malloc:").append(systemAlloc.sum()).append(" free:")
+			.append(systemFree.sum()).append(" reuse:").append(reuse.sum()).toString();
+	}
+
+	// サイズクラスを取得(サイズクラスと一致しない場合は[-1]).
+	private static final int sizeClass(final int cap) {
+		if (cap < MIN_CLASS_SIZE || cap > MAX_CLASS_SIZE || (cap & (cap - 1)) != 0) {
+			return -1;
+		}
+		return Integer.numberOfTrailingZeros(cap) - MIN_SHIFT;
+	}
+
+	// 共有デポから取得.
+	private static final long pollDepot(final int cls) {
+		final AtomicLongArray d = depot[cls];
+		final int len = d.length();
+		long a;
+		for (int i = 0; i < len; i++) {
+			if ((a = d.get(i)) != 0L && d.compareAndSet(i, a, 0L)) {
+				return a;
+			}
+		}
+		return 0L;
+	}
+
+	// 共有デポに格納(満杯の場合は開放).
+	private static final void freeDepot(final int cls, final long addr) {
+		final AtomicLongArray d = depot[cls];
+		final int len = d.length();
+		for (int i = 0; i < len; i++) {
+			if (d.get(i) == 0L && d.compareAndSet(i, 0L, addr)) {
+				return;
+			}
+		}
+		systemFree(addr, 1 << (cls + MIN_SHIFT));
+	}
+
+	// メモリを開放.
+	private static final void systemFree(final long addr, final int cap) {
+		jni.free(addr);
+		systemFree.increment();
+		reserved.add(-cap);
+	}
+}
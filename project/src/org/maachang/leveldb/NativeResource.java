@@ -0,0 +1,345 @@
+package org.maachang.leveldb;
+
+import java.io.PrintStream;
+import java.lang.ref.Cleaner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ネイティブリソース管理.
+ * <p>
+ * Leveldb, Iterator, Snapshot, WriteBatch, JniBuffer などのネイティブリソースを
+ * Cleaner に登録し、closeされずにGCされた場合でも開放します.
+ * また、オープン中のリソース数や、closeされずに開放(リーク)された件数を管理します.
+ * </p>
+ * <p>
+ * システムプロパティ[org.maachang.leveldb.trace=true]を設定するか、
+ * setTrace(true) を呼び出すと、リソース生成時の呼び出し元を保持し、
+ * リーク検出時に標準エラーに出力します.
+ * </p>
+ */
+public final class NativeResource {
+	private NativeResource() {
+	}
+
+	/** リソース種別: Leveldb. **/
+	public static final int LEVELDB = 0;
+
+	/** リソース種別: Iterator. **/
+	public static final int ITERATOR = 1;
+
+	/** リソース種別: Snapshot(Snapshot用Iterator). **/
+	public static final int SNAPSHOT = 2;
+
+	/** リソース種別: WriteBatch. **/
+	public static final int WRITE_BATCH = 3;
+
+	/** リソース種別: WriteBatchCursor. **/
+	public static final int CURSOR = 4;
+
+	/** リソース種別: ネイティブメモリを保持するJniBuffer. **/
+	public static final int BUFFER = 5;
+
+	/** リソース種別名. **/
+	private static final String[] NAMES = new String[] { "leveldb", "iterator", "snapshot", "writeBatch", "cursor",
+		"buffer" };
+
+	/** トレースモードのシステムプロパティ名. **/
+	public static final String TRACE_PROPERTY = "org.maachang.leveldb.trace";
+
+	// Cleaner.
+	private static final Cleaner cleaner = Cleaner.create();
+
+	// 統計情報.
+	private static final LongAdder[] open = new LongAdder[NAMES.length];
+	private static final LongAdder[] created = new LongAdder[NAMES.length];
+	private static final LongAdder[] leaked = new LongAdder[NAMES.length];
+
+	static {
+		for (int i = 0; i < NAMES.length; i++) {
+			open[i] = new LongAdder();
+			created[i] = new LongAdder();
+			leaked[i] = new LongAdder();
+		}
+	}
+
+	// トレースモード.
+	private static volatile boolean trace = Boolean.getBoolean(TRACE_PROPERTY);
+
+	// トレースモードでオープン中のリソース.
+	private static final Set<Handle> traced = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * ネイティブリソースの開放処理.
+	 * <p>
+	 * 継承先では、管理元のオブジェクトを参照しないように実装します.
+	 * </p>
+	 */
+	public static abstract class Handle implements Runnable {
+		private final int kind;
+		private final Throwable site;
+		private Cleaner.Cleanable cleanable;
+		private volatile boolean closed;
+
+		/**
+		 * コンストラクタ.
+		 *
+		 * @param kind
+		 *            リソース種別を設定します.
+		 */
+		protected Handle(int kind) {
+			this.kind = kind;
+			this.site = trace ? new Throwable(NAMES[kind] + " allocated") : null;
+		}
+
+		/**
+		 * ネイティブリソースを開放.
+		 */
+		protected abstract void release();
+
+		/**
+		 * クローズ処理.
+		 * 明示的なクローズとして、ネイティブリソースを開放します.
+		 */
+		public final void close() {
+			closed = true;
+			cleanable.clean();
+		}
+
+		/**
+		 * Cleanerからの呼び出し.
+		 * closeされずに呼び出された場合は、リークとして記録します.
+		 */
+		@Override
+		public final void run() {
+			try {
+				release();
+			} finally {
+				open[kind].decrement();
+				if (site != null) {
+					traced.remove(this);
+				}
+				if (!closed) {
+					leaked[kind].increment();
+					if (site != null) {
+						System.err.println("leveldb: " + NAMES[kind] + " was not closed.");
+						site.printStackTrace();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * ネイティブメモリの開放処理.
+	 * <p>
+	 * JniBufferの再生成でアドレスが変わるため、最新のアドレスを保持します.
+	 * </p>
+	 */
+	static final class Memory implements Runnable {
+		private final Throwable site;
+		private volatile long address;
+		private volatile int length;
+
+		Memory() {
+			this.site = trace ? new Throwable(NAMES[BUFFER] + " allocated") : null;
+		}
+
+		// メモリ情報を更新.
+		void set(long addr, int len) {
+			if (address == 0L) {
+				if (addr != 0L) {
+					open[BUFFER].increment();
+				}
+			} else if (addr == 0L) {
+				open[BUFFER].decrement();
+			}
+			address = addr;
+			length = len;
+		}
+
+		@Override
+		public void run() {
+			final long addr = address;
+			if (addr != 0L) {
+				address = 0L;
+				NativeAllocator.free(addr, length);
+				open[BUFFER].decrement();
+				leaked[BUFFER].increment();
+				if (site != null) {
+					System.err.println("leveldb: " + NAMES[BUFFER] + " was not destroyed.");
+					site.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * リソースを登録.
+	 *
+	 * @param owner
+	 *            管理元のオブジェクトを設定します.
+	 * @param handle
+	 *            開放処理を設定します.
+	 * @return Handle 開放処理が返却されます.
+	 */
+	public static final <T extends Handle> T register(Object owner, T handle) {
+		final Handle h = handle;
+		h.cleanable = cleaner.register(owner, h);
+		open[h.kind].increment();
+		created[h.kind].increment();
+		if (h.site != null) {
+			traced.add(h);
+		}
+		return handle;
+	}
+
+	// JniBufferのメモリを登録.
+	static final Memory register(JniBuffer owner) {
+		final Memory ret = new Memory();
+		cleaner.register(owner, ret);
+		created[BUFFER].increment();
+		return ret;
+	}
+
+	/**
+	 * トレースモードを設定.
+	 * 設定以降に生成されたリソースが対象となります.
+	 *
+	 * @param mode
+	 *            [true]の場合、リソース生成時の呼び出し元を保持します.
+	 */
+	public static final void setTrace(boolean mode) {
+		trace = mode;
+	}
+
+	/**
+	 * トレースモードかチェック.
+	 *
+	 * @return boolean [true]の場合、トレースモードです.
+	 */
+	public static final boolean isTrace() {
+		return trace;
+	}
+
+	/**
+	 * トレースモードでオープン中のリソースの生成元を取得.
+	 *
+	 * @return List<Throwable> 生成元の一覧が返却されます.
+	 */
+	public static final List<Throwable> getOpenSites() {
+		final List<Throwable> ret = new ArrayList<Throwable>();
+		for (Handle h : traced) {
+			ret.add(h.site);
+		}
+		return ret;
+	}
+
+	/**
+	 * トレースモードでオープン中のリソースの生成元を出力.
+	 *
+	 * @param out
+	 *            出力先を設定します.
+	 */
+	public static final void printOpenSites(PrintStream out) {
+		for (Throwable t : getOpenSites()) {
+			t.printStackTrace(out);
+		}
+	}
+
+	/**
+	 * オープン中のリソース数を取得.
+	 *
+	 * @param kind
+	 *            リソース種別を設定します.
+	 * @return long オープン中のリソース数が返却されます.
+	 */
+	public static final long getOpen(int kind) {
+		return open[kind].sum();
+	}
+
+	/**
+	 * 生成されたリソース数を取得.
+	 *
+	 * @param kind
+	 *            リソース種別を設定します.
+	 * @return long 生成されたリソース数が返却されます.
+	 */
+	public static final long getCreated(int kind) {
+		return created[kind].sum();
+	}
+
+	/**
+	 * closeされずにGCで開放されたリソース数を取得.
+	 *
+	 * @param kind
+	 *            リソース種別を設定します.
+	 * @return long リークしたリソース数が返却されます.
+	 */
+	public static final long getLeaked(int kind) {
+		return leaked[kind].sum();
+	}
+
+	/**
+	 * オープン中のIterator数を取得.
+	 *
+	 * @return long オープン中のIterator数が返却されます.
+	 */
+	public static final long getOpenIterators() {
+		return open[ITERATOR].sum();
+	}
+
+	/**
+	 * オープン中のSnapshot数を取得.
+	 *
+	 * @return long オープン中のSnapshot数が返却されます.
+	 */
+	public static final long getOpenSnapshots() {
+		return open[SNAPSHOT].sum();
+	}
+
+	/**
+	 * オープン中のWriteBatch数を取得.
+	 *
+	 * @return long オープン中のWriteBatch数が返却されます.
+	 */
+	public static final long getOpenWriteBatches() {
+		return open[WRITE_BATCH].sum();
+	}
+
+	/**
+	 * 利用中のネイティブメモリ長を取得.
+	 *
+	 * @return long 利用中のネイティブメモリ長が返却されます.
+	 */
+	public static final long getNativeBytes() {
+		return NativeAllocator.getLive();
+	}
+
+	/**
+	 * 確保済みのネイティブメモリ長を取得.
+	 *
+	 * @return long 確保済みのネイティブメモリ長が返却されます.
+	 */
+	public static final long getReservedBytes() {
+		return NativeAllocator.getReserved();
+	}
+
+	/**
+	 * 統計情報を文字列で取得.
+	 *
+	 * @return String 文字列が返却されます.
+	 */
+	public static final String stats() {
+		final StringBuilder buf = new StringBuilder();
+		for (int i = 0; i < NAMES.length; i++) {
+			buf.append(NAMES[i]).append(":{open:").append(open[i].sum()).append(" created:")
+				.append(created[i].sum()).append(" leaked:").append(leaked[i].sum()).append("} ");
+		}
+		return buf.append("nativeBytes:").append(NativeAllocator.getLive()).append(" reservedBytes:")
+			.append(NativeAllocator.getReserved()).toString();
+	}
+}
@@ -9,11 +9,32 @@ public class WriteBatch {
 	protected int deleteCount = 0;
 	protected int putCount = 0;
 
+	// ネイティブリソース.
+	private BatchHandle handle;
+
+	/**
+	 * WriteBatchのネイティブリソース.
+	 */
+	private static final class BatchHandle extends NativeResource.Handle {
+		private final long addr;
+
+		BatchHandle(long addr) {
+			super(NativeResource.WRITE_BATCH);
+			this.addr = addr;
+		}
+
+		@Override
+		protected void release() {
+			jni.leveldb_wb_destroy(addr);
+		}
+	}
+
 	/**
 	 * コンストラクタ.
 	 */
 	public WriteBatch() {
 		addr = jni.leveldb_wb_create();
+		handle = NativeResource.register(this, new BatchHandle(addr));
 	}
 
 	/**
@@ -28,23 +49,18 @@ public class WriteBatch {
 		} else {
 			addr = jni.leveldb_wb_create_by_size(length);
 		}
+		handle = NativeResource.register(this, new BatchHandle(addr));
 	}
 
-	/**
-	 * デストラクタ.
-	 */
-//	public void finalize() throws Exception {
-//		close();
-//	}
-
 	/**
 	 * バッチ書き込み情報のクローズ.
 	 */
 	public void close() {
-		if (addr != 0L) {
-			jni.leveldb_wb_destroy(addr);
-			addr = 0L;
+		if (handle != null) {
+			handle.close();
+			handle = null;
 		}
+		addr = 0L;
 		count = 0;
 		deleteCount = 0;
 		putCount = 0;
@@ -145,6 +161,92 @@ public class WriteBatch {
 		deleteCount++;
 	}
 
+	/**
+	 * 書き込み件数を取得.
+	 * 
+	 * @return int 書き込み件数が返却されます.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * WriteBatchの内容をバイナリで取得.
+	 * 取得したバイナリは putBinary で追加できます.
+	 * 
+	 * @return byte[] WriteBatchのバイナリが返却されます.
+	 */
+	public byte[] getBinary() {
+		check();
+		final int len = jni.leveldb_wb_values_size(addr);
+		final byte[] ret = new byte[len];
+		if (len > 0) {
+			jni.getBinary(jni.leveldb_wb_values(addr), ret, 0, len);
+		}
+		return ret;
+	}
+
+	/**
+	 * getBinary で取得したバイナリの内容を追加.
+	 * 
+	 * @param bin
+	 *            WriteBatchのバイナリを設定します.
+	 */
+	public void putBinary(byte[] bin) {
+		check();
+		// [シーケンスID(8)][件数(4)]の後に、各要素が格納されている.
+		// 要素の形式は WriteBatchCursor を参照.
+		final int len = bin == null ? 0 : bin.length;
+		if (len <= 12) {
+			return;
+		}
+		JniBuffer buf = null;
+		try {
+			buf = new JniBuffer();
+			buf.setBinary(bin);
+			final long a = buf.address();
+			final int[] p = new int[] { 12 };
+			int mode, keyOff, keyLen, valLen;
+			while (p[0] < len) {
+				mode = bin[p[0]++] & 255;
+				keyLen = varint32(bin, p);
+				keyOff = p[0];
+				p[0] += keyLen;
+				if (mode == WriteBatchCursor.PUT) {
+					valLen = varint32(bin, p);
+					jni.leveldb_wb_put(addr, a + keyOff, keyLen, a + p[0], valLen);
+					p[0] += valLen;
+					putCount++;
+				} else if (mode == WriteBatchCursor.DELETE) {
+					jni.leveldb_wb_remove(addr, a + keyOff, keyLen);
+					deleteCount++;
+				} else {
+					throw new LeveldbException("WriteBatchのバイナリが不正です:" + (p[0] - 1));
+				}
+				count++;
+			}
+		} finally {
+			if (buf != null) {
+				buf.destroy();
+			}
+		}
+	}
+
+	// 長さを取得.
+	private static final int varint32(final byte[] b, final int[] p) {
+		int ret = 0;
+		int n;
+		for (int shift = 0; shift <= 28; shift += 7) {
+			n = b[p[0]++] & 255;
+			if ((n & 0x80) == 0x80) {
+				ret |= (n & 127) << shift;
+			} else {
+				return ret | (n << shift);
+			}
+		}
+		throw new LeveldbException("varint32の長さが不正です:" + p[0]);
+	}
+
 	/**
 	 * WriteBatchを書き込み.
 	 * 
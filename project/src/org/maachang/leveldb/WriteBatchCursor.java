@@ -83,6 +83,33 @@ public class WriteBatchCursor {
 	private int mode;
 	private JniBuffer keyBuf;
 	private JniBuffer valueBuf;
+
+	// 参照中のWriteBatch(カーソル利用中にGCで開放されないように保持).
+	private WriteBatch batch;
+
+	// ネイティブリソース.
+	private CursorHandle handle;
+
+	/**
+	 * カーソルが保持するバッファ.
+	 * clearされずにGCされた場合は、バッファをプールに返却します.
+	 */
+	private static final class CursorHandle extends NativeResource.Handle {
+		private final JniBuffer keyBuf;
+		private final JniBuffer valueBuf;
+
+		CursorHandle(JniBuffer keyBuf, JniBuffer valueBuf) {
+			super(NativeResource.CURSOR);
+			this.keyBuf = keyBuf;
+			this.valueBuf = valueBuf;
+		}
+
+		@Override
+		protected void release() {
+			LevelBuffer.pool().release(keyBuf);
+			LevelBuffer.pool().release(valueBuf);
+		}
+	}
 	private int count;
 	private final int[] pointer = new int[1];
 
@@ -95,6 +122,7 @@ public class WriteBatchCursor {
 	 *                例外.
 	 */
 	protected WriteBatchCursor(WriteBatch batch) throws Exception {
+		this.batch = batch;
 		this.addr = jni.leveldb_wb_values(batch.addr);
 		this.max = jni.leveldb_wb_values_size(batch.addr);
 
@@ -108,28 +136,25 @@ public class WriteBatchCursor {
 		this.position = HEADER_LENGTH;
 		this.count = 0;
 
-		keyBuf = LevelBuffer.key();
-		valueBuf = LevelBuffer.value();
+		// カーソルが保持する間は、スレッドのバッファと共有しない.
+		keyBuf = LevelBuffer.pool().lease(0);
+		valueBuf = LevelBuffer.pool().lease(0);
+		handle = NativeResource.register(this, new CursorHandle(keyBuf, valueBuf));
 		mode = -1;
 	}
 
-	/** デストラクタ. **/
-//	protected final void finalize() throws Exception {
-//		clear();
-//	}
-
 	/**
 	 * 情報クリア.
+	 * 保持しているバッファをプールに返却するため、利用後は必ず呼び出してください.
 	 */
 	public void clear() {
-		if (keyBuf != null) {
-			keyBuf.clear(true);
-			keyBuf = null;
-		}
-		if (valueBuf != null) {
-			valueBuf.clear();
-			valueBuf = null;
+		if (handle != null) {
+			handle.close();
+			handle = null;
 		}
+		keyBuf = null;
+		valueBuf = null;
+		batch = null;
 		addr = 0L;
 		seqId = 0L;
 		length = 0;
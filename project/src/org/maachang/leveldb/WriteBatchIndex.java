@@ -0,0 +1,207 @@
+package org.maachang.leveldb;
+
+import java.util.TreeMap;
+
+/**
+ * インデックス付きLeveldbバッチ書き込み.
+ * <p>
+ * WriteBatchに書き込んだ内容を、キー順のインデックスとしてJavaヒープ上にも保持します.
+ * WriteBatchIndexIterator と合わせて利用することで、commit前の書き込み内容を
+ * スナップショット等の読み込み結果に重ねて参照できます.
+ * </p>
+ * <p>
+ * 書き込み内容をコピーして保持するため、WriteBatchのメモリ量に加えて
+ * 同等のヒープが必要となります.
+ * </p>
+ */
+public class WriteBatchIndex extends WriteBatch {
+
+	/** 削除されたキーの要素. **/
+	protected static final byte[] REMOVE = new byte[0];
+
+	/** 検索結果: 存在しない. **/
+	public static final int NOT_FOUND = 0;
+
+	/** 検索結果: 存在する. **/
+	public static final int FOUND = 1;
+
+	/** 検索結果: 削除済み. **/
+	public static final int REMOVED = -1;
+
+	// 書き込み内容のインデックス.
+	protected final TreeMap<byte[], byte[]> index;
+
+	// 比較オブジェクト.
+	protected final LevelKeyComparator comparator;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param type
+	 *            キータイプを設定します.
+	 */
+	public WriteBatchIndex(int type) {
+		super();
+		comparator = LevelKeyComparator.get(type);
+		index = new TreeMap<byte[], byte[]>(comparator);
+	}
+
+	/**
+	 * バッチ書き込み情報のクローズ.
+	 */
+	@Override
+	public void close() {
+		super.close();
+		index.clear();
+	}
+
+	/**
+	 * バッチ書き込みのクリア.
+	 *
+	 * @param length
+	 *            WriteBatchの格納用バッファ長を設定します.
+	 */
+	@Override
+	public void clear(int length) {
+		super.clear(length);
+		index.clear();
+	}
+
+	/**
+	 * 情報セット.
+	 *
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @param value
+	 *            対象の要素を設定します.
+	 */
+	@Override
+	public void put(JniBuffer key, JniBuffer value) {
+		super.put(key, value);
+		index.put(key.getBinary(), value.getBinary());
+	}
+
+	/**
+	 * 情報セット.
+	 *
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @param keyLen
+	 *            対象のキー長を設定します.
+	 * @param value
+	 *            対象の要素を設定します.
+	 * @param valueLen
+	 *            対象の要素長を設定します.
+	 */
+	@Override
+	public void put(long key, int keyLen, long value, int valueLen) {
+		super.put(key, keyLen, value, valueLen);
+		index.put(binary(key, keyLen), binary(value, valueLen));
+	}
+
+	/**
+	 * 情報削除.
+	 *
+	 * @param key
+	 *            対象のキーを設定します.
+	 */
+	@Override
+	public void remove(JniBuffer key) {
+		super.remove(key);
+		index.put(key.getBinary(), REMOVE);
+	}
+
+	/**
+	 * 書き込み中の情報を取得.
+	 *
+	 * @param out
+	 *            要素の格納先を設定します. [null]の場合は存在チェックのみ行います.
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @return int 検索結果が返却されます.
+	 *         [FOUND]の場合、要素が out に設定されます.
+	 *         [REMOVED]の場合、このバッチで削除されています.
+	 *         [NOT_FOUND]の場合、このバッチでは更新されていません.
+	 */
+	public int get(JniBuffer out, JniBuffer key) {
+		check();
+		if (index.isEmpty()) {
+			return NOT_FOUND;
+		}
+		final byte[] v = index.get(key.getBinary());
+		if (v == null) {
+			return NOT_FOUND;
+		} else if (v == REMOVE) {
+			return REMOVED;
+		}
+		if (out != null) {
+			out.setBinary(v);
+		}
+		return FOUND;
+	}
+
+	/**
+	 * 書き込み中のキー数を取得.
+	 * 同じキーに対する書き込みは１件となります.
+	 *
+	 * @return int キー数が返却されます.
+	 */
+	public int keySize() {
+		return index.size();
+	}
+
+	/**
+	 * 比較オブジェクトを取得.
+	 *
+	 * @return LevelKeyComparator 比較オブジェクトが返却されます.
+	 */
+	public LevelKeyComparator getComparator() {
+		return comparator;
+	}
+
+	/**
+	 * WriteBatchの内容と合わせて参照するIteratorを取得.
+	 *
+	 * @param base
+	 *            元のIteratorを設定します.
+	 * @param closeBase
+	 *            [true]の場合、クローズ時に元のIteratorもクローズします.
+	 * @return WriteBatchIndexIterator Iteratorが返却されます.
+	 */
+	public WriteBatchIndexIterator iterator(LeveldbIterator base, boolean closeBase) {
+		return iterator(base, closeBase, null);
+	}
+
+	/**
+	 * WriteBatchの内容と合わせて参照するIteratorを取得.
+	 *
+	 * @param base
+	 *            元のIteratorを設定します.
+	 * @param closeBase
+	 *            [true]の場合、クローズ時に元のIteratorもクローズします.
+	 * @param reads
+	 *            読み込み範囲の記録先を設定します. [null]の場合は記録しません.
+	 * @return WriteBatchIndexIterator Iteratorが返却されます.
+	 */
+	public WriteBatchIndexIterator iterator(LeveldbIterator base, boolean closeBase, LevelReadSet reads) {
+		check();
+		return new WriteBatchIndexIterator(this, base, closeBase, reads);
+	}
+
+	/**
+	 * 書き込み中のキー群を取得.
+	 * 削除したキーも含まれます.
+	 *
+	 * @return byte[][] エンコード済みのキー群が返却されます.
+	 */
+	public byte[][] keys() {
+		return index.keySet().toArray(new byte[index.size()][]);
+	}
+
+	// ネイティブのバイナリをコピー.
+	private static final byte[] binary(long addr, int len) {
+		final byte[] ret = new byte[len];
+		jni.getBinary(addr, ret, 0, len);
+		return ret;
+	}
+}
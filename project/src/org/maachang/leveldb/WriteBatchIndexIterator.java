@@ -0,0 +1,404 @@
+package org.maachang.leveldb;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * WriteBatchIndexと合わせて参照するIterator.
+ * <p>
+ * 元のIterator(スナップショット等)の内容に、WriteBatchIndexのcommit前の書き込みを
+ * 重ねて参照します. 同じキーの場合はWriteBatchIndexの内容が優先され、
+ * WriteBatchIndexで削除されたキーは読み飛ばします.
+ * </p>
+ * <p>
+ * WriteBatchIndexの内容は、Iteratorの移動毎に参照されるため、
+ * Iterator生成後の書き込み内容も参照されます.
+ * </p>
+ * <p>
+ * LevelReadSet が設定されている場合は、読み込んだキーの範囲を記録します.
+ * </p>
+ */
+public class WriteBatchIndexIterator extends LeveldbIterator {
+
+	// 現在位置の情報.
+	private static final int NONE = 0;
+	private static final int BASE = 1;
+	private static final int DELTA = 2;
+
+	private LeveldbIterator base;
+	private final boolean closeBase;
+	private final LevelKeyComparator comparator;
+	private TreeMap<byte[], byte[]> index;
+
+	// WriteBatchIndexの現在位置.
+	private Map.Entry<byte[], byte[]> delta;
+
+	// 元のIteratorの現在位置のキー(比較時に読み込む).
+	private byte[] baseKey;
+	private JniBuffer tmp;
+
+	private boolean forward = true;
+	private int current = NONE;
+
+	// 読み込み範囲の記録.
+	private LevelReadSet reads;
+	private LevelReadSet.Range range;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param batch
+	 *            対象のWriteBatchIndexを設定します.
+	 * @param base
+	 *            元のIteratorを設定します.
+	 * @param closeBase
+	 *            [true]の場合、クローズ時に元のIteratorもクローズします.
+	 * @param reads
+	 *            読み込み範囲の記録先を設定します. [null]の場合は記録しません.
+	 */
+	protected WriteBatchIndexIterator(WriteBatchIndex batch, LeveldbIterator base, boolean closeBase,
+		LevelReadSet reads) {
+		if (base == null || base.isClose()) {
+			throw new LeveldbException("The target iterator is already closed or invalid.");
+		}
+		this.base = base;
+		this.closeBase = closeBase;
+		this.comparator = batch.comparator;
+		this.index = batch.index;
+		this.parent = base.parent;
+		this.addr = base.addr;
+		// 先頭に移動.
+		// 位置を指定せずに参照した場合は、先頭からの読み込みとして記録する.
+		first();
+		this.reads = reads;
+	}
+
+	/**
+	 * クローズ.
+	 */
+	@Override
+	public void close() {
+		if (base != null && closeBase) {
+			base.close();
+		}
+		if (tmp != null) {
+			tmp.destroy();
+			tmp = null;
+		}
+		base = null;
+		index = null;
+		reads = null;
+		range = null;
+		delta = null;
+		baseKey = null;
+		current = NONE;
+		addr = 0L;
+		parent = null;
+	}
+
+	/**
+	 * クローズしているかチェック.
+	 *
+	 * @return boolean [true]の場合、クローズしています.
+	 */
+	@Override
+	public boolean isClose() {
+		return base == null || base.isClose();
+	}
+
+	/** check. **/
+	@Override
+	protected void check() {
+		if (base == null || base.isClose()) {
+			throw new LeveldbException("Already closed.");
+		}
+	}
+
+	/**
+	 * カーソル位置を先頭に移動.
+	 */
+	@Override
+	public void first() {
+		check();
+		base.first();
+		baseKey = null;
+		delta = index.firstEntry();
+		forward = true;
+		update();
+		if (reads != null) {
+			range = reads.add(null, currentKey());
+		}
+	}
+
+	/**
+	 * カーソル位置を最後に移動.
+	 */
+	@Override
+	public void last() {
+		check();
+		base.last();
+		baseKey = null;
+		delta = index.lastEntry();
+		forward = false;
+		update();
+		if (reads != null) {
+			range = reads.add(currentKey(), null);
+		}
+	}
+
+	/**
+	 * カーソル位置を指定条件の位置まで移動.
+	 *
+	 * @param key
+	 *            検索対象のキーを設定します.
+	 */
+	@Override
+	public void seek(final JniBuffer key) {
+		check();
+		if (key == null || key.position() == 0) {
+			throw new LeveldbException("Key information is not set.");
+		}
+		final byte[] k = key.getBinary();
+		base.seek(key);
+		baseKey = null;
+		delta = index.ceilingEntry(k);
+		forward = true;
+		update();
+		if (reads != null) {
+			range = reads.add(k, currentKey());
+		}
+	}
+
+	/**
+	 * 次のカーソル位置に移動.
+	 */
+	@Override
+	public void next() {
+		check();
+		if (current == NONE) {
+			return;
+		}
+		initRange();
+		if (!forward) {
+			direction(true);
+		}
+		step();
+		update();
+		if (range != null) {
+			reads.extendHi(range, currentKey());
+		}
+	}
+
+	/**
+	 * 指定件数分、次のカーソル位置に移動.
+	 *
+	 * @param count
+	 *            移動件数を設定します.
+	 * @return int 移動できた件数が返却されます.
+	 */
+	@Override
+	public int skip(int count) {
+		check();
+		int ret = 0;
+		while (ret < count && current != NONE) {
+			next();
+			ret++;
+		}
+		return ret;
+	}
+
+	/**
+	 * 前のカーソル位置に移動.
+	 */
+	@Override
+	public void before() {
+		check();
+		if (current == NONE) {
+			return;
+		}
+		initRange();
+		if (forward) {
+			direction(false);
+		}
+		step();
+		update();
+		if (range != null) {
+			reads.extendLo(range, currentKey());
+		}
+	}
+
+	/**
+	 * 現在位置の情報が存在するかチェック.
+	 *
+	 * @return boolean [true]の場合、存在します.
+	 */
+	@Override
+	public boolean valid() {
+		check();
+		initRange();
+		return current != NONE;
+	}
+
+	/**
+	 * 指定位置のキー情報を取得.
+	 *
+	 * @param out
+	 *            格納先のJniBufferを設定します.
+	 * @return int サイズが返却されます.
+	 */
+	@Override
+	public int key(final JniBuffer out) {
+		check();
+		if (out == null) {
+			return -1;
+		}
+		initRange();
+		if (current == BASE) {
+			return base.key(out);
+		} else if (current == DELTA) {
+			final byte[] k = delta.getKey();
+			out.setBinary(k);
+			return k.length;
+		}
+		return 0;
+	}
+
+	/**
+	 * 指定位置の要素情報を取得.
+	 *
+	 * @param out
+	 *            格納先のJniBufferを設定します.
+	 * @return int サイズが返却されます.
+	 */
+	@Override
+	public int value(final JniBuffer out) {
+		check();
+		if (out == null) {
+			return -1;
+		}
+		initRange();
+		if (current == BASE) {
+			return base.value(out);
+		} else if (current == DELTA) {
+			final byte[] v = delta.getValue();
+			out.setBinary(v);
+			return v.length;
+		}
+		return 0;
+	}
+
+	// 位置を指定せずに参照した場合の読み込み範囲を記録.
+	private final void initRange() {
+		if (reads != null && range == null) {
+			range = reads.add(null, currentKey());
+		}
+	}
+
+	// 現在位置のキーを取得.
+	private final byte[] currentKey() {
+		if (current == BASE) {
+			return baseKey();
+		} else if (current == DELTA) {
+			return delta.getKey();
+		}
+		return null;
+	}
+
+	// 元のIteratorの現在位置のキーを取得.
+	private final byte[] baseKey() {
+		if (baseKey == null) {
+			if (tmp == null) {
+				tmp = new JniBuffer();
+			}
+			base.key(tmp);
+			baseKey = tmp.getBinary();
+		}
+		return baseKey;
+	}
+
+	// 元のIteratorを移動.
+	private final void baseStep() {
+		if (forward) {
+			base.next();
+		} else {
+			base.before();
+		}
+		baseKey = null;
+	}
+
+	// WriteBatchIndexの位置を移動.
+	private final void deltaStep() {
+		delta = forward ? index.higherEntry(delta.getKey()) : index.lowerEntry(delta.getKey());
+	}
+
+	// 現在位置から移動.
+	private final void step() {
+		if (current == BASE) {
+			baseStep();
+		} else {
+			// 同じキーの場合は、両方移動.
+			if (base.valid() && comparator.compare(baseKey(), delta.getKey()) == 0) {
+				baseStep();
+			}
+			deltaStep();
+		}
+	}
+
+	// 移動方向を変更.
+	// 現在位置のキーに、両方の位置を合わせる.
+	private final void direction(boolean next) {
+		final byte[] k = current == BASE ? baseKey() : delta.getKey();
+		JniBuffer buf = null;
+		try {
+			buf = new JniBuffer();
+			buf.setBinary(k);
+			base.seek(buf);
+		} finally {
+			if (buf != null) {
+				buf.destroy();
+			}
+		}
+		baseKey = null;
+		if (next) {
+			delta = index.ceilingEntry(k);
+		} else {
+			// 指定キー以下の位置に移動.
+			if (!base.valid()) {
+				base.last();
+			} else if (comparator.compare(baseKey(), k) > 0) {
+				base.before();
+				baseKey = null;
+			}
+			delta = index.floorEntry(k);
+		}
+		forward = next;
+		update();
+	}
+
+	// 現在位置を更新.
+	// WriteBatchIndexで削除されたキーは読み飛ばす.
+	private final void update() {
+		int c;
+		while (true) {
+			final boolean bv = base.valid();
+			if (delta == null) {
+				current = bv ? BASE : NONE;
+				return;
+			}
+			c = bv ? comparator.compare(baseKey(), delta.getKey()) : 0;
+			if (!bv || c == 0 || (forward ? c > 0 : c < 0)) {
+				if (delta.getValue() == WriteBatchIndex.REMOVE) {
+					if (bv && c == 0) {
+						baseStep();
+					}
+					deltaStep();
+					continue;
+				}
+				current = DELTA;
+				return;
+			}
+			current = BASE;
+			return;
+		}
+	}
+}
@@ -316,6 +316,14 @@ final class jni {
 
 	public static native int lz4Decompress(long src, int src_len, long dst, int[] dst_len);
 
+	public static native long lz4CreateDict(long dict, int dict_len);
+
+	public static native void lz4FreeDict(long dict);
+
+	public static native int lz4CompressDict(long dict, long src, int src_len, long dst, int[] dst_len);
+
+	public static native int lz4DecompressDict(long dict, long src, int src_len, long dst, int[] dst_len);
+
 	// leveldb.
 	public static native void leveldb_destroy(long name, int type, int write_buffer_size, int max_open_files,
 			int block_size, int block_restart_interval);
@@ -339,7 +347,10 @@ final class jni {
 
 	public static native int leveldb_property(long db, long cmd, int cmdLen, long[] buf, int bufLen);
 
-	public static native int leveldb_vacuum(long db, long start, int startLen, long end, int endLen);
+	public static native void leveldb_vacuum(long db, long start, int startLen, long end, int endLen);
+
+	public static native long leveldb_remove_range(long db, int type, int mode, long start, int startLen, long end,
+			int endLen);
 
 	// leveldb-iterator.
 	public static native void leveldb_itr_delete(long itr); // iterator close.
@@ -354,6 +365,8 @@ final class jni {
 
 	public static native void leveldb_itr_next(long itr);
 
+	public static native int leveldb_itr_skip(long itr, int count);
+
 	public static native void leveldb_itr_before(long itr);
 
 	public static native int leveldb_itr_key(long itr, long[] buf, int bufLen);
@@ -0,0 +1,107 @@
+package org.maachang.leveldb.operator;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 非同期処理用のI/Oスレッドプール.
+ * <p>
+ * ネイティブ処理を行うため、仮想スレッドではなく固定数のプラットフォームスレッドで処理します.
+ * 処理要求はオペレータ毎のキュー(LevelOperatorAsync)で管理され、
+ * このスレッドプールには、キューの処理要求のみが登録されます.
+ * </p>
+ */
+public final class LevelAsyncExecutor {
+
+	/** デフォルトのスレッド数. **/
+	public static final int DEFAULT_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+	// デフォルトのスレッドプール.
+	private static volatile LevelAsyncExecutor defaultExecutor = null;
+
+	private final ThreadPoolExecutor pool;
+
+	/**
+	 * デフォルトのスレッドプールを取得.
+	 *
+	 * @return LevelAsyncExecutor スレッドプールが返却されます.
+	 */
+	public static final LevelAsyncExecutor getDefault() {
+		LevelAsyncExecutor ret = defaultExecutor;
+		if (ret == null) {
+			synchronized (LevelAsyncExecutor.class) {
+				if ((ret = defaultExecutor) == null) {
+					ret = new LevelAsyncExecutor(DEFAULT_THREADS);
+					defaultExecutor = ret;
+				}
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param threads
+	 *            スレッド数を設定します.
+	 */
+	public LevelAsyncExecutor(int threads) {
+		if (threads <= 0) {
+			threads = DEFAULT_THREADS;
+		}
+		final AtomicInteger no = new AtomicInteger(0);
+		pool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					final Thread t = new Thread(r, "leveldb-io-" + no.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		pool.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * 処理を実行.
+	 *
+	 * @param r
+	 *            対象の処理を設定します.
+	 */
+	protected void execute(Runnable r) {
+		pool.execute(r);
+	}
+
+	/**
+	 * スレッド数を取得.
+	 *
+	 * @return int スレッド数が返却されます.
+	 */
+	public int getThreads() {
+		return pool.getMaximumPoolSize();
+	}
+
+	/**
+	 * 停止処理.
+	 * 登録済みの処理は実行されます.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+		synchronized (LevelAsyncExecutor.class) {
+			if (defaultExecutor == this) {
+				defaultExecutor = null;
+			}
+		}
+	}
+
+	/**
+	 * 停止済みかチェック.
+	 *
+	 * @return boolean [true]の場合、停止済みです.
+	 */
+	public boolean isShutdown() {
+		return pool.isShutdown();
+	}
+}
@@ -0,0 +1,272 @@
+package org.maachang.leveldb.operator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.maachang.leveldb.JniBuffer;
+import org.maachang.leveldb.JniIO;
+import org.maachang.leveldb.LevelBuffer;
+import org.maachang.leveldb.LevelId;
+import org.maachang.leveldb.LevelOption;
+import org.maachang.leveldb.LevelValues;
+import org.maachang.leveldb.LeveldbException;
+import org.maachang.leveldb.WriteBatch;
+
+/**
+ * 一括書き込み処理.
+ * <p>
+ * キーと要素のエンコードを ForkJoinPool で並列に行ってネイティブバッファに格納し、
+ * 一定サイズ毎にまとめて１つの WriteBatch で書き込みます.
+ * インデックスが存在する場合は、書き込み単位毎にインデックスもまとめて更新します.
+ * その際、書き込み前に以前の要素を取得して、以前のインデックス情報を削除します.
+ * </p>
+ */
+final class LevelBulkWriter {
+	private LevelBulkWriter() {
+	}
+
+	/** 並列エンコードを行う最小件数. **/
+	private static final int PARALLEL_THRESHOLD = 512;
+
+	/** １タスクでエンコードする件数. **/
+	private static final int SEGMENT_LENGTH = 256;
+
+	/** エンコード・インデックス更新を行う件数単位. **/
+	private static final int CHUNK_LENGTH = 16384;
+
+	/** １回の書き込みでまとめる最大バイト数. **/
+	private static final int MAX_BATCH_BYTES = 0x00800000;
+
+	/**
+	 * エンコード済みのセグメント.
+	 */
+	private static final class Segment {
+		JniBuffer buf;
+		// [keyOffset, keyLength, valueOffset, valueLength] * 件数.
+		final int[] pos;
+
+		Segment(int len) {
+			pos = new int[len << 2];
+		}
+	}
+
+	/**
+	 * 並列エンコード処理.
+	 */
+	@SuppressWarnings("serial")
+	private static final class EncodeTask extends RecursiveAction {
+		private final LevelOperator op;
+		private final int keyType;
+		private final Object[] keys;
+		private final Object[] twoKeys;
+		private final Object[] values;
+		private final int off;
+		private final int len;
+		private final Segment[] out;
+		private final int start;
+		private final int end;
+
+		EncodeTask(LevelOperator op, int keyType, Object[] keys, Object[] twoKeys, Object[] values,
+			int off, int len, Segment[] out, int start, int end) {
+			this.op = op;
+			this.keyType = keyType;
+			this.keys = keys;
+			this.twoKeys = twoKeys;
+			this.values = values;
+			this.off = off;
+			this.len = len;
+			this.out = out;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= 1) {
+				final int p = off + start * SEGMENT_LENGTH;
+				final int n = Math.min(SEGMENT_LENGTH, off + len - p);
+				try {
+					out[start] = encode(op, keyType, keys, twoKeys, values, p, n);
+				} catch (LeveldbException le) {
+					throw le;
+				} catch (Exception e) {
+					throw new LeveldbException(e);
+				}
+				return;
+			}
+			final int mid = (start + end) >>> 1;
+			invokeAll(new EncodeTask(op, keyType, keys, twoKeys, values, off, len, out, start, mid),
+				new EncodeTask(op, keyType, keys, twoKeys, values, off, len, out, mid, end));
+		}
+	}
+
+	/**
+	 * 一括書き込み.
+	 *
+	 * @param op
+	 *            書き込み先のオペレータを設定します.
+	 * @param keyType
+	 *            キータイプを設定します.
+	 * @param keys
+	 *            キー群を設定します.
+	 * @param twoKeys
+	 *            セカンドキー群を設定します. 存在しない場合は[null].
+	 * @param values
+	 *            要素群を設定します.
+	 * @param length
+	 *            書き込み件数を設定します.
+	 */
+	static final void write(LevelOperator op, int keyType, Object[] keys, Object[] twoKeys, Object[] values,
+		int length) {
+		final LevelIndexOperator idx = (op instanceof LevelIndexOperator && !((LevelIndexOperator) op).indexEmpty())
+			? (LevelIndexOperator) op : null;
+		final boolean batchMode = op.writeBatchFlag;
+		WriteBatch batch = batchMode ? op.writeBatch() : null;
+		// 書き込み後に無効化する要素キャッシュのキー.
+		final LevelValueCache cache = op.cache();
+		final List<LevelValueCache.Key> cacheKeys = cache == null ? null : new ArrayList<LevelValueCache.Key>();
+		// 一括書き込みは、全てのキーに対する書き込みとして競合検出を行う.
+		final LevelCommitLog.Commit w = op.writeStart(null);
+		// インデックスが存在する場合は、書き込み前に以前の要素を取得する.
+		final boolean readOld = idx != null && idx.needsOldValue();
+		Segment[] segs = null;
+		try {
+			int n;
+			Object[] olds;
+			long bytes = 0L;
+			for (int off = 0; off < length; off += CHUNK_LENGTH) {
+				n = Math.min(CHUNK_LENGTH, length - off);
+				olds = readOld ? idx.oldValues(keys, twoKeys, off, n) : null;
+				// キー・要素をエンコード.
+				segs = new Segment[(n + SEGMENT_LENGTH - 1) / SEGMENT_LENGTH];
+				if (n < PARALLEL_THRESHOLD) {
+					segs[0] = encode(op, keyType, keys, twoKeys, values, off, n);
+				} else {
+					ForkJoinPool.commonPool().invoke(
+						new EncodeTask(op, keyType, keys, twoKeys, values, off, n, segs, 0, segs.length));
+				}
+				// エンコード結果をWriteBatchにセット.
+				for (int i = 0; i < segs.length; i++) {
+					final Segment s = segs[i];
+					final long addr = s.buf.address();
+					final int[] pos = s.pos;
+					final int len = pos.length;
+					for (int j = 0; j < len; j += 4) {
+						if (batch == null) {
+							batch = new WriteBatch();
+						}
+						batch.put(addr + pos[j], pos[j + 1], addr + pos[j + 2], pos[j + 3]);
+						bytes += pos[j + 1] + pos[j + 3];
+						if (cacheKeys != null) {
+							cacheKeys.add(cache.key(addr + pos[j], pos[j + 1]));
+						}
+						// 一定サイズを超えた場合は書き込み.
+						if (!batchMode && bytes >= MAX_BATCH_BYTES) {
+							batch.execute(op.leveldb);
+							batch.clear();
+							bytes = 0L;
+							invalidate(op, cacheKeys);
+						}
+					}
+					LevelBuffer.pool().release(s.buf);
+					segs[i] = null;
+				}
+				segs = null;
+				if (!batchMode && bytes > 0L) {
+					batch.execute(op.leveldb);
+					batch.clear();
+					bytes = 0L;
+				}
+				invalidate(op, cacheKeys);
+				// インデックスをまとめて更新.
+				if (idx != null) {
+					idx.putIndex(keys, twoKeys, olds, values, off, n);
+				}
+			}
+		} catch (LeveldbException le) {
+			throw le;
+		} catch (Exception e) {
+			throw new LeveldbException(e);
+		} finally {
+			op.writeEnd(w);
+			if (!batchMode && batch != null) {
+				batch.close();
+			}
+			if (segs != null) {
+				for (int i = 0; i < segs.length; i++) {
+					if (segs[i] != null) {
+						LevelBuffer.pool().release(segs[i].buf);
+					}
+				}
+			}
+		}
+	}
+
+	// 書き込み済みのキーの要素キャッシュを無効化.
+	private static final void invalidate(LevelOperator op, List<LevelValueCache.Key> keys) {
+		if (keys != null && keys.size() > 0) {
+			op.invalidateCache(keys);
+			keys.clear();
+		}
+	}
+
+	// 指定範囲のキー・要素をエンコード.
+	private static final Segment encode(LevelOperator op, int keyType, Object[] keys, Object[] twoKeys,
+		Object[] values, int off, int len) throws Exception {
+		final boolean compress = op.leveldb.getOption().getCompressType() != LevelOption.COMPRESS_NONE;
+		final Segment ret = new Segment(len);
+		final int[] pos = ret.pos;
+		JniBuffer buf = LevelBuffer.pool().lease(0);
+		JniBuffer tmp = LevelBuffer.pool().lease(0);
+		try {
+			Object k, v;
+			for (int i = 0, j = 0; i < len; i++, j += 4) {
+				k = keys[off + i];
+				v = values[off + i];
+				if (k instanceof JniBuffer) {
+					throw new LeveldbException("JniBuffer cannot be set for key.");
+				} else if (v instanceof LevelOperator) {
+					throw new LeveldbException("LevelOperator element cannot be set for the element.");
+				}
+				// キー.
+				tmp.clear();
+				LevelId.buf(keyType, tmp, k, twoKeys == null ? null : twoKeys[off + i]);
+				pos[j] = append(buf, tmp);
+				pos[j + 1] = tmp.position();
+				// 要素.
+				if (v instanceof JniBuffer) {
+					pos[j + 2] = append(buf, (JniBuffer) v);
+					pos[j + 3] = ((JniBuffer) v).position();
+				} else {
+					tmp.clear();
+					LevelValues.encode(tmp, v);
+					if (compress) {
+						op.compressValue(tmp);
+					}
+					pos[j + 2] = append(buf, tmp);
+					pos[j + 3] = tmp.position();
+				}
+			}
+			ret.buf = buf;
+			buf = null;
+			return ret;
+		} finally {
+			LevelBuffer.pool().release(tmp);
+			if (buf != null) {
+				LevelBuffer.pool().release(buf);
+			}
+		}
+	}
+
+	// バッファの内容を追加して、追加位置を返却.
+	private static final int append(JniBuffer buf, JniBuffer src) {
+		final int p = buf.position();
+		final int n = src.position();
+		buf.recreate(true, p + n + 1);
+		JniIO.memcpy(buf.address() + p, src.address(), n);
+		buf.position(p + n);
+		return p;
+	}
+}
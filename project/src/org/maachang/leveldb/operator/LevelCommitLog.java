@@ -0,0 +1,230 @@
+package org.maachang.leveldb.operator;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.maachang.leveldb.JniBuffer;
+import org.maachang.leveldb.LevelReadSet;
+
+/**
+ * トランザクションの競合検出用の書き込み履歴.
+ * <p>
+ * Leveldb毎に１つ作成され、オペレータ間で共有されます.
+ * 書き込み毎にシーケンス番号を発行し、実行中のトランザクションが存在する間、
+ * 書き込んだキーを保持します. トランザクションは、開始時のシーケンス番号以降の
+ * 書き込みと、自身の読み込み範囲を比較して競合を検出します.
+ * </p>
+ * <p>
+ * トランザクション外の書き込みは、書き込み前に登録し、書き込み後に完了します.
+ * 書き込み中の情報は、その後に開始したトランザクションでも競合の対象となります.
+ * </p>
+ */
+public final class LevelCommitLog {
+
+	/** 保持する最大キー数. これを超えた場合は古い履歴から破棄されます. **/
+	public static final int MAX_LOG_KEYS = 1048576;
+
+	// ロック順序用のID.
+	private static final AtomicLong ID = new AtomicLong(0L);
+
+	/**
+	 * 書き込み履歴.
+	 */
+	public static final class Commit {
+		final long sequence;
+		// [null]の場合は、全てのキーが対象.
+		final byte[][] keys;
+
+		Commit(long sequence, byte[][] keys) {
+			this.sequence = sequence;
+			this.keys = keys;
+		}
+
+		// キー数.
+		final int length() {
+			return keys == null ? 1 : keys.length;
+		}
+	}
+
+	final long id = ID.incrementAndGet();
+	final ReentrantLock lock = new ReentrantLock();
+	private long sequence = 0L;
+	private long truncated = 0L;
+	private int logKeys = 0;
+	private final ArrayDeque<Commit> log = new ArrayDeque<Commit>();
+	// 書き込み中の情報.
+	private final TreeMap<Long, Commit> writing = new TreeMap<Long, Commit>();
+	// 実行中のトランザクションの開始シーケンス番号と件数.
+	private final TreeMap<Long, Integer> active = new TreeMap<Long, Integer>();
+
+	/**
+	 * トランザクションを開始.
+	 *
+	 * @return long 開始時のシーケンス番号が返却されます.
+	 */
+	long begin() {
+		lock.lock();
+		try {
+			final long ret = writing.isEmpty() ? sequence : writing.firstKey() - 1L;
+			final boolean first = active.isEmpty();
+			final Integer n = active.get(ret);
+			active.put(ret, n == null ? 1 : n + 1);
+			// 実行中のトランザクションが存在しなかった場合は、書き込み中の情報を履歴に追加.
+			if (first) {
+				for (Commit c : writing.values()) {
+					append(c);
+				}
+			}
+			return ret;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * トランザクションを終了.
+	 *
+	 * @param start
+	 *            開始時のシーケンス番号を設定します.
+	 */
+	void end(long start) {
+		lock.lock();
+		try {
+			final Integer n = active.get(start);
+			if (n != null) {
+				if (n <= 1) {
+					active.remove(start);
+				} else {
+					active.put(start, n - 1);
+				}
+			}
+			trim();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * トランザクション外の書き込みを開始.
+	 *
+	 * @param keyBuf
+	 *            書き込むキーを設定します. [null]の場合は全てのキーが対象となります.
+	 * @return Commit 書き込み情報が返却されます.
+	 */
+	Commit writeStart(JniBuffer keyBuf) {
+		return writeStart(keyBuf == null ? null : new byte[][] { keyBuf.getBinary() });
+	}
+
+	/**
+	 * トランザクション外の書き込みを開始.
+	 *
+	 * @param keys
+	 *            書き込むキー群を設定します. [null]の場合は全てのキーが対象となります.
+	 * @return Commit 書き込み情報が返却されます.
+	 */
+	Commit writeStart(byte[][] keys) {
+		lock.lock();
+		try {
+			final Commit ret = new Commit(++sequence, keys);
+			writing.put(ret.sequence, ret);
+			if (!active.isEmpty()) {
+				append(ret);
+			}
+			return ret;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * トランザクション外の書き込みを完了.
+	 *
+	 * @param c
+	 *            書き込み情報を設定します.
+	 */
+	void writeEnd(Commit c) {
+		lock.lock();
+		try {
+			writing.remove(c.sequence);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 読み込み範囲に対する競合をチェック.
+	 * lock を取得した状態で呼び出します.
+	 *
+	 * @param start
+	 *            トランザクション開始時のシーケンス番号を設定します.
+	 * @param reads
+	 *            読み込み範囲を設定します.
+	 * @return boolean [true]の場合、競合はありません.
+	 */
+	boolean validate(long start, LevelReadSet reads) {
+		if (reads.isEmpty()) {
+			return true;
+		} else if (start < truncated) {
+			// 必要な履歴が破棄されている.
+			return false;
+		}
+		Commit c;
+		final Iterator<Commit> it = log.descendingIterator();
+		while (it.hasNext()) {
+			c = it.next();
+			if (c.sequence <= start) {
+				break;
+			} else if (c.keys == null) {
+				return false;
+			}
+			for (int i = 0; i < c.keys.length; i++) {
+				if (reads.contains(c.keys[i])) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * トランザクションの書き込みを登録.
+	 * lock を取得した状態で、書き込み後に呼び出します.
+	 *
+	 * @param keys
+	 *            書き込んだキー群を設定します.
+	 */
+	void commit(byte[][] keys) {
+		final Commit c = new Commit(++sequence, keys);
+		if (!active.isEmpty()) {
+			append(c);
+		}
+	}
+
+	// 履歴に追加.
+	private final void append(Commit c) {
+		log.add(c);
+		logKeys += c.length();
+		trim();
+	}
+
+	// 不要な履歴を削除.
+	private final void trim() {
+		final long min = active.isEmpty() ? Long.MAX_VALUE : active.firstKey();
+		Commit c;
+		while ((c = log.peekFirst()) != null) {
+			if (c.sequence <= min) {
+				log.pollFirst();
+			} else if (logKeys > MAX_LOG_KEYS) {
+				// 上限を超えた場合は、古い履歴を破棄.
+				log.pollFirst();
+				truncated = c.sequence;
+			} else {
+				break;
+			}
+			logKeys -= c.length();
+		}
+	}
+}
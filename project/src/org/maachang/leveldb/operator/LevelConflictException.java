@@ -0,0 +1,30 @@
+package org.maachang.leveldb.operator;
+
+import org.maachang.leveldb.LeveldbException;
+
+/**
+ * トランザクション競合例外.
+ * <p>
+ * トランザクションの読み込み範囲が、他の書き込みで更新されていた場合に発生します.
+ * トランザクションは破棄されているため、最初から処理をやり直して下さい.
+ * </p>
+ */
+public class LevelConflictException extends LeveldbException {
+	private static final long serialVersionUID = -3391526011874028931L;
+
+	public LevelConflictException() {
+		super(409);
+	}
+
+	public LevelConflictException(String m) {
+		super(409, m);
+	}
+
+	public LevelConflictException(Throwable e) {
+		super(409, e);
+	}
+
+	public LevelConflictException(String m, Throwable e) {
+		super(409, m, e);
+	}
+}
@@ -1,19 +1,29 @@
 package org.maachang.leveldb.operator;
 
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.TreeMap;
 
 import org.maachang.leveldb.JniBuffer;
 import org.maachang.leveldb.LevelBuffer;
 import org.maachang.leveldb.LevelId;
+import org.maachang.leveldb.LevelKeyComparator;
 import org.maachang.leveldb.LevelOption;
 import org.maachang.leveldb.LevelValues;
 import org.maachang.leveldb.Leveldb;
 import org.maachang.leveldb.LeveldbException;
 import org.maachang.leveldb.LeveldbIterator;
+import org.maachang.leveldb.LeveldbSnapshot;
+import org.maachang.leveldb.WriteBatch;
+import org.maachang.leveldb.types.Multi;
 import org.maachang.leveldb.types.TwoKey;
 import org.maachang.leveldb.util.Alphabet;
+import org.maachang.leveldb.util.BinaryUtil;
 import org.maachang.leveldb.util.Converter;
 import org.maachang.leveldb.util.ObjectList;
 
@@ -33,6 +43,8 @@ public class LevelIndex extends LevelOperator {
 	public static final int INDEX_DOUBLE = 4;
 	/** インデックスカラムタイプ: バイナリ. **/
 	public static final int INDEX_BINARY = 5;
+	/** インデックスカラムタイプ: 複合インデックス. **/
+	public static final int INDEX_COMPOSITE = 6;
 	
 	// インデックスタイプ文字列パターン.
 	private static final String[] PATTERN_STR = new String[] { "str", "string", "char" };
@@ -48,6 +60,11 @@ public class LevelIndex extends LevelOperator {
 	// Leveldbインデックス名拡張子.
 	protected static final String INDEX_FOODER = ".idx";
 	protected static final String INDEX_CUT = "'";
+	protected static final String COMPOSITE_CUT = ",";
+	protected static final String INCLUDE_CUT = "+";
+	// 単一カラムの浮動小数点インデックスが、並び替え可能な形式であることを示す接尾辞.
+	// 接尾辞の無いものは以前の形式(ビット列のまま)のため、再生成が必要.
+	protected static final String SORTABLE_TYPE = "s";
 	protected static final int MAX_ERROR = 32;
 	
 	protected Leveldb parent; // インデックス元のLeveldbオブジェクト.
@@ -57,6 +74,10 @@ public class LevelIndex extends LevelOperator {
 	protected int indexKeyType; // インデックスのカラムタイプ.
 	protected String indexColumnName; // インデックスカラム名.
 	protected String[] indexColumnList; // インデックスカラム名(hoge.moge.abcのように階層設定可能).
+	protected int[] compositeTypes; // 複合インデックスのカラムタイプ群.
+	protected String[][] compositeColumnList; // 複合インデックスのカラム名群.
+	protected String[][] includeColumnList; // 射影カラム名群.
+	protected String includeName; // 射影カラム名(',' 区切り).
 	
 	/**
 	 * オペレータタイプ.
@@ -151,12 +172,12 @@ public class LevelIndex extends LevelOperator {
 			return null;
 		case INDEX_FLOAT:
 			if(Converter.isNumeric(o)) {
-				return Float.floatToRawIntBits(Converter.convertFloat(o));
+				return LevelId.sortFloat(Converter.convertFloat(o));
 			}
 			return null;
 		case INDEX_DOUBLE:
 			if(Converter.isNumeric(o)) {
-				return Double.doubleToRawLongBits(Converter.convertDouble(o));
+				return LevelId.sortDouble(Converter.convertDouble(o));
 			}
 			return null;
 		case INDEX_BINARY:
@@ -168,6 +189,139 @@ public class LevelIndex extends LevelOperator {
 		throw new LeveldbException("Unknown index column type: " + type);
 	}
 	
+	// 複合インデックスのカラムを変換.
+	// 浮動小数点は、Multiのバイナリで順序が保持されるため、そのまま格納する.
+	private static final Object convertCompositeType(final int type, final Object o) {
+		if(o == null) {
+			return null;
+		}
+		switch(type) {
+		case INDEX_FLOAT:
+			if(Converter.isNumeric(o)) {
+				return Converter.convertFloat(o);
+			}
+			return null;
+		case INDEX_DOUBLE:
+			if(Converter.isNumeric(o)) {
+				return Converter.convertDouble(o);
+			}
+			return null;
+		}
+		return convertColumType(type, o);
+	}
+	
+	/**
+	 * 複合インデックス名を取得.
+	 * カラム名を ',' 区切りで連結したものが、複合インデックス名となります.
+	 * 
+	 * @param columns インデックスカラム名群(それぞれ hoge.moge.abc のように階層設定可能).
+	 * @return String 複合インデックス名が返却されます.
+	 */
+	public static final String compositeName(String... columns) {
+		if(columns == null || columns.length == 0) {
+			return null;
+		}
+		StringBuilder buf = new StringBuilder();
+		int len = columns.length;
+		for(int i = 0; i < len; i ++) {
+			if(i != 0) {
+				buf.append(COMPOSITE_CUT);
+			}
+			buf.append(srcColumnNames(columnNames(columns[i])));
+		}
+		return buf.toString();
+	}
+	
+	// 複合インデックス名を分解.
+	protected static final String[] compositeColumns(String name) {
+		final ObjectList<String> cnames = new ObjectList<String>();
+		Converter.cutString(cnames, true, name, COMPOSITE_CUT);
+		int len = cnames.size();
+		String[] ret = new String[len];
+		for(int i = 0; i < len; i ++) {
+			ret[i] = cnames.get(i);
+		}
+		return ret;
+	}
+	
+	// 単一カラムのカラムタイプを、パス用の文字列に変換.
+	protected static final String storeType(int type) {
+		if(type == INDEX_FLOAT || type == INDEX_DOUBLE) {
+			return type + SORTABLE_TYPE;
+		}
+		return String.valueOf(type);
+	}
+	
+	// パス用の文字列を、カラムタイプに変換. 不正な場合は[-1].
+	protected static final int loadType(String name, boolean single) {
+		int ret;
+		if(single && name.endsWith(SORTABLE_TYPE)) {
+			name = name.substring(0, name.length() - SORTABLE_TYPE.length());
+			if(!Converter.isNumeric(name) ||
+				((ret = Converter.convertInt(name)) != INDEX_FLOAT && ret != INDEX_DOUBLE)) {
+				return -1;
+			}
+			return ret;
+		} else if(!Converter.isNumeric(name)) {
+			return -1;
+		}
+		return Converter.convertInt(name);
+	}
+	
+	// 以前の形式の、単一カラムの浮動小数点インデックスかチェック.
+	protected static final boolean legacyType(String name) {
+		return String.valueOf(INDEX_FLOAT).equals(name) || String.valueOf(INDEX_DOUBLE).equals(name);
+	}
+	
+	// カラムタイプ群を文字列に変換.
+	protected static final String typeName(int[] types) {
+		if(types.length == 1) {
+			return storeType(types[0]);
+		}
+		StringBuilder buf = new StringBuilder();
+		int len = types.length;
+		for(int i = 0; i < len; i ++) {
+			if(i != 0) {
+				buf.append(COMPOSITE_CUT);
+			}
+			buf.append(types[i]);
+		}
+		return buf.toString();
+	}
+	
+	// カラム数に応じて、単一または複合インデックスを作成.
+	protected static final LevelIndex create(int[] columnTypes, String[] columnNames, String[] include,
+		Leveldb parent, String path) {
+		if(columnTypes.length == 1 && columnNames.length == 1) {
+			return new LevelIndex(columnTypes[0], columnNames[0], include, parent, path);
+		}
+		return new LevelIndex(columnTypes, columnNames, include, parent, path);
+	}
+	
+	// 射影カラム名群を分解.
+	private static final String[][] includeColumns(String[] include) {
+		final int len = include == null ? 0 : include.length;
+		if(len == 0) {
+			return null;
+		}
+		final String[][] ret = new String[len][];
+		for(int i = 0; i < len; i ++) {
+			if(include[i] == null || include[i].indexOf(COMPOSITE_CUT) != -1 ||
+				include[i].indexOf(INCLUDE_CUT) != -1 || (ret[i] = columnNames(include[i])) == null) {
+				throw new LeveldbException("Invalid include column name: " + include[i]);
+			}
+		}
+		return ret;
+	}
+	
+	// インデックスパスのカラム名(射影カラムが存在する場合は '+' の後に連結).
+	protected static final String storeName(String columnName, String[] include) {
+		if(include == null || include.length == 0) {
+			return columnName;
+		}
+		return columnName + INCLUDE_CUT + compositeName(include);
+	}
+	
 	/**
 	 * コンストラクタ.
 	 * Writebatch無効で作成.
@@ -191,9 +345,41 @@ public class LevelIndex extends LevelOperator {
 	 * @param parent インデックス元のLeveldbオブジェクト.
 	 */
 	public LevelIndex(int columnType, String columnName, Leveldb parent) {
+		this(columnType, columnName, null, parent, null);
+	}
+	
+	/**
+	 * コンストラクタ.
+	 * 射影カラムを指定して、Writebatch無効で作成.
+	 * <p>
+	 * 射影カラムの値はインデックスの要素に格納されるため、LevelIndexIterator.projection
+	 * を利用することで、インデックス元を読み込まずに取得できます.
+	 * </p>
+	 * 
+	 * @param columnType インデックスカラムタイプ.
+	 * @param columnName インデクスカラム名(hoge.moge.abcのように階層設定可能).
+	 * @param include 射影カラム名群(それぞれ hoge.moge.abc のように階層設定可能).
+	 * @param parent インデックス元のLeveldbオブジェクト.
+	 */
+	public LevelIndex(int columnType, String columnName, String[] include, Leveldb parent) {
+		this(columnType, columnName, include, parent, null);
+	}
+	
+	/**
+	 * コンストラクタ.
+	 * 生成先のパスを指定して、Writebatch無効で作成.
+	 * 
+	 * @param columnType インデックスカラムタイプ.
+	 * @param columnName インデクスカラム名(hoge.moge.abcのように階層設定可能).
+	 * @param include 射影カラム名群. [null]の場合は射影しません.
+	 * @param parent インデックス元のLeveldbオブジェクト.
+	 * @param path 生成先のパス. [null]の場合は標準のパスで作成します.
+	 */
+	protected LevelIndex(int columnType, String columnName, String[] include, Leveldb parent, String path) {
 		int indexColumnLvType = convertColumTypeByLevelOptionType(columnType);
 		String[] list = columnNames(columnName);
 		columnName = srcColumnNames(list);
+		String[][] includeList = includeColumns(include);
 		String columnString = LevelOption.stringType(indexColumnLvType);
 		int indexKeyType = LevelOption.convertType(columnString + "-" + "binary");
 		LevelOption pOpt = parent.getOption();
@@ -203,13 +389,8 @@ public class LevelIndex extends LevelOperator {
 			pOpt.getMaxOpenFiles(),
 			pOpt.getBlockSize(),
 			pOpt.getBlockCache());
-		Leveldb db = new Leveldb(new StringBuilder(parent.getPath())
-			.append(INDEX_CUT)
-			.append(columnName)
-			.append(INDEX_CUT)
-			.append(columnType)
-			.append(INDEX_FOODER)
-			.toString(), opt);
+		Leveldb db = new Leveldb(path == null ?
+			indexPath(parent, storeName(columnName, include), storeType(columnType)) : path, opt);
 		
 		// leveldbをクローズしてwriteBatchで処理しない.
 		super.init(null, db, true, false);
@@ -221,6 +402,92 @@ public class LevelIndex extends LevelOperator {
 		this.indexKeyType = indexKeyType;
 		this.indexColumnList = list;
 		this.indexColumnName = columnName;
+		this.includeColumnList = includeList;
+		this.includeName = includeList == null ? null : compositeName(include);
+	}
+	
+	/**
+	 * コンストラクタ.
+	 * 複合インデックスを、Writebatch無効で作成.
+	 * <p>
+	 * 複数カラムの値を、バイナリ比較で順序が保持されるタプル(Multi)に変換して、
+	 * [タプル, インデックス元のキー] の２キーで格納します.
+	 * そのため、先頭カラムからの一致検索や、次のカラムの範囲検索が行えます.
+	 * 全てのカラムが存在する要素のみインデックス化されます.
+	 * </p>
+	 * 
+	 * @param columnTypes カラム毎のインデックスカラムタイプ(バイナリは利用できません).
+	 * @param columnNames インデクスカラム名群(それぞれ hoge.moge.abc のように階層設定可能).
+	 * @param parent インデックス元のLeveldbオブジェクト.
+	 */
+	public LevelIndex(int[] columnTypes, String[] columnNames, Leveldb parent) {
+		this(columnTypes, columnNames, null, parent, null);
+	}
+	
+	/**
+	 * コンストラクタ.
+	 * 射影カラムを指定して、複合インデックスをWritebatch無効で作成.
+	 * 
+	 * @param columnTypes カラム毎のインデックスカラムタイプ(バイナリは利用できません).
+	 * @param columnNames インデクスカラム名群(それぞれ hoge.moge.abc のように階層設定可能).
+	 * @param include 射影カラム名群(それぞれ hoge.moge.abc のように階層設定可能).
+	 * @param parent インデックス元のLeveldbオブジェクト.
+	 */
+	public LevelIndex(int[] columnTypes, String[] columnNames, String[] include, Leveldb parent) {
+		this(columnTypes, columnNames, include, parent, null);
+	}
+	
+	/**
+	 * コンストラクタ.
+	 * 生成先のパスを指定して、複合インデックスをWritebatch無効で作成.
+	 * 
+	 * @param columnTypes カラム毎のインデックスカラムタイプ(バイナリは利用できません).
+	 * @param columnNames インデクスカラム名群(それぞれ hoge.moge.abc のように階層設定可能).
+	 * @param include 射影カラム名群. [null]の場合は射影しません.
+	 * @param parent インデックス元のLeveldbオブジェクト.
+	 * @param path 生成先のパス. [null]の場合は標準のパスで作成します.
+	 */
+	protected LevelIndex(int[] columnTypes, String[] columnNames, String[] include, Leveldb parent, String path) {
+		final int len = columnNames == null ? 0 : columnNames.length;
+		if(len < 2 || columnTypes == null || columnTypes.length != len) {
+			throw new LeveldbException("Composite index requires two or more column names and types.");
+		}
+		String[][] lists = new String[len][];
+		for(int i = 0; i < len; i ++) {
+			if(columnTypes[i] < INDEX_STRING || columnTypes[i] > INDEX_DOUBLE) {
+				throw new LeveldbException("Unsupported composite index column type: " + columnTypes[i]);
+			} else if(columnNames[i] == null || columnNames[i].indexOf(COMPOSITE_CUT) != -1 ||
+				columnNames[i].indexOf(INCLUDE_CUT) != -1 || (lists[i] = columnNames(columnNames[i])) == null) {
+				throw new LeveldbException("Invalid composite index column name: " + columnNames[i]);
+			}
+		}
+		String columnName = compositeName(columnNames);
+		String[][] includeList = includeColumns(include);
+		int indexKeyType = LevelOption.TYPE_BIN_BIN;
+		LevelOption pOpt = parent.getOption();
+		LevelOption opt = LevelOption.create(
+			indexKeyType,
+			pOpt.getWriteBufferSize(),
+			pOpt.getMaxOpenFiles(),
+			pOpt.getBlockSize(),
+			pOpt.getBlockCache());
+		Leveldb db = new Leveldb(path == null ?
+			indexPath(parent, storeName(columnName, include), typeName(columnTypes)) : path, opt);
+		
+		// leveldbをクローズしてwriteBatchで処理しない.
+		super.init(null, db, true, false);
+		
+		this.parent = parent;
+		this.parentType = pOpt.getType();
+		this.indexColumnType = INDEX_COMPOSITE;
+		this.indexColumnLvType = LevelOption.TYPE_FREE;
+		this.indexKeyType = indexKeyType;
+		this.indexColumnList = null;
+		this.indexColumnName = columnName;
+		this.compositeTypes = columnTypes.clone();
+		this.compositeColumnList = lists;
+		this.includeColumnList = includeList;
+		this.includeName = includeList == null ? null : compositeName(include);
 	}
 	
 	/**
@@ -232,13 +499,28 @@ public class LevelIndex extends LevelOperator {
 	public LevelIndex(LevelIndex idx) {
 		// leveldbをクローズせずwriteBatchで処理する.
 		super.init(idx, idx.leveldb, false, true);
-		this.parent = idx.leveldb;
+		this.parent = idx.parent;
 		this.parentType = idx.parentType;
 		this.indexColumnType = idx.indexColumnType;
 		this.indexColumnLvType = idx.indexColumnLvType;
 		this.indexKeyType = idx.indexKeyType;
 		this.indexColumnList = idx.indexColumnList;
 		this.indexColumnName = idx.indexColumnName;
+		this.compositeTypes = idx.compositeTypes;
+		this.compositeColumnList = idx.compositeColumnList;
+		this.includeColumnList = idx.includeColumnList;
+		this.includeName = idx.includeName;
+	}
+	
+	// インデックスのパスを取得.
+	protected static final String indexPath(Leveldb parent, String columnName, String columnType) {
+		return new StringBuilder(parent.getPath())
+			.append(INDEX_CUT)
+			.append(columnName)
+			.append(INDEX_CUT)
+			.append(columnType)
+			.append(INDEX_FOODER)
+			.toString();
 	}
 	
 	@Override
@@ -263,6 +545,7 @@ public class LevelIndex extends LevelOperator {
 	
 	/**
 	 * インデックス対象のカラム名を取得.
+	 * 複合インデックスの場合は、カラム名を ',' 区切りで連結したものが返却されます.
 	 * @return
 	 */
 	public String getColumnName() {
@@ -270,6 +553,99 @@ public class LevelIndex extends LevelOperator {
 		return indexColumnName;
 	}
 	
+	/**
+	 * 複合インデックスかチェック.
+	 * @return boolean [true]の場合、複合インデックスです.
+	 */
+	public boolean isComposite() {
+		return compositeTypes != null;
+	}
+	
+	/**
+	 * インデックス対象のカラムタイプ群を取得.
+	 * @return int[] カラム毎のタイプが返却されます.
+	 */
+	public int[] getColumnTypes() {
+		checkClose();
+		return compositeTypes == null ? new int[] { indexColumnType } : compositeTypes.clone();
+	}
+	
+	/**
+	 * インデックス対象のカラム名群を取得.
+	 * @return String[] カラム毎の名前が返却されます.
+	 */
+	public String[] getColumnNames() {
+		checkClose();
+		return compositeTypes == null ? new String[] { indexColumnName } : compositeColumns(indexColumnName);
+	}
+	
+	/**
+	 * 射影カラム名群を取得.
+	 * @return String[] 射影カラム名群が返却されます. 存在しない場合は[null].
+	 */
+	public String[] getIncludeColumns() {
+		checkClose();
+		return includeName == null ? null : compositeColumns(includeName);
+	}
+	
+	// インデックスパスのカラム名.
+	protected final String storeName() {
+		return includeName == null ? indexColumnName : indexColumnName + INCLUDE_CUT + includeName;
+	}
+	
+	// インデックスパスのカラムタイプ文字列.
+	protected final String typeName() {
+		return compositeTypes == null ? storeType(indexColumnType) : typeName(compositeTypes);
+	}
+	
+	// インデックス元の要素から、インデックスカラムの値を取得.
+	// 複合インデックスの場合はタプルのバイナリとなる. 対象外の場合は[null].
+	protected final Object columnValue(Object value) {
+		if(compositeTypes == null) {
+			return convertColumType(indexColumnType, getValueInColumns(indexColumnList, value));
+		}
+		final int len = compositeTypes.length;
+		final Object[] list = new Object[len];
+		for(int i = 0; i < len; i ++) {
+			if((list[i] = convertCompositeType(compositeTypes[i],
+				getValueInColumns(compositeColumnList[i], value))) == null) {
+				return null;
+			}
+		}
+		return new Multi(list).toBinary();
+	}
+	
+	// 検索条件を、インデックスカラムの値に変換.
+	// 複合インデックスの場合は、先頭カラムからの値群(配列かList)を設定する.
+	protected final Object searchValue(Object value) {
+		if(compositeTypes == null) {
+			return convertColumType(indexColumnType, value);
+		} else if(value == null) {
+			return null;
+		}
+		return tuple(value instanceof Object[] ? (Object[])value :
+			(value instanceof List ? ((List<?>)value).toArray() : new Object[] { value }), null);
+	}
+	
+	// 先頭カラムからの値群をタプルのバイナリに変換.
+	private final byte[] tuple(Object[] values, Object next) {
+		final int len = (values == null ? 0 : values.length) + (next == null ? 0 : 1);
+		if(len > compositeTypes.length) {
+			throw new LeveldbException("Too many values for composite index '" + indexColumnName + "'.");
+		} else if(len == 0) {
+			return MIN_BIN;
+		}
+		final Object[] list = new Object[len];
+		for(int i = 0; i < len; i ++) {
+			if((list[i] = convertCompositeType(compositeTypes[i],
+				i == len - 1 && next != null ? next : values[i])) == null) {
+				throw new LeveldbException("Invalid value for column '" +
+					srcColumnNames(compositeColumnList[i]) + "' of composite index.");
+			}
+		}
+		return new Multi(list).toBinary();
+	}
+	
 	// キーバイナリを取得.
 	private static final byte[] keyBinary(int type, Object key1, Object key2) {
 		JniBuffer keyBuf = null;
@@ -282,7 +658,7 @@ public class LevelIndex extends LevelOperator {
 		} catch (Exception e) {
 			throw new LeveldbException(e);
 		} finally {
-			LevelBuffer.clearBuffer(keyBuf, null);
+			LevelBuffer.release(keyBuf, null);
 		}
 	}
 	
@@ -301,6 +677,85 @@ public class LevelIndex extends LevelOperator {
 		return value;
 	}
 	
+	// 要素の指定カラムを、階層を保持したままコピー.
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static final void project(final Map out, final String[] columnNames, final Object value) {
+		final Object v = getValueInColumns(columnNames, value);
+		if(v == null) {
+			return;
+		}
+		Map m = out;
+		Object o;
+		final int len = columnNames.length - 1;
+		for(int i = 0; i < len; i ++) {
+			if(!((o = m.get(columnNames[i])) instanceof Map)) {
+				o = new HashMap();
+				m.put(columnNames[i], o);
+			}
+			m = (Map)o;
+		}
+		m.put(columnNames[len], v);
+	}
+	
+	// インデックスの要素を生成.
+	// 射影カラムが存在する場合は [キー長(4byte), インデックス元のキー, 射影カラムの要素] となる.
+	@SuppressWarnings("rawtypes")
+	protected final byte[] indexValue(byte[] keyBin, Object value) throws Exception {
+		if(includeColumnList == null || !(value instanceof Map)) {
+			return keyBin;
+		}
+		// インデックスカラムも含めて射影する.
+		final Map m = new HashMap();
+		if(compositeColumnList == null) {
+			project(m, indexColumnList, value);
+		} else {
+			for(int i = 0; i < compositeColumnList.length; i ++) {
+				project(m, compositeColumnList[i], value);
+			}
+		}
+		for(int i = 0; i < includeColumnList.length; i ++) {
+			project(m, includeColumnList[i], value);
+		}
+		JniBuffer buf = null;
+		try {
+			buf = LevelBuffer.pool().lease(0);
+			final int len = keyBin.length;
+			buf.write((len >> 24) & 255);
+			buf.write((len >> 16) & 255);
+			buf.write((len >> 8) & 255);
+			buf.write(len & 255);
+			buf.write(keyBin, 0, len);
+			LevelValues.encode(buf, m);
+			return buf.getBinary();
+		} finally {
+			LevelBuffer.pool().release(buf);
+		}
+	}
+	
+	// インデックスの要素から、インデックス元のキーを取得.
+	// 射影カラムが存在する場合は、valueに要素を読み込み、射影カラムの開始位置を返却する.
+	// 射影カラムが存在しない場合は[-1].
+	protected final int parentKey(LeveldbIterator itr, JniBuffer key, JniBuffer value) {
+		if(includeColumnList == null) {
+			itr.value(key);
+			return -1;
+		}
+		itr.value(value);
+		final byte[] b = value.getBinary();
+		if(b.length < 4) {
+			// 射影カラム定義前の形式.
+			key.setBinary(b);
+			return -1;
+		}
+		final int len = ((b[0] & 255) << 24) | ((b[1] & 255) << 16) | ((b[2] & 255) << 8) | (b[3] & 255);
+		if(len < 0 || 4 + len > b.length) {
+			key.setBinary(b);
+			return -1;
+		}
+		key.setBinary(b, 4, len);
+		return 4 + len < b.length ? 4 + len : -1;
+	}
+	
 	/**
 	 * 指定キーの情報をセット.
 	 * 
@@ -349,12 +804,67 @@ public class LevelIndex extends LevelOperator {
 	 */
 	public boolean put(Object key, Object twoKey, Object value) {
 		checkClose();
-		// valueがMapじゃない場合はインデックス化しない.
-		Object o = getValueInColumns(indexColumnList, value);
+		// valueがMapじゃない場合、カラムが存在しない場合はインデックス化しない.
+		Object o = columnValue(value);
+		if(o == null) {
+			return false;
+		}
+		return putColumnValue(key, twoKey, o, value);
+	}
+	
+	/**
+	 * 指定キーの情報を更新.
+	 * 以前の要素とインデックスカラムの値が異なる場合は、以前の情報を削除します.
+	 * 
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @param twoKey
+	 *            対象のセカンドキーを設定します.
+	 * @param old
+	 *            以前の要素を設定します. [null]の場合は削除しません.
+	 * @param value
+	 *            対象の要素を設定します.
+	 * @return boolean
+	 *            [true]の場合、設定できました.
+	 */
+	protected boolean update(Object key, Object twoKey, Object old, Object value) {
+		checkClose();
+		final Object o = columnValue(value);
+		removeOldColumn(key, twoKey, old, o);
 		if(o == null) {
 			return false;
 		}
-		return putDirectValue(key, twoKey, o);
+		return putColumnValue(key, twoKey, o, value);
+	}
+	
+	/**
+	 * 以前の要素のインデックス情報を削除.
+	 * 以前の要素と新しい要素のインデックスカラムの値が同じ場合は削除しません.
+	 * 
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @param twoKey
+	 *            対象のセカンドキーを設定します.
+	 * @param old
+	 *            以前の要素を設定します.
+	 * @param value
+	 *            新しい要素を設定します.
+	 * @return boolean
+	 *            [true]の場合、削除されました.
+	 */
+	protected boolean removeOld(Object key, Object twoKey, Object old, Object value) {
+		checkClose();
+		return removeOldColumn(key, twoKey, old, columnValue(value));
+	}
+	
+	// 変換済みの新しいインデックスカラムと比較して、以前の情報を削除.
+	private final boolean removeOldColumn(Object key, Object twoKey, Object old, Object o) {
+		final Object b = old == null ? null : columnValue(old);
+		if(b != null && (o == null || !(b instanceof byte[] ?
+			Arrays.equals((byte[])b, (byte[])o) : b.equals(o)))) {
+			return removeColumnValue(key, twoKey, b);
+		}
+		return false;
 	}
 	
 	/**
@@ -367,10 +877,15 @@ public class LevelIndex extends LevelOperator {
 	protected boolean putDirectValue(Object key, Object twoKey, Object value) {
 		checkClose();
 		// インデックスカラムがnullの場合はインデックス化しない.
-		Object columnValue = convertColumType(indexColumnType, value);
+		Object columnValue = searchValue(value);
 		if(columnValue == null) {
 			return false;
 		}
+		return putColumnValue(key, twoKey, columnValue, null);
+	}
+	
+	// 変換済みのインデックスカラムで追加.
+	private final boolean putColumnValue(Object key, Object twoKey, Object columnValue, Object value) {
 		JniBuffer keyBuf = null;
 		JniBuffer valBuf = null;
 		try {
@@ -379,7 +894,7 @@ public class LevelIndex extends LevelOperator {
 			byte[] keyBin = keyBinary(parentType, key, twoKey);
 			keyBuf = LevelBuffer.key(indexKeyType, columnValue, keyBin);
 			valBuf = LevelBuffer.value();
-			valBuf.setBinary(keyBin);
+			valBuf.setBinary(indexValue(keyBin, value));
 			if(writeBatchFlag) {
 				writeBatch().put(keyBuf, valBuf);
 			} else {
@@ -391,10 +906,71 @@ public class LevelIndex extends LevelOperator {
 		} catch (Exception e) {
 			throw new LeveldbException(e);
 		} finally {
-			LevelBuffer.clearBuffer(keyBuf, valBuf);
+			LevelBuffer.release(keyBuf, valBuf);
 		}
 	}
 	
+	/**
+	 * 指定範囲の情報を一括でセット.
+	 * 書き込みは１つのWriteBatchにまとめて行います.
+	 * 
+	 * @param keys
+	 *            対象のキー群を設定します.
+	 * @param twoKeys
+	 *            対象のセカンドキー群を設定します. 存在しない場合は[null].
+	 * @param values
+	 *            対象の要素群を設定します.
+	 * @param off
+	 *            開始位置を設定します.
+	 * @param len
+	 *            件数を設定します.
+	 * @return int インデックス化された件数が返却されます.
+	 */
+	protected int putAll(Object[] keys, Object[] twoKeys, Object[] values, int off, int len) {
+		checkClose();
+		WriteBatch batch = null;
+		JniBuffer keyBuf = null;
+		JniBuffer valBuf = null;
+		try {
+			int ret = 0;
+			Object o;
+			byte[] keyBin;
+			batch = writeBatchFlag ? writeBatch() : new WriteBatch();
+			// ループ中は同じバッファを利用するため、プールから取得する.
+			keyBuf = LevelBuffer.pool().lease(0);
+			valBuf = LevelBuffer.pool().lease(0);
+			for(int i = off; i < off + len; i ++) {
+				// valueがMapじゃない場合、カラムが存在しない場合はインデックス化しない.
+				if((o = columnValue(values[i])) == null) {
+					continue;
+				}
+				keyBin = keyBinary(parentType, keys[i], twoKeys == null ? null : twoKeys[i]);
+				keyBuf.clear();
+				LevelId.buf(indexKeyType, keyBuf, o, keyBin);
+				valBuf.setBinary(indexValue(keyBin, values[i]));
+				batch.put(keyBuf, valBuf);
+				ret ++;
+			}
+			if(!writeBatchFlag) {
+				if(ret > 0) {
+					batch.execute(leveldb);
+				}
+				batch.close();
+			}
+			batch = null;
+			return ret;
+		} catch (LeveldbException le) {
+			throw le;
+		} catch (Exception e) {
+			throw new LeveldbException(e);
+		} finally {
+			if(!writeBatchFlag && batch != null) {
+				batch.close();
+			}
+			LevelBuffer.pool().release(keyBuf);
+			LevelBuffer.pool().release(valBuf);
+		}
+	}
 	
 	/**
 	 * 指定キーの情報を削除.
@@ -441,12 +1017,12 @@ public class LevelIndex extends LevelOperator {
 	 */
 	public boolean remove(Object key, Object twoKey, Object value) {
 		checkClose();
-		// valueがMapじゃない場合はインデックス化しない.
-		Object o = getValueInColumns(indexColumnList, value);
+		// valueがMapじゃない場合、カラムが存在しない場合はインデックス化しない.
+		Object o = columnValue(value);
 		if(o == null) {
 			return false;
 		}
-		return removeDirectValue(key, twoKey, o);
+		return removeColumnValue(key, twoKey, o);
 	}
 	
 	/**
@@ -459,10 +1035,15 @@ public class LevelIndex extends LevelOperator {
 	protected boolean removeDirectValue(Object key, Object twoKey, Object value) {
 		checkClose();
 		// インデックスカラムがnullの場合はインデックス化しない.
-		Object columnValue = convertColumType(indexColumnType, value);
+		Object columnValue = searchValue(value);
 		if(columnValue == null) {
 			return false;
 		}
+		return removeColumnValue(key, twoKey, columnValue);
+	}
+	
+	// 変換済みのインデックスカラムで削除.
+	private final boolean removeColumnValue(Object key, Object twoKey, Object columnValue) {
 		JniBuffer keyBuf = null;
 		try {
 			// keyをバイナリ変換して、indexKeyとして[column, binary]の２キーをキーとする.
@@ -479,7 +1060,7 @@ public class LevelIndex extends LevelOperator {
 		} catch (Exception e) {
 			throw new LeveldbException(e);
 		} finally {
-			LevelBuffer.clearBuffer(keyBuf, null);
+			LevelBuffer.release(keyBuf, null);
 		}
 	}
 	
@@ -519,12 +1100,73 @@ public class LevelIndex extends LevelOperator {
 		return _iterator(reverse, columnValue);
 	}
 	
+	/**
+	 * 複合インデックスで、先頭カラムからの値が一致する情報を取得.
+	 * @param reverse [true]の場合、降順で取得します.
+	 * @param values 先頭カラムからの値群を設定します.
+	 * @return
+	 */
+	public LevelIndexIterator prefix(boolean reverse, Object... values) {
+		return range(reverse, values, null, null);
+	}
+	
+	/**
+	 * 複合インデックスで、範囲を指定して情報を取得.
+	 * 先頭カラムからの値群が一致し、その次のカラムが from から to まで(両端を含む)の情報を取得します.
+	 * @param reverse [true]の場合、降順で取得します.
+	 * @param prefix 先頭カラムからの値群を設定します. [null]の場合は先頭カラムが範囲の対象となります.
+	 * @param from 範囲の開始値を設定します. [null]の場合は下限を設定しません.
+	 * @param to 範囲の終了値を設定します. [null]の場合は上限を設定しません.
+	 * @return
+	 */
+	public LevelIndexIterator range(boolean reverse, Object[] prefix, Object from, Object to) {
+		checkClose();
+		if(compositeTypes == null) {
+			throw new LeveldbException("Index of column name '" + indexColumnName + "' is not a composite index.");
+		}
+		LevelIndexIterator ret = null;
+		JniBuffer keyBuf = null;
+		try {
+			// タプルは要素毎に終端が判別できるため、先頭が一致するタプルは連続して並ぶ.
+			// 上限はタグより大きい 0xff を付加して、後続カラムを含めた範囲とする.
+			final byte[] lo = tuple(prefix, from);
+			final byte[] t = tuple(prefix, to);
+			final byte[] hi = Arrays.copyOf(t, t.length + 1);
+			hi[t.length] = (byte)255;
+			ret = new LevelIndexIterator(reverse, this, leveldb.snapshot());
+			ret.lo = lo;
+			ret.hi = hi;
+			keyBuf = LevelBuffer.key(indexKeyType, reverse ? hi : lo, MIN_BIN);
+			ret.itr.seek(keyBuf);
+			if(reverse) {
+				if(ret.itr.valid()) {
+					ret.itr.before();
+				} else {
+					ret.itr.last();
+				}
+			}
+			return ret;
+		} catch(LeveldbException le) {
+			if(ret != null) {
+				ret.close();
+			}
+			throw le;
+		} catch(Exception e) {
+			if(ret != null) {
+				ret.close();
+			}
+			throw new LeveldbException(e);
+		} finally {
+			LevelBuffer.release(keyBuf, null);
+		}
+	}
+	
 	// イテレータを取得.
 	protected LevelIndexIterator _iterator(boolean reverse, Object value) {
 		checkClose();
 		LevelIndexIterator ret = null;
 		try {
-			Object columnValue = convertColumType(indexColumnType, value);
+			Object columnValue = searchValue(value);
 			ret = new LevelIndexIterator(reverse, this, leveldb.snapshot());
 			if(columnValue != null) {
 				return _search(ret, columnValue);
@@ -545,6 +1187,102 @@ public class LevelIndex extends LevelOperator {
 		}
 	}
 	
+	/**
+	 * Flow.Publisherを取得.
+	 * <p>
+	 * 購読時のインデックスのスナップショットを昇順で読み込み、
+	 * インデックス元のキーと要素を、要求件数分ずつ通知します.
+	 * インデックス元の要素は、読み込み時点の内容となります.
+	 * </p>
+	 * 
+	 * @param columnValue
+	 *            開始位置のインデックスカラムの値を設定します. [null]の場合は先頭から通知します.
+	 * @return LevelPublisher Publisherが返却されます.
+	 */
+	public LevelPublisher<Map.Entry<Object, Map>> publisher(Object columnValue) {
+		return publisher(columnValue, null, 0);
+	}
+
+	/**
+	 * Flow.Publisherを取得.
+	 * 
+	 * @param columnValue
+	 *            開始位置のインデックスカラムの値を設定します. [null]の場合は先頭から通知します.
+	 * @param executor
+	 *            I/Oスレッドプールを設定します. [null]の場合はデフォルトのスレッドプールを利用します.
+	 * @param batch
+	 *            １回の読み込み件数を設定します.
+	 * @return LevelPublisher Publisherが返却されます.
+	 */
+	public LevelPublisher<Map.Entry<Object, Map>> publisher(Object columnValue, LevelAsyncExecutor executor,
+		int batch) {
+		checkClose();
+		final LevelIndex idx = this;
+		final Object value = searchValue(columnValue);
+		return new LevelPublisher<Map.Entry<Object, Map>>(this, executor, batch) {
+			protected Cursor<Map.Entry<Object, Map>> cursor() {
+				return new IndexCursor(idx, value);
+			}
+		};
+	}
+
+	/**
+	 * LevelIndexのPublisher用読み込み位置.
+	 */
+	private static final class IndexCursor extends LevelPublisher.Cursor<Map.Entry<Object, Map>> {
+		private final LevelIndex base;
+		private final Object columnValue;
+
+		IndexCursor(LevelIndex base, Object columnValue) {
+			this.base = base;
+			this.columnValue = columnValue;
+		}
+
+		@Override
+		protected void start(LeveldbIterator itr) throws Exception {
+			if (columnValue != null) {
+				base._search(new LevelIndexIterator(false, base, itr), columnValue);
+			}
+		}
+
+		@Override
+		protected boolean read(LeveldbIterator itr, ArrayDeque<Map.Entry<Object, Map>> out, int max)
+			throws Exception {
+			final Leveldb parent = base.parent;
+			Object v;
+			JniBuffer keyBuf = null;
+			JniBuffer valBuf = null;
+			try {
+				keyBuf = LevelBuffer.key();
+				valBuf = LevelBuffer.value();
+				for (int i = 0; i < max;) {
+					if (!itr.valid()) {
+						return false;
+					}
+					itr.key(key);
+					keyBuf.position(0);
+					valBuf.position(0);
+					base.parentKey(itr, keyBuf, valBuf);
+					itr.next();
+					valBuf.position(0);
+					if (parent.get(valBuf, keyBuf) == 0) {
+						continue;
+					}
+					v = LevelValues.decode(valBuf);
+					// インデックスの条件と違うものは通知しない.
+					if (base.columnValue(v) != null) {
+						out.add(new AbstractMap.SimpleImmutableEntry<Object, Map>(
+							LevelId.get(parent.getType(), keyBuf), (Map) v));
+						i++;
+					}
+				}
+				return itr.valid();
+			} finally {
+				LevelBuffer.release(keyBuf, valBuf);
+			}
+		}
+	}
+	
 	// ゼロバイナリ.
 	private static final byte[] MIN_BIN = new byte[] {
 		//(byte)0
@@ -617,7 +1355,7 @@ public class LevelIndex extends LevelOperator {
 		} catch (Exception e) {
 			throw new LeveldbException(e);
 		} finally {
-			LevelBuffer.clearBuffer(keyBuf, null);
+			LevelBuffer.release(keyBuf, null);
 		}
 	}
 	
@@ -642,7 +1380,7 @@ public class LevelIndex extends LevelOperator {
 		JniBuffer valBuf = null;
 		try {
 			long ret = 0L;
-			Object value;
+			Object row, value;
 			byte[] keyBin;
 			
 			// ロールバック処理.
@@ -658,20 +1396,18 @@ public class LevelIndex extends LevelOperator {
 					it.key(keyBuf);
 					it.value(valBuf);
 					it.next();
-					value = LevelValues.decode(valBuf);
+					row = LevelValues.decode(valBuf);
 					valBuf.position(0);
 					// インデックス元のvalueがMapじゃない場合、カラムが存在しない場合は処理しない.
-					if(!(value instanceof Map) ||
-						(value = getValueInColumns(indexColumnList, value)) == null ||
-						(value = convertColumType(indexColumnType, value)) == null) {
+					if(!(row instanceof Map) || (value = columnValue(row)) == null) {
 						continue;
 					}
 					// キーには、インデックスvalueとインデックス元のキー情報を設定.
 					keyBin = keyBuf.getBinary();
-					keyBuf.position(0);
-					keyBuf = LevelBuffer.key(indexKeyType, value, keyBin);
+					keyBuf.clear();
+					LevelId.buf(indexKeyType, keyBuf, value, keyBin);
 					// value に インデックス元のキー情報を設定.
-					valBuf.setBinary(keyBin);
+					valBuf.setBinary(indexValue(keyBin, row));
 					keyBin = null;
 					leveldb.put(keyBuf, valBuf);
 					ret ++;
@@ -695,7 +1431,181 @@ public class LevelIndex extends LevelOperator {
 			if(it != null) {
 				it.close();
 			}
-			LevelBuffer.clearBuffer(keyBuf, valBuf);
+			LevelBuffer.release(keyBuf, valBuf);
+		}
+	}
+	
+	/**
+	 * 指定範囲のインデックス情報を生成.
+	 * オンライン生成用に、スナップショットの開始位置から指定件数分を、
+	 * インデックスキー順にまとめて書き込みます.
+	 * 
+	 * @param snapshot インデックス元のスナップショットを設定します.
+	 * @param start 開始キーを設定します. [null]の場合は先頭から生成します.
+	 * @param count 件数を設定します.
+	 * @param builder 進捗・エラーの通知先を設定します.
+	 * @return long インデックス化された件数が返却されます.
+	 */
+	protected long toIndex(LeveldbSnapshot snapshot, byte[] start, long count, LevelIndexBuilder builder) {
+		checkClose();
+		final TreeMap<byte[], byte[]> sorted = new TreeMap<byte[], byte[]>(LevelKeyComparator.get(indexKeyType));
+		LeveldbIterator it = null;
+		WriteBatch batch = null;
+		JniBuffer keyBuf = null;
+		JniBuffer valBuf = null;
+		try {
+			long ret = 0L;
+			int n = 0;
+			Object row, value;
+			byte[] keyBin;
+			it = snapshot.iterator();
+			batch = new WriteBatch();
+			keyBuf = LevelBuffer.pool().lease(0);
+			valBuf = LevelBuffer.pool().lease(0);
+			if(start != null) {
+				keyBuf.setBinary(start);
+				it.seek(keyBuf);
+			}
+			for(long i = 0L; i < count && it.valid(); i ++) {
+				keyBuf.position(0);
+				valBuf.position(0);
+				it.key(keyBuf);
+				it.value(valBuf);
+				it.next();
+				try {
+					row = LevelValues.decode(valBuf);
+					// インデックス元のvalueがMapじゃない場合、カラムが存在しない場合は処理しない.
+					if(!(row instanceof Map) || (value = columnValue(row)) == null) {
+						continue;
+					}
+					keyBin = keyBuf.getBinary();
+					keyBuf.clear();
+					LevelId.buf(indexKeyType, keyBuf, value, keyBin);
+					sorted.put(keyBuf.getBinary(), indexValue(keyBin, row));
+				} catch(Exception e) {
+					builder.error(e);
+				} finally {
+					if(++ n >= BUILD_BATCH_LENGTH) {
+						ret += flush(sorted, batch, keyBuf, valBuf);
+						builder.progress(n);
+						n = 0;
+					}
+				}
+			}
+			ret += flush(sorted, batch, keyBuf, valBuf);
+			builder.progress(n);
+			return ret;
+		} catch (LeveldbException le) {
+			throw le;
+		} catch (Exception e) {
+			throw new LeveldbException(e);
+		} finally {
+			if(it != null) {
+				it.close();
+			}
+			if(batch != null) {
+				batch.close();
+			}
+			LevelBuffer.pool().release(keyBuf);
+			LevelBuffer.pool().release(valBuf);
+		}
+	}
+	
+	// オンライン生成の書き込み単位.
+	private static final int BUILD_BATCH_LENGTH = 4096;
+	
+	// キー順のインデックス情報を書き込み.
+	private final int flush(TreeMap<byte[], byte[]> sorted, WriteBatch batch, JniBuffer keyBuf, JniBuffer valBuf) {
+		final int ret = sorted.size();
+		if(ret == 0) {
+			return 0;
+		}
+		batch.clear();
+		for(Map.Entry<byte[], byte[]> e : sorted.entrySet()) {
+			keyBuf.setBinary(e.getKey());
+			valBuf.setBinary(e.getValue());
+			batch.put(keyBuf, valBuf);
+		}
+		batch.execute(leveldb);
+		batch.clear();
+		sorted.clear();
+		return ret;
+	}
+	
+	/**
+	 * インデックス元の要素から、インデックスキーを生成.
+	 * 
+	 * @param key インデックス元のキー(バイナリ)を設定します.
+	 * @param value インデックス元の要素(バイナリ)を設定します. [null]の場合は対象外です.
+	 * @return byte[] インデックスキーが返却されます. 対象外の場合は[null]が返却されます.
+	 */
+	protected byte[] indexKey(byte[] key, JniBuffer value) {
+		if(value == null) {
+			return null;
+		}
+		try {
+			return indexKey(key, LevelValues.decode(value));
+		} catch (LeveldbException le) {
+			throw le;
+		} catch (Exception e) {
+			throw new LeveldbException(e);
+		}
+	}
+	
+	// デコード済みの要素から、インデックスキーを生成.
+	private final byte[] indexKey(byte[] key, Object row) {
+		JniBuffer keyBuf = null;
+		try {
+			Object o = columnValue(row);
+			if(o == null) {
+				return null;
+			}
+			keyBuf = LevelBuffer.key(indexKeyType, o, key);
+			return keyBuf.getBinary();
+		} catch (LeveldbException le) {
+			throw le;
+		} catch (Exception e) {
+			throw new LeveldbException(e);
+		} finally {
+			LevelBuffer.release(keyBuf, null);
+		}
+	}
+	
+	/**
+	 * インデックス元のキーに対するインデックス情報を、現在の要素で再生成.
+	 * 
+	 * @param key インデックス元のキー(バイナリ)を設定します.
+	 * @param old 以前のインデックスキーを設定します. [null]の場合は削除しません.
+	 * @return byte[] 生成したインデックスキーが返却されます. 対象外の場合は[null]が返却されます.
+	 */
+	protected byte[] reindex(byte[] key, byte[] old) {
+		checkClose();
+		JniBuffer keyBuf = null;
+		JniBuffer valBuf = null;
+		try {
+			// インデックス元の要素の読み込みと、インデックスの書き込みで利用するため、プールから取得する.
+			keyBuf = LevelBuffer.pool().lease(0);
+			valBuf = LevelBuffer.pool().lease(0);
+			keyBuf.setBinary(key);
+			final Object row = parent.get(valBuf, keyBuf) == 0 ? null : LevelValues.decode(valBuf);
+			final byte[] ret = row == null ? null : indexKey(key, row);
+			if(old != null && (ret == null || !Arrays.equals(old, ret))) {
+				keyBuf.setBinary(old);
+				leveldb.remove(keyBuf);
+			}
+			if(ret != null) {
+				keyBuf.setBinary(ret);
+				valBuf.setBinary(indexValue(key, row));
+				leveldb.put(keyBuf, valBuf);
+			}
+			return ret;
+		} catch (LeveldbException le) {
+			throw le;
+		} catch (Exception e) {
+			throw new LeveldbException(e);
+		} finally {
+			LevelBuffer.pool().release(keyBuf);
+			LevelBuffer.pool().release(valBuf);
 		}
 	}
 	
@@ -708,6 +1618,9 @@ public class LevelIndex extends LevelOperator {
 		Leveldb parent; // インデックス元のleveldb.
 		Leveldb index; // インデックスのleveldb.
 		LeveldbIterator itr; // インデックスのイテレータ.
+		byte[] lo; // 複合インデックスの範囲の下限(この値を含む).
+		byte[] hi; // 複合インデックスの範囲の上限(この値を含まない).
+		boolean projection; // 射影カラムのみを取得する場合は[true].
 		
 		Map value = null; // _nextで取得したデータ.
 		
@@ -741,6 +1654,24 @@ public class LevelIndex extends LevelOperator {
 		public boolean isReverse() {
 			return reverse;
 		}
+		
+		/**
+		 * 射影カラムのみを取得.
+		 * <p>
+		 * インデックス元を読み込まずに、インデックスに格納された
+		 * インデックスカラムと射影カラムのみの要素を返却します.
+		 * 射影カラムが格納されていない要素は、インデックス元から取得します.
+		 * </p>
+		 * @return LevelIndexIterator オブジェクトが返却されます.
+		 */
+		public LevelIndexIterator projection() {
+			if(base.includeColumnList == null) {
+				throw new LeveldbException("Index of column name '" + base.indexColumnName +
+					"' has no include columns.");
+			}
+			projection = true;
+			return this;
+		}
 
 		@Override
 		public boolean hasNext() {
@@ -767,7 +1698,8 @@ public class LevelIndex extends LevelOperator {
 				close();
 				return false;
 			}
-			Object v;
+			Object v, o;
+			int p;
 			JniBuffer keyBuf = null;
 			JniBuffer valBuf = null;
 			try {
@@ -782,24 +1714,38 @@ public class LevelIndex extends LevelOperator {
 					} else {
 						keyBuf.position(0);
 					}
-					itr.value(keyBuf);
-					if(reverse) {
-						itr.before();
-					} else {
-						itr.next();
+					// 範囲外の場合は終了.
+					if(hi != null && !inRange(keyBuf)) {
+						close();
+						return false;
 					}
 					if(valBuf == null) {
 						valBuf = LevelBuffer.value();
 					} else {
 						valBuf.position(0);
 					}
+					p = base.parentKey(itr, keyBuf, valBuf);
+					if(reverse) {
+						itr.before();
+					} else {
+						itr.next();
+					}
+					// 射影カラムが格納されている場合は、インデックス元を読み込まない.
+					if(projection && p != -1) {
+						this.resultKey = LevelId.get(parent.getType(), keyBuf);
+						this.value = (Map)LevelValues.decode(valBuf, p, valBuf.position());
+						if (!itr.valid()) {
+							close();
+						}
+						return true;
+					}
+					valBuf.position(0);
 					if(parent.get(valBuf, keyBuf) == 0) {
 						continue;
 					}
 					v = LevelValues.decode(valBuf);
-					// インデックスの条件と違うものは取得しない.
-					if(convertColumType(base.indexColumnType,
-						LevelIndex.getValueInColumns(base.indexColumnList, v)) != null) {
+					// インデックスの条件と違うもの、複合インデックスの範囲外のものは取得しない.
+					if((o = base.columnValue(v)) != null && (hi == null || inRange((byte[])o))) {
 						this.resultKey = LevelId.get(parent.getType(), keyBuf);
 						this.value = (Map)v;
 						if (!itr.valid()) {
@@ -813,8 +1759,21 @@ public class LevelIndex extends LevelOperator {
 			} catch (Exception e) {
 				throw new LeveldbException(e);
 			} finally {
-				LevelBuffer.clearBuffer(keyBuf, valBuf);
+				LevelBuffer.release(keyBuf, valBuf);
 			}
 		}
+		
+		// 現在位置が、複合インデックスの範囲内かチェック.
+		private final boolean inRange(JniBuffer keyBuf) throws Exception {
+			itr.key(keyBuf);
+			final byte[] t = (byte[])((TwoKey)LevelId.get(base.indexKeyType, keyBuf)).get(0);
+			keyBuf.position(0);
+			return inRange(t);
+		}
+		
+		// タプルが、複合インデックスの範囲内かチェック.
+		private final boolean inRange(byte[] t) {
+			return BinaryUtil.binaryCompareTo(t, lo) >= 0 && BinaryUtil.binaryCompareTo(t, hi) < 0;
+		}
 	}
 }
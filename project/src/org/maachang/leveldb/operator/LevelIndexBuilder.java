@@ -0,0 +1,474 @@
+package org.maachang.leveldb.operator;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.maachang.leveldb.JniBuffer;
+import org.maachang.leveldb.LevelBuffer;
+import org.maachang.leveldb.LevelKeyComparator;
+import org.maachang.leveldb.Leveldb;
+import org.maachang.leveldb.LeveldbException;
+import org.maachang.leveldb.LeveldbIterator;
+import org.maachang.leveldb.LeveldbSnapshot;
+import org.maachang.leveldb.util.FileUtil;
+
+/**
+ * インデックスのオンライン生成.
+ * <p>
+ * 書き込みを止めずにインデックスを生成します. インデックス元のスナップショットを
+ * キー範囲で分割して並列にインデックス化し、作業用のLeveldbにキー順でまとめて書き込みます.
+ * 生成中の書き込みはキーを記録しておき、最後に現在の要素でインデックスを再生成してから、
+ * 短いロック区間で作業用のLeveldbを正式なインデックスに切り替えます.
+ * </p>
+ * <p>
+ * 既存のインデックスを再生成する場合、切り替えまでの読み込みは既存のインデックスで行われます.
+ * 進捗は getProcessed / getTotal で取得できます.
+ * </p>
+ */
+public class LevelIndexBuilder {
+
+	/** 作業用Leveldbの拡張子. **/
+	public static final String BUILD_FOODER = ".build";
+
+	// 分割を行う最小件数.
+	private static final long MIN_PARTITION_LENGTH = 8192L;
+
+	// 切り替え前に、ロック無しで再生成する記録件数の閾値.
+	private static final int DELTA_LOCK_LENGTH = 256;
+
+	private final LevelIndexOperator owner;
+	private final int[] columnTypes;
+	private final String[] columns;
+	private final String[] include;
+	private final String columnName;
+	private final boolean rebuild;
+	private final String buildPath;
+	private final LevelIndex work;
+	private final Leveldb parent;
+
+	// 生成中の書き込みキー.
+	private final ConcurrentSkipListSet<byte[]> delta;
+	// 再生成したキーと、そのインデックスキー.
+	private final TreeMap<byte[], byte[]> applied;
+
+	private final AtomicLong processed = new AtomicLong(0L);
+	private final AtomicLong indexed = new AtomicLong(0L);
+	private volatile long total = -1L;
+	private volatile boolean cancel = false;
+	private final List<Exception> errors = new ArrayList<Exception>();
+	private final CompletableFuture<Long> future = new CompletableFuture<Long>();
+
+	/**
+	 * コンストラクタ.
+	 * owner の indexLock の書き込みロックを取得した状態で呼び出します.
+	 *
+	 * @param owner
+	 *            インデックス元のオペレータを設定します.
+	 * @param columnTypes
+	 *            カラム毎のインデックスカラムタイプを設定します.
+	 * @param columns
+	 *            インデックスカラム名群を設定します. 複数の場合は複合インデックスとなります.
+	 * @param include
+	 *            射影カラム名群を設定します. [null]の場合は射影しません.
+	 * @param rebuild
+	 *            [true]の場合、既存のインデックスを再生成します.
+	 */
+	LevelIndexBuilder(LevelIndexOperator owner, int[] columnTypes, String[] columns, String[] include,
+		boolean rebuild) {
+		this.owner = owner;
+		this.columnTypes = columnTypes.clone();
+		this.columns = columns.clone();
+		this.include = include == null || include.length == 0 ? null : include.clone();
+		this.columnName = LevelIndex.compositeName(columns);
+		this.rebuild = rebuild;
+		this.parent = owner.leveldb;
+		this.buildPath = LevelIndex.indexPath(parent, LevelIndex.storeName(columnName, this.include),
+			LevelIndex.typeName(columnTypes)) + BUILD_FOODER;
+		// 前回の作業用Leveldbが残っている場合は削除.
+		if (FileUtil.isDir(buildPath)) {
+			Leveldb.destroy(buildPath);
+		}
+		this.work = LevelIndex.create(this.columnTypes, this.columns, this.include, parent, buildPath);
+		final LevelKeyComparator c = LevelKeyComparator.get(parent.getType());
+		this.delta = new ConcurrentSkipListSet<byte[]>(c);
+		this.applied = new TreeMap<byte[], byte[]>(c);
+	}
+
+	/**
+	 * インデックスカラム名を取得.
+	 *
+	 * @return String インデックスカラム名が返却されます.
+	 */
+	public String getColumnName() {
+		return columnName;
+	}
+
+	/**
+	 * 既存インデックスの再生成かチェック.
+	 *
+	 * @return boolean [true]の場合、再生成です.
+	 */
+	public boolean isRebuild() {
+		return rebuild;
+	}
+
+	/**
+	 * 処理対象の件数を取得.
+	 *
+	 * @return long 件数が返却されます. 件数の取得前は[-1]が返却されます.
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * 処理済みの件数を取得.
+	 *
+	 * @return long 処理済みの件数が返却されます.
+	 */
+	public long getProcessed() {
+		return processed.get();
+	}
+
+	/**
+	 * 進捗率を取得.
+	 *
+	 * @return double 0.0 から 1.0 の進捗率が返却されます.
+	 */
+	public double getProgress() {
+		if (future.isDone()) {
+			return 1.0d;
+		}
+		final long t = total;
+		if (t <= 0L) {
+			return 0.0d;
+		}
+		return Math.min(1.0d, (double) processed.get() / (double) t);
+	}
+
+	/**
+	 * 生成中の書き込みで、再生成待ちのキー数を取得.
+	 *
+	 * @return int キー数が返却されます.
+	 */
+	public int getDeltaSize() {
+		return delta.size();
+	}
+
+	/**
+	 * 要素のエラー群を取得.
+	 * エラーとなった要素はインデックス化されません.
+	 *
+	 * @return List<Exception> エラー群が返却されます.
+	 */
+	public List<Exception> getErrors() {
+		synchronized (errors) {
+			return new ArrayList<Exception>(errors);
+		}
+	}
+
+	/**
+	 * 終了しているかチェック.
+	 *
+	 * @return boolean [true]の場合、終了しています.
+	 */
+	public boolean isDone() {
+		return future.isDone();
+	}
+
+	/**
+	 * 生成結果のCompletableFutureを取得.
+	 *
+	 * @return CompletableFuture<Long> インデックス化された件数が返却されます.
+	 */
+	public CompletableFuture<Long> future() {
+		return future;
+	}
+
+	/**
+	 * 生成終了まで待機.
+	 *
+	 * @return long インデックス化された件数が返却されます.
+	 */
+	public long join() {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			final Throwable t = e.getCause();
+			if (t instanceof LeveldbException) {
+				throw (LeveldbException) t;
+			}
+			throw new LeveldbException(t);
+		} catch (Exception e) {
+			throw new LeveldbException(e);
+		}
+	}
+
+	/**
+	 * 生成を中止.
+	 * 既存のインデックスはそのまま利用されます.
+	 */
+	public void cancel() {
+		cancel = true;
+	}
+
+	// 中止チェック.
+	private final void checkCancel() {
+		if (cancel) {
+			throw new LeveldbException("Index build of column name '" + columnName + "' was cancelled.");
+		} else if (owner.isClose()) {
+			throw new LeveldbException("The object has already been cleared.");
+		}
+	}
+
+	// 要素のエラーを追加.
+	final void error(Exception e) {
+		synchronized (errors) {
+			if (errors.size() < LevelIndex.MAX_ERROR) {
+				errors.add(e);
+			}
+		}
+	}
+
+	// 進捗を追加.
+	final void progress(int n) {
+		processed.addAndGet(n);
+		checkCancel();
+	}
+
+	// 生成中の書き込みキーを記録.
+	final void record(byte[] key) {
+		delta.add(key);
+	}
+
+	/**
+	 * 別スレッドで生成を開始.
+	 *
+	 * @param executor
+	 *            スレッドプールを設定します. [null]の場合はデフォルトのスレッドプールを利用します.
+	 * @return LevelIndexBuilder このオブジェクトが返却されます.
+	 */
+	LevelIndexBuilder start(LevelAsyncExecutor executor) {
+		(executor == null ? LevelAsyncExecutor.getDefault() : executor).execute(new Runnable() {
+			public void run() {
+				try {
+					LevelIndexBuilder.this.run();
+				} catch (Throwable t) {
+				}
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * 生成処理.
+	 *
+	 * @return long インデックス化された件数が返却されます.
+	 */
+	long run() {
+		LeveldbSnapshot snapshot = null;
+		try {
+			// 生成中の書き込みを記録してから、スナップショットを取得する.
+			snapshot = parent.sharedSnapshot();
+			build(snapshot);
+			// 記録した書き込みを反映.
+			// 書き込みが多く記録数が減らない場合は、残りを切り替え時のロック区間で反映する.
+			int n, last = Integer.MAX_VALUE;
+			while ((n = delta.size()) > DELTA_LOCK_LENGTH && n < last) {
+				checkCancel();
+				last = n;
+				applyDelta(snapshot);
+			}
+			owner.switchIndex(this, snapshot);
+			snapshot.close();
+			snapshot = null;
+			future.complete(indexed.get());
+			return indexed.get();
+		} catch (Throwable t) {
+			abort();
+			future.completeExceptionally(t);
+			if (t instanceof LeveldbException) {
+				throw (LeveldbException) t;
+			}
+			throw new LeveldbException(t);
+		} finally {
+			if (snapshot != null) {
+				snapshot.close();
+			}
+		}
+	}
+
+	// スナップショットを分割して、並列でインデックスを生成.
+	private final void build(final LeveldbSnapshot snapshot) throws Exception {
+		final long count = count(snapshot);
+		total = count;
+		final int threads = Math.max(1, ForkJoinPool.commonPool().getParallelism());
+		final int parts = (int) Math.max(1L, Math.min(threads * 4L, count / MIN_PARTITION_LENGTH));
+		final long step = count / parts;
+		final List<Callable<Long>> tasks = new ArrayList<Callable<Long>>(parts);
+		LeveldbIterator it = null;
+		JniBuffer keyBuf = null;
+		try {
+			it = snapshot.iterator();
+			keyBuf = LevelBuffer.key();
+			byte[] start = null;
+			for (int i = 0; i < parts; i++) {
+				final byte[] s = start;
+				final long n = i == parts - 1 ? Long.MAX_VALUE : step;
+				tasks.add(new Callable<Long>() {
+					public Long call() {
+						return work.toIndex(snapshot, s, n, LevelIndexBuilder.this);
+					}
+				});
+				// 次の分割位置.
+				if (i < parts - 1) {
+					skip(it, step);
+					if (!it.valid()) {
+						break;
+					}
+					keyBuf.position(0);
+					it.key(keyBuf);
+					start = keyBuf.getBinary();
+				}
+			}
+		} finally {
+			LevelBuffer.release(keyBuf, null);
+			if (it != null) {
+				it.close();
+			}
+		}
+		Exception err = null;
+		final List<Future<Long>> results = tasks.size() == 1 ? null : ForkJoinPool.commonPool().invokeAll(tasks);
+		if (results == null) {
+			indexed.addAndGet(tasks.get(0).call());
+		} else {
+			for (int i = 0; i < results.size(); i++) {
+				try {
+					indexed.addAndGet(results.get(i).get());
+				} catch (ExecutionException e) {
+					err = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+				}
+			}
+		}
+		if (err != null) {
+			throw err;
+		}
+		checkCancel();
+	}
+
+	// 件数を取得.
+	private static final long count(LeveldbSnapshot snapshot) {
+		long ret = 0L;
+		int n;
+		final LeveldbIterator it = snapshot.iterator();
+		try {
+			while ((n = it.skip(Integer.MAX_VALUE)) == Integer.MAX_VALUE) {
+				ret += n;
+			}
+			return ret + n;
+		} finally {
+			it.close();
+		}
+	}
+
+	// 指定件数分カーソル移動.
+	private static final void skip(LeveldbIterator it, long count) {
+		int n;
+		while (count > 0L) {
+			n = (int) Math.min(count, Integer.MAX_VALUE);
+			if (it.skip(n) != n) {
+				break;
+			}
+			count -= n;
+		}
+	}
+
+	/**
+	 * 記録した書き込みキーのインデックスを再生成.
+	 * スナップショットで生成したインデックスキーと、前回再生成したインデックスキーは削除されます.
+	 *
+	 * @param snapshot
+	 *            生成に利用したスナップショットを設定します.
+	 */
+	final void applyDelta(LeveldbSnapshot snapshot) {
+		LeveldbIterator it = null;
+		JniBuffer keyBuf = null;
+		JniBuffer valBuf = null;
+		try {
+			it = snapshot.iterator();
+			keyBuf = LevelBuffer.pool().lease(0);
+			valBuf = LevelBuffer.pool().lease(0);
+			byte[] key, old;
+			final Iterator<byte[]> keys = delta.iterator();
+			while (keys.hasNext()) {
+				key = keys.next();
+				keys.remove();
+				if (applied.containsKey(key)) {
+					old = applied.get(key);
+				} else {
+					// スナップショットで生成したインデックスキー.
+					keyBuf.setBinary(key);
+					it.seek(keyBuf);
+					old = null;
+					if (it.valid()) {
+						keyBuf.position(0);
+						it.key(keyBuf);
+						if (Arrays.equals(key, keyBuf.getBinary())) {
+							valBuf.position(0);
+							it.value(valBuf);
+							old = work.indexKey(key, valBuf);
+						}
+					}
+				}
+				applied.put(key, work.reindex(key, old));
+			}
+		} finally {
+			if (it != null) {
+				it.close();
+			}
+			LevelBuffer.pool().release(keyBuf);
+			LevelBuffer.pool().release(valBuf);
+		}
+	}
+
+	/**
+	 * 作業用のLeveldbを、正式なインデックスのパスに移動.
+	 * owner の indexLock の書き込みロックを取得した状態で、既存インデックスの削除後に呼び出します.
+	 *
+	 * @return LevelIndex 正式なインデックスが返却されます.
+	 */
+	final LevelIndex publish() {
+		work.close();
+		final String path = LevelIndex.indexPath(parent, LevelIndex.storeName(columnName, include),
+			LevelIndex.typeName(columnTypes));
+		if (!new File(buildPath).renameTo(new File(path))) {
+			throw new LeveldbException("Failed to move index: " + buildPath);
+		}
+		return LevelIndex.create(columnTypes, columns, include, parent, null);
+	}
+
+	// 失敗時の後処理.
+	private final void abort() {
+		owner.removeBuilder(this);
+		try {
+			if (!work.isClose()) {
+				work.close();
+			}
+			if (FileUtil.isDir(buildPath)) {
+				Leveldb.destroy(buildPath);
+			}
+		} catch (Exception e) {
+		}
+	}
+}
@@ -1,7 +1,10 @@
 package org.maachang.leveldb.operator;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -11,8 +14,10 @@ import org.maachang.leveldb.LevelOption;
 import org.maachang.leveldb.LevelValues;
 import org.maachang.leveldb.Leveldb;
 import org.maachang.leveldb.LeveldbException;
+import org.maachang.leveldb.LeveldbSnapshot;
+import org.maachang.leveldb.WriteBatch;
+import org.maachang.leveldb.WriteBatchIndex;
 import org.maachang.leveldb.operator.LevelIndex.LevelIndexIterator;
-import org.maachang.leveldb.util.Converter;
 import org.maachang.leveldb.util.FileUtil;
 import org.maachang.leveldb.util.FixedSearchArray;
 import org.maachang.leveldb.util.OList;
@@ -29,6 +34,15 @@ public abstract class LevelIndexOperator extends LevelOperator {
 	// インデックスロック.
 	protected ReadWriteLock indexLock;
 	
+	// コミット用REDOログ.
+	protected LevelRedoLog redoLog;
+	
+	// オンライン生成中のインデックス.
+	protected List<LevelIndexBuilder> builders;
+	
+	// セッションの開始元のオペレータ.
+	protected LevelIndexOperator indexRoot;
+	
 	// 索引用カラムリストの作成.
 	private static final FixedSearchArray<String> createSearchArray(OList<LevelIndex> list) {
 		int len = list.size();
@@ -47,11 +61,33 @@ public abstract class LevelIndexOperator extends LevelOperator {
 		// writeBatchFlag じゃなくて、srcがNULLの場合は、新規ロード.
 		if(!writeBatchFlag || src == null) {
 			indexLock = new ReentrantReadWriteLock();
-			loadIndex();
+			redoLog = new LevelRedoLog(leveldb.getPath());
+			builders = new CopyOnWriteArrayList<LevelIndexBuilder>();
+			indexRoot = this;
+			final OList<LevelIndex> upgrade = new OList<LevelIndex>();
+			final OList<String> upgradePath = new OList<String>();
+			loadIndex(upgrade, upgradePath);
+			// 前回のコミットが途中で終了している場合は再反映.
+			if(redoLog.isPending()) {
+				indexLock.readLock().lock();
+				redoLog.lock.lock();
+				try {
+					applyRedo();
+				} finally {
+					redoLog.lock.unlock();
+					indexLock.readLock().unlock();
+				}
+			}
+			// 以前の形式のインデックスは、インデックス元から再生成する.
+			upgradeIndex(upgrade, upgradePath);
 		} else {
 			// コミット・ロールバック用のデータを作成.
+			redoLog = src.redoLog;
+			builders = src.builders;
+			indexRoot = src.indexRoot;
 			indexLock = src.indexLock;
-			indexLock.writeLock().lock();
+			// 並列でセッションが開始できるように、読み込みロックで複製する.
+			indexLock.readLock().lock();
 			try {
 				final OList<LevelIndex> srcList = src.indexList;
 				final int len = srcList == null ? 0 : srcList.size();
@@ -69,15 +105,21 @@ public abstract class LevelIndexOperator extends LevelOperator {
 				indexColumns = createSearchArray(list);
 				indexList = list;
 			} finally {
-				indexLock.writeLock().unlock();
+				indexLock.readLock().unlock();
 			}
 		}
 	}
 	
 	/**
 	 * インデックス情報を読み込み.
+	 * <p>
+	 * 以前の形式(ビット列のまま)の浮動小数点インデックスは、新しい形式のパスで空の
+	 * インデックスを作成し、upgrade と upgradePath に設定します.
+	 * </p>
+	 * @param upgrade 再生成が必要なインデックスが設定されます.
+	 * @param upgradePath 再生成後に削除する、以前の形式のインデックスのパスが設定されます.
 	 */
-	protected void loadIndex() {
+	protected void loadIndex(OList<LevelIndex> upgrade, OList<String> upgradePath) {
 		indexLock.writeLock().lock();
 		try {
 			// 配下のこのオペレータのインデックス情報を検索.
@@ -102,13 +144,32 @@ public abstract class LevelIndexOperator extends LevelOperator {
 				return;
 			}
 			fname = null;
-			dirPath = null;
 			path = null;
 			flist = null;
 			
+			// 以前の形式のインデックスが存在する場合、新しい形式のものは再生成途中のため削除する.
+			int n;
+			for(int i = 0; i < len; i ++) {
+				fname = list.get(i);
+				p = fname.lastIndexOf(LevelIndex.INDEX_CUT);
+				if(LevelIndex.legacyType(fname.substring(p + 1, fname.length() - LevelIndex.INDEX_FOODER.length())) &&
+					(n = list.search(upgradeName(fname))) != -1) {
+					Leveldb.destroy(dirPath + list.remove(n));
+					if(n < i) {
+						i --;
+					}
+					len --;
+				}
+			}
+			
 			// インデックス名から、インデックスを作成して登録.
+			// 複合インデックスは、カラム名とカラムタイプが ',' 区切りで格納されている.
+			// 射影カラムは、カラム名の後に '+' 区切りで格納されている.
 			int pp;
+			boolean legacy;
+			int[] types;
 			String columnName, columnType;
+			String[] names, typeNames, include;
 			OList<LevelIndex> idxList = new OList<LevelIndex>(len);
 			for(int i = 0; i < len; i ++) {
 				fname = list.get(i);
@@ -119,10 +180,33 @@ public abstract class LevelIndexOperator extends LevelOperator {
 				}
 				columnName = fname.substring(pp + 1, p);
 				columnType = fname.substring(p + 1, fname.length() - LevelIndex.INDEX_FOODER.length());
-				if(!Converter.isNumeric(columnType)) {
+				include = null;
+				if((pp = columnName.indexOf(LevelIndex.INCLUDE_CUT)) != -1) {
+					include = LevelIndex.compositeColumns(columnName.substring(pp + 1));
+					columnName = columnName.substring(0, pp);
+				}
+				names = LevelIndex.compositeColumns(columnName);
+				typeNames = LevelIndex.compositeColumns(columnType);
+				if(names.length == 0 || names.length != typeNames.length) {
+					continue;
+				}
+				legacy = names.length == 1 && LevelIndex.legacyType(typeNames[0]);
+				types = new int[typeNames.length];
+				for(int j = 0; j < types.length; j ++) {
+					if((types[j] = LevelIndex.loadType(typeNames[j], types.length == 1)) == -1) {
+						types = null;
+						break;
+					}
+				}
+				if(types == null) {
 					continue;
 				}
-				idxList.add(new LevelIndex(Converter.convertInt(columnType), columnName, leveldb));
+				// 以前の形式の場合は、新しい形式のパスで作成する.
+				idxList.add(LevelIndex.create(types, names, include, leveldb, null));
+				if(legacy) {
+					upgrade.add(idxList.get(idxList.size() - 1));
+					upgradePath.add(dirPath + fname);
+				}
 			}
 			if((len = idxList.size()) <= 0) {
 				return;
@@ -138,8 +222,48 @@ public abstract class LevelIndexOperator extends LevelOperator {
 		}
 	}
 	
+	// 以前の形式のインデックス名を、新しい形式のインデックス名に変換.
+	private static final String upgradeName(String fname) {
+		return fname.substring(0, fname.length() - LevelIndex.INDEX_FOODER.length()) +
+			LevelIndex.SORTABLE_TYPE + LevelIndex.INDEX_FOODER;
+	}
+	
+	// 以前の形式のインデックスを再生成して、以前の形式のものを削除.
+	private void upgradeIndex(OList<LevelIndex> upgrade, OList<String> upgradePath) {
+		final int len = upgrade.size();
+		for(int i = 0; i < len; i ++) {
+			upgrade.get(i).toIndex();
+			Leveldb.destroy(upgradePath.get(i));
+		}
+	}
+	
+	// 更新時に以前の要素のインデックスを削除する必要があるかチェック.
+	// 全ての種類のインデックスで、更新前のインデックス情報を削除するため、
+	// 利用中のインデックスが存在する場合は必要.
+	protected boolean needsOldValue() {
+		indexLock.readLock().lock();
+		try {
+			LevelIndex idx;
+			final int len = indexList == null ? 0 : indexList.size();
+			for(int i = 0; i < len; i ++) {
+				if((idx = indexList.get(i)) != null && !idx.isClose()) {
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			indexLock.readLock().unlock();
+		}
+	}
+	
 	// インデックスにデータを追加.
 	protected void putIndex(Object key, Object twoKey, Object value) {
+		putIndex(key, twoKey, null, value);
+	}
+	
+	// インデックスにデータを追加.
+	// old が設定されている場合は、インデックスの以前の情報を削除する.
+	protected void putIndex(Object key, Object twoKey, Object old, Object value) {
 		indexLock.readLock().lock();
 		try {
 			// 現在の全インデックスにデータ登録.
@@ -158,7 +282,70 @@ public abstract class LevelIndexOperator extends LevelOperator {
 			}
 			for(int i = 0; i < len; i ++) {
 				if((idx = indexList.get(i)) != null && !idx.isClose()) {
-					idx.put(key, twoKey, value);
+					if(old != null) {
+						idx.update(key, twoKey, old, value);
+					} else {
+						idx.put(key, twoKey, value);
+					}
+				}
+			}
+			recordBuild(key, twoKey);
+		} finally {
+			indexLock.readLock().unlock();
+		}
+	}
+	
+	// 一括更新の対象キーに対する以前の要素群を取得.
+	// 以前の要素が存在しない場合は[null]を返却する.
+	protected Object[] oldValues(Object[] keys, Object[] twoKeys, int off, int len) {
+		return null;
+	}
+	
+	// インデックスにデータを一括追加.
+	protected void putIndex(Object[] keys, Object[] twoKeys, Object[] values, int off, int len) {
+		putIndex(keys, twoKeys, null, values, off, len);
+	}
+	
+	// インデックスにデータを一括追加.
+	// olds が設定されている場合は、インデックスの以前の情報を削除する.
+	// olds[n] は keys[off + n] に対する以前の要素.
+	protected void putIndex(Object[] keys, Object[] twoKeys, Object[] olds, Object[] values, int off, int len) {
+		indexLock.readLock().lock();
+		try {
+			LevelIndex idx;
+			for(int i = 0; i < len; i ++) {
+				recordBuild(keys[off + i], twoKeys == null ? null : twoKeys[off + i]);
+			}
+			final int idxLen = indexList == null ? 0 : indexList.size();
+			if(idxLen == 0) {
+				return;
+			}
+			// JniBufferの要素はデコードする.
+			Object[] vals = values;
+			for(int i = 0; i < len; i ++) {
+				if(values[off + i] instanceof JniBuffer) {
+					if(vals == values) {
+						vals = new Object[off + len];
+						System.arraycopy(values, off, vals, off, len);
+					}
+					try {
+						vals[off + i] = LevelValues.decode((JniBuffer) values[off + i]);
+					} catch(Exception e) {
+						throw new LeveldbException(e);
+					}
+				}
+			}
+			for(int i = 0; i < idxLen; i ++) {
+				if((idx = indexList.get(i)) != null && !idx.isClose()) {
+					if(olds != null) {
+						for(int j = 0; j < len; j ++) {
+							if(olds[j] != null) {
+								idx.removeOld(keys[off + j], twoKeys == null ? null : twoKeys[off + j],
+									olds[j], vals[off + j]);
+							}
+						}
+					}
+					idx.putAll(keys, twoKeys, vals, off, len);
 				}
 			}
 		} finally {
@@ -189,14 +376,47 @@ public abstract class LevelIndexOperator extends LevelOperator {
 					idx.remove(key, twoKey, value);
 				}
 			}
+			recordBuild(key, twoKey);
 		} finally {
 			indexLock.readLock().unlock();
 		}
 	}
 	
+	// オンライン生成中のインデックスに、書き込みキーを記録.
+	// indexLock の読み込みロックを取得した状態で呼び出す.
+	private void recordBuild(Object key, Object twoKey) {
+		if(builders.isEmpty()) {
+			return;
+		}
+		JniBuffer keyBuf = null;
+		try {
+			keyBuf = LevelBuffer.key(leveldb.getType(), key, twoKey);
+			final byte[] k = keyBuf.getBinary();
+			for(LevelIndexBuilder b : builders) {
+				b.record(k);
+			}
+		} catch(LeveldbException le) {
+			throw le;
+		} catch(Exception e) {
+			throw new LeveldbException(e);
+		} finally {
+			LevelBuffer.release(keyBuf, null);
+		}
+	}
+	
+	// オンライン生成を中止.
+	private void cancelBuild() {
+		if(builders != null && indexRoot == this) {
+			for(LevelIndexBuilder b : builders) {
+				b.cancel();
+			}
+		}
+	}
+	
 	@Override
 	public void close() {
-		if(closeFlag.get()) {
+		if(!closeFlag.get()) {
+			cancelBuild();
 			closeIndex();
 			super.close();
 		}
@@ -222,9 +442,15 @@ public abstract class LevelIndexOperator extends LevelOperator {
 	// このオペレータを完全破棄.
 	@Override
 	public boolean deleteComplete() {
+		cancelBuild();
 		if(super.deleteComplete()) {
 			List<Exception> errs = new ObjectList<Exception>();
 			deleteAllIndexComplete(errs);
+			try {
+				redoLog.clear();
+			} catch(Exception e) {
+				errs.add(e);
+			}
 			// エラーの場合は最初のエラーを返却.
 			if(errs.size() > 0) {
 				if(errs.get(0) instanceof LeveldbException) {
@@ -237,6 +463,65 @@ public abstract class LevelIndexOperator extends LevelOperator {
 		return false;
 	}
 	
+	// REDOログの内容を再反映.
+	// indexLock と redoLog.lock を取得した状態で呼び出す.
+	private void applyRedo() {
+		final Object[] rec = redoLog.read();
+		if(rec != null) {
+			final String[] names = (String[])rec[0];
+			final byte[][] batches = (byte[][])rec[1];
+			final LevelCommitLog.Commit w = commitLog == null ? null : commitLog.writeStart((byte[][])null);
+			try {
+				Leveldb db;
+				WriteBatch b;
+				for(int i = 0; i < names.length; i ++) {
+					// 削除されたインデックスは対象外.
+					if((db = redoTarget(names[i])) == null) {
+						continue;
+					}
+					b = new WriteBatch();
+					try {
+						b.putBinary(batches[i]);
+						b.execute(db);
+					} finally {
+						b.close();
+					}
+				}
+			} finally {
+				if(w != null) {
+					commitLog.writeEnd(w);
+				}
+			}
+			clearCache();
+		}
+		redoLog.clear();
+	}
+	
+	// REDOログの反映先を取得.
+	private Leveldb redoTarget(String name) {
+		if(name.isEmpty()) {
+			return leveldb;
+		}
+		LevelIndex idx;
+		final int len = indexList == null ? 0 : indexList.size();
+		for(int i = 0; i < len; i ++) {
+			if((idx = indexList.get(i)) != null && !idx.isClose() && name.equals(redoName(idx))) {
+				return idx.leveldb;
+			}
+		}
+		return null;
+	}
+	
+	// REDOログでのインデックス名.
+	private static final String redoName(LevelIndex idx) {
+		return idx.storeName() + LevelIndex.INDEX_CUT + idx.typeName();
+	}
+	
+	// 書き込みが存在するか.
+	private static final boolean isWrite(LevelOperator op) {
+		return op._batch != null && op._batch.size() > 0;
+	}
+	
 	// 全インデックス情報の完全削除処理.
 	// true返却でエラー.
 	private boolean deleteAllIndexComplete(List<Exception> errs) {
@@ -268,9 +553,15 @@ public abstract class LevelIndexOperator extends LevelOperator {
 	
 	@Override
 	public boolean trancate() {
+		cancelBuild();
 		if(super.trancate()) {
 			List<Exception> errs = new ObjectList<Exception>();
 			trancateAllIndex(errs);
+			try {
+				redoLog.clear();
+			} catch(Exception e) {
+				errs.add(e);
+			}
 			// エラーの場合は最初のエラーを返却.
 			if(errs.size() > 0) {
 				if(errs.get(0) instanceof LeveldbException) {
@@ -315,33 +606,144 @@ public abstract class LevelIndexOperator extends LevelOperator {
 		}
 	}
 	
+	/**
+	 * WriteBatch内容を反映.
+	 * <p>
+	 * インデックス元と複数のインデックスに書き込みがある場合は、
+	 * REDOログに記録してから反映するため、途中で終了した場合も
+	 * 次回オープン時にインデックスとの整合性が回復されます.
+	 * </p>
+	 */
 	@Override
 	public void commit() {
-		super.commit();
-		if(writeBatchFlag) {
-			Exception err = null;
-			indexLock.readLock().lock();
+		if(!writeBatchFlag) {
+			super.commit();
+			return;
+		}
+		checkClose();
+		Exception err = null;
+		indexLock.readLock().lock();
+		try {
+			LevelIndex idx;
+			final int len = indexList == null ? 0 : indexList.size();
+			// セッション開始後に追加されたインデックス用に、書き込みキーを保持.
+			final byte[][] written = (isWrite(this) && _batch instanceof WriteBatchIndex &&
+				(!builders.isEmpty() || !indexRoot.isIndexListEmpty())) ?
+				((WriteBatchIndex)_batch).keys() : null;
+			// 書き込み先のLeveldb数.
+			int writes = isWrite(this) ? 1 : 0;
+			for(int i = 0; i < len; i ++) {
+				if((idx = indexList.get(i)) != null && !idx.isClose() && isWrite(idx)) {
+					writes ++;
+				}
+			}
+			final boolean redo = writes > 1;
+			if(redo) {
+				redoLog.lock.lock();
+			}
 			try {
-				LevelIndex idx;
-				final int len = indexList == null ? 0 : indexList.size();
+				// REDOログに記録した内容と、その反映先のインデックス.
+				String[] names = null;
+				byte[][] batches = null;
+				LevelIndex[] targets = null;
+				if(redo) {
+					// 前回の反映が失敗している場合は、先に再反映する.
+					if(redoLog.isPending()) {
+						applyRedo();
+					}
+					names = new String[writes];
+					batches = new byte[writes][];
+					targets = new LevelIndex[writes];
+					int n = 0;
+					final boolean main = isWrite(this);
+					if(main) {
+						names[n] = "";
+						batches[n ++] = _batch.getBinary();
+					}
+					for(int i = 0; i < len; i ++) {
+						if((idx = indexList.get(i)) != null && !idx.isClose() && isWrite(idx)) {
+							names[n] = redoName(idx);
+							targets[n] = idx;
+							batches[n ++] = idx._batch.getBinary();
+						}
+					}
+					redoLog.write(names, batches);
+					try {
+						super.commit();
+					} catch(RuntimeException e) {
+						// インデックス元に反映されていないので、記録を破棄する.
+						redoLog.clear();
+						throw e;
+					}
+					// インデックス元は反映済みなので、再反映で後続の書き込みを
+					// 上書きしないように、インデックスの内容のみを記録し直す.
+					if(main) {
+						names = Arrays.copyOfRange(names, 1, n);
+						batches = Arrays.copyOfRange(batches, 1, n);
+						targets = Arrays.copyOfRange(targets, 1, n);
+						redoLog.write(names, batches);
+					}
+				} else {
+					super.commit();
+				}
+				// 反映に失敗したインデックスの記録位置.
+				int[] failed = null;
+				int failedLen = 0;
 				for(int i = 0; i < len; i ++) {
 					if((idx = indexList.get(i)) != null && !idx.isClose()) {
 						try {
 							idx.commit();
 						} catch(Exception e) {
 							err = e;
+							for(int j = 0; redo && j < targets.length; j ++) {
+								if(targets[j] == idx) {
+									if(failed == null) {
+										failed = new int[targets.length];
+									}
+									failed[failedLen ++] = j;
+									break;
+								}
+							}
+						}
+					}
+				}
+				if(redo) {
+					// 全て反映できた場合は、記録を削除.
+					// 失敗した場合は、反映されていない内容のみを記録し直して、
+					// 次のコミットかオープン時に再反映する.
+					if(failedLen == 0) {
+						redoLog.clear();
+					} else if(failedLen < targets.length) {
+						final String[] fnames = new String[failedLen];
+						final byte[][] fbatches = new byte[failedLen][];
+						for(int i = 0; i < failedLen; i ++) {
+							fnames[i] = names[failed[i]];
+							fbatches[i] = batches[failed[i]];
+						}
+						redoLog.write(fnames, fbatches);
+					}
+				}
+				if(written != null) {
+					for(LevelIndexBuilder b : builders) {
+						for(int i = 0; i < written.length; i ++) {
+							b.record(written[i]);
 						}
 					}
+					indexRoot.reindexMissing(indexList, written);
 				}
 			} finally {
-				indexLock.readLock().unlock();
-			}
-			if(err != null) {
-				if(err instanceof LeveldbException) {
-					throw (LeveldbException)err;
+				if(redo) {
+					redoLog.lock.unlock();
 				}
-				throw new LeveldbException(err);
 			}
+		} finally {
+			indexLock.readLock().unlock();
+		}
+		if(err != null) {
+			if(err instanceof LeveldbException) {
+				throw (LeveldbException)err;
+			}
+			throw new LeveldbException(err);
 		}
 	}
 	
@@ -377,43 +779,258 @@ public abstract class LevelIndexOperator extends LevelOperator {
 	
 	/**
 	 * 新しいインデックスを作成.
+	 * 生成中も書き込みは停止しません. 生成が終了するまで待機します.
 	 * 
 	 * @param columnType インデックスカラムタイプ.
 	 * @param column インデクスカラム名を設定します.
 	 *               設定方法は、hoge.moge.abc や "hoge", "moge", "abc"のように階層設定可能.
 	 */
 	public void createIndex(int columnType, String... column) {
+		newBuilder(true, new int[] { columnType }, single(column), null).run();
+	}
+	
+	/**
+	 * 新しい複合インデックスを作成.
+	 * <p>
+	 * 複数カラムの値を順序を保持したタプルとしてインデックス化し、
+	 * LevelIndex の prefix / range で、先頭カラムからの一致検索と次のカラムの範囲検索が行えます.
+	 * インデックス名は、カラム名を ',' 区切りで連結したものとなります.
+	 * </p>
+	 * 
+	 * @param columnTypes カラム毎のインデックスカラムタイプ(バイナリは利用できません).
+	 * @param columns インデクスカラム名群を設定します.
+	 *                それぞれ hoge.moge.abc のように階層設定可能.
+	 */
+	public void createIndex(int[] columnTypes, String... columns) {
+		newBuilder(true, columnTypes, columns, null).run();
+	}
+	
+	/**
+	 * 射影カラムを指定して、新しいインデックスを作成.
+	 * <p>
+	 * 射影カラムの値はインデックスに格納され、LevelIndexIterator.projection で
+	 * インデックス元を読み込まずに取得できます.
+	 * インデックス名には射影カラムを含みません.
+	 * </p>
+	 * 
+	 * @param columnTypes カラム毎のインデックスカラムタイプ.
+	 * @param columns インデクスカラム名群を設定します. 複数の場合は複合インデックスとなります.
+	 *                それぞれ hoge.moge.abc のように階層設定可能.
+	 * @param include 射影カラム名群を設定します.
+	 *                それぞれ hoge.moge.abc のように階層設定可能.
+	 */
+	public void createIndex(int[] columnTypes, String[] columns, String[] include) {
+		newBuilder(true, columnTypes, columns, include).run();
+	}
+	
+	/**
+	 * インデックスをオンラインで生成.
+	 * <p>
+	 * 書き込みを止めずに、別スレッドでインデックスを生成します.
+	 * 既に存在するインデックスの場合は再生成し、切り替えまでは既存のインデックスで読み込みます.
+	 * </p>
+	 * 
+	 * @param columnType インデックスカラムタイプ.
+	 * @param column インデクスカラム名を設定します.
+	 *               設定方法は、hoge.moge.abc や "hoge", "moge", "abc"のように階層設定可能.
+	 * @return LevelIndexBuilder 生成状況が返却されます.
+	 */
+	public LevelIndexBuilder buildIndex(int columnType, String... column) {
+		return buildIndex(null, columnType, column);
+	}
+	
+	/**
+	 * 複合インデックスをオンラインで生成.
+	 * 
+	 * @param columnTypes カラム毎のインデックスカラムタイプ(バイナリは利用できません).
+	 * @param columns インデクスカラム名群を設定します.
+	 *                それぞれ hoge.moge.abc のように階層設定可能.
+	 * @return LevelIndexBuilder 生成状況が返却されます.
+	 */
+	public LevelIndexBuilder buildIndex(int[] columnTypes, String... columns) {
+		return buildIndex(null, columnTypes, columns);
+	}
+	
+	/**
+	 * インデックスをオンラインで生成.
+	 * 
+	 * @param executor 生成処理を行うスレッドプールを設定します.
+	 *                 [null]の場合はデフォルトのスレッドプールを利用します.
+	 * @param columnType インデックスカラムタイプ.
+	 * @param column インデクスカラム名を設定します.
+	 *               設定方法は、hoge.moge.abc や "hoge", "moge", "abc"のように階層設定可能.
+	 * @return LevelIndexBuilder 生成状況が返却されます.
+	 */
+	public LevelIndexBuilder buildIndex(LevelAsyncExecutor executor, int columnType, String... column) {
+		return newBuilder(false, new int[] { columnType }, single(column), null).start(executor);
+	}
+	
+	/**
+	 * 複合インデックスをオンラインで生成.
+	 * 
+	 * @param executor 生成処理を行うスレッドプールを設定します.
+	 *                 [null]の場合はデフォルトのスレッドプールを利用します.
+	 * @param columnTypes カラム毎のインデックスカラムタイプ(バイナリは利用できません).
+	 * @param columns インデクスカラム名群を設定します.
+	 *                それぞれ hoge.moge.abc のように階層設定可能.
+	 * @return LevelIndexBuilder 生成状況が返却されます.
+	 */
+	public LevelIndexBuilder buildIndex(LevelAsyncExecutor executor, int[] columnTypes, String... columns) {
+		return newBuilder(false, columnTypes, columns, null).start(executor);
+	}
+	
+	/**
+	 * 射影カラムを指定して、インデックスをオンラインで生成.
+	 * 既に存在するインデックスの場合は、指定した射影カラムで再生成します.
+	 * 
+	 * @param executor 生成処理を行うスレッドプールを設定します.
+	 *                 [null]の場合はデフォルトのスレッドプールを利用します.
+	 * @param columnTypes カラム毎のインデックスカラムタイプ.
+	 * @param columns インデクスカラム名群を設定します. 複数の場合は複合インデックスとなります.
+	 * @param include 射影カラム名群を設定します. [null]の場合は射影しません.
+	 * @return LevelIndexBuilder 生成状況が返却されます.
+	 */
+	public LevelIndexBuilder buildIndex(LevelAsyncExecutor executor, int[] columnTypes, String[] columns,
+		String[] include) {
+		return newBuilder(false, columnTypes, columns, include).start(executor);
+	}
+	
+	// 階層設定のカラム名を、１つのカラム名に変換.
+	private static final String[] single(String[] column) {
+		if(column == null || column.length == 0) {
+			throw new NullPointerException();
+		}
+		final String ret = LevelIndex.srcColumnNames(column);
+		// ',' は複合インデックス、'+' は射影カラムの区切り文字.
+		if(ret.indexOf(LevelIndex.COMPOSITE_CUT) != -1 || ret.indexOf(LevelIndex.INCLUDE_CUT) != -1) {
+			throw new LeveldbException("Invalid index column name: " + ret);
+		}
+		return new String[] { ret };
+	}
+	
+	// インデックスのオンライン生成を登録.
+	// 登録後の書き込みキーは記録される.
+	private LevelIndexBuilder newBuilder(boolean create, int[] columnTypes, String[] columns, String[] include) {
 		checkClose();
 		// writeBatchモードの場合は、この処理は実行出来ない.
 		if(writeBatchFlag) {
 			throw new LeveldbException("This process cannot be used in writeBatch mode.");
-		} else if(column == null || column.length == 0) {
+		} else if(columnTypes == null || columns == null || columns.length == 0) {
 			throw new NullPointerException();
+		} else if(columnTypes.length != columns.length) {
+			throw new LeveldbException("The number of column types and column names do not match.");
 		}
-		final String columnName = LevelIndex.srcColumnNames(column);
+		final String columnName = LevelIndex.compositeName(columns);
 		indexLock.writeLock().lock();
 		try {
+			final boolean exists = indexColumns != null && indexColumns.search(columnName) != -1;
 			// 既に登録されているカラム名の場合.
-			if(indexColumns != null && indexColumns.search(columnName) != -1) {
+			if(create && exists) {
 				throw new LeveldbException("Index of column name '"+ columnName + "' is already registered.");
 			}
-			final LevelIndex idx = new LevelIndex(columnType, columnName, leveldb);
-			// 現在のデータ分インデックスを作成する.
-			idx.toIndex(null);
-			// インデックス情報の登録.
-			if(indexList != null) {
-				indexList.add(idx);
-				indexColumns.add(columnName, indexList.size() - 1);
+			for(LevelIndexBuilder b : builders) {
+				if(b.getColumnName().equals(columnName)) {
+					throw new LeveldbException("Index of column name '"+ columnName + "' is already being built.");
+				}
+			}
+			final LevelIndexBuilder ret = new LevelIndexBuilder(this, columnTypes, columns, include, exists);
+			builders.add(ret);
+			return ret;
+		} finally {
+			indexLock.writeLock().unlock();
+		}
+	}
+	
+	// オンライン生成したインデックスに切り替え.
+	void switchIndex(LevelIndexBuilder b, LeveldbSnapshot snapshot) {
+		indexLock.writeLock().lock();
+		try {
+			checkClose();
+			// 残りの書き込みキーを反映.
+			b.applyDelta(snapshot);
+			final String columnName = b.getColumnName();
+			final int no = indexColumns == null ? -1 : indexColumns.search(columnName);
+			if(b.isRebuild()) {
+				if(no == -1) {
+					throw new LeveldbException("Index of column name '"+ columnName + "' does not exist.");
+				}
+				// 既存のインデックスを削除して、置き換える.
+				final LevelIndex old = indexList.get(no);
+				String path = old.getPath();
+				LevelOption opt = old.getOption();
+				old.close();
+				Leveldb.destroy(path, opt);
+				try {
+					indexList.set(no, b.publish());
+				} catch(RuntimeException e) {
+					indexList.remove(no);
+					if(indexList.size() == 0) {
+						indexList = null;
+						indexColumns = null;
+					} else {
+						indexColumns = createSearchArray(indexList);
+					}
+					throw e;
+				}
 			} else {
-				indexList = new OList<LevelIndex>();
-				indexList.add(idx);
-				indexColumns = new FixedSearchArray<String>(columnName);
+				if(no != -1) {
+					throw new LeveldbException("Index of column name '"+ columnName + "' is already registered.");
+				}
+				final LevelIndex idx = b.publish();
+				// インデックス情報の登録.
+				if(indexList != null) {
+					indexList.add(idx);
+					indexColumns.add(columnName, indexList.size() - 1);
+				} else {
+					indexList = new OList<LevelIndex>();
+					indexList.add(idx);
+					indexColumns = new FixedSearchArray<String>(columnName);
+				}
 			}
+			builders.remove(b);
 		} finally {
 			indexLock.writeLock().unlock();
 		}
 	}
 	
+	// オンライン生成の登録を削除.
+	void removeBuilder(LevelIndexBuilder b) {
+		builders.remove(b);
+	}
+	
+	// インデックス一覧が空かチェック.
+	// indexLock を取得した状態で呼び出す.
+	private boolean isIndexListEmpty() {
+		return indexList == null || indexList.size() == 0;
+	}
+	
+	// セッションに存在しないインデックスに、書き込みキーを反映.
+	// セッション開始後に作成・再生成されたインデックスが対象となる.
+	// indexLock を取得した状態で呼び出す.
+	private void reindexMissing(OList<LevelIndex> sessionList, byte[][] keys) {
+		LevelIndex idx, s;
+		final int len = indexList == null ? 0 : indexList.size();
+		final int sLen = sessionList == null ? 0 : sessionList.size();
+		for(int i = 0; i < len; i ++) {
+			if((idx = indexList.get(i)) == null || idx.isClose()) {
+				continue;
+			}
+			boolean found = false;
+			for(int j = 0; j < sLen; j ++) {
+				if((s = sessionList.get(j)) != null && !s.isClose() &&
+					s.indexColumnName.equals(idx.indexColumnName)) {
+					found = true;
+					break;
+				}
+			}
+			if(!found) {
+				for(int j = 0; j < keys.length; j ++) {
+					idx.reindex(keys[j], null);
+				}
+			}
+		}
+	}
+	
 	/**
 	 * インデックスを削除.
 	 * 
@@ -515,6 +1132,19 @@ public abstract class LevelIndexOperator extends LevelOperator {
 		}
 	}
 	
+	/**
+	 * インデックス情報のFlow.Publisherを取得.
+	 * 昇順で情報を通知します.
+	 * 
+	 * @param value 開始位置の要素を設定します.
+	 * @param column インデクスカラム名を設定します.
+	 *               設定方法は、hoge.moge.abc や "hoge", "moge", "abc"のように階層設定可能.
+	 * @return
+	 */
+	public LevelPublisher<Map.Entry<Object, Map>> getIndexPublisher(Object value, String... column) {
+		return getLevelIndex(column).publisher(value);
+	}
+	
 	/**
 	 * LevelIndexオブジェクトを取得.
 	 * 
@@ -542,6 +1172,19 @@ public abstract class LevelIndexOperator extends LevelOperator {
 		}
 	}
 	
+	/**
+	 * 複合インデックスのLevelIndexオブジェクトを取得.
+	 * 
+	 * @param columns インデクスカラム名群を設定します.
+	 * @return
+	 */
+	public LevelIndex getCompositeIndex(String... columns) {
+		if(columns == null || columns.length == 0) {
+			throw new NullPointerException();
+		}
+		return getLevelIndex(LevelIndex.compositeName(columns));
+	}
+	
 	/**
 	 * インデックスが存在するかチェック.
 	 * 
@@ -647,11 +1290,12 @@ public abstract class LevelIndexOperator extends LevelOperator {
 	}
 	
 	// インデックスが存在するかチェ)ック.
+	// オンライン生成中のインデックスが存在する場合は、書き込みキーを記録するため[false].
 	protected boolean indexEmpty() {
 		checkClose();
 		indexLock.readLock().lock();
 		try {
-			return indexList == null || indexList.size() <= 0;
+			return (indexList == null || indexList.size() <= 0) && builders.isEmpty();
 		} finally {
 			indexLock.readLock().unlock();
 		}
@@ -0,0 +1,74 @@
+package org.maachang.leveldb.operator;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.maachang.leveldb.JniBuffer;
+import org.maachang.leveldb.JniIO;
+
+/**
+ * キー単位のストライプロック.
+ * <p>
+ * エンコード済みキーのハッシュでロックを選択するため、
+ * 異なるキーの更新は、オペレータ全体のロックを取らずに並列で処理できます.
+ * 同じキーは、キーの型に関係なく(例えば Integer と Long で)同じロックとなります.
+ * </p>
+ */
+public final class LevelKeyLocks {
+
+	/** デフォルトのストライプ数. **/
+	public static final int DEFAULT_STRIPE = 256;
+
+	private final ReentrantLock[] locks;
+	private final int mask;
+
+	/**
+	 * コンストラクタ.
+	 */
+	public LevelKeyLocks() {
+		this(DEFAULT_STRIPE);
+	}
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param stripe
+	 *            ストライプ数を設定します. ２の累乗に切り上げられます.
+	 */
+	public LevelKeyLocks(int stripe) {
+		int n = 1;
+		while (n < stripe) {
+			n <<= 1;
+		}
+		locks = new ReentrantLock[n];
+		mask = n - 1;
+		for (int i = 0; i < n; i++) {
+			locks[i] = new ReentrantLock();
+		}
+	}
+
+	/**
+	 * キーに対するロックを取得.
+	 *
+	 * @param keyBuf
+	 *            エンコード済みのキーを設定します.
+	 * @return ReentrantLock ロックが返却されます.
+	 */
+	public ReentrantLock get(JniBuffer keyBuf) {
+		return locks[hash(keyBuf.address(), keyBuf.position()) & mask];
+	}
+
+	// キーのハッシュを取得.
+	private static final int hash(long addr, int len) {
+		int h = 1;
+		int i = 0;
+		long v;
+		for (; i + 8 <= len; i += 8) {
+			v = JniIO.getLong(addr, i);
+			h = 31 * h + (int) (v ^ (v >>> 32));
+		}
+		for (; i < len; i++) {
+			h = 31 * h + JniIO.get(addr, i);
+		}
+		return h ^ (h >>> 16);
+	}
+}
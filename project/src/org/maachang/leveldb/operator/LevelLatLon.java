@@ -1,5 +1,8 @@
 package org.maachang.leveldb.operator;
 
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 import org.maachang.leveldb.JniBuffer;
@@ -104,6 +107,17 @@ public class LevelLatLon extends LevelIndexOperator {
 		// インデックス初期化処理.
 		super.initIndex(latlon);
 	}
+
+	/**
+	 * セッションを開始.
+	 * 
+	 * @return LevelLatLon WriteBatchモードのLevelLatLonが返却されます.
+	 */
+	@Override
+	public LevelLatLon begin() {
+		checkBegin();
+		return new LevelLatLon(this);
+	}
 	
 	private static final byte[] MIN_BINARY = new byte[0];
 	
@@ -202,6 +216,9 @@ public class LevelLatLon extends LevelIndexOperator {
 					throw new LeveldbException("Second key is not set correctly.");
 				}
 			}
+			// インデックスが存在する場合は、以前の要素のインデックスを削除する.
+			// 新しいシーケンスIDの場合は、以前の要素は存在しない.
+			final Object old = seqId == null && needsOldValue() ? get(qk, secKey) : null;
 			keyBuf = LevelBuffer.key(type, qk, secKey);
 			if (value instanceof JniBuffer) {
 				if(writeBatchFlag) {
@@ -211,12 +228,12 @@ public class LevelLatLon extends LevelIndexOperator {
 				}
 				// インデックス処理.
 				if(!indexEmpty()) {
-					LevelBuffer.clearBuffer(keyBuf, null);
+					LevelBuffer.release(keyBuf, null);
 					keyBuf = null;
-					super.putIndex(qk, secKey, value);
+					super.putIndex(qk, secKey, old, value);
 				}
 			} else {
-				valBuf = LevelBuffer.value(value);
+				valBuf = valueBuffer(value);
 				if(writeBatchFlag) {
 					writeBatch().put(keyBuf, valBuf);
 				} else {
@@ -224,9 +241,9 @@ public class LevelLatLon extends LevelIndexOperator {
 				}
 				// インデックス処理.
 				if(!indexEmpty()) {
-					LevelBuffer.clearBuffer(keyBuf, valBuf);
+					LevelBuffer.release(keyBuf, valBuf);
 					keyBuf = null; valBuf = null;
-					super.putIndex(qk, secKey, value);
+					super.putIndex(qk, secKey, old, value);
 				}
 			}
 			
@@ -240,7 +257,7 @@ public class LevelLatLon extends LevelIndexOperator {
 		} catch (Exception e) {
 			throw new LeveldbException(e);
 		} finally {
-			LevelBuffer.clearBuffer(keyBuf, valBuf);
+			LevelBuffer.release(keyBuf, valBuf);
 		}
 	}
 	
@@ -297,7 +314,7 @@ public class LevelLatLon extends LevelIndexOperator {
 				WriteBatch b = writeBatch();
 				b.remove(keyBuf);
 				if(idxFlg) {
-					LevelBuffer.clearBuffer(keyBuf, null);
+					LevelBuffer.release(keyBuf, null);
 					keyBuf = null;
 					super.removeIndex(qk, secKey, v);
 				}
@@ -305,7 +322,7 @@ public class LevelLatLon extends LevelIndexOperator {
 			}
 			boolean ret = leveldb.remove(keyBuf);
 			if(idxFlg && ret) {
-				LevelBuffer.clearBuffer(keyBuf, null);
+				LevelBuffer.release(keyBuf, null);
 				keyBuf = null;
 				super.removeIndex(qk, secKey, v);
 			}
@@ -315,7 +332,7 @@ public class LevelLatLon extends LevelIndexOperator {
 		} catch (Exception e) {
 			throw new LeveldbException(e);
 		} finally {
-			LevelBuffer.clearBuffer(keyBuf, null);
+			LevelBuffer.release(keyBuf, null);
 		}
 	}
 	
@@ -362,7 +379,7 @@ public class LevelLatLon extends LevelIndexOperator {
 		} catch (Exception e) {
 			throw new LeveldbException(e);
 		} finally {
-			LevelBuffer.clearBuffer(keyBuf, valBuf);
+			LevelBuffer.release(keyBuf, valBuf);
 		}
 	}
 	
@@ -404,8 +421,8 @@ public class LevelLatLon extends LevelIndexOperator {
 						ret = true;
 					}
 				}
-			}
-			if (leveldb.get(buf, keyBuf) != 0) {
+			// WriteBatchモードの場合は、書き込み内容とスナップショットのみ参照する.
+			} else if (leveldb.get(buf, keyBuf) != 0) {
 				ret = true;
 			}
 		} catch (LeveldbException le) {
@@ -413,7 +430,7 @@ public class LevelLatLon extends LevelIndexOperator {
 		} catch (Exception e) {
 			throw new LeveldbException(e);
 		} finally {
-			LevelBuffer.clearBuffer(keyBuf, null);
+			LevelBuffer.release(keyBuf, null);
 		}
 		return ret;
 	}
@@ -448,7 +465,7 @@ public class LevelLatLon extends LevelIndexOperator {
 		} catch (Exception e) {
 			throw new LeveldbException(e);
 		} finally {
-			LevelBuffer.clearBuffer(null, valBuf);
+			LevelBuffer.release(null, valBuf);
 		}
 		return null;
 	}
@@ -565,7 +582,7 @@ public class LevelLatLon extends LevelIndexOperator {
 		checkClose();
 		LevelQKListIterator ret = null;
 		try {
-			ret = new LevelQKListIterator(reverse, this, leveldb.snapshot());
+			ret = new LevelQKListIterator(reverse, this, batchIterator(leveldb.snapshot()));
 			return _search(ret, qk, secKey);
 		} catch(LeveldbException le) {
 			if(ret != null) {
@@ -643,7 +660,7 @@ public class LevelLatLon extends LevelIndexOperator {
 		checkClose();
 		LevelQKListIterator ret = null;
 		try {
-			ret = new LevelQKListIterator(reverse, this, leveldb.iterator());
+			ret = new LevelQKListIterator(reverse, this, batchIterator(leveldb.iterator()));
 			return _search(ret, qk, secKey);
 		} catch(LeveldbException le) {
 			if(ret != null) {
@@ -744,7 +761,7 @@ public class LevelLatLon extends LevelIndexOperator {
 				itr.value(valBuf);
 				Object key = LevelId.get(db.type, keyBuf);
 				Object val = LevelValues.decode(valBuf);
-				LevelBuffer.clearBuffer(keyBuf, valBuf);
+				LevelBuffer.release(keyBuf, valBuf);
 				keyBuf = null;
 				valBuf = null;
 				if(reverse) {
@@ -768,7 +785,7 @@ public class LevelLatLon extends LevelIndexOperator {
 			} catch (Exception e) {
 				throw new LeveldbException(e);
 			} finally {
-				LevelBuffer.clearBuffer(keyBuf, valBuf);
+				LevelBuffer.release(keyBuf, valBuf);
 			}
 		}
 	}
@@ -819,6 +836,153 @@ public class LevelLatLon extends LevelIndexOperator {
 	
 	/** distanceにかける係数. **/
 	private static final double DISTANCE_CODE = 1.003d;
+	/**
+	 * 範囲検索用のFlow.Publisherを取得.
+	 * <p>
+	 * 購読時のスナップショットから、範囲内の情報を要求件数分ずつ通知します.
+	 * キーは [QuadKey, セカンドキー, 距離(メートル)] となります.
+	 * </p>
+	 * @param lat
+	 * @param lon
+	 * @param distance 検索範囲（メートル）を設定します.
+	 * @return
+	 */
+	public LevelPublisher<Map.Entry<Object[], Object>> publisher(double lat, double lon, int distance) {
+		return publisher(GeoQuadKey.create(lat, lon), distance, null, 0);
+	}
+	
+	/**
+	 * 範囲検索用のFlow.Publisherを取得.
+	 * @param qk
+	 * @param distance 検索範囲（メートル）を設定します.
+	 * @return
+	 */
+	public LevelPublisher<Map.Entry<Object[], Object>> publisher(long qk, int distance) {
+		return publisher(qk, distance, null, 0);
+	}
+	
+	/**
+	 * 範囲検索用のFlow.Publisherを取得.
+	 * @param qk
+	 * @param distance 検索範囲（メートル）を設定します.
+	 * @param executor I/Oスレッドプールを設定します. [null]の場合はデフォルトのスレッドプールを利用します.
+	 * @param batch １回の読み込み件数を設定します.
+	 * @return
+	 */
+	public LevelPublisher<Map.Entry<Object[], Object>> publisher(final long qk, final int distance,
+		LevelAsyncExecutor executor, int batch) {
+		checkClose();
+		final LevelLatLon db = this;
+		return new LevelPublisher<Map.Entry<Object[], Object>>(this, executor, batch) {
+			protected Cursor<Map.Entry<Object[], Object>> cursor() {
+				return new SearchCursor(qk, distance, db);
+			}
+		};
+	}
+	
+	/**
+	 * 範囲検索のPublisher用読み込み位置.
+	 * 検索枠の番号と、最後に読み込んだキーから再開します.
+	 */
+	private static final class SearchCursor extends LevelPublisher.Cursor<Map.Entry<Object[], Object>> {
+		private final int type;
+		private final int latM;
+		private final int lonM;
+		private final int distance;
+		private final Object secKey;
+		private final boolean sequence;
+		private final long[] list;
+		private int nowCount = 0;
+		
+		SearchCursor(long qk, int distance, LevelLatLon db) {
+			double[] latLon = GeoQuadKey.latLon(qk);
+			this.list = GeoQuadKey.searchCode(
+				GeoQuadKey.getDetail(distance), latLon[0], latLon[1]);
+			this.type = db.type;
+			this.latM = GeoLine.getLat(latLon[0]);
+			this.lonM = GeoLine.getLon(latLon[1]);
+			this.distance = (int)((double)distance * DISTANCE_CODE);
+			this.secKey = db.minKey;
+			this.sequence = db.sequenceId != null;
+		}
+		
+		@Override
+		protected void start(LeveldbIterator itr) throws Exception {
+			if(nowCount >= 9) {
+				return;
+			}
+			JniBuffer keyBuf = null;
+			try {
+				keyBuf = LevelBuffer.key();
+				LevelId.buf(type, keyBuf, list[nowCount << 1], secKey);
+				itr.seek(keyBuf);
+			} finally {
+				LevelBuffer.release(keyBuf, null);
+			}
+		}
+		
+		// 次の検索枠に移動.
+		private final boolean nextCount(LeveldbIterator itr) throws Exception {
+			key.position(0);
+			if(++ nowCount >= 9) {
+				return false;
+			}
+			start(itr);
+			return true;
+		}
+		
+		@Override
+		protected boolean read(LeveldbIterator itr, ArrayDeque<Map.Entry<Object[], Object>> out, int max)
+			throws Exception {
+			if(nowCount >= 9) {
+				return false;
+			}
+			Object k;
+			long nowQk;
+			int nowDs;
+			double[] latLon = new double[2];
+			JniBuffer valBuf = null;
+			try {
+				valBuf = LevelBuffer.value();
+				for(int i = 0; i < max;) {
+					// データの終端の場合は、次の枠を読みこむ.
+					if(!itr.valid()) {
+						if(!nextCount(itr)) {
+							return false;
+						}
+						continue;
+					}
+					itr.key(key);
+					k = LevelId.get(type, key);
+					nowQk = (Long)((TwoKey)k).get(0);
+					// その枠の終端を検出した場合.
+					if(nowQk > list[(nowCount << 1) + 1]) {
+						if(!nextCount(itr)) {
+							return false;
+						}
+						continue;
+					}
+					// 取得した位置情報は、distanceの範囲内かチェック.
+					GeoQuadKey.latLon(latLon, nowQk);
+					if((nowDs = GeoLine.getFast(latM, lonM, GeoLine.getLat(latLon[0]), GeoLine.getLon(latLon[1]))) > distance) {
+						itr.next();
+						continue;
+					}
+					itr.value(valBuf);
+					out.add(new AbstractMap.SimpleImmutableEntry<Object[], Object>(new Object[] {
+						nowQk, sequence ? Time12SequenceId.toString((byte[])((TwoKey)k).get(1)) : ((TwoKey)k).get(1),
+						nowDs }, LevelValues.decode(valBuf)));
+					valBuf.position(0);
+					itr.next();
+					i ++;
+				}
+				return true;
+			} finally {
+				LevelBuffer.release(null, valBuf);
+			}
+		}
+	}
+	
 	/**
 	 * 範囲検索用LevelQuadKeyDb用Iterator.
 	 */
@@ -843,7 +1007,7 @@ public class LevelLatLon extends LevelIndexOperator {
 				GeoQuadKey.getDetail(distance), latLon[0], latLon[1]);
 			
 			this.db = db;
-			this.itr = snapshot ? db.leveldb.snapshot() : db.leveldb.iterator();
+			this.itr = db.batchIterator(snapshot ? db.leveldb.snapshot() : db.leveldb.iterator());
 			this.type = db.type;
 			this.latM = GeoLine.getLat(latLon[0]);
 			this.lonM = GeoLine.getLon(latLon[1]);
@@ -936,7 +1100,7 @@ public class LevelLatLon extends LevelIndexOperator {
 					this.nowKey = key;
 					this.nowValue = LevelValues.decode(valBuf);
 					this.nowDistance = nowDs;
-					LevelBuffer.clearBuffer(keyBuf, valBuf);
+					LevelBuffer.release(keyBuf, valBuf);
 					keyBuf = null; valBuf = null;
 					// 次の情報を読み込む.
 					itr.next();
@@ -947,7 +1111,7 @@ public class LevelLatLon extends LevelIndexOperator {
 			} catch (Exception e) {
 				throw new LeveldbException(e);
 			} finally {
-				LevelBuffer.clearBuffer(keyBuf, valBuf);
+				LevelBuffer.release(keyBuf, valBuf);
 			}
 		}
 
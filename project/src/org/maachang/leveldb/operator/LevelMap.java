@@ -1,21 +1,37 @@
 package org.maachang.leveldb.operator;
 
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.maachang.leveldb.JniBuffer;
 import org.maachang.leveldb.JniIO;
 import org.maachang.leveldb.LevelBuffer;
 import org.maachang.leveldb.LevelId;
 import org.maachang.leveldb.LevelOption;
+import org.maachang.leveldb.LevelValueCursor;
+import org.maachang.leveldb.LevelValueView;
 import org.maachang.leveldb.LevelValues;
 import org.maachang.leveldb.Leveldb;
 import org.maachang.leveldb.LeveldbException;
 import org.maachang.leveldb.LeveldbIterator;
 import org.maachang.leveldb.WriteBatch;
+import org.maachang.leveldb.types.IntInt;
+import org.maachang.leveldb.types.IntLong;
+import org.maachang.leveldb.types.LongInt;
+import org.maachang.leveldb.types.LongLong;
+import org.maachang.leveldb.types.TwoKey;
 import org.maachang.leveldb.util.ConvertMap;
 
 /**
@@ -23,6 +39,12 @@ import org.maachang.leveldb.util.ConvertMap;
  */
 @SuppressWarnings("rawtypes")
 public class LevelMap extends LevelIndexOperator implements ConvertMap {
+	/** 範囲削除で、インデックスを含めて１回に反映する件数. **/
+	protected static final int REMOVE_RANGE_BATCH_LENGTH = 1000;
+
+	/** 範囲削除後にコンパクションを行う削除件数. **/
+	protected static final long VACUUM_REMOVE_LENGTH = 10000L;
+
 	protected LevelMapSet set;
 	protected int type;
 	
@@ -81,6 +103,17 @@ public class LevelMap extends LevelIndexOperator implements ConvertMap {
 		super.initIndex(src);
 	}
 
+	/**
+	 * セッションを開始.
+	 * 
+	 * @return LevelMap WriteBatchモードのLevelMapが返却されます.
+	 */
+	@Override
+	public LevelMap begin() {
+		checkBegin();
+		return new LevelMap(this);
+	}
+
 	@Override
 	public void close() {
 		this.set = null;
@@ -97,17 +130,57 @@ public class LevelMap extends LevelIndexOperator implements ConvertMap {
 
 	/**
 	 * 指定Map情報の内容をすべてセット.
+	 * <p>
+	 * キー・要素のエンコードを並列で行い、WriteBatchでまとめて書き込みます.
+	 * インデックスが存在する場合は、インデックスもまとめて更新されます.
+	 * </p>
 	 * 
 	 * @param toMerge
 	 *            追加対象のMapを設定します.
 	 */
 	public void putAll(Map toMerge) {
 		checkClose();
-		Object k;
-		Iterator it = toMerge.keySet().iterator();
-		while (it.hasNext()) {
-			put((k = it.next()), toMerge.get(k));
+		final int len = toMerge.size();
+		if (len == 0) {
+			return;
+		}
+		final Object[] keys = new Object[len];
+		final Object[] values = new Object[len];
+		int n = 0;
+		Map.Entry e;
+		Iterator it = toMerge.entrySet().iterator();
+		while (it.hasNext() && n < len) {
+			e = (Map.Entry) it.next();
+			keys[n] = e.getKey();
+			values[n++] = e.getValue();
+		}
+		LevelBulkWriter.write(this, type, keys, null, values, n);
+	}
+
+	// 一括更新の対象キーに対する以前の要素群を取得.
+	@Override
+	protected Object[] oldValues(Object[] keys, Object[] twoKeys, int off, int len) {
+		Object[] ret = null;
+		JniBuffer valBuf = null;
+		try {
+			valBuf = LevelBuffer.value();
+			for (int i = 0; i < len; i++) {
+				valBuf.clear();
+				if (getBuffer(valBuf, keys[off + i], twoKeys == null ? null : twoKeys[off + i])) {
+					if (ret == null) {
+						ret = new Object[len];
+					}
+					ret[i] = LevelValues.decode(valBuf);
+				}
+			}
+		} catch (LeveldbException le) {
+			throw le;
+		} catch (Exception e) {
+			throw new LeveldbException(e);
+		} finally {
+			LevelBuffer.release(null, valBuf);
 		}
+		return ret;
 	}
 
 	/**
@@ -156,7 +229,7 @@ public class LevelMap extends LevelIndexOperator implements ConvertMap {
 			if(!writeBatchFlag) {
 				it.close();
 			}
-			LevelBuffer.clearBuffer(null, valBuf);
+			LevelBuffer.release(null, valBuf);
 		}
 	}
 
@@ -207,37 +280,65 @@ public class LevelMap extends LevelIndexOperator implements ConvertMap {
 	 */
 	public Object put(Object key, Object twoKey, Object value) {
 		checkClose();
+		if (writeBatchFlag) {
+			return _put(key, twoKey, value);
+		}
+		final ReentrantLock lock = _keyLock(key, twoKey);
+		lock.lock();
+		try {
+			return _put(key, twoKey, value);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// 指定キーの情報をセット.
+	private final Object _put(Object key, Object twoKey, Object value) {
 		if (value != null && value instanceof LevelOperator) {
 			throw new LeveldbException("LevelOperator element cannot be set for the element.");
 		}
 		JniBuffer keyBuf = null;
 		JniBuffer valBuf = null;
 		try {
+			// インデックスが存在する場合は、以前の要素のインデックスを削除する.
+			final Object old = needsOldValue() ? get(key, twoKey) : null;
 			keyBuf = _getKey(false, key, twoKey);
 			if (value instanceof JniBuffer) {
 				if(writeBatchFlag) {
 					writeBatch().put(keyBuf, (JniBuffer) value);
 				} else {
-					leveldb.put(keyBuf, (JniBuffer) value);
+					final LevelCommitLog.Commit w = writeStart(keyBuf);
+					try {
+						leveldb.put(keyBuf, (JniBuffer) value);
+					} finally {
+						writeEnd(w);
+					}
 				}
+				invalidateCache(keyBuf);
 				// インデックス処理.
 				if(!indexEmpty()) {
-					LevelBuffer.clearBuffer(keyBuf, null);
+					LevelBuffer.release(keyBuf, null);
 					keyBuf = null;
-					super.putIndex(key, twoKey, value);
+					super.putIndex(key, twoKey, old, value);
 				}
 			} else {
-				valBuf = LevelBuffer.value(value);
+				valBuf = valueBuffer(value);
 				if(writeBatchFlag) {
 					writeBatch().put(keyBuf, valBuf);
 				} else {
-					leveldb.put(keyBuf, valBuf);
+					final LevelCommitLog.Commit w = writeStart(keyBuf);
+					try {
+						leveldb.put(keyBuf, valBuf);
+					} finally {
+						writeEnd(w);
+					}
 				}
+				invalidateCache(keyBuf);
 				// インデックス処理.
 				if(!indexEmpty()) {
-					LevelBuffer.clearBuffer(keyBuf, valBuf);
+					LevelBuffer.release(keyBuf, valBuf);
 					keyBuf = null; valBuf = null;
-					super.putIndex(key, twoKey, value);
+					super.putIndex(key, twoKey, old, value);
 				}
 			}
 			return null;
@@ -246,7 +347,7 @@ public class LevelMap extends LevelIndexOperator implements ConvertMap {
 		} catch (Exception e) {
 			throw new LeveldbException(e);
 		} finally {
-			LevelBuffer.clearBuffer(keyBuf, valBuf);
+			LevelBuffer.release(keyBuf, valBuf);
 		}
 	}
 
@@ -281,6 +382,145 @@ public class LevelMap extends LevelIndexOperator implements ConvertMap {
 		return put(keys, null, value);
 	}
 
+	/**
+	 * 数値キーで情報をセット.
+	 * <p>
+	 * 数値キータイプの場合、キーのオブジェクト変換を行わずにセットします.
+	 * </p>
+	 * 
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @param value
+	 *            対象の要素を設定します.
+	 * @return Object [null]が返却されます.
+	 */
+	public Object putInt(int key, Object value) {
+		return _put(key, 0L, false, value);
+	}
+
+	/**
+	 * 数値キーで情報をセット.
+	 * 
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @param twoKey
+	 *            対象のセカンドキーを設定します.
+	 * @param value
+	 *            対象の要素を設定します.
+	 * @return Object [null]が返却されます.
+	 */
+	public Object putInt(int key, int twoKey, Object value) {
+		return _put(key, twoKey, true, value);
+	}
+
+	/**
+	 * 数値キーで情報をセット.
+	 * <p>
+	 * 数値キータイプの場合、キーのオブジェクト変換を行わずにセットします.
+	 * </p>
+	 * 
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @param value
+	 *            対象の要素を設定します.
+	 * @return Object [null]が返却されます.
+	 */
+	public Object putLong(long key, Object value) {
+		return _put(key, 0L, false, value);
+	}
+
+	/**
+	 * 数値キーで情報をセット.
+	 * 
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @param twoKey
+	 *            対象のセカンドキーを設定します.
+	 * @param value
+	 *            対象の要素を設定します.
+	 * @return Object [null]が返却されます.
+	 */
+	public Object putLong(long key, long twoKey, Object value) {
+		return _put(key, twoKey, true, value);
+	}
+
+	// 数値キーで情報をセット.
+	private final Object _put(long key, long twoKey, boolean two, Object value) {
+		if (!_putNumber(key, twoKey, value)) {
+			// インデックスが存在する場合は、キーのオブジェクトが必要.
+			return put((Object) key, two ? (Object) twoKey : null, value);
+		}
+		return null;
+	}
+
+	// 数値キーのままセット.
+	// インデックスが存在する場合は、セットせずに[false]を返却する.
+	private final boolean _putNumber(long key, long twoKey, Object value) {
+		checkClose();
+		if (value != null && value instanceof LevelOperator) {
+			throw new LeveldbException("LevelOperator element cannot be set for the element.");
+		}
+		ReentrantLock lock = null;
+		boolean indexLocked = false;
+		JniBuffer keyBuf = null;
+		JniBuffer valBuf = null;
+		try {
+			keyBuf = LevelBuffer.numberKey(type, key, twoKey);
+			if (keyBuf == null) {
+				return false;
+			}
+			if (!writeBatchFlag) {
+				lock = keyLocks.get(keyBuf);
+				lock.lock();
+			}
+			// インデックスの生成開始と競合しないように、書き込み完了までロックを保持する.
+			indexLock.readLock().lock();
+			indexLocked = true;
+			if (!indexEmpty()) {
+				return false;
+			}
+			if (value instanceof JniBuffer) {
+				if(writeBatchFlag) {
+					writeBatch().put(keyBuf, (JniBuffer) value);
+				} else {
+					final LevelCommitLog.Commit w = writeStart(keyBuf);
+					try {
+						leveldb.put(keyBuf, (JniBuffer) value);
+					} finally {
+						writeEnd(w);
+					}
+				}
+				invalidateCache(keyBuf);
+			} else {
+				valBuf = valueBuffer(value);
+				if(writeBatchFlag) {
+					writeBatch().put(keyBuf, valBuf);
+				} else {
+					final LevelCommitLog.Commit w = writeStart(keyBuf);
+					try {
+						leveldb.put(keyBuf, valBuf);
+					} finally {
+						writeEnd(w);
+					}
+				}
+				invalidateCache(keyBuf);
+			}
+			return true;
+		} catch (LeveldbException le) {
+			throw le;
+		} catch (Exception e) {
+			throw new LeveldbException(e);
+		} finally {
+			if (indexLocked) {
+				indexLock.readLock().unlock();
+			}
+			if (lock != null) {
+				lock.unlock();
+			}
+			LevelBuffer.release(keyBuf, valBuf);
+		}
+	}
+
 	/**
 	 * 指定キー情報が存在するかチェック.
 	 * 
@@ -315,7 +555,7 @@ public class LevelMap extends LevelIndexOperator implements ConvertMap {
 		} catch (Exception e) {
 			throw new LeveldbException(e);
 		} finally {
-			LevelBuffer.clearBuffer(keyBuf, valBuf);
+			LevelBuffer.release(keyBuf, valBuf);
 		}
 	}
 
@@ -373,8 +613,8 @@ public class LevelMap extends LevelIndexOperator implements ConvertMap {
 						ret = true;
 					}
 				}
-			}
-			if (leveldb.get(buf, keyBuf) != 0) {
+			// WriteBatchモードの場合は、書き込み内容とスナップショットのみ参照する.
+			} else if (leveldb.get(buf, keyBuf) != 0) {
 				ret = true;
 			}
 		} catch (LeveldbException le) {
@@ -383,161 +623,1057 @@ public class LevelMap extends LevelIndexOperator implements ConvertMap {
 			throw new LeveldbException(e);
 		} finally {
 			if (!(key instanceof JniBuffer)) {
-				LevelBuffer.clearBuffer(keyBuf, null);
+				LevelBuffer.release(keyBuf, null);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * 指定キー情報に対する要素を取得.
+	 * 
+	 * @param buf
+	 *            対象の要素格納用バッファを設定します.
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @return boolean [true]の場合、セットされました.
+	 */
+	public boolean getBuffer(JniBuffer buf, Object key) {
+		return getBuffer(buf, key, null);
+	}
+
+	/**
+	 * 指定キー情報に対する要素を取得.
+	 * 
+	 * @param buf
+	 *            対象の要素格納用バッファを設定します.
+	 * @param keys
+	 *            対象のキー群を設定します.
+	 * @return boolean [true]の場合、セットされました.
+	 */
+	public boolean getBufferMultiKey(JniBuffer buf, Object... keys) {
+		if (type != LevelOption.TYPE_MULTI) {
+			throw new LeveldbException("Leveldb definition key type is not multi-key.");
+		}
+		return getBuffer(buf, keys, null);
+	}
+
+	/**
+	 * 指定キー情報に対する要素を取得.
+	 * 
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @param twoKey
+	 *            対象のセカンドキーを設定します.
+	 * @return Object 対象の要素が返却されます.
+	 */
+	public Object get(Object key, Object twoKey) {
+		checkClose();
+		final LevelValueCache cache = cache();
+		JniBuffer keyBuf = null;
+		JniBuffer valBuf = null;
+		try {
+			valBuf = LevelBuffer.value();
+			// WriteBatchモードの場合は、commit前の書き込みを参照するためキャッシュは利用しない.
+			if (cache != null && !writeBatchFlag) {
+				keyBuf = _getKey(key, twoKey);
+				return _cacheGet(cache, keyBuf, valBuf);
+			}
+			if (getBuffer(valBuf, key, twoKey)) {
+				return LevelValues.decode(valBuf);
+			}
+		} catch (LeveldbException le) {
+			throw le;
+		} catch (Exception e) {
+			throw new LeveldbException(e);
+		} finally {
+			LevelBuffer.release(key instanceof JniBuffer ? null : keyBuf, valBuf);
+		}
+		return null;
+	}
+
+	/**
+	 * 指定キー情報に対する要素を取得.
+	 * 
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @return Object 対象の要素が返却されます.
+	 */
+	public Object get(Object key) {
+		return get(key, null);
+	}
+
+	/**
+	 * 指定キー情報に対する要素を取得.
+	 * 
+	 * @param keys
+	 *            対象のキー群を設定します.
+	 * @return Object 対象の要素が返却されます.
+	 */
+	public Object getMultiKey(Object... keys) {
+		if (type != LevelOption.TYPE_MULTI) {
+			throw new LeveldbException("Leveldb definition key type is not multi-key.");
+		}
+		return get(keys, null);
+	}
+
+	/**
+	 * 数値キーで要素を取得.
+	 * <p>
+	 * 数値キータイプの場合、キーのオブジェクト変換を行わずに取得します.
+	 * </p>
+	 * 
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @return Object 対象の要素が返却されます.
+	 */
+	public Object get(long key) {
+		return _get(key, 0L, false);
+	}
+
+	/**
+	 * 数値キーで要素を取得.
+	 * 
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @param twoKey
+	 *            対象のセカンドキーを設定します.
+	 * @return Object 対象の要素が返却されます.
+	 */
+	public Object get(long key, long twoKey) {
+		return _get(key, twoKey, true);
+	}
+
+	// 数値キーで要素を取得.
+	private final Object _get(long key, long twoKey, boolean two) {
+		checkClose();
+		JniBuffer keyBuf = null;
+		JniBuffer valBuf = null;
+		try {
+			keyBuf = LevelBuffer.numberKey(type, key, twoKey);
+			if (keyBuf == null) {
+				return get((Object) key, two ? (Object) twoKey : null);
+			}
+			valBuf = LevelBuffer.value();
+			final LevelValueCache cache = cache();
+			if (cache != null && !writeBatchFlag) {
+				return _cacheGet(cache, keyBuf, valBuf);
+			}
+			if (getBuffer(valBuf, keyBuf, null)) {
+				return LevelValues.decode(valBuf);
+			}
+		} catch (LeveldbException le) {
+			throw le;
+		} catch (Exception e) {
+			throw new LeveldbException(e);
+		} finally {
+			LevelBuffer.release(keyBuf, valBuf);
+		}
+		return null;
+	}
+
+	// キャッシュを利用して要素を取得.
+	private final Object _cacheGet(LevelValueCache cache, JniBuffer keyBuf, JniBuffer valBuf)
+		throws Exception {
+		final LevelValueCache.Key k = cache.key(keyBuf);
+		Object ret = cache.get(k, valBuf);
+		if (ret != null) {
+			return ret;
+		}
+		// 読み込み前に無効化のバージョンを取得.
+		final long stamp = cache.stamp(k);
+		if (!getBuffer(valBuf, keyBuf, null)) {
+			return null;
+		}
+		final int len = valBuf.position();
+		final byte[] bin = cache.getMode() == LevelValueCache.MODE_COPY ? valBuf.getBinary() : null;
+		ret = LevelValues.decode(valBuf);
+		cache.put(k, stamp, ret, bin, len);
+		return ret;
+	}
+
+	/**
+	 * デコード済み要素のキャッシュを設定.
+	 * <p>
+	 * get で取得した要素をキャッシュします. このオブジェクトを元に生成された
+	 * WriteBatch用のLevelMapとも共有され、put/remove/commit/trancate で無効化されます.
+	 * </p>
+	 * 
+	 * @param cache
+	 *            キャッシュを設定します. [null]の場合はキャッシュを利用しません.
+	 */
+	public void setValueCache(LevelValueCache cache) {
+		checkClose();
+		if (cacheOwner != this) {
+			throw new LeveldbException("The cache can only be set on the parent object.");
+		}
+		valueCache = cache;
+	}
+
+	/**
+	 * デコード済み要素のキャッシュを取得.
+	 * 
+	 * @return LevelValueCache キャッシュが返却されます. 設定されていない場合は[null].
+	 */
+	public LevelValueCache getValueCache() {
+		return cache();
+	}
+
+	/**
+	 * 指定キー情報に対する要素の参照ビューを取得.
+	 * <p>
+	 * 要素をオブジェクト変換せずに、パス指定で必要な要素のみ参照します.
+	 * 利用後はビューをクローズしてください.
+	 * </p>
+	 * 
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @param twoKey
+	 *            対象のセカンドキーを設定します.
+	 * @return LevelValueView 参照ビューが返却されます. 存在しない場合は[null]が返却されます.
+	 */
+	public LevelValueView getView(Object key, Object twoKey) {
+		checkClose();
+		JniBuffer valBuf = new JniBuffer();
+		try {
+			if (getBuffer(valBuf, key, twoKey)) {
+				LevelValueView ret = new LevelValueView(valBuf, true);
+				valBuf = null;
+				return ret;
+			}
+		} catch (LeveldbException le) {
+			throw le;
+		} catch (Exception e) {
+			throw new LeveldbException(e);
+		} finally {
+			if (valBuf != null) {
+				valBuf.destroy();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 指定キー情報に対する要素の参照ビューを取得.
+	 * 
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @return LevelValueView 参照ビューが返却されます. 存在しない場合は[null]が返却されます.
+	 */
+	public LevelValueView getView(Object key) {
+		return getView(key, null);
+	}
+
+	/**
+	 * 指定キー情報に対するList・配列要素をカーソルで取得.
+	 * <p>
+	 * 要素全体をオブジェクト変換せずに、1件ずつ変換して取得します.
+	 * 利用後はカーソルをクローズしてください.
+	 * </p>
+	 * 
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @param twoKey
+	 *            対象のセカンドキーを設定します.
+	 * @return LevelValueCursor カーソルが返却されます. 存在しない場合は[null]が返却されます.
+	 */
+	public LevelValueCursor getStream(Object key, Object twoKey) {
+		checkClose();
+		JniBuffer valBuf = new JniBuffer();
+		try {
+			if (getBuffer(valBuf, key, twoKey)) {
+				LevelValueCursor ret = LevelValues.openList(valBuf, true);
+				valBuf = null;
+				return ret;
+			}
+		} catch (LeveldbException le) {
+			throw le;
+		} catch (Exception e) {
+			throw new LeveldbException(e);
+		} finally {
+			if (valBuf != null) {
+				valBuf.destroy();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 指定キー情報に対するList・配列要素をカーソルで取得.
+	 * 
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @return LevelValueCursor カーソルが返却されます. 存在しない場合は[null]が返却されます.
+	 */
+	public LevelValueCursor getStream(Object key) {
+		return getStream(key, null);
+	}
+
+	/**
+	 * 指定キーの情報を削除.
+	 * 
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @param twoKey
+	 *            対象のセカンドキーを設定します.
+	 * @return Object 削除できた場合[true]が返却されます.
+	 */
+	public boolean remove(Object key, Object twoKey) {
+		checkClose();
+		if (writeBatchFlag) {
+			return _remove(key, twoKey);
+		}
+		final ReentrantLock lock = _keyLock(key, twoKey);
+		lock.lock();
+		try {
+			return _remove(key, twoKey);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// 指定キーの情報を削除.
+	private final boolean _remove(Object key, Object twoKey) {
+		JniBuffer keyBuf = null;
+		Object v = null;
+		// インデックスの生成開始と競合しないように、削除完了までロックを保持する.
+		indexLock.readLock().lock();
+		try {
+			final boolean idxFlg = !indexEmpty();
+			if(idxFlg) {
+				v = get(key, twoKey);
+			}
+			keyBuf = _getKey(false, key, twoKey);
+			if(writeBatchFlag) {
+				WriteBatch b = writeBatch();
+				b.remove(keyBuf);
+				invalidateCache(keyBuf);
+				if(idxFlg) {
+					LevelBuffer.release(keyBuf, null);
+					keyBuf = null;
+					super.removeIndex(key, twoKey, v);
+				}
+				return true;
+			}
+			final boolean ret;
+			final LevelCommitLog.Commit w = writeStart(keyBuf);
+			try {
+				ret = leveldb.remove(keyBuf);
+			} finally {
+				writeEnd(w);
+			}
+			invalidateCache(keyBuf);
+			if(idxFlg && ret) {
+				LevelBuffer.release(keyBuf, null);
+				keyBuf = null;
+				super.removeIndex(key, twoKey, v);
+			}
+			return ret;
+		} catch (LeveldbException le) {
+			throw le;
+		} catch (Exception e) {
+			throw new LeveldbException(e);
+		} finally {
+			indexLock.readLock().unlock();
+			LevelBuffer.release(keyBuf, null);
+		}
+	}
+
+	/**
+	 * 指定キーの情報を削除.
+	 * 
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @return Object 削除できた場合[true]が返却されます.
+	 */
+	public Object remove(Object key) {
+		return remove(key, null);
+	}
+
+	/**
+	 * 指定キーの情報を削除.
+	 * 
+	 * @param keys
+	 *            対象のキー群を設定します.
+	 * @return Object 削除できた場合[true]が返却されます.
+	 */
+	public Object removeMultiKey(Object... keys) {
+		if (type != LevelOption.TYPE_MULTI) {
+			throw new LeveldbException("Leveldb definition key type is not multi-key.");
+		}
+		return remove(keys, null);
+	}
+
+	/**
+	 * 数値キーで情報を削除.
+	 * <p>
+	 * 数値キータイプの場合、キーのオブジェクト変換を行わずに削除します.
+	 * </p>
+	 * 
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @return boolean 削除できた場合[true]が返却されます.
+	 */
+	public boolean remove(long key) {
+		return _remove(key, 0L, false);
+	}
+
+	/**
+	 * 数値キーで情報を削除.
+	 * 
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @param twoKey
+	 *            対象のセカンドキーを設定します.
+	 * @return boolean 削除できた場合[true]が返却されます.
+	 */
+	public boolean remove(long key, long twoKey) {
+		return _remove(key, twoKey, true);
+	}
+
+	// 数値キーで情報を削除.
+	private final boolean _remove(long key, long twoKey, boolean two) {
+		final Boolean ret = _removeNumber(key, twoKey);
+		if (ret == null) {
+			// インデックスが存在する場合は、キーのオブジェクトが必要.
+			return remove((Object) key, two ? (Object) twoKey : null);
+		}
+		return ret;
+	}
+
+	// 数値キーのまま削除.
+	// インデックスが存在する場合は、削除せずに[null]を返却する.
+	private final Boolean _removeNumber(long key, long twoKey) {
+		checkClose();
+		ReentrantLock lock = null;
+		boolean indexLocked = false;
+		JniBuffer keyBuf = null;
+		try {
+			keyBuf = LevelBuffer.numberKey(type, key, twoKey);
+			if (keyBuf == null) {
+				return null;
+			}
+			if (!writeBatchFlag) {
+				lock = keyLocks.get(keyBuf);
+				lock.lock();
+			}
+			// インデックスの生成開始と競合しないように、削除完了までロックを保持する.
+			indexLock.readLock().lock();
+			indexLocked = true;
+			if (!indexEmpty()) {
+				return null;
+			}
+			if(writeBatchFlag) {
+				writeBatch().remove(keyBuf);
+				invalidateCache(keyBuf);
+				return true;
+			}
+			final boolean ret;
+			final LevelCommitLog.Commit w = writeStart(keyBuf);
+			try {
+				ret = leveldb.remove(keyBuf);
+			} finally {
+				writeEnd(w);
+			}
+			invalidateCache(keyBuf);
+			return ret;
+		} catch (LeveldbException le) {
+			throw le;
+		} catch (Exception e) {
+			throw new LeveldbException(e);
+		} finally {
+			if (indexLocked) {
+				indexLock.readLock().unlock();
+			}
+			if (lock != null) {
+				lock.unlock();
+			}
+			LevelBuffer.release(keyBuf, null);
+		}
+	}
+
+	/**
+	 * 指定範囲の情報を削除.
+	 * <p>
+	 * [from, to) の範囲の情報を、ネイティブ側でまとめて削除します.
+	 * 削除件数が多い場合は、削除後に対象範囲のコンパクションを行います.
+	 * 範囲削除はアトミックではなく、WriteBatchモードではサポートされていません.
+	 * </p>
+	 * 
+	 * @param from
+	 *            開始キーを設定します. [null]の場合は先頭から削除します.
+	 * @param to
+	 *            終了キー(このキーは含まない)を設定します. [null]の場合は最後まで削除します.
+	 * @return long 削除件数が返却されます.
+	 */
+	public long removeRange(Object from, Object to) {
+		return removeRange(from, null, to, null);
+	}
+
+	/**
+	 * 指定範囲の情報を削除.
+	 * 
+	 * @param from
+	 *            開始キーを設定します. [null]の場合は先頭から削除します.
+	 * @param fromTwo
+	 *            開始キーのセカンドキーを設定します.
+	 * @param to
+	 *            終了キー(このキーは含まない)を設定します. [null]の場合は最後まで削除します.
+	 * @param toTwo
+	 *            終了キーのセカンドキーを設定します.
+	 * @return long 削除件数が返却されます.
+	 */
+	public long removeRange(Object from, Object fromTwo, Object to, Object toTwo) {
+		checkClose();
+		if (writeBatchFlag) {
+			throw new LeveldbException("removeRange is not supported in writeBatch mode.");
+		}
+		JniBuffer start = null;
+		JniBuffer end = null;
+		try {
+			if (from != null) {
+				start = new JniBuffer();
+				LevelId.buf(type, start, from, fromTwo);
+			}
+			if (to != null) {
+				end = new JniBuffer();
+				LevelId.buf(type, end, to, toTwo);
+			}
+			final long ret;
+			// インデックスの生成開始と競合しないように、削除完了までロックを保持する.
+			indexLock.readLock().lock();
+			try {
+				// 範囲削除は、全てのキーに対する書き込みとして競合検出を行う.
+				final LevelCommitLog.Commit w = writeStart(null);
+				try {
+					if (indexEmpty()) {
+						ret = leveldb.removeRange(start, end);
+					} else {
+						ret = _removeIndexRange(0, start,
+							to == null ? null : (Comparable) LevelId.id(type, to, toTwo), null);
+					}
+				} finally {
+					writeEnd(w);
+				}
+			} finally {
+				indexLock.readLock().unlock();
+			}
+			_removeRangeAfter(ret, start, end);
+			return ret;
+		} catch (LeveldbException le) {
+			throw le;
+		} catch (Exception e) {
+			throw new LeveldbException(e);
+		} finally {
+			if (start != null) {
+				start.destroy();
+			}
+			if (end != null) {
+				end.destroy();
+			}
+		}
+	}
+
+	/**
+	 * 指定キーで始まる情報を削除.
+	 * <p>
+	 * 文字列キー、マルチキーの場合はキーの前方一致、２キーの場合は先頭キーの一致で削除します.
+	 * それ以外のキータイプの場合は、指定キーの情報のみ削除します.
+	 * 範囲削除はアトミックではなく、WriteBatchモードではサポートされていません.
+	 * </p>
+	 * 
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @return long 削除件数が返却されます.
+	 */
+	public long removePrefix(Object key) {
+		checkClose();
+		if (writeBatchFlag) {
+			throw new LeveldbException("removePrefix is not supported in writeBatch mode.");
+		} else if (key == null) {
+			throw new LeveldbException("Key information is not set.");
+		}
+		final int mode;
+		Object two = null;
+		switch (type) {
+		case LevelOption.TYPE_STRING:
+		case LevelOption.TYPE_MULTI:
+			mode = 1;
+			break;
+		default:
+			if (LevelOption.TYPE_PARAM_LENGTH[type] != 2) {
+				return remove(key, null) ? 1L : 0L;
+			}
+			// セカンドキーの最小値を開始位置とする.
+			mode = 2;
+			if (key instanceof TwoKey) {
+				key = ((TwoKey) key).one();
+			}
+			two = _minSecondKey(type);
+			break;
+		}
+		JniBuffer start = null;
+		try {
+			start = new JniBuffer();
+			LevelId.buf(type, start, key, two);
+			final long ret;
+			// インデックスの生成開始と競合しないように、削除完了までロックを保持する.
+			indexLock.readLock().lock();
+			try {
+				final LevelCommitLog.Commit w = writeStart(null);
+				try {
+					if (indexEmpty()) {
+						ret = mode == 1 ? leveldb.removePrefix(start) : leveldb.removeFirstKey(start);
+					} else {
+						ret = _removeIndexRange(mode, start, null,
+							mode == 2 ? ((TwoKey) LevelId.get(type, start)).one() : null);
+					}
+				} finally {
+					writeEnd(w);
+				}
+			} finally {
+				indexLock.readLock().unlock();
+			}
+			_removeRangeAfter(ret, start, null);
+			return ret;
+		} catch (LeveldbException le) {
+			throw le;
+		} catch (Exception e) {
+			throw new LeveldbException(e);
+		} finally {
+			if (start != null) {
+				start.destroy();
+			}
+		}
+	}
+
+	/**
+	 * 指定キー群で始まる情報を削除.
+	 * 
+	 * @param keys
+	 *            対象のキー群を設定します.
+	 * @return long 削除件数が返却されます.
+	 */
+	public long removePrefixMultiKey(Object... keys) {
+		if (type != LevelOption.TYPE_MULTI) {
+			throw new LeveldbException("Leveldb definition key type is not multi-key.");
+		}
+		return removePrefix(keys);
+	}
+
+	// ２キーのセカンドキーの最小値を取得.
+	private static final Object _minSecondKey(int type) {
+		switch (type) {
+		case LevelOption.TYPE_STR_N32:
+		case LevelOption.TYPE_N32_N32:
+		case LevelOption.TYPE_N64_N32:
+		case LevelOption.TYPE_BIN_N32:
+			return Integer.MIN_VALUE;
+		case LevelOption.TYPE_STR_N64:
+		case LevelOption.TYPE_N32_N64:
+		case LevelOption.TYPE_N64_N64:
+		case LevelOption.TYPE_BIN_N64:
+			return Long.MIN_VALUE;
+		}
+		return null;
+	}
+
+	// インデックスが存在する場合の範囲削除.
+	// 削除した要素でインデックスを削除するため、Java側で範囲を読み込んで削除する.
+	@SuppressWarnings("unchecked")
+	private final long _removeIndexRange(int mode, JniBuffer start, Comparable to, Object one)
+		throws Exception {
+		final Object[] keys = new Object[REMOVE_RANGE_BATCH_LENGTH];
+		final Object[] values = new Object[REMOVE_RANGE_BATCH_LENGTH];
+		long ret = 0L;
+		int n = 0;
+		Object k;
+		LeveldbIterator it = null;
+		WriteBatch b = null;
+		JniBuffer keyBuf = null;
+		JniBuffer valBuf = null;
+		try {
+			it = leveldb.snapshot();
+			if (start != null) {
+				it.seek(start);
+			}
+			b = new WriteBatch();
+			keyBuf = new JniBuffer();
+			valBuf = new JniBuffer();
+			while (it.valid()) {
+				it.key(keyBuf);
+				if (mode == 1 && !_startsWith(keyBuf, start)) {
+					break;
+				}
+				k = LevelId.get(type, keyBuf);
+				if ((mode == 0 && to != null && to.compareTo(k) <= 0) ||
+					(mode == 2 && !_equalsKey(one, ((TwoKey) k).one()))) {
+					break;
+				}
+				it.value(valBuf);
+				b.remove(keyBuf);
+				keys[n] = k;
+				values[n] = LevelValues.decode(valBuf);
+				keyBuf.position(0);
+				valBuf.position(0);
+				if (++n >= REMOVE_RANGE_BATCH_LENGTH) {
+					ret += _removeIndexBatch(b, keys, values, n);
+					n = 0;
+				}
+				it.next();
+			}
+			if (n > 0) {
+				ret += _removeIndexBatch(b, keys, values, n);
+			}
+			return ret;
+		} finally {
+			if (it != null) {
+				it.close();
+			}
+			if (b != null) {
+				b.close();
+			}
+			if (keyBuf != null) {
+				keyBuf.destroy();
+			}
+			if (valBuf != null) {
+				valBuf.destroy();
+			}
+		}
+	}
+
+	// 削除を反映して、インデックスを削除.
+	private final int _removeIndexBatch(WriteBatch b, Object[] keys, Object[] values, int len) {
+		b.execute(leveldb);
+		b.clear();
+		for (int i = 0; i < len; i++) {
+			super.removeIndex(keys[i], null, values[i]);
+			keys[i] = null;
+			values[i] = null;
+		}
+		return len;
+	}
+
+	// キーが指定バイナリで始まるかチェック.
+	private static final boolean _startsWith(JniBuffer key, JniBuffer prefix) {
+		final int len = prefix.position();
+		if (key.position() < len) {
+			return false;
+		}
+		final long a = key.address();
+		final long b = prefix.address();
+		for (int i = 0; i < len; i++) {
+			if (JniIO.get(a, i) != JniIO.get(b, i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// 先頭キーの一致チェック.
+	private static final boolean _equalsKey(Object a, Object b) {
+		if (a instanceof byte[] && b instanceof byte[]) {
+			return Arrays.equals((byte[]) a, (byte[]) b);
+		}
+		return a == null ? b == null : a.equals(b);
+	}
+
+	// 範囲削除後の処理.
+	// 要素キャッシュを無効化して、削除件数が多い場合はコンパクションを行う.
+	private final void _removeRangeAfter(long count, JniBuffer start, JniBuffer end) {
+		if (count <= 0L) {
+			return;
+		}
+		clearCache();
+		if (count < VACUUM_REMOVE_LENGTH) {
+			return;
+		}
+		// 終了キーが無い場合は、削除範囲の次のキーまでを対象とする.
+		if (end != null) {
+			leveldb.vacuum(start, end);
+			return;
+		}
+		LeveldbIterator it = null;
+		JniBuffer next = null;
+		try {
+			it = leveldb.iterator();
+			if (start != null) {
+				it.seek(start);
+			}
+			if (it.valid()) {
+				next = new JniBuffer();
+				it.key(next);
+			}
+			leveldb.vacuum(start, next);
+		} finally {
+			if (it != null) {
+				it.close();
+			}
+			if (next != null) {
+				next.destroy();
+			}
+		}
+	}
+
+	/**
+	 * キーに対するロックを取得.
+	 * <p>
+	 * putIfAbsent, compute などの更新処理と同じストライプロックが返却されます.
+	 * 同じキーに対する複数の処理をまとめて行う場合に利用し、
+	 * オペレータ全体のロック(getLock)の代わりに利用できます.
+	 * </p>
+	 * 
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @param twoKey
+	 *            対象のセカンドキーを設定します.
+	 * @return Lock ロックが返却されます.
+	 */
+	public Lock getKeyLock(Object key, Object twoKey) {
+		checkClose();
+		return _keyLock(key, twoKey);
+	}
+
+	/**
+	 * キーに対するロックを取得.
+	 * 
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @return Lock ロックが返却されます.
+	 */
+	public Lock getKeyLock(Object key) {
+		return getKeyLock(key, null);
+	}
+
+	// キーに対するストライプロックを取得.
+	private final ReentrantLock _keyLock(Object key, Object twoKey) {
+		JniBuffer keyBuf = null;
+		try {
+			keyBuf = _getKey(key, twoKey);
+			return keyLocks.get(keyBuf);
+		} catch (LeveldbException le) {
+			throw le;
+		} catch (Exception e) {
+			throw new LeveldbException(e);
+		} finally {
+			if (!(key instanceof JniBuffer)) {
+				LevelBuffer.release(keyBuf, null);
+			}
+		}
+	}
+
+	/**
+	 * 指定キーの情報が存在しない場合のみセット.
+	 * 
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @param twoKey
+	 *            対象のセカンドキーを設定します.
+	 * @param value
+	 *            対象の要素を設定します.
+	 * @return Object 既に存在する場合は、その要素が返却されます. セットされた場合は[null].
+	 */
+	public Object putIfAbsent(Object key, Object twoKey, Object value) {
+		checkClose();
+		final ReentrantLock lock = _keyLock(key, twoKey);
+		lock.lock();
+		try {
+			final Object ret = get(key, twoKey);
+			if (ret == null) {
+				_put(key, twoKey, value);
 			}
+			return ret;
+		} finally {
+			lock.unlock();
 		}
-		return ret;
 	}
 
 	/**
-	 * 指定キー情報に対する要素を取得.
+	 * 指定キーの情報が存在しない場合のみセット.
 	 * 
-	 * @param buf
-	 *            対象の要素格納用バッファを設定します.
 	 * @param key
 	 *            対象のキーを設定します.
-	 * @return boolean [true]の場合、セットされました.
+	 * @param value
+	 *            対象の要素を設定します.
+	 * @return Object 既に存在する場合は、その要素が返却されます. セットされた場合は[null].
 	 */
-	public boolean getBuffer(JniBuffer buf, Object key) {
-		return getBuffer(buf, key, null);
+	@Override
+	public Object putIfAbsent(Object key, Object value) {
+		return putIfAbsent(key, null, value);
 	}
 
 	/**
-	 * 指定キー情報に対する要素を取得.
+	 * 指定キーの要素が一致する場合のみ置き換え.
 	 * 
-	 * @param buf
-	 *            対象の要素格納用バッファを設定します.
-	 * @param keys
-	 *            対象のキー群を設定します.
-	 * @return boolean [true]の場合、セットされました.
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @param oldValue
+	 *            現在の要素を設定します.
+	 * @param newValue
+	 *            新しい要素を設定します.
+	 * @return boolean [true]の場合、置き換えられました.
 	 */
-	public boolean getBufferMultiKey(JniBuffer buf, Object... keys) {
-		if (type != LevelOption.TYPE_MULTI) {
-			throw new LeveldbException("Leveldb definition key type is not multi-key.");
+	@Override
+	public boolean replace(Object key, Object oldValue, Object newValue) {
+		checkClose();
+		final ReentrantLock lock = _keyLock(key, null);
+		lock.lock();
+		try {
+			final Object v = get(key, null);
+			if (v == null || !v.equals(oldValue)) {
+				return false;
+			}
+			_put(key, null, newValue);
+			return true;
+		} finally {
+			lock.unlock();
 		}
-		return getBuffer(buf, keys, null);
 	}
 
 	/**
-	 * 指定キー情報に対する要素を取得.
+	 * 指定キーの情報が存在する場合のみ置き換え.
 	 * 
 	 * @param key
 	 *            対象のキーを設定します.
-	 * @param twoKey
-	 *            対象のセカンドキーを設定します.
-	 * @return Object 対象の要素が返却されます.
+	 * @param value
+	 *            新しい要素を設定します.
+	 * @return Object 置き換え前の要素が返却されます. 存在しない場合は[null].
 	 */
-	public Object get(Object key, Object twoKey) {
+	@Override
+	public Object replace(Object key, Object value) {
 		checkClose();
-		JniBuffer valBuf = null;
+		final ReentrantLock lock = _keyLock(key, null);
+		lock.lock();
 		try {
-			valBuf = LevelBuffer.value();
-			if (getBuffer(valBuf, key, twoKey)) {
-				return LevelValues.decode(valBuf);
+			final Object ret = get(key, null);
+			if (ret != null) {
+				_put(key, null, value);
 			}
-		} catch (LeveldbException le) {
-			throw le;
-		} catch (Exception e) {
-			throw new LeveldbException(e);
+			return ret;
 		} finally {
-			LevelBuffer.clearBuffer(null, valBuf);
+			lock.unlock();
 		}
-		return null;
 	}
 
 	/**
-	 * 指定キー情報に対する要素を取得.
+	 * 指定キーの要素を再計算.
+	 * 計算結果が[null]の場合は削除されます.
 	 * 
 	 * @param key
 	 *            対象のキーを設定します.
-	 * @return Object 対象の要素が返却されます.
-	 */
-	public Object get(Object key) {
-		return get(key, null);
-	}
-
-	/**
-	 * 指定キー情報に対する要素を取得.
-	 * 
-	 * @param keys
-	 *            対象のキー群を設定します.
-	 * @return Object 対象の要素が返却されます.
+	 * @param remappingFunction
+	 *            キーと現在の要素(存在しない場合は[null])から、新しい要素を返却する処理を設定します.
+	 * @return Object 新しい要素が返却されます.
 	 */
-	public Object getMultiKey(Object... keys) {
-		if (type != LevelOption.TYPE_MULTI) {
-			throw new LeveldbException("Leveldb definition key type is not multi-key.");
+	@Override
+	@SuppressWarnings("unchecked")
+	public Object compute(Object key, BiFunction remappingFunction) {
+		checkClose();
+		final ReentrantLock lock = _keyLock(key, null);
+		lock.lock();
+		try {
+			final Object v = get(key, null);
+			return _update(key, v, remappingFunction.apply(key, v));
+		} finally {
+			lock.unlock();
 		}
-		return get(keys, null);
 	}
 
 	/**
-	 * 指定キーの情報を削除.
+	 * 指定キーの要素が存在しない場合のみ計算してセット.
 	 * 
 	 * @param key
 	 *            対象のキーを設定します.
-	 * @param twoKey
-	 *            対象のセカンドキーを設定します.
-	 * @return Object 削除できた場合[true]が返却されます.
+	 * @param mappingFunction
+	 *            キーから要素を返却する処理を設定します.
+	 * @return Object 現在の要素、またはセットされた要素が返却されます.
 	 */
-	public boolean remove(Object key, Object twoKey) {
+	@Override
+	@SuppressWarnings("unchecked")
+	public Object computeIfAbsent(Object key, Function mappingFunction) {
 		checkClose();
-		JniBuffer keyBuf = null;
-		Object v = null;
+		final ReentrantLock lock = _keyLock(key, null);
+		lock.lock();
 		try {
-			final boolean idxFlg = !indexEmpty();
-			if(idxFlg) {
-				v = get(key, twoKey);
-			}
-			keyBuf = _getKey(false, key, twoKey);
-			if(writeBatchFlag) {
-				WriteBatch b = writeBatch();
-				b.remove(keyBuf);
-				if(idxFlg) {
-					LevelBuffer.clearBuffer(keyBuf, null);
-					keyBuf = null;
-					super.removeIndex(key, twoKey, v);
-				}
-				return true;
+			final Object v = get(key, null);
+			if (v != null) {
+				return v;
 			}
-			final boolean ret = leveldb.remove(keyBuf);
-			if(idxFlg && ret) {
-				LevelBuffer.clearBuffer(keyBuf, null);
-				keyBuf = null;
-				super.removeIndex(key, twoKey, v);
+			final Object ret = mappingFunction.apply(key);
+			if (ret != null) {
+				_put(key, null, ret);
 			}
 			return ret;
-		} catch (LeveldbException le) {
-			throw le;
-		} catch (Exception e) {
-			throw new LeveldbException(e);
 		} finally {
-			LevelBuffer.clearBuffer(keyBuf, null);
+			lock.unlock();
 		}
 	}
 
 	/**
-	 * 指定キーの情報を削除.
+	 * 指定キーの要素が存在する場合のみ再計算.
+	 * 計算結果が[null]の場合は削除されます.
 	 * 
 	 * @param key
 	 *            対象のキーを設定します.
-	 * @return Object 削除できた場合[true]が返却されます.
+	 * @param remappingFunction
+	 *            キーと現在の要素から、新しい要素を返却する処理を設定します.
+	 * @return Object 新しい要素が返却されます.
 	 */
-	public Object remove(Object key) {
-		return remove(key, null);
+	@Override
+	@SuppressWarnings("unchecked")
+	public Object computeIfPresent(Object key, BiFunction remappingFunction) {
+		checkClose();
+		final ReentrantLock lock = _keyLock(key, null);
+		lock.lock();
+		try {
+			final Object v = get(key, null);
+			if (v == null) {
+				return null;
+			}
+			return _update(key, v, remappingFunction.apply(key, v));
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	/**
-	 * 指定キーの情報を削除.
+	 * 指定キーの要素をマージ.
+	 * 存在しない場合は value をセットし、存在する場合は計算結果をセットします.
+	 * 計算結果が[null]の場合は削除されます.
 	 * 
-	 * @param keys
-	 *            対象のキー群を設定します.
-	 * @return Object 削除できた場合[true]が返却されます.
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @param value
+	 *            マージする要素を設定します.
+	 * @param remappingFunction
+	 *            現在の要素と value から、新しい要素を返却する処理を設定します.
+	 * @return Object 新しい要素が返却されます.
 	 */
-	public Object removeMultiKey(Object... keys) {
-		if (type != LevelOption.TYPE_MULTI) {
-			throw new LeveldbException("Leveldb definition key type is not multi-key.");
+	@Override
+	@SuppressWarnings("unchecked")
+	public Object merge(Object key, Object value, BiFunction remappingFunction) {
+		if (value == null) {
+			throw new NullPointerException();
 		}
-		return remove(keys, null);
+		checkClose();
+		final ReentrantLock lock = _keyLock(key, null);
+		lock.lock();
+		try {
+			final Object v = get(key, null);
+			return _update(key, v, v == null ? value : remappingFunction.apply(v, value));
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// 計算結果で更新.
+	private final Object _update(Object key, Object oldValue, Object newValue) {
+		if (newValue != null) {
+			_put(key, null, newValue);
+		} else if (oldValue != null) {
+			_remove(key, null);
+		}
+		return newValue;
 	}
 
 	/**
@@ -833,12 +1969,145 @@ public class LevelMap extends LevelIndexOperator implements ConvertMap {
 		return _snapshot(reverse, keys, null);
 	}
 
+	/**
+	 * Spliteratorを取得.
+	 * 取得時点のスナップショットを、全ての分割で共有します.
+	 * 
+	 * @return LevelMapSpliterator Spliteratorが返却されます.
+	 */
+	public LevelMapSpliterator spliterator() {
+		checkClose();
+		return new LevelMapSpliterator(this);
+	}
+
+	/**
+	 * Streamを取得.
+	 * 
+	 * @return Stream キー順のStreamが返却されます.
+	 */
+	public Stream<Map.Entry<Object, Object>> stream() {
+		return _stream(false);
+	}
+
+	/**
+	 * 並列Streamを取得.
+	 * キー範囲で分割し、分割毎のIteratorで並列に読み込みます.
+	 * 
+	 * @return Stream キー順の並列Streamが返却されます.
+	 */
+	public Stream<Map.Entry<Object, Object>> parallelStream() {
+		return _stream(true);
+	}
+
+	// Stream作成.
+	protected Stream<Map.Entry<Object, Object>> _stream(boolean parallel) {
+		final LevelMapSpliterator sp = spliterator();
+		return StreamSupport.stream(sp, parallel).onClose(new Runnable() {
+			public void run() {
+				sp.close();
+			}
+		});
+	}
+
+	/**
+	 * Flow.Publisherを取得.
+	 * <p>
+	 * 購読時のスナップショットの内容を、キー順で要求件数分ずつ通知します.
+	 * </p>
+	 * 
+	 * @return LevelPublisher Publisherが返却されます.
+	 */
+	public LevelPublisher<Map.Entry<Object, Object>> publisher() {
+		return publisher(null, null, null, 0);
+	}
+
+	/**
+	 * Flow.Publisherを取得.
+	 * 
+	 * @param key
+	 *            開始キーを設定します.
+	 * @param twoKey
+	 *            開始キーのセカンドキーを設定します.
+	 * @return LevelPublisher Publisherが返却されます.
+	 */
+	public LevelPublisher<Map.Entry<Object, Object>> publisher(Object key, Object twoKey) {
+		return publisher(key, twoKey, null, 0);
+	}
+
+	/**
+	 * Flow.Publisherを取得.
+	 * 
+	 * @param key
+	 *            開始キーを設定します.
+	 * @param twoKey
+	 *            開始キーのセカンドキーを設定します.
+	 * @param executor
+	 *            I/Oスレッドプールを設定します. [null]の場合はデフォルトのスレッドプールを利用します.
+	 * @param batch
+	 *            １回の読み込み件数を設定します.
+	 * @return LevelPublisher Publisherが返却されます.
+	 */
+	public LevelPublisher<Map.Entry<Object, Object>> publisher(final Object key, final Object twoKey,
+		LevelAsyncExecutor executor, int batch) {
+		checkClose();
+		return new LevelPublisher<Map.Entry<Object, Object>>(this, executor, batch) {
+			protected Cursor<Map.Entry<Object, Object>> cursor() {
+				return new MapCursor(type, key, twoKey);
+			}
+		};
+	}
+
+	/**
+	 * LevelMapのPublisher用読み込み位置.
+	 */
+	private static final class MapCursor extends LevelPublisher.Cursor<Map.Entry<Object, Object>> {
+		private final int type;
+		private final Object startKey;
+		private final Object startTwoKey;
+
+		MapCursor(int type, Object startKey, Object startTwoKey) {
+			this.type = type;
+			this.startKey = startKey;
+			this.startTwoKey = startTwoKey;
+		}
+
+		@Override
+		protected void start(LeveldbIterator itr) throws Exception {
+			if (startKey != null) {
+				Leveldb.search(itr, false, type, startKey, startTwoKey);
+			}
+		}
+
+		@Override
+		protected boolean read(LeveldbIterator itr, ArrayDeque<Map.Entry<Object, Object>> out, int max)
+			throws Exception {
+			JniBuffer valBuf = null;
+			try {
+				valBuf = LevelBuffer.value();
+				for (int i = 0; i < max; i++) {
+					if (!itr.valid()) {
+						return false;
+					}
+					itr.key(key);
+					itr.value(valBuf);
+					out.add(new AbstractMap.SimpleImmutableEntry<Object, Object>(
+						LevelId.get(type, key), LevelValues.decode(valBuf)));
+					valBuf.position(0);
+					itr.next();
+				}
+				return itr.valid();
+			} finally {
+				LevelBuffer.release(null, valBuf);
+			}
+		}
+	}
+
 	// iterator作成.
 	protected LevelMapIterator _iterator(boolean reverse, Object key, Object key2) {
 		checkClose();
 		LevelMapIterator ret = null;
 		try {
-			ret = new LevelMapIterator(reverse, this, leveldb.iterator());
+			ret = new LevelMapIterator(reverse, this, batchIterator(leveldb.iterator()));
 			return _search(ret, key, key2);
 		} catch(LeveldbException le) {
 			if(ret != null) {
@@ -859,13 +2128,13 @@ public class LevelMap extends LevelIndexOperator implements ConvertMap {
 		LevelMapIterator ret = null;
 		try {
 			if(key == null) {
-				LeveldbIterator it = leveldb.snapshot();
+				LeveldbIterator it = batchIterator(leveldb.snapshot());
 				if(reverse) {
 					it.last();
 				}
 				return new LevelMapIterator(reverse, this, it);
 			}
-			ret = new LevelMapIterator(reverse, this, leveldb.snapshot());
+			ret = new LevelMapIterator(reverse, this, batchIterator(leveldb.snapshot()));
 			return _search(ret, key, key2);
 		} catch(LeveldbException le) {
 			if(ret != null) {
@@ -976,6 +2245,12 @@ public class LevelMap extends LevelIndexOperator implements ConvertMap {
 		LevelMap map;
 		LeveldbIterator itr;
 		int type;
+		JniBuffer viewBuf;
+		LevelValueView view;
+		boolean numberKey;
+		boolean keyFlag;
+		long key1;
+		long key2;
 
 		/**
 		 * コンストラクタ.
@@ -992,6 +2267,16 @@ public class LevelMap extends LevelIndexOperator implements ConvertMap {
 			this.itr = itr;
 			this.type = map.getType();
 			this.reverse = reverse;
+			switch (type) {
+			case LevelOption.TYPE_NUMBER32:
+			case LevelOption.TYPE_NUMBER64:
+			case LevelOption.TYPE_N32_N32:
+			case LevelOption.TYPE_N32_N64:
+			case LevelOption.TYPE_N64_N32:
+			case LevelOption.TYPE_N64_N64:
+				this.numberKey = true;
+				break;
+			}
 		}
 
 		// ファイナライズ.
@@ -1007,6 +2292,14 @@ public class LevelMap extends LevelIndexOperator implements ConvertMap {
 				itr.close();
 				itr = null;
 			}
+			if (view != null) {
+				view.close();
+				view = null;
+			}
+			if (viewBuf != null) {
+				viewBuf.destroy();
+				viewBuf = null;
+			}
 		}
 
 		@Override
@@ -1044,9 +2337,9 @@ public class LevelMap extends LevelIndexOperator implements ConvertMap {
 				valBuf = LevelBuffer.value();
 				itr.key(keyBuf);
 				itr.value(valBuf);
-				this.resultKey = LevelId.get(type, keyBuf);
+				setKey(keyBuf);
 				Object ret = LevelValues.decode(valBuf);
-				LevelBuffer.clearBuffer(keyBuf, valBuf);
+				LevelBuffer.release(keyBuf, valBuf);
 				keyBuf = null; valBuf = null;
 				if(reverse) {
 					itr.before();
@@ -1062,7 +2355,178 @@ public class LevelMap extends LevelIndexOperator implements ConvertMap {
 			} catch (Exception e) {
 				throw new LeveldbException(e);
 			} finally {
-				LevelBuffer.clearBuffer(keyBuf, valBuf);
+				LevelBuffer.release(keyBuf, valBuf);
+			}
+		}
+
+		// 取得キーをセット.
+		// 数値キーの場合は、オブジェクト変換を行わずに保持する.
+		private final void setKey(JniBuffer keyBuf) throws Exception {
+			if (!numberKey) {
+				this.resultKey = LevelId.get(type, keyBuf);
+				return;
+			}
+			final long addr = keyBuf.address();
+			switch (type) {
+			case LevelOption.TYPE_NUMBER32:
+				key1 = JniIO.getIntE(addr, 0);
+				break;
+			case LevelOption.TYPE_NUMBER64:
+				key1 = JniIO.getLongE(addr, 0);
+				break;
+			case LevelOption.TYPE_N32_N32:
+				key1 = JniIO.getIntE(addr, 0);
+				key2 = JniIO.getIntE(addr, 4);
+				break;
+			case LevelOption.TYPE_N32_N64:
+				key1 = JniIO.getIntE(addr, 0);
+				key2 = JniIO.getLongE(addr, 4);
+				break;
+			case LevelOption.TYPE_N64_N32:
+				key1 = JniIO.getLongE(addr, 0);
+				key2 = JniIO.getIntE(addr, 8);
+				break;
+			case LevelOption.TYPE_N64_N64:
+				key1 = JniIO.getLongE(addr, 0);
+				key2 = JniIO.getLongE(addr, 8);
+				break;
+			}
+			this.resultKey = null;
+			this.keyFlag = true;
+		}
+
+		/**
+		 * キー名を取得.
+		 * 
+		 * @return Object キー名が返却されます.
+		 */
+		@Override
+		public Object getKey() {
+			if (resultKey == null && keyFlag) {
+				switch (type) {
+				case LevelOption.TYPE_NUMBER32:
+					resultKey = (int) key1;
+					break;
+				case LevelOption.TYPE_NUMBER64:
+					resultKey = key1;
+					break;
+				case LevelOption.TYPE_N32_N32:
+					resultKey = new IntInt((int) key1, (int) key2);
+					break;
+				case LevelOption.TYPE_N32_N64:
+					resultKey = new IntLong((int) key1, key2);
+					break;
+				case LevelOption.TYPE_N64_N32:
+					resultKey = new LongInt(key1, (int) key2);
+					break;
+				case LevelOption.TYPE_N64_N64:
+					resultKey = new LongLong(key1, key2);
+					break;
+				}
+			}
+			return resultKey;
+		}
+
+		/**
+		 * キー名をint型で取得.
+		 * <p>
+		 * 数値キータイプの場合、オブジェクト変換を行わずに取得します.
+		 * </p>
+		 * 
+		 * @return int キー名が返却されます.
+		 */
+		public int keyInt() {
+			checkNumberKey();
+			return (int) key1;
+		}
+
+		/**
+		 * キー名をlong型で取得.
+		 * <p>
+		 * 数値キータイプの場合、オブジェクト変換を行わずに取得します.
+		 * </p>
+		 * 
+		 * @return long キー名が返却されます.
+		 */
+		public long keyLong() {
+			checkNumberKey();
+			return key1;
+		}
+
+		/**
+		 * セカンドキーをint型で取得.
+		 * 
+		 * @return int セカンドキーが返却されます.
+		 */
+		public int secondKeyInt() {
+			checkNumberKey();
+			return (int) key2;
+		}
+
+		/**
+		 * セカンドキーをlong型で取得.
+		 * 
+		 * @return long セカンドキーが返却されます.
+		 */
+		public long secondKeyLong() {
+			checkNumberKey();
+			return key2;
+		}
+
+		// 数値キーが取得可能かチェック.
+		private final void checkNumberKey() {
+			if (!numberKey) {
+				throw new LeveldbException("Leveldb definition key type is not numeric.");
+			}
+			if (!keyFlag) {
+				throw new NoSuchElementException();
+			}
+		}
+
+		/**
+		 * 次の要素を参照ビューで取得.
+		 * <p>
+		 * 返却されるビューは、次のnextView呼び出しまで有効です.
+		 * 利用を継続する場合は、ビューの内容をコピーしてください.
+		 * </p>
+		 * 
+		 * @return LevelValueView 次の要素の参照ビューが返却されます.
+		 */
+		public LevelValueView nextView() {
+			if (map.isClose() || itr == null || !itr.valid()) {
+				close();
+				throw new NoSuchElementException();
+			}
+			JniBuffer keyBuf = null;
+			try {
+				if (viewBuf == null) {
+					viewBuf = new JniBuffer();
+					view = new LevelValueView();
+				}
+				keyBuf = LevelBuffer.key();
+				itr.key(keyBuf);
+				viewBuf.clear();
+				itr.value(viewBuf);
+				setKey(keyBuf);
+				LevelBuffer.release(keyBuf, null);
+				keyBuf = null;
+				LevelValueView ret = view.set(viewBuf, false);
+				if(reverse) {
+					itr.before();
+				} else {
+					itr.next();
+				}
+				if(!itr.valid()) {
+					itr.close();
+					itr = null;
+				}
+				return ret;
+			} catch (LeveldbException le) {
+				throw le;
+			} catch (Exception e) {
+				throw new LeveldbException(e);
+			} finally {
+				LevelBuffer.release(keyBuf, null);
 			}
 		}
 	}
@@ -0,0 +1,204 @@
+package org.maachang.leveldb.operator;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * LevelMapの非同期処理.
+ * <p>
+ * 処理はこのオブジェクトのキューに登録順に実行されます.
+ * 連続する put / remove は、まとめて１つのWriteBatchで書き込まれます.
+ * </p>
+ */
+public class LevelMapAsync extends LevelOperatorAsync<LevelMap> {
+
+	/**
+	 * コンストラクタ.
+	 * デフォルトのI/Oスレッドプールを利用します.
+	 *
+	 * @param map
+	 *            対象のLevelMapを設定します.
+	 */
+	public LevelMapAsync(LevelMap map) {
+		super(map);
+	}
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param map
+	 *            対象のLevelMapを設定します.
+	 * @param executor
+	 *            I/Oスレッドプールを設定します. [null]の場合はデフォルトのスレッドプールを利用します.
+	 * @param maxPending
+	 *            キューの上限を設定します.
+	 */
+	public LevelMapAsync(LevelMap map, LevelAsyncExecutor executor, int maxPending) {
+		super(map, executor, maxPending);
+	}
+
+	/**
+	 * 指定キーの情報を取得.
+	 *
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @return CompletableFuture 対象の要素が返却されます.
+	 */
+	public CompletableFuture<Object> get(Object key) {
+		return get(key, null);
+	}
+
+	/**
+	 * 指定キーの情報を取得.
+	 *
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @param twoKey
+	 *            対象のセカンドキーを設定します.
+	 * @return CompletableFuture 対象の要素が返却されます.
+	 */
+	public CompletableFuture<Object> get(final Object key, final Object twoKey) {
+		return call(new Function<LevelMap, Object>() {
+			public Object apply(LevelMap m) {
+				return m.get(key, twoKey);
+			}
+		});
+	}
+
+	/**
+	 * 指定キーの情報が存在するかチェック.
+	 *
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @return CompletableFuture [true]の場合、存在します.
+	 */
+	public CompletableFuture<Boolean> containsKey(Object key) {
+		return containsKey(key, null);
+	}
+
+	/**
+	 * 指定キーの情報が存在するかチェック.
+	 *
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @param twoKey
+	 *            対象のセカンドキーを設定します.
+	 * @return CompletableFuture [true]の場合、存在します.
+	 */
+	public CompletableFuture<Boolean> containsKey(final Object key, final Object twoKey) {
+		return call(new Function<LevelMap, Boolean>() {
+			public Boolean apply(LevelMap m) {
+				return m.containsKey(key, twoKey);
+			}
+		});
+	}
+
+	/**
+	 * 指定キーの情報をセット.
+	 *
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @param value
+	 *            対象の要素を設定します.
+	 * @return CompletableFuture 書き込み後に完了します.
+	 */
+	public CompletableFuture<Void> put(Object key, Object value) {
+		return put(key, null, value);
+	}
+
+	/**
+	 * 指定キーの情報をセット.
+	 *
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @param twoKey
+	 *            対象のセカンドキーを設定します.
+	 * @param value
+	 *            対象の要素を設定します.
+	 * @return CompletableFuture 書き込み後に完了します.
+	 */
+	public CompletableFuture<Void> put(final Object key, final Object twoKey, final Object value) {
+		return write(new Function<LevelMap, Void>() {
+			public Void apply(LevelMap m) {
+				m.put(key, twoKey, value);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * 指定キーの情報を削除.
+	 *
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @return CompletableFuture 書き込み後に完了します.
+	 */
+	public CompletableFuture<Void> remove(Object key) {
+		return remove(key, null);
+	}
+
+	/**
+	 * 指定キーの情報を削除.
+	 *
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @param twoKey
+	 *            対象のセカンドキーを設定します.
+	 * @return CompletableFuture 書き込み後に完了します.
+	 */
+	public CompletableFuture<Void> remove(final Object key, final Object twoKey) {
+		return write(new Function<LevelMap, Void>() {
+			public Void apply(LevelMap m) {
+				m.remove(key, twoKey);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * 指定キーの情報が存在しない場合のみセット.
+	 *
+	 * @param key
+	 *            対象のキーを設定します.
+	 * @param value
+	 *            対象の要素を設定します.
+	 * @return CompletableFuture 既に存在する場合は、その要素が返却されます.
+	 */
+	public CompletableFuture<Object> putIfAbsent(final Object key, final Object value) {
+		return call(new Function<LevelMap, Object>() {
+			public Object apply(LevelMap m) {
+				return m.putIfAbsent(key, value);
+			}
+		});
+	}
+
+	/**
+	 * 指定範囲の情報を削除.
+	 *
+	 * @param from
+	 *            開始キーを設定します. [null]の場合は先頭から削除します.
+	 * @param to
+	 *            終了キー(このキーは含まない)を設定します. [null]の場合は最後まで削除します.
+	 * @return CompletableFuture 削除件数が返却されます.
+	 */
+	public CompletableFuture<Long> removeRange(final Object from, final Object to) {
+		return call(new Function<LevelMap, Long>() {
+			public Long apply(LevelMap m) {
+				return m.removeRange(from, to);
+			}
+		});
+	}
+
+	/**
+	 * 件数を取得.
+	 *
+	 * @return CompletableFuture 件数が返却されます.
+	 */
+	public CompletableFuture<Integer> size() {
+		return call(new Function<LevelMap, Integer>() {
+			public Integer apply(LevelMap m) {
+				return m.size();
+			}
+		});
+	}
+}
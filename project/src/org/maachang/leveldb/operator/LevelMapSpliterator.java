@@ -0,0 +1,330 @@
+package org.maachang.leveldb.operator;
+
+import java.util.AbstractMap;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.maachang.leveldb.JniBuffer;
+import org.maachang.leveldb.LevelBuffer;
+import org.maachang.leveldb.LevelId;
+import org.maachang.leveldb.LevelKeyComparator;
+import org.maachang.leveldb.LevelValues;
+import org.maachang.leveldb.LeveldbException;
+import org.maachang.leveldb.LeveldbIterator;
+import org.maachang.leveldb.LeveldbSnapshot;
+
+/**
+ * LevelMapのSpliterator.
+ * <p>
+ * 全ての分割で１つのスナップショットを共有し、分割毎に個別のIteratorで読み込みます.
+ * 分割位置は、ネイティブ側でキー・要素を取得せずにカーソル移動して決定するため、
+ * 各分割の件数は正確な値となります.
+ * </p>
+ * <p>
+ * 要素はネイティブ側のキー順で返却されるため、getComparator は
+ * その順序でキーを比較するComparatorを返却します.
+ * </p>
+ */
+public class LevelMapSpliterator implements Spliterator<Map.Entry<Object, Object>> {
+
+	/** 分割を行う最小件数. **/
+	private static final long MIN_SPLIT_LENGTH = 2048L;
+
+	/**
+	 * 共有スナップショット.
+	 * 全ての分割が終了した時点で開放します.
+	 */
+	private static final class Shared {
+		final LeveldbSnapshot snapshot;
+		final AtomicInteger count = new AtomicInteger(0);
+
+		Shared(LeveldbSnapshot snapshot) {
+			this.snapshot = snapshot;
+		}
+
+		void release() {
+			if (count.decrementAndGet() <= 0) {
+				snapshot.close();
+			}
+		}
+	}
+
+	private final LevelMap map;
+	private final int type;
+	private final Shared shared;
+	private LeveldbIterator itr;
+	private JniBuffer start;
+	private long remaining;
+	private boolean finish;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param map
+	 *            対象のLevelMapを設定します.
+	 */
+	LevelMapSpliterator(LevelMap map) {
+		this(map, new Shared(map.leveldb.sharedSnapshot()), null, -1L);
+	}
+
+	// 分割用コンストラクタ.
+	private LevelMapSpliterator(LevelMap map, Shared shared, JniBuffer start, long remaining) {
+		this.map = map;
+		this.type = map.getType();
+		this.shared = shared;
+		this.start = start;
+		this.remaining = remaining;
+		shared.count.incrementAndGet();
+	}
+
+	/**
+	 * クローズ処理.
+	 * 共有スナップショットも開放されます.
+	 */
+	public void close() {
+		finish();
+		shared.snapshot.close();
+	}
+
+	// 終了処理.
+	private final void finish() {
+		if (itr != null) {
+			itr.close();
+			itr = null;
+		}
+		if (start != null) {
+			start.destroy();
+			start = null;
+		}
+		if (!finish) {
+			finish = true;
+			shared.release();
+		}
+	}
+
+	// Iteratorを開始位置に移動.
+	private final boolean open() {
+		if (finish || remaining == 0L || map.isClose()) {
+			finish();
+			return false;
+		}
+		if (itr == null) {
+			itr = shared.snapshot.iterator();
+			if (start != null) {
+				itr.seek(start);
+				start.destroy();
+				start = null;
+			}
+		}
+		if (!itr.valid()) {
+			finish();
+			return false;
+		}
+		return true;
+	}
+
+	// 現在位置からの件数を取得.
+	private final long count() {
+		long ret = 0L;
+		int n;
+		LeveldbIterator it = shared.snapshot.iterator();
+		JniBuffer keyBuf = null;
+		try {
+			if (itr != null) {
+				keyBuf = LevelBuffer.key();
+				itr.key(keyBuf);
+				it.seek(keyBuf);
+				LevelBuffer.release(keyBuf, null);
+				keyBuf = null;
+			} else if (start != null) {
+				it.seek(start);
+			}
+			while ((n = it.skip(Integer.MAX_VALUE)) == Integer.MAX_VALUE) {
+				ret += n;
+			}
+			return ret + n;
+		} finally {
+			LevelBuffer.release(keyBuf, null);
+			it.close();
+		}
+	}
+
+	// 指定件数分カーソル移動.
+	private final void skip(long count) {
+		int n;
+		while (count > 0L) {
+			n = (int) Math.min(count, Integer.MAX_VALUE);
+			if (itr.skip(n) != n) {
+				break;
+			}
+			count -= n;
+		}
+	}
+
+	/**
+	 * 次の要素を処理.
+	 *
+	 * @param action
+	 *            処理を設定します.
+	 * @return boolean [true]の場合、要素が存在しました.
+	 */
+	@Override
+	public boolean tryAdvance(Consumer<? super Map.Entry<Object, Object>> action) {
+		if (action == null) {
+			throw new NullPointerException();
+		} else if (!open()) {
+			return false;
+		}
+		action.accept(next());
+		return true;
+	}
+
+	/**
+	 * 残りの要素を処理.
+	 *
+	 * @param action
+	 *            処理を設定します.
+	 */
+	@Override
+	public void forEachRemaining(Consumer<? super Map.Entry<Object, Object>> action) {
+		if (action == null) {
+			throw new NullPointerException();
+		}
+		while (open()) {
+			action.accept(next());
+		}
+	}
+
+	// 現在位置の要素を取得して、次に移動.
+	private final Map.Entry<Object, Object> next() {
+		JniBuffer keyBuf = null;
+		JniBuffer valBuf = null;
+		try {
+			keyBuf = LevelBuffer.key();
+			valBuf = LevelBuffer.value();
+			itr.key(keyBuf);
+			itr.value(valBuf);
+			final Map.Entry<Object, Object> ret = new AbstractMap.SimpleImmutableEntry<Object, Object>(
+				LevelId.get(type, keyBuf), LevelValues.decode(valBuf));
+			LevelBuffer.release(keyBuf, valBuf);
+			keyBuf = null; valBuf = null;
+			itr.next();
+			if (remaining > 0L) {
+				remaining--;
+			}
+			return ret;
+		} catch (LeveldbException le) {
+			throw le;
+		} catch (Exception e) {
+			throw new LeveldbException(e);
+		} finally {
+			LevelBuffer.release(keyBuf, valBuf);
+		}
+	}
+
+	/**
+	 * 分割処理.
+	 * 残り件数の前半を、新しいSpliteratorとして返却します.
+	 *
+	 * @return Spliterator 分割できない場合は[null]が返却されます.
+	 */
+	@Override
+	public Spliterator<Map.Entry<Object, Object>> trySplit() {
+		if (finish || map.isClose()) {
+			return null;
+		}
+		if (remaining < 0L) {
+			remaining = count();
+		}
+		if (remaining < MIN_SPLIT_LENGTH || !open()) {
+			return null;
+		}
+		final long half = remaining >>> 1;
+		JniBuffer key = new JniBuffer();
+		try {
+			itr.key(key);
+			skip(half);
+			remaining -= half;
+			final LevelMapSpliterator ret = new LevelMapSpliterator(map, shared, key, half);
+			key = null;
+			return ret;
+		} finally {
+			if (key != null) {
+				key.destroy();
+			}
+		}
+	}
+
+	/**
+	 * 残り件数を取得.
+	 *
+	 * @return long 残り件数が返却されます.
+	 */
+	@Override
+	public long estimateSize() {
+		if (finish) {
+			return 0L;
+		} else if (remaining < 0L) {
+			remaining = count();
+		}
+		return remaining;
+	}
+
+	/**
+	 * 特性を取得.
+	 *
+	 * @return int 特性が返却されます.
+	 */
+	@Override
+	public int characteristics() {
+		return ORDERED | SORTED | NONNULL | IMMUTABLE | SIZED | SUBSIZED;
+	}
+
+	/**
+	 * ソート条件を取得.
+	 *
+	 * @return Comparator ネイティブ側のキー順で比較するComparatorが返却されます.
+	 */
+	@Override
+	public Comparator<? super Map.Entry<Object, Object>> getComparator() {
+		return new KeyOrder(type);
+	}
+
+	/**
+	 * ネイティブ側と同じ順序で、要素のキーを比較.
+	 * キーをエンコードしたバイナリを、LevelKeyComparator で比較します.
+	 */
+	private static final class KeyOrder implements Comparator<Map.Entry<Object, Object>> {
+		private final int type;
+		private final LevelKeyComparator comparator;
+
+		KeyOrder(int type) {
+			this.type = type;
+			this.comparator = LevelKeyComparator.get(type);
+		}
+
+		@Override
+		public int compare(Map.Entry<Object, Object> a, Map.Entry<Object, Object> b) {
+			return comparator.compare(binary(a.getKey()), binary(b.getKey()));
+		}
+
+		// キーをバイナリに変換.
+		private final byte[] binary(Object key) {
+			JniBuffer buf = null;
+			try {
+				buf = LevelBuffer.pool().lease(0);
+				LevelId.buf(type, buf, key, null);
+				return buf.getBinary();
+			} catch (LeveldbException le) {
+				throw le;
+			} catch (Exception e) {
+				throw new LeveldbException(e);
+			} finally {
+				LevelBuffer.pool().release(buf);
+			}
+		}
+	}
+}
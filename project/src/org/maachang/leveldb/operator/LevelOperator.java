@@ -1,13 +1,22 @@
 package org.maachang.leveldb.operator;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.maachang.leveldb.JniBuffer;
+import org.maachang.leveldb.LevelBuffer;
+import org.maachang.leveldb.LevelDictionary;
 import org.maachang.leveldb.LevelOption;
+import org.maachang.leveldb.LevelReadSet;
+import org.maachang.leveldb.LevelValues;
 import org.maachang.leveldb.Leveldb;
 import org.maachang.leveldb.LeveldbException;
 import org.maachang.leveldb.LeveldbIterator;
 import org.maachang.leveldb.WriteBatch;
+import org.maachang.leveldb.WriteBatchIndex;
 import org.maachang.leveldb.util.Flag;
 
 /**
@@ -37,6 +46,26 @@ public abstract class LevelOperator {
 	protected Flag parentCloseFlag = null;
 	protected Flag closeFlag = new Flag();
 	
+	// 要素圧縮の統計情報.
+	protected AtomicLong compressCount = new AtomicLong(0L);
+	protected AtomicLong compressSavedBytes = new AtomicLong(0L);
+	protected LevelDictionary dictionary = null;
+	
+	// デコード済み要素のキャッシュ(親オペレータで保持).
+	protected LevelOperator cacheOwner = this;
+	protected volatile LevelValueCache valueCache = null;
+	protected List<LevelValueCache.Key> cachePending = null;
+	
+	// キー単位のストライプロック(親オペレータと共有).
+	protected LevelKeyLocks keyLocks = null;
+	
+	// トランザクションの競合検出用の書き込み履歴(親オペレータと共有).
+	protected LevelCommitLog commitLog = null;
+	
+	// トランザクションの読み込み範囲と開始シーケンス番号.
+	protected LevelReadSet readSet = null;
+	protected long readSequence = 0L;
+	
 	// rwlock.
 	// このオブジェクトはこの上位で呼び出して利用する
 	// ためのものなので、この情報は基本利用しない.
@@ -62,8 +91,20 @@ public abstract class LevelOperator {
 		this.writeBatchFlag = writeBatchFlag;
 		if(opr != null) {
 			parentCloseFlag = opr.closeFlag;
+			compressCount = opr.compressCount;
+			compressSavedBytes = opr.compressSavedBytes;
+			dictionary = opr.dictionary;
+			cacheOwner = opr.cacheOwner;
+			keyLocks = opr.keyLocks;
+			commitLog = opr.commitLog;
 		} else {
+			keyLocks = new LevelKeyLocks();
+			commitLog = new LevelCommitLog();
 			parentCloseFlag = new Flag(false);
+			// 共有辞書圧縮の場合は、登録済みの辞書を読み込む.
+			if(db.getOption().getCompressType() == LevelOption.COMPRESS_LZ4_DICT) {
+				dictionary = LevelDictionary.load(db.getPath());
+			}
 		}
 		this.closeFlag.set(false);
 	}
@@ -82,12 +123,17 @@ public abstract class LevelOperator {
 					_snapshot.close();
 					_snapshot = null;
 				}
+				cachePending = null;
 			}
 			if (sub) {
 				if(leveldb != null && !parentCloseFlag.get()) {
+					if(dictionary != null) {
+						LevelDictionary.release(leveldb.getPath());
+					}
 					leveldb.close();
 				}
 			}
+			dictionary = null;
 			leveldb = null;
 		}
 	}
@@ -106,28 +152,129 @@ public abstract class LevelOperator {
 		}
 	}
 
+	// 要素キャッシュを取得.
+	protected final LevelValueCache cache() {
+		return cacheOwner.valueCache;
+	}
+
+	// 要素キャッシュの対象キーを無効化.
+	// WriteBatchの場合は、commit時に無効化する.
+	protected final void invalidateCache(JniBuffer keyBuf) {
+		final LevelValueCache c = cacheOwner.valueCache;
+		if (c != null) {
+			if (writeBatchFlag) {
+				if (cachePending == null) {
+					cachePending = new ArrayList<LevelValueCache.Key>();
+				}
+				cachePending.add(c.key(keyBuf));
+			} else {
+				c.invalidate(c.key(keyBuf));
+			}
+		}
+	}
+
+	// 要素キャッシュの対象キー群を無効化.
+	protected final void invalidateCache(List<LevelValueCache.Key> keys) {
+		final LevelValueCache c = cacheOwner.valueCache;
+		if (c != null) {
+			if (writeBatchFlag) {
+				if (cachePending == null) {
+					cachePending = new ArrayList<LevelValueCache.Key>();
+				}
+				cachePending.addAll(keys);
+			} else {
+				c.invalidate(keys);
+			}
+		}
+	}
+
+	// トランザクション外の書き込みを開始.
+	// 書き込み前に呼び出し、書き込み後に writeEnd を呼び出す.
+	// keyBuf が[null]の場合は、全てのキーに対する書き込みとなる.
+	protected final LevelCommitLog.Commit writeStart(JniBuffer keyBuf) {
+		if (writeBatchFlag || commitLog == null) {
+			return null;
+		}
+		return commitLog.writeStart(keyBuf);
+	}
+
+	// トランザクション外の書き込みを完了.
+	protected final void writeEnd(LevelCommitLog.Commit c) {
+		if (c != null) {
+			commitLog.writeEnd(c);
+		}
+	}
+
+	// 要素キャッシュを全て無効化.
+	protected final void clearCache() {
+		final LevelValueCache c = cacheOwner.valueCache;
+		if (c != null) {
+			c.clear();
+		}
+	}
+
 	// バッチ情報を作成.
+	// commit前の書き込みを参照できるように、キー順のインデックス付きで作成する.
 	protected WriteBatch writeBatch() {
 		if(writeBatchFlag) {
 			if (_batch == null) {
-				_batch = new WriteBatch();
+				_batch = new WriteBatchIndex(leveldb.getType());
 			}
 			return _batch;
 		}
 		return null;
 	}
 
+	// 要素用のJniBufferを取得.
+	// オプションで要素圧縮が定義されている場合は、閾値以上の要素を圧縮する.
+	protected JniBuffer valueBuffer(Object value) throws Exception {
+		JniBuffer ret = LevelBuffer.value(value);
+		compressValue(ret);
+		return ret;
+	}
+
+	// エンコード済みの要素を圧縮.
+	// オプションで要素圧縮が定義されている場合は、閾値以上の要素を圧縮する.
+	protected void compressValue(JniBuffer buf) throws Exception {
+		LevelOption opt = leveldb.getOption();
+		if(opt.getCompressType() != LevelOption.COMPRESS_NONE) {
+			int saved;
+			if(opt.getCompressType() != LevelOption.COMPRESS_LZ4_DICT) {
+				saved = LevelValues.compress(buf, opt.getCompressType(), opt.getCompressThreshold());
+			} else if(dictionary != null) {
+				saved = LevelValues.compress(buf, dictionary, opt.getCompressThreshold());
+			} else {
+				// 辞書が未作成の場合は、通常のLz4で圧縮.
+				saved = LevelValues.compress(buf, LevelOption.COMPRESS_LZ4, opt.getCompressThreshold());
+			}
+			if(saved > 0) {
+				compressCount.incrementAndGet();
+				compressSavedBytes.addAndGet(saved);
+			}
+		}
+	}
+
 	// Snapshotを作成.
+	// WriteBatchの書き込み内容を重ねて参照する.
 	protected LeveldbIterator getSnapshot() {
 		if(writeBatchFlag) {
 			if (_snapshot == null) {
-				_snapshot = leveldb.snapshot();
+				_snapshot = ((WriteBatchIndex)writeBatch()).iterator(leveldb.snapshot(), true, readSet);
 			}
 			return _snapshot;
 		}
 		return null;
 	}
 	
+	// Iteratorを作成.
+	// WriteBatchモードの場合は、commit前の書き込み内容を重ねて参照する.
+	protected LeveldbIterator batchIterator(LeveldbIterator it) {
+		if(writeBatchFlag) {
+			return ((WriteBatchIndex)writeBatch()).iterator(it, true, readSet);
+		}
+		return it;
+	}
+	
 	/**
 	 * このオペレータを完全破棄.
 	 * @return boolean [true]の場合、削除成功.
@@ -143,6 +290,8 @@ public abstract class LevelOperator {
 			leveldb.close();
 			leveldb = null;
 			Leveldb.destroy(path, opt);
+			LevelDictionary.destroy(path);
+			dictionary = null;
 			return true;
 		}
 		return false;
@@ -157,12 +306,18 @@ public abstract class LevelOperator {
 		if(writeBatchFlag) {
 			return false;
 		}
-		String path = leveldb.getPath();
-		LevelOption opt = leveldb.getOption().copyObject();
-		leveldb.close();
-		leveldb = null;
-		Leveldb.destroy(path, opt);
-		leveldb = new Leveldb(path, opt);
+		final LevelCommitLog.Commit w = writeStart(null);
+		try {
+			String path = leveldb.getPath();
+			LevelOption opt = leveldb.getOption().copyObject();
+			leveldb.close();
+			leveldb = null;
+			Leveldb.destroy(path, opt);
+			leveldb = new Leveldb(path, opt);
+		} finally {
+			writeEnd(w);
+		}
+		clearCache();
 		return true;
 	}
 	
@@ -186,10 +341,37 @@ public abstract class LevelOperator {
 		if(writeBatchFlag) {
 			// バッチ反映.
 			if (_batch != null) {
-				_batch.execute(leveldb);
+				final byte[][] keys = (commitLog != null && _batch instanceof WriteBatchIndex) ?
+					((WriteBatchIndex)_batch).keys() : null;
+				if (readSet != null) {
+					// トランザクションの場合は、LevelTransaction.commit のロック内でのみ反映できる.
+					if (!commitLog.lock.isHeldByCurrentThread()) {
+						throw new LeveldbException("Transaction operators are committed by LevelTransaction.");
+					}
+					_batch.execute(leveldb);
+					commitLog.commit(keys);
+				} else {
+					// 書き込んだキーを競合検出用に登録.
+					final LevelCommitLog.Commit w = commitLog == null ? null : commitLog.writeStart(keys);
+					try {
+						_batch.execute(leveldb);
+					} finally {
+						if (w != null) {
+							commitLog.writeEnd(w);
+						}
+					}
+				}
 				_batch.close();
 				_batch = null;
 			}
+			// 反映したキーのキャッシュを無効化.
+			if (cachePending != null) {
+				final LevelValueCache c = cacheOwner.valueCache;
+				if (c != null) {
+					c.invalidate(cachePending);
+				}
+				cachePending = null;
+			}
 			// スナップショットをクリア.
 			if (_snapshot != null) {
 				_snapshot.close();
@@ -209,6 +391,7 @@ public abstract class LevelOperator {
 				_batch.close();
 				_batch = null;
 			}
+			cachePending = null;
 			// スナップショットをクリア.
 			if (_snapshot != null) {
 				_snapshot.close();
@@ -217,6 +400,32 @@ public abstract class LevelOperator {
 		}
 	}
 
+	/**
+	 * セッションを開始.
+	 * <p>
+	 * このオペレータと同じLeveldbを利用する、WriteBatchモードのオペレータを生成します.
+	 * セッションは自身のWriteBatch、スナップショット、インデックスの書き込み内容を持つため、
+	 * スレッド毎にセッションを開始することで、１つのLeveldbに対して並列で書き込めます.
+	 * </p>
+	 * <p>
+	 * commit / rollback で書き込み内容を反映・破棄し、利用後は close して下さい.
+	 * セッションはスレッドセーフではないため、開始したスレッドで利用して下さい.
+	 * </p>
+	 * 
+	 * @return LevelOperator セッションが返却されます.
+	 */
+	public LevelOperator begin() {
+		throw new LeveldbException("Session is not supported: " + getClass().getName());
+	}
+	
+	// セッションが開始できるかチェック.
+	protected final void checkBegin() {
+		checkClose();
+		if(writeBatchFlag) {
+			throw new LeveldbException("Session cannot be started in writeBatch mode.");
+		}
+	}
+
 	/**
 	 * クローズしているかチェック.
 	 * 
@@ -275,6 +484,63 @@ public abstract class LevelOperator {
 		return leveldb.getType();
 	}
 
+	/**
+	 * 共有辞書を作成.
+	 * 現在の要素をサンプリングして新しいバージョンの辞書を作成し、
+	 * 以降の要素圧縮で利用します.
+	 * 
+	 * @return LevelDictionary 作成された辞書が返却されます.
+	 */
+	public LevelDictionary trainDictionary() {
+		return trainDictionary(LevelDictionary.DEFAULT_SAMPLE_COUNT, LevelDictionary.DEFAULT_DICTIONARY_SIZE);
+	}
+
+	/**
+	 * 共有辞書を作成.
+	 * 現在の要素をサンプリングして新しいバージョンの辞書を作成し、
+	 * 以降の要素圧縮で利用します.
+	 * 
+	 * @param sampleCount サンプル数を設定します.
+	 * @param dictSize 辞書サイズを設定します.
+	 * @return LevelDictionary 作成された辞書が返却されます.
+	 */
+	public LevelDictionary trainDictionary(int sampleCount, int dictSize) {
+		checkClose();
+		if(leveldb.getOption().getCompressType() != LevelOption.COMPRESS_LZ4_DICT) {
+			throw new LeveldbException("The compression type is not lz4 dictionary.");
+		}
+		byte[] dict = LevelDictionary.train(LevelDictionary.sample(leveldb, sampleCount), dictSize);
+		dictionary = LevelDictionary.save(leveldb.getPath(), dict);
+		return dictionary;
+	}
+
+	/**
+	 * 現在利用中の共有辞書を取得.
+	 * 
+	 * @return LevelDictionary 共有辞書が返却されます. 存在しない場合は[null]が返却されます.
+	 */
+	public LevelDictionary getDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * 要素圧縮された件数を取得.
+	 * 
+	 * @return long 要素圧縮された件数が返却されます.
+	 */
+	public long getCompressCount() {
+		return compressCount.get();
+	}
+
+	/**
+	 * 要素圧縮で削減されたバイト数を取得.
+	 * 
+	 * @return long 要素圧縮で削減されたバイト数が返却されます.
+	 */
+	public long getCompressSavedBytes() {
+		return compressSavedBytes.get();
+	}
+
 	/**
 	 * writeBatchモードかチェック.
 	 * @return
@@ -285,6 +551,7 @@ public abstract class LevelOperator {
 	
 	/**
 	 * ReadWriteLockオブジェクトを取得.
+	 * オペレータ全体のロックです. LevelMapのキー単位の更新は getKeyLock を利用してください.
 	 * @return
 	 */
 	public ReadWriteLock getLock() {
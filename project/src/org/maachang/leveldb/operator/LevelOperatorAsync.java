@@ -0,0 +1,378 @@
+package org.maachang.leveldb.operator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.maachang.leveldb.LeveldbException;
+
+/**
+ * オペレータの非同期処理.
+ * <p>
+ * 処理はオペレータ毎のキューに登録され、LevelAsyncExecutor のI/Oスレッドで順番に実行されます.
+ * 同じオブジェクトに登録した処理は、登録順に実行されるため、書き込み後の読み込みは書き込み結果を参照できます.
+ * </p>
+ * <p>
+ * write で登録した連続する書き込み処理は、WriteBatchモードのオペレータで
+ * まとめて実行され、１回のcommitで反映されます.
+ * キューの処理件数が上限を超えた場合は、呼び出し元をブロックせずに
+ * RejectedExecutionException で完了したCompletableFutureが返却されます.
+ * </p>
+ * <p>
+ * CompletableFuture の後続処理(thenApply等)は、I/Oスレッドで実行されるため、
+ * 重い処理は thenApplyAsync などで別のスレッドに移して下さい.
+ * </p>
+ */
+public class LevelOperatorAsync<T extends LevelOperator> {
+
+	/** デフォルトのキュー上限. **/
+	public static final int DEFAULT_MAX_PENDING = 65536;
+
+	/** まとめて書き込む最大件数. **/
+	protected static final int MAX_COALESCE = 1024;
+
+	/** １回の実行で処理する最大件数. **/
+	private static final int DRAIN_LENGTH = 4096;
+
+	/**
+	 * 処理要求.
+	 */
+	private static final class Task {
+		final Function<Object, Object> call;
+		final boolean write;
+		final CompletableFuture<Object> future = new CompletableFuture<Object>();
+
+		Task(Function<Object, Object> call, boolean write) {
+			this.call = call;
+			this.write = write;
+		}
+	}
+
+	protected final T operator;
+	private final LevelAsyncExecutor executor;
+	private final int maxPending;
+	private final ConcurrentLinkedQueue<Task> queue = new ConcurrentLinkedQueue<Task>();
+	private final AtomicInteger pending = new AtomicInteger(0);
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	private volatile boolean closeFlag = false;
+	private final Runnable drain = new Runnable() {
+		public void run() {
+			try {
+				drain();
+			} finally {
+				scheduled.set(false);
+				if (!queue.isEmpty()) {
+					schedule();
+				}
+			}
+		}
+	};
+
+	/**
+	 * コンストラクタ.
+	 * デフォルトのI/Oスレッドプールを利用します.
+	 *
+	 * @param operator
+	 *            対象のオペレータを設定します.
+	 */
+	public LevelOperatorAsync(T operator) {
+		this(operator, null, DEFAULT_MAX_PENDING);
+	}
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param operator
+	 *            対象のオペレータを設定します.
+	 * @param executor
+	 *            I/Oスレッドプールを設定します. [null]の場合はデフォルトのスレッドプールを利用します.
+	 * @param maxPending
+	 *            キューの上限を設定します.
+	 */
+	public LevelOperatorAsync(T operator, LevelAsyncExecutor executor, int maxPending) {
+		if (operator == null) {
+			throw new LeveldbException("Operator is not set.");
+		} else if (operator.writeBatchFlag) {
+			throw new LeveldbException("WriteBatch mode operator is not supported.");
+		}
+		this.operator = operator;
+		this.executor = executor == null ? LevelAsyncExecutor.getDefault() : executor;
+		this.maxPending = maxPending <= 0 ? DEFAULT_MAX_PENDING : maxPending;
+	}
+
+	/**
+	 * クローズ処理.
+	 * 登録済みの処理は実行されます. オペレータはクローズされません.
+	 */
+	public void close() {
+		closeFlag = true;
+	}
+
+	/**
+	 * クローズ済みかチェック.
+	 *
+	 * @return boolean [true]の場合、クローズ済みです.
+	 */
+	public boolean isClose() {
+		return closeFlag || operator.isClose();
+	}
+
+	/**
+	 * 対象のオペレータを取得.
+	 *
+	 * @return T オペレータが返却されます.
+	 */
+	public T getOperator() {
+		return operator;
+	}
+
+	/**
+	 * 実行待ちの件数を取得.
+	 *
+	 * @return int 実行待ちの件数が返却されます.
+	 */
+	public int getPending() {
+		return pending.get();
+	}
+
+	/**
+	 * キューの上限を取得.
+	 *
+	 * @return int キューの上限が返却されます.
+	 */
+	public int getMaxPending() {
+		return maxPending;
+	}
+
+	/**
+	 * 処理を登録.
+	 * 処理はオペレータに対して、登録順に実行されます.
+	 *
+	 * @param call
+	 *            処理を設定します.
+	 * @return CompletableFuture 処理結果が返却されます.
+	 */
+	public <R> CompletableFuture<R> call(Function<? super T, ? extends R> call) {
+		return submit(call, false);
+	}
+
+	/**
+	 * 書き込み処理を登録.
+	 * <p>
+	 * 連続して登録された書き込み処理は、WriteBatchモードのオペレータでまとめて実行されます.
+	 * CompletableFuture は、commit 後に完了します.
+	 * まとめて実行中に例外となった処理が存在する場合は、まとめた書き込みを破棄して、
+	 * 各処理を個別のWriteBatchで再実行するため、処理は再実行可能である必要があります.
+	 * 例外となった処理の書き込みは反映されません.
+	 * WriteBatchモードがサポートされていないオペレータの場合は、call と同じ処理となります.
+	 * </p>
+	 *
+	 * @param call
+	 *            書き込み処理を設定します.
+	 * @return CompletableFuture 処理結果が返却されます.
+	 */
+	public <R> CompletableFuture<R> write(Function<? super T, ? extends R> call) {
+		return submit(call, true);
+	}
+
+	// 処理を登録.
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	protected final <R> CompletableFuture<R> submit(Function<? super T, ? extends R> call, boolean write) {
+		final Task t = new Task((Function) call, write);
+		if (call == null) {
+			t.future.completeExceptionally(new NullPointerException());
+		} else if (isClose()) {
+			t.future.completeExceptionally(new LeveldbException("The object has already been cleared."));
+		} else if (pending.incrementAndGet() > maxPending) {
+			pending.decrementAndGet();
+			t.future.completeExceptionally(new RejectedExecutionException(
+				"Too many pending requests: " + maxPending));
+		} else {
+			queue.offer(t);
+			schedule();
+		}
+		return (CompletableFuture<R>) t.future;
+	}
+
+	// キューの処理をI/Oスレッドに登録.
+	private final void schedule() {
+		if (scheduled.compareAndSet(false, true)) {
+			try {
+				executor.execute(drain);
+			} catch (RejectedExecutionException re) {
+				// スレッドプールが停止している場合は、全ての処理をエラーとする.
+				Task t;
+				while ((t = queue.poll()) != null) {
+					pending.decrementAndGet();
+					t.future.completeExceptionally(re);
+				}
+				scheduled.set(false);
+			}
+		}
+	}
+
+	// キューの処理を実行.
+	private final void drain() {
+		final List<Task> writes = new ArrayList<Task>();
+		Task t;
+		int n = 0;
+		while (n < DRAIN_LENGTH && (t = queue.peek()) != null) {
+			if (!t.write) {
+				queue.poll();
+				pending.decrementAndGet();
+				n++;
+				run(operator, t);
+				continue;
+			}
+			// 連続する書き込み処理をまとめる.
+			while (writes.size() < MAX_COALESCE && (t = queue.peek()) != null && t.write) {
+				queue.poll();
+				pending.decrementAndGet();
+				writes.add(t);
+			}
+			n += writes.size();
+			writeAll(writes);
+			writes.clear();
+		}
+	}
+
+	// 処理を実行.
+	private static final void run(Object op, Task t) {
+		try {
+			t.future.complete(t.call.apply(op));
+		} catch (Throwable e) {
+			t.future.completeExceptionally(e);
+		}
+	}
+
+	// 書き込み処理をまとめて実行.
+	private final void writeAll(List<Task> writes) {
+		final int len = writes.size();
+		LevelOperator batch = null;
+		if (len > 1 && !operator.isClose()) {
+			try {
+				batch = batchOperator(operator);
+			} catch (Throwable e) {
+				batch = null;
+			}
+		}
+		if (batch == null) {
+			for (int i = 0; i < len; i++) {
+				run(operator, writes.get(i));
+			}
+			return;
+		}
+		final Object[] results = new Object[len];
+		final boolean[] success = new boolean[len];
+		boolean failed = false;
+		try {
+			for (int i = 0; i < len; i++) {
+				try {
+					results[i] = writes.get(i).call.apply(batch);
+					success[i] = true;
+				} catch (Throwable e) {
+					failed = true;
+					break;
+				}
+			}
+			if (failed) {
+				// 例外となった処理の途中までの書き込みが反映されないように、
+				// まとめた書き込みを破棄して、個別のWriteBatchで再実行する.
+				batch.rollback();
+			} else {
+				batch.commit();
+			}
+		} catch (Throwable e) {
+			try {
+				batch.rollback();
+			} catch (Throwable ee) {
+			}
+			// 個別に再実行する場合は、再実行の結果で完了させる.
+			for (int i = 0; !failed && i < len; i++) {
+				if (success[i]) {
+					writes.get(i).future.completeExceptionally(e);
+					success[i] = false;
+				}
+			}
+		} finally {
+			batch.close();
+		}
+		if (failed) {
+			for (int i = 0; i < len; i++) {
+				writeOne(writes.get(i));
+			}
+			return;
+		}
+		for (int i = 0; i < len; i++) {
+			if (success[i]) {
+				writes.get(i).future.complete(results[i]);
+			}
+		}
+	}
+
+	// 書き込み処理を個別のWriteBatchモードのオペレータで実行.
+	// 例外となった場合は、途中までの書き込みを破棄する.
+	private final void writeOne(Task t) {
+		LevelOperator batch = null;
+		if (!operator.isClose()) {
+			try {
+				batch = batchOperator(operator);
+			} catch (Throwable e) {
+				batch = null;
+			}
+		}
+		if (batch == null) {
+			run(operator, t);
+			return;
+		}
+		final Object result;
+		try {
+			try {
+				result = t.call.apply(batch);
+			} catch (Throwable e) {
+				batch.rollback();
+				t.future.completeExceptionally(e);
+				return;
+			}
+			batch.commit();
+		} catch (Throwable e) {
+			try {
+				batch.rollback();
+			} catch (Throwable ee) {
+			}
+			t.future.completeExceptionally(e);
+			return;
+		} finally {
+			batch.close();
+		}
+		t.future.complete(result);
+	}
+
+	/**
+	 * WriteBatchモードのオペレータを生成.
+	 * 書き込み処理をまとめて実行するためのオペレータを生成します.
+	 *
+	 * @param op
+	 *            対象のオペレータを設定します.
+	 * @return LevelOperator WriteBatchモードのオペレータが返却されます.
+	 *         サポートされていない場合は[null]が返却されます.
+	 */
+	protected LevelOperator batchOperator(T op) {
+		try {
+			final LevelOperator ret = op.begin();
+			// 継承したオペレータの場合は、同じ型のセッションにならないので利用しない.
+			if (ret.getClass() != op.getClass()) {
+				ret.close();
+				return null;
+			}
+			return ret;
+		} catch (LeveldbException le) {
+			return null;
+		}
+	}
+}
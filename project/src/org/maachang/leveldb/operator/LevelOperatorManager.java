@@ -229,7 +229,7 @@ public class LevelOperatorManager {
 		} catch (Exception e) {
 			throw new LeveldbException(e);
 		} finally {
-			LevelBuffer.clearBuffer(null, valBuf);
+			LevelBuffer.release(null, valBuf);
 		}
 	}
 	
@@ -288,7 +288,7 @@ public class LevelOperatorManager {
 				return null;
 			}
 			LevelOption opt = new LevelOption(valBuf);
-			LevelBuffer.clearBuffer(null, valBuf);
+			LevelBuffer.release(null, valBuf);
 			valBuf = null;
 			String dbName = basePath + OPERATOR_PATH + uname;
 			LevelOperator ret = null;
@@ -315,7 +315,7 @@ public class LevelOperatorManager {
 			nameMemManager.put(name, uname);
 			return ret;
 		} finally {
-			LevelBuffer.clearBuffer(null, valBuf);
+			LevelBuffer.release(null, valBuf);
 		}
 	}
 
@@ -0,0 +1,314 @@
+package org.maachang.leveldb.operator;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.maachang.leveldb.JniBuffer;
+import org.maachang.leveldb.JniIO;
+import org.maachang.leveldb.LeveldbException;
+import org.maachang.leveldb.LeveldbIterator;
+import org.maachang.leveldb.LeveldbSnapshot;
+
+/**
+ * オペレータの読み込み結果を Flow.Publisher で通知.
+ * <p>
+ * 購読毎にスナップショットを作成し、request(n) で要求があった場合のみ、
+ * LevelAsyncExecutor のI/Oスレッドで一定件数ずつ読み込みます.
+ * ネイティブのIteratorは読み込み毎に開放し、次の読み込みでは
+ * 最後に読み込んだキーから再シークするため、購読側の処理が遅い場合でも
+ * Iteratorを保持し続けることはありません.
+ * </p>
+ * <p>
+ * 通知(onNext等)は、I/Oスレッドで順番に呼び出されます.
+ * </p>
+ */
+public abstract class LevelPublisher<T> implements Flow.Publisher<T> {
+
+	/** デフォルトの読み込み件数. **/
+	public static final int DEFAULT_BATCH = 256;
+
+	protected final LevelOperator operator;
+	private final LevelAsyncExecutor executor;
+	private final int batch;
+
+	/**
+	 * 読み込み位置.
+	 * 購読毎に生成され、読み込み毎に新しいIteratorが渡されます.
+	 */
+	protected static abstract class Cursor<T> {
+		/** 最後に読み込んだキー. **/
+		protected final JniBuffer key = new JniBuffer();
+		private JniBuffer tmp = null;
+
+		/**
+		 * 開始位置に移動.
+		 * キーが読み込まれていない場合に呼び出されます.
+		 *
+		 * @param itr
+		 *            対象のIteratorを設定します.
+		 * @exception Exception
+		 *                例外.
+		 */
+		protected void start(LeveldbIterator itr) throws Exception {
+		}
+
+		/**
+		 * 情報を読み込み.
+		 * 読み込んだ情報のキーは key に設定します.
+		 *
+		 * @param itr
+		 *            対象のIteratorを設定します.
+		 * @param out
+		 *            読み込み先を設定します.
+		 * @param max
+		 *            最大読み込み件数を設定します.
+		 * @return boolean [false]の場合、終端に達しました.
+		 * @exception Exception
+		 *                例外.
+		 */
+		protected abstract boolean read(LeveldbIterator itr, ArrayDeque<T> out, int max) throws Exception;
+
+		// 前回の読み込み位置の次に移動.
+		final void open(LeveldbIterator itr) throws Exception {
+			if (key.position() == 0) {
+				start(itr);
+				return;
+			}
+			itr.seek(key);
+			if (itr.valid()) {
+				if (tmp == null) {
+					tmp = new JniBuffer();
+				}
+				itr.key(tmp);
+				if (equalsKey(tmp, key)) {
+					itr.next();
+				}
+			}
+		}
+
+		// クローズ.
+		final void close() {
+			key.destroy();
+			if (tmp != null) {
+				tmp.destroy();
+				tmp = null;
+			}
+		}
+
+		// キーのバイナリ一致チェック.
+		private static final boolean equalsKey(JniBuffer a, JniBuffer b) {
+			final int len = a.position();
+			if (len != b.position()) {
+				return false;
+			}
+			final long aa = a.address();
+			final long bb = b.address();
+			for (int i = 0; i < len; i++) {
+				if (JniIO.get(aa, i) != JniIO.get(bb, i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param operator
+	 *            読み込み対象のオペレータを設定します.
+	 * @param executor
+	 *            I/Oスレッドプールを設定します. [null]の場合はデフォルトのスレッドプールを利用します.
+	 * @param batch
+	 *            １回の読み込み件数を設定します.
+	 */
+	protected LevelPublisher(LevelOperator operator, LevelAsyncExecutor executor, int batch) {
+		this.operator = operator;
+		this.executor = executor == null ? LevelAsyncExecutor.getDefault() : executor;
+		this.batch = batch <= 0 ? DEFAULT_BATCH : batch;
+	}
+
+	/**
+	 * 読み込み位置を生成.
+	 *
+	 * @return Cursor 読み込み位置が返却されます.
+	 */
+	protected abstract Cursor<T> cursor();
+
+	/**
+	 * 購読.
+	 *
+	 * @param subscriber
+	 *            購読者を設定します.
+	 */
+	@Override
+	public void subscribe(Flow.Subscriber<? super T> subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException();
+		}
+		LeveldbSnapshot ss = null;
+		Throwable err = null;
+		try {
+			operator.checkClose();
+			ss = operator.leveldb.sharedSnapshot();
+		} catch (Throwable e) {
+			err = e;
+		}
+		final Subscription<T> s = new Subscription<T>(this, subscriber, ss, err == null ? cursor() : null);
+		subscriber.onSubscribe(s);
+		if (err != null) {
+			s.error(err);
+		}
+	}
+
+	/**
+	 * 購読処理.
+	 */
+	private static final class Subscription<T> implements Flow.Subscription, Runnable {
+		private final LevelPublisher<T> publisher;
+		private final Flow.Subscriber<? super T> subscriber;
+		private final ArrayDeque<T> buffer = new ArrayDeque<T>();
+		private final AtomicLong requested = new AtomicLong(0L);
+		private final AtomicInteger wip = new AtomicInteger(0);
+		private LeveldbSnapshot snapshot;
+		private Cursor<T> cursor;
+		private volatile boolean cancelled = false;
+		private volatile Throwable error = null;
+		private boolean end = false;
+		private boolean done = false;
+
+		Subscription(LevelPublisher<T> publisher, Flow.Subscriber<? super T> subscriber,
+			LeveldbSnapshot snapshot, Cursor<T> cursor) {
+			this.publisher = publisher;
+			this.subscriber = subscriber;
+			this.snapshot = snapshot;
+			this.cursor = cursor;
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0L) {
+				error(new IllegalArgumentException("request must be positive: " + n));
+				return;
+			}
+			long r, u;
+			do {
+				r = requested.get();
+				u = r + n;
+				if (u < 0L) {
+					u = Long.MAX_VALUE;
+				}
+			} while (!requested.compareAndSet(r, u));
+			schedule();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			schedule();
+		}
+
+		// エラー通知.
+		void error(Throwable e) {
+			error = e;
+			schedule();
+		}
+
+		// I/Oスレッドで処理.
+		private final void schedule() {
+			if (wip.getAndIncrement() == 0) {
+				try {
+					publisher.executor.execute(this);
+				} catch (RejectedExecutionException re) {
+					error = re;
+					run();
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			int missed = 1;
+			while (true) {
+				drain();
+				if ((missed = wip.addAndGet(-missed)) == 0) {
+					break;
+				}
+			}
+		}
+
+		// 要求件数分の通知.
+		private final void drain() {
+			if (done) {
+				return;
+			}
+			try {
+				while (true) {
+					if (cancelled) {
+						release();
+						return;
+					} else if (error != null) {
+						release();
+						subscriber.onError(error);
+						return;
+					}
+					if (buffer.isEmpty()) {
+						if (end) {
+							release();
+							subscriber.onComplete();
+							return;
+						} else if (requested.get() == 0L) {
+							return;
+						}
+						fetch();
+						continue;
+					}
+					if (requested.get() == 0L) {
+						return;
+					}
+					subscriber.onNext(buffer.poll());
+					if (requested.get() != Long.MAX_VALUE) {
+						requested.decrementAndGet();
+					}
+				}
+			} catch (Throwable e) {
+				if (!done) {
+					release();
+					subscriber.onError(e);
+				}
+			}
+		}
+
+		// 次の情報を読み込む.
+		// Iteratorは読み込み毎に開放する.
+		private final void fetch() throws Exception {
+			if (publisher.operator.isClose() || snapshot.isClose()) {
+				throw new LeveldbException("The object has already been cleared.");
+			}
+			final LeveldbIterator itr = snapshot.iterator();
+			try {
+				cursor.open(itr);
+				end = !cursor.read(itr, buffer, publisher.batch);
+			} finally {
+				itr.close();
+			}
+		}
+
+		// 開放処理.
+		private final void release() {
+			done = true;
+			buffer.clear();
+			if (cursor != null) {
+				cursor.close();
+				cursor = null;
+			}
+			if (snapshot != null) {
+				snapshot.close();
+				snapshot = null;
+			}
+		}
+	}
+}
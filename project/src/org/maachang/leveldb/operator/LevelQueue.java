@@ -1,5 +1,7 @@
 package org.maachang.leveldb.operator;
 
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.NoSuchElementException;
 
 import org.maachang.leveldb.JniBuffer;
@@ -97,6 +99,17 @@ public class LevelQueue extends LevelOperator {
 		this.machineId = queue.machineId;
 		this.sequenceId = new Time12SequenceId(queue.machineId);
 	}
+
+	/**
+	 * セッションを開始.
+	 * 
+	 * @return LevelQueue WriteBatchモードのLevelQueueが返却されます.
+	 */
+	@Override
+	public LevelQueue begin() {
+		checkBegin();
+		return new LevelQueue(this);
+	}
 	
 	/**
 	 * 最後に追加.
@@ -118,7 +131,7 @@ public class LevelQueue extends LevelOperator {
 					leveldb.put(keyBuf, (JniBuffer)o);
 				}
 			} else {
-				valBuf = LevelBuffer.value(o);
+				valBuf = valueBuffer(o);
 				if(writeBatchFlag) {
 					writeBatch().put(keyBuf, valBuf);
 				} else {
@@ -131,8 +144,40 @@ public class LevelQueue extends LevelOperator {
 		} catch (Exception e) {
 			throw new LeveldbException(e);
 		} finally {
-			LevelBuffer.clearBuffer(keyBuf, valBuf);
+			LevelBuffer.release(keyBuf, valBuf);
+		}
+	}
+	
+	/**
+	 * 最後に一括追加.
+	 * <p>
+	 * 要素のエンコードを並列で行い、WriteBatchでまとめて書き込みます.
+	 * </p>
+	 * 
+	 * @param values
+	 *            追加対象の要素群を設定します.
+	 * @return String[] 追加順のシーケンスIDが返却されます.
+	 */
+	@SuppressWarnings("rawtypes")
+	public String[] addAll(Collection values) {
+		checkClose();
+		final int len = values.size();
+		final Object[] keys = new Object[len];
+		final Object[] vals = new Object[len];
+		int n = 0;
+		Iterator it = values.iterator();
+		while (it.hasNext() && n < len) {
+			keys[n] = sequenceId.next();
+			vals[n++] = it.next();
+		}
+		if (n > 0) {
+			LevelBulkWriter.write(this, LevelOption.TYPE_FREE, keys, null, vals, n);
+		}
+		final String[] ret = new String[n];
+		for (int i = 0; i < n; i++) {
+			ret[i] = Time12SequenceId.toString((byte[]) keys[i]);
 		}
+		return ret;
 	}
 	
 	/**
@@ -159,7 +204,7 @@ public class LevelQueue extends LevelOperator {
 					leveldb.put(keyBuf, (JniBuffer)value);
 				}
 			} else {
-				valBuf = LevelBuffer.value(value);
+				valBuf = valueBuffer(value);
 				if(writeBatchFlag) {
 					writeBatch().put(keyBuf, valBuf);
 				} else {
@@ -171,7 +216,7 @@ public class LevelQueue extends LevelOperator {
 		} catch (Exception e) {
 			throw new LeveldbException(e);
 		} finally {
-			LevelBuffer.clearBuffer(keyBuf, valBuf);
+			LevelBuffer.release(keyBuf, valBuf);
 		}
 	}
 
@@ -247,7 +292,7 @@ public class LevelQueue extends LevelOperator {
 			if (itr != null) {
 				itr.close();
 			}
-			LevelBuffer.clearBuffer(keyBuf, valBuf);
+			LevelBuffer.release(keyBuf, valBuf);
 		}
 	}
 
@@ -312,7 +357,7 @@ public class LevelQueue extends LevelOperator {
 					}
 					throw new LeveldbException(e);
 				} finally {
-					LevelBuffer.clearBuffer(buf, null);
+					LevelBuffer.release(buf, null);
 				}
 			}
 			queue = q;
@@ -377,7 +422,7 @@ public class LevelQueue extends LevelOperator {
 				}
 				this.resultKey = Time12SequenceId.toString(keyBuf.getBinary());
 				Object value = LevelValues.decode(valBuf);
-				LevelBuffer.clearBuffer(keyBuf, valBuf);
+				LevelBuffer.release(keyBuf, valBuf);
 				keyBuf = null; valBuf = null;
 				return value;
 			} catch (LeveldbException le) {
@@ -385,7 +430,7 @@ public class LevelQueue extends LevelOperator {
 			} catch (Exception e) {
 				throw new LeveldbException(e);
 			} finally {
-				LevelBuffer.clearBuffer(keyBuf, valBuf);
+				LevelBuffer.release(keyBuf, valBuf);
 			}
 		}
 
@@ -402,7 +447,7 @@ public class LevelQueue extends LevelOperator {
 	 * @return
 	 */
 	public LevelQueueIterator iterator() {
-		return new LevelQueueIterator(this, leveldb.snapshot(), null);
+		return new LevelQueueIterator(this, batchIterator(leveldb.snapshot()), null);
 	}
 
 	/**
@@ -436,6 +481,6 @@ public class LevelQueue extends LevelOperator {
 	 */
 	public LevelQueueIterator iterator(byte[] key) {
 		Time12SequenceId.first(key);
-		return new LevelQueueIterator(this, leveldb.snapshot(), key);
+		return new LevelQueueIterator(this, batchIterator(leveldb.snapshot()), key);
 	}
 }
@@ -0,0 +1,210 @@
+package org.maachang.leveldb.operator;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import org.maachang.leveldb.LeveldbException;
+import org.maachang.leveldb.util.FileUtil;
+
+/**
+ * インデックス付きオペレータのコミット用REDOログ.
+ * <p>
+ * インデックス元とインデックスは別々のLeveldbのため、commit の途中で
+ * プロセスが終了すると、インデックスとの整合性が失われます.
+ * これを防ぐため、反映前に全てのWriteBatchの内容をファイルに書き込み、
+ * 反映後に削除します. オープン時にファイルが残っている場合は、
+ * 記録された内容を再反映します(同じ内容の再反映なので結果は変わりません).
+ * </p>
+ * <p>
+ * 記録は一時ファイルに書き込んで同期(fsync)した後に置き換えるため、
+ * 反映前に記録がディスクに書き込まれていることが保証されます.
+ * </p>
+ */
+public final class LevelRedoLog {
+
+	/** REDOログファイルの拡張子. **/
+	public static final String REDO_FOODER = ".redo";
+
+	// 書き込み中の一時ファイルの拡張子.
+	private static final String TMP_FOODER = ".tmp";
+
+	// ファイルヘッダ.
+	private static final int MAGIC = 0x4c52444f;
+
+	final ReentrantLock lock = new ReentrantLock();
+	private final String path;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param dbPath
+	 *            インデックス元のLeveldbのパスを設定します.
+	 */
+	LevelRedoLog(String dbPath) {
+		this.path = dbPath + REDO_FOODER;
+	}
+
+	/**
+	 * REDOログファイル名を取得.
+	 *
+	 * @return String ファイル名が返却されます.
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * 反映されていない記録が存在するかチェック.
+	 *
+	 * @return boolean [true]の場合、存在します.
+	 */
+	public boolean isPending() {
+		return FileUtil.isFile(path);
+	}
+
+	/**
+	 * 反映内容を記録.
+	 *
+	 * @param names
+	 *            反映先の名前群を設定します.
+	 * @param batches
+	 *            WriteBatchのバイナリ群を設定します.
+	 */
+	void write(String[] names, byte[][] batches) {
+		final CRC32 crc = new CRC32();
+		final String tmp = path + TMP_FOODER;
+		FileOutputStream fo = null;
+		DataOutputStream out = null;
+		try {
+			fo = new FileOutputStream(tmp);
+			out = new DataOutputStream(new BufferedOutputStream(fo));
+			out.writeInt(MAGIC);
+			out.writeInt(names.length);
+			for (int i = 0; i < names.length; i++) {
+				final byte[] n = names[i].getBytes("UTF8");
+				out.writeInt(n.length);
+				out.write(n);
+				out.writeInt(batches[i].length);
+				out.write(batches[i]);
+				crc.update(n);
+				crc.update(batches[i]);
+			}
+			// 最後にチェックサムを書き込む.
+			// 書き込み途中で終了した場合は、チェックサムが一致しないので無視される.
+			out.writeLong(crc.getValue());
+			out.flush();
+			// 反映前に記録をディスクに同期する.
+			fo.getFD().sync();
+			out.close();
+			out = null;
+			// 書き込み済みの記録と置き換える.
+			Files.move(Paths.get(tmp), Paths.get(path), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		} catch (LeveldbException le) {
+			throw le;
+		} catch (Exception e) {
+			throw new LeveldbException(e);
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (Exception e) {
+				}
+			}
+			// 置き換えに失敗した場合は一時ファイルを削除.
+			new File(tmp).delete();
+		}
+	}
+
+	/**
+	 * 記録内容を読み込み.
+	 *
+	 * @return Object[] [0]反映先の名前群(String[]), [1]WriteBatchのバイナリ群(byte[][])が返却されます.
+	 *         記録が存在しないか、正しく書き込まれていない場合は[null]が返却されます.
+	 */
+	Object[] read() {
+		final File f = new File(path);
+		if (!f.isFile()) {
+			return null;
+		}
+		FileInputStream in = null;
+		try {
+			final byte[] bin = new byte[(int) f.length()];
+			in = new FileInputStream(f);
+			int off = 0;
+			int len;
+			while (off < bin.length && (len = in.read(bin, off, bin.length - off)) != -1) {
+				off += len;
+			}
+			in.close();
+			in = null;
+			if (off != bin.length || bin.length < 16) {
+				return null;
+			}
+			final CRC32 crc = new CRC32();
+			final DataInputStream din = new DataInputStream(new ByteArrayInputStream(bin));
+			if (din.readInt() != MAGIC) {
+				return null;
+			}
+			final int count = din.readInt();
+			if (count < 0) {
+				return null;
+			}
+			final String[] names = new String[count];
+			final byte[][] batches = new byte[count][];
+			byte[] b;
+			for (int i = 0; i < count; i++) {
+				for (int j = 0; j < 2; j++) {
+					len = din.readInt();
+					if (len < 0 || len > din.available()) {
+						return null;
+					}
+					b = new byte[len];
+					din.readFully(b);
+					crc.update(b);
+					if (j == 0) {
+						names[i] = new String(b, "UTF8");
+					} else {
+						batches[i] = b;
+					}
+				}
+			}
+			if (din.available() != 8 || din.readLong() != crc.getValue()) {
+				return null;
+			}
+			return new Object[] { names, batches };
+		} catch (LeveldbException le) {
+			throw le;
+		} catch (Exception e) {
+			// 書き込み途中の場合は、記録が無いものとする.
+			return null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (Exception e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * 記録を削除.
+	 */
+	void clear() {
+		final File f = new File(path);
+		if (f.exists() && !f.delete()) {
+			throw new LeveldbException("Failed to delete redo log: " + path);
+		}
+	}
+}
@@ -1,5 +1,10 @@
 package org.maachang.leveldb.operator;
 
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 import org.maachang.leveldb.JniBuffer;
@@ -87,6 +92,17 @@ public class LevelSequence extends LevelIndexOperator {
 		// インデックス初期化.
 		super.initIndex(seq);
 	}
+
+	/**
+	 * セッションを開始.
+	 * 
+	 * @return LevelSequence WriteBatchモードのLevelSequenceが返却されます.
+	 */
+	@Override
+	public LevelSequence begin() {
+		checkBegin();
+		return new LevelSequence(this);
+	}
 	
 	// シーケンスIDのキー情報を正しく取得.
 	private static final JniBuffer _getKey(Object key)
@@ -131,6 +147,38 @@ public class LevelSequence extends LevelIndexOperator {
 		return this.put(null, value);
 	}
 	
+	/**
+	 * 新しいシーケンスIDで一括追加.
+	 * <p>
+	 * 要素のエンコードを並列で行い、WriteBatchでまとめて書き込みます.
+	 * インデックスが存在する場合は、インデックスもまとめて更新されます.
+	 * </p>
+	 * 
+	 * @param values 設定対象の要素群を設定します.
+	 * @return String[] 追加順のシーケンスIDが返却されます.
+	 */
+	@SuppressWarnings("rawtypes")
+	public String[] addAll(Collection values) {
+		checkClose();
+		final int len = values.size();
+		final Object[] keys = new Object[len];
+		final Object[] vals = new Object[len];
+		int n = 0;
+		Iterator it = values.iterator();
+		while (it.hasNext() && n < len) {
+			keys[n] = sequenceId.next();
+			vals[n++] = it.next();
+		}
+		if (n > 0) {
+			LevelBulkWriter.write(this, LevelOption.TYPE_FREE, keys, null, vals, n);
+		}
+		final String[] ret = new String[n];
+		for (int i = 0; i < n; i++) {
+			ret[i] = Time12SequenceId.toString((byte[]) keys[i]);
+		}
+		return ret;
+	}
+	
 	/**
 	 * 指定したシーケンスIDでデータセット.
 	 * 
@@ -143,8 +191,14 @@ public class LevelSequence extends LevelIndexOperator {
 		JniBuffer keyBuf = null;
 		JniBuffer valBuf = null;
 		try {
+			// インデックスが存在する場合は、以前の要素のインデックスを削除する.
+			// 新しいシーケンスIDの場合は、以前の要素は存在しない.
+			final Object old = key != null && needsOldValue() ? get(key) : null;
 			if(key == null) {
 				key = sequenceId.next();
+			} else if(key instanceof String) {
+				// インデックスのキーはバイナリのシーケンスIDで登録する.
+				key = Time12SequenceId.toBinary((String)key);
 			}
 			keyBuf = _getKey(false, key);
 			if(value instanceof JniBuffer) {
@@ -154,21 +208,21 @@ public class LevelSequence extends LevelIndexOperator {
 					leveldb.put(keyBuf, (JniBuffer)value);
 				}
 				if(!indexEmpty()) {
-					LevelBuffer.clearBuffer(keyBuf, null);
+					LevelBuffer.release(keyBuf, null);
 					keyBuf = null;
-					super.putIndex(key, null, value);
+					super.putIndex(key, null, old, value);
 				}
 			} else {
-				valBuf = LevelBuffer.value(value);
+				valBuf = valueBuffer(value);
 				if(writeBatchFlag) {
 					writeBatch().put(keyBuf, valBuf);
 				} else {
 					leveldb.put(keyBuf, valBuf);
 				}
 				if(!indexEmpty()) {
-					LevelBuffer.clearBuffer(keyBuf, valBuf);
+					LevelBuffer.release(keyBuf, valBuf);
 					keyBuf = null; valBuf = null;
-					super.putIndex(key, null, value);
+					super.putIndex(key, null, old, value);
 				}
 			}
 			return Time12SequenceId.toString((byte[])key);
@@ -177,7 +231,7 @@ public class LevelSequence extends LevelIndexOperator {
 		} catch (Exception e) {
 			throw new LeveldbException(e);
 		} finally {
-			LevelBuffer.clearBuffer(keyBuf, valBuf);
+			LevelBuffer.release(keyBuf, valBuf);
 		}
 	}
 	
@@ -214,7 +268,7 @@ public class LevelSequence extends LevelIndexOperator {
 		} catch (Exception e) {
 			throw new LeveldbException(e);
 		} finally {
-			LevelBuffer.clearBuffer(keyBuf, valBuf);
+			LevelBuffer.release(keyBuf, valBuf);
 		}
 	}
 	
@@ -246,8 +300,8 @@ public class LevelSequence extends LevelIndexOperator {
 						ret = true;
 					}
 				}
-			}
-			if (leveldb.get(buf, keyBuf) != 0) {
+			// WriteBatchモードの場合は、書き込み内容とスナップショットのみ参照する.
+			} else if (leveldb.get(buf, keyBuf) != 0) {
 				ret = true;
 			}
 		} catch (LeveldbException le) {
@@ -256,7 +310,7 @@ public class LevelSequence extends LevelIndexOperator {
 			throw new LeveldbException(e);
 		} finally {
 			if (!(key instanceof JniBuffer)) {
-				LevelBuffer.clearBuffer(keyBuf, null);
+				LevelBuffer.release(keyBuf, null);
 			}
 		}
 		return ret;
@@ -282,7 +336,7 @@ public class LevelSequence extends LevelIndexOperator {
 		} catch (Exception e) {
 			throw new LeveldbException(e);
 		} finally {
-			LevelBuffer.clearBuffer(null, valBuf);
+			LevelBuffer.release(null, valBuf);
 		}
 		return null;
 	}
@@ -311,14 +365,14 @@ public class LevelSequence extends LevelIndexOperator {
 				WriteBatch b = writeBatch();
 				b.remove(keyBuf);
 				if(idxFlg) {
-					LevelBuffer.clearBuffer(keyBuf, null);
+					LevelBuffer.release(keyBuf, null);
 					keyBuf = null;
 					super.removeIndex(key, null, v);
 				}
 			} else {
 				final boolean delFlg = leveldb.remove(keyBuf);
 				if(idxFlg && delFlg) {
-					LevelBuffer.clearBuffer(keyBuf, null);
+					LevelBuffer.release(keyBuf, null);
 					keyBuf = null;
 					super.removeIndex(key, null, v);
 				}
@@ -329,7 +383,7 @@ public class LevelSequence extends LevelIndexOperator {
 		} catch (Exception e) {
 			throw new LeveldbException(e);
 		} finally {
-			LevelBuffer.clearBuffer(keyBuf, null);
+			LevelBuffer.release(keyBuf, null);
 		}
 	}
 	
@@ -413,7 +467,7 @@ public class LevelSequence extends LevelIndexOperator {
 		checkClose();
 		LevelSequenceIterator ret = null;
 		try {
-			ret = new LevelSequenceIterator(reverse, this, leveldb.iterator());
+			ret = new LevelSequenceIterator(reverse, this, batchIterator(leveldb.iterator()));
 			return _search(ret, key);
 		} catch(LeveldbException le) {
 			if(ret != null) {
@@ -465,7 +519,7 @@ public class LevelSequence extends LevelIndexOperator {
 		checkClose();
 		LevelSequenceIterator ret = null;
 		try {
-			ret = new LevelSequenceIterator(reverse, this, leveldb.snapshot());
+			ret = new LevelSequenceIterator(reverse, this, batchIterator(leveldb.snapshot()));
 			return _search(ret, key);
 		} catch(LeveldbException le) {
 			if(ret != null) {
@@ -491,6 +545,92 @@ public class LevelSequence extends LevelIndexOperator {
 		return ret;
 	}
 	
+	/**
+	 * Flow.Publisherを取得.
+	 * <p>
+	 * 購読時のスナップショットの内容を、シーケンスID順で要求件数分ずつ通知します.
+	 * </p>
+	 * 
+	 * @return LevelPublisher Publisherが返却されます.
+	 */
+	public LevelPublisher<Map.Entry<String, Object>> publisher() {
+		return publisher(null, null, 0);
+	}
+
+	/**
+	 * Flow.Publisherを取得.
+	 * 
+	 * @param key
+	 *            開始シーケンスIDを設定します.
+	 * @return LevelPublisher Publisherが返却されます.
+	 */
+	public LevelPublisher<Map.Entry<String, Object>> publisher(Object key) {
+		return publisher(key, null, 0);
+	}
+
+	/**
+	 * Flow.Publisherを取得.
+	 * 
+	 * @param key
+	 *            開始シーケンスIDを設定します.
+	 * @param executor
+	 *            I/Oスレッドプールを設定します. [null]の場合はデフォルトのスレッドプールを利用します.
+	 * @param batch
+	 *            １回の読み込み件数を設定します.
+	 * @return LevelPublisher Publisherが返却されます.
+	 */
+	public LevelPublisher<Map.Entry<String, Object>> publisher(final Object key, LevelAsyncExecutor executor,
+		int batch) {
+		checkClose();
+		return new LevelPublisher<Map.Entry<String, Object>>(this, executor, batch) {
+			protected Cursor<Map.Entry<String, Object>> cursor() {
+				return new SequenceCursor(key);
+			}
+		};
+	}
+
+	/**
+	 * LevelSequenceのPublisher用読み込み位置.
+	 */
+	private static final class SequenceCursor extends LevelPublisher.Cursor<Map.Entry<String, Object>> {
+		private final Object startKey;
+
+		SequenceCursor(Object startKey) {
+			this.startKey = startKey;
+		}
+
+		@Override
+		protected void start(LeveldbIterator itr) throws Exception {
+			if (startKey != null) {
+				Leveldb.search(itr, false, LevelOption.TYPE_FREE, _getKey(startKey), null);
+			}
+		}
+
+		@Override
+		protected boolean read(LeveldbIterator itr, ArrayDeque<Map.Entry<String, Object>> out, int max)
+			throws Exception {
+			JniBuffer valBuf = null;
+			try {
+				valBuf = LevelBuffer.value();
+				for (int i = 0; i < max; i++) {
+					if (!itr.valid()) {
+						return false;
+					}
+					itr.key(key);
+					itr.value(valBuf);
+					out.add(new AbstractMap.SimpleImmutableEntry<String, Object>(
+						Time12SequenceId.toString((byte[]) LevelId.get(LevelOption.TYPE_FREE, key)),
+						LevelValues.decode(valBuf)));
+					valBuf.position(0);
+					itr.next();
+				}
+				return itr.valid();
+			} finally {
+				LevelBuffer.release(null, valBuf);
+			}
+		}
+	}
+	
 	/**
 	 * LevelSequence用Iterator.
 	 */
@@ -569,7 +709,7 @@ public class LevelSequence extends LevelIndexOperator {
 				Object ret = LevelId.get(LevelOption.TYPE_FREE, keyBuf);
 				Object val = LevelValues.decode(valBuf);
 				this.resultKey = Time12SequenceId.toString((byte[])ret);
-				LevelBuffer.clearBuffer(keyBuf, valBuf);
+				LevelBuffer.release(keyBuf, valBuf);
 				keyBuf = null;
 				valBuf = null;
 				if(reverse) {
@@ -586,7 +726,7 @@ public class LevelSequence extends LevelIndexOperator {
 			} catch (Exception e) {
 				throw new LeveldbException(e);
 			} finally {
-				LevelBuffer.clearBuffer(keyBuf, valBuf);
+				LevelBuffer.release(keyBuf, valBuf);
 			}
 		}
 	}
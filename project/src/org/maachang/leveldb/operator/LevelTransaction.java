@@ -0,0 +1,183 @@
+package org.maachang.leveldb.operator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.maachang.leveldb.LevelReadSet;
+import org.maachang.leveldb.LeveldbException;
+
+/**
+ * 楽観的排他制御によるトランザクション.
+ * <p>
+ * join で取得したWriteBatchモードのオペレータで読み書きを行い、commit で反映します.
+ * 読み込んだキーの範囲(存在しないキーの検索も含む)を記録し、commit 時に
+ * トランザクション開始後の他の書き込みと比較して、競合する場合は
+ * LevelConflictException が発生します. この場合は、最初から処理をやり直して下さい.
+ * </p>
+ * <p>
+ * 複数のオペレータ(異なるLeveldbも可)を１つのトランザクションで扱えます.
+ * 競合チェックと書き込みは、対象Leveldb毎の短いロック区間で行われるため、
+ * 重ならないトランザクションは並列で実行できます.
+ * 但し、異なるLeveldb間の書き込みはアトミックではありません.
+ * </p>
+ * <p>
+ * トランザクション外の書き込みは、LevelMap の put / remove / removeRange / putAll が
+ * 競合の対象となります. 範囲削除と一括書き込みは、全てのキーに対する書き込みとして扱われます.
+ * このオブジェクトはスレッドセーフではありません.
+ * </p>
+ */
+public class LevelTransaction {
+
+	// 書き込み履歴のロック順序.
+	private static final Comparator<LevelCommitLog> LOG_ORDER = new Comparator<LevelCommitLog>() {
+		public int compare(LevelCommitLog a, LevelCommitLog b) {
+			return Long.compare(a.id, b.id);
+		}
+	};
+
+	private final List<LevelOperator> sources = new ArrayList<LevelOperator>();
+	private final List<LevelOperator> operators = new ArrayList<LevelOperator>();
+	private boolean closeFlag = false;
+
+	/**
+	 * コンストラクタ.
+	 */
+	public LevelTransaction() {
+	}
+
+	/**
+	 * オペレータをトランザクションに追加.
+	 * <p>
+	 * 同じオペレータを指定した場合は、同じオブジェクトが返却されます.
+	 * 返却されたオペレータの commit は利用できません.
+	 * </p>
+	 *
+	 * @param op
+	 *            対象のオペレータを設定します.
+	 * @return T トランザクション用のオペレータが返却されます.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends LevelOperator> T join(T op) {
+		checkClose();
+		if (op == null) {
+			throw new LeveldbException("Operator is not set.");
+		} else if (op.writeBatchFlag) {
+			throw new LeveldbException("WriteBatch mode operator is not supported.");
+		}
+		final int len = sources.size();
+		for (int i = 0; i < len; i++) {
+			if (sources.get(i) == op) {
+				return (T) operators.get(i);
+			}
+		}
+		final LevelOperator ret = op.begin();
+		if (ret.getClass() != op.getClass()) {
+			ret.close();
+			throw new LeveldbException("Unsupported operator: " + op.getClass().getName());
+		}
+		// スナップショット作成前に、開始シーケンス番号を取得する.
+		ret.readSet = new LevelReadSet(ret.leveldb.getType());
+		ret.readSequence = ret.commitLog.begin();
+		sources.add(op);
+		operators.add(ret);
+		return (T) ret;
+	}
+
+	/**
+	 * トランザクションを反映.
+	 * 反映後、このオブジェクトはクローズされます.
+	 *
+	 * @exception LevelConflictException
+	 *                競合を検出した場合、トランザクションは破棄されます.
+	 */
+	public void commit() {
+		checkClose();
+		final List<LevelCommitLog> logs = new ArrayList<LevelCommitLog>();
+		final int len = operators.size();
+		LevelOperator op;
+		for (int i = 0; i < len; i++) {
+			op = operators.get(i);
+			if (!logs.contains(op.commitLog)) {
+				logs.add(op.commitLog);
+			}
+		}
+		// デッドロックしないように、ID順でロックする.
+		Collections.sort(logs, LOG_ORDER);
+		final int logLen = logs.size();
+		int locked = 0;
+		try {
+			for (; locked < logLen; locked++) {
+				logs.get(locked).lock.lock();
+			}
+			// 全てのオペレータの競合チェック.
+			for (int i = 0; i < len; i++) {
+				op = operators.get(i);
+				op.checkClose();
+				if (!op.commitLog.validate(op.readSequence, op.readSet)) {
+					throw new LevelConflictException("Transaction conflict: " + op.leveldb.getPath());
+				}
+			}
+			// 書き込み.
+			for (int i = 0; i < len; i++) {
+				operators.get(i).commit();
+			}
+		} finally {
+			for (int i = locked - 1; i >= 0; i--) {
+				logs.get(i).lock.unlock();
+			}
+			close();
+		}
+	}
+
+	/**
+	 * トランザクションを破棄.
+	 * 破棄後、このオブジェクトはクローズされます.
+	 */
+	public void rollback() {
+		close();
+	}
+
+	/**
+	 * クローズ処理.
+	 * 反映されていない書き込みは破棄されます.
+	 */
+	public void close() {
+		if (closeFlag) {
+			return;
+		}
+		closeFlag = true;
+		LevelOperator op;
+		final int len = operators.size();
+		for (int i = 0; i < len; i++) {
+			op = operators.get(i);
+			try {
+				if (!op.isClose()) {
+					op.rollback();
+				}
+			} catch (Exception e) {
+			}
+			op.commitLog.end(op.readSequence);
+			op.close();
+		}
+		operators.clear();
+		sources.clear();
+	}
+
+	/**
+	 * クローズ済みかチェック.
+	 *
+	 * @return boolean [true]の場合、クローズ済みです.
+	 */
+	public boolean isClose() {
+		return closeFlag;
+	}
+
+	// クローズチェック.
+	private final void checkClose() {
+		if (closeFlag) {
+			throw new LeveldbException("The object has already been cleared.");
+		}
+	}
+}
@@ -0,0 +1,628 @@
+package org.maachang.leveldb.operator;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.maachang.leveldb.JniBuffer;
+import org.maachang.leveldb.JniIO;
+import org.maachang.leveldb.LevelValues;
+import org.maachang.leveldb.LeveldbException;
+
+/**
+ * デコード済み要素のキャッシュ.
+ * <p>
+ * LevelMap.get で取得した要素を、キーのバイナリ単位でヒープ上に保持します.
+ * 上限は件数、または推定バイト数で設定し、W-TinyLFU方式(小さなLRUウィンドウと、
+ * アクセス頻度のスケッチで入場判定を行うSLRU)で保持する要素を選択します.
+ * </p>
+ * <p>
+ * 要素の返却方法は、以下のモードで指定します.
+ * MODE_SHARED: デコード済みのオブジェクトをそのまま返却します. 返却されたオブジェクトは変更しないでください.
+ * MODE_COPY: 格納されているバイナリを保持し、取得毎にデコードした新しいオブジェクトを返却します.
+ * </p>
+ * <p>
+ * キャッシュは put/remove/commit/trancate で、対象のキー単位で無効化されます.
+ * </p>
+ */
+public class LevelValueCache {
+
+	/** 返却モード: デコード済みオブジェクトを共有. **/
+	public static final int MODE_SHARED = 0;
+
+	/** 返却モード: 取得毎にデコードしたオブジェクトを返却. **/
+	public static final int MODE_COPY = 1;
+
+	/** １要素あたりの管理領域の推定バイト数. **/
+	private static final int ENTRY_OVERHEAD = 96;
+
+	/** 無効化管理のストライプ数. **/
+	private static final int STRIPE = 64;
+
+	/** ウィンドウ領域の割合(%). **/
+	private static final int WINDOW_PERCENT = 1;
+
+	/** 保護領域の割合(%). **/
+	private static final int PROTECTED_PERCENT = 79;
+
+	// キュー種別.
+	private static final int NONE = -1;
+	private static final int WINDOW = 0;
+	private static final int PROBATION = 1;
+	private static final int PROTECTED = 2;
+
+	/**
+	 * キャッシュキー.
+	 */
+	public static final class Key {
+		final byte[] binary;
+		final int hash;
+
+		Key(byte[] binary) {
+			final int h = Arrays.hashCode(binary);
+			this.binary = binary;
+			this.hash = h ^ (h >>> 16);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Key && Arrays.equals(binary, ((Key) o).binary);
+		}
+	}
+
+	/**
+	 * キャッシュ要素.
+	 */
+	private static final class Node {
+		final Key key;
+		final Object value;
+		final byte[] binary;
+		final long weight;
+		int queue = NONE;
+		boolean removed;
+		Node prev;
+		Node next;
+
+		Node(Key key, Object value, byte[] binary, long weight) {
+			this.key = key;
+			this.value = value;
+			this.binary = binary;
+			this.weight = weight;
+		}
+	}
+
+	/**
+	 * アクセス頻度のスケッチ(4bitカウンタのCount-Min Sketch).
+	 * 一定回数の加算毎に全カウンタを半減し、過去の頻度を減衰させます.
+	 */
+	private static final class Sketch {
+		private static final int[] SEED = new int[] { 0x97cb3127, 0xb7c9e1f5, 0x5bd1e995, 0x2f3f4a71 };
+		private final long[] table;
+		private final int mask;
+		private final int sampleSize;
+		private int size;
+
+		Sketch(long maximum) {
+			int n = 16;
+			while (n < maximum && n < (1 << 24)) {
+				n <<= 1;
+			}
+			table = new long[n];
+			mask = n - 1;
+			sampleSize = n * 10;
+		}
+
+		private static final int rehash(int h, int i) {
+			int x = (h ^ SEED[i]) * 0x9e3779b9;
+			return x ^ (x >>> 16);
+		}
+
+		int frequency(int h) {
+			int ret = 15;
+			int x, c;
+			for (int i = 0; i < 4; i++) {
+				x = rehash(h, i);
+				c = (int) ((table[(x >>> 4) & mask] >>> ((x & 15) << 2)) & 15L);
+				if (c < ret) {
+					ret = c;
+				}
+			}
+			return ret;
+		}
+
+		void increment(int h) {
+			boolean added = false;
+			int x, idx, shift;
+			for (int i = 0; i < 4; i++) {
+				x = rehash(h, i);
+				idx = (x >>> 4) & mask;
+				shift = (x & 15) << 2;
+				if (((table[idx] >>> shift) & 15L) < 15L) {
+					table[idx] += 1L << shift;
+					added = true;
+				}
+			}
+			if (added && ++size >= sampleSize) {
+				for (int i = 0; i < table.length; i++) {
+					table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+				}
+				size >>>= 1;
+			}
+		}
+	}
+
+	private final long maxCount;
+	private final long maxBytes;
+	private final int mode;
+	private final ConcurrentHashMap<Key, Node> data = new ConcurrentHashMap<Key, Node>();
+
+	// 無効化のバージョン管理.
+	private final Object[] stripes = new Object[STRIPE];
+	private final long[] versions = new long[STRIPE];
+
+	// 以下はevictionLockで保護.
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	private final Sketch sketch;
+	private final Node[] head = new Node[3];
+	private final Node[] tail = new Node[3];
+	private final long[] queueCount = new long[3];
+	private final long[] queueBytes = new long[3];
+	private long totalCount;
+	private long totalBytes;
+
+	// 統計情報.
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder evictCount = new LongAdder();
+	private final LongAdder rejectCount = new LongAdder();
+	private final LongAdder invalidateCount = new LongAdder();
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param maxCount
+	 *            最大件数を設定します. [0]以下の場合は件数で制限しません.
+	 * @param maxBytes
+	 *            最大推定バイト数を設定します. [0]以下の場合はバイト数で制限しません.
+	 * @param mode
+	 *            返却モードを設定します.
+	 */
+	public LevelValueCache(long maxCount, long maxBytes, int mode) {
+		if (maxCount <= 0L && maxBytes <= 0L) {
+			throw new LeveldbException("Either the maximum number or the maximum bytes must be set.");
+		} else if (mode != MODE_SHARED && mode != MODE_COPY) {
+			throw new LeveldbException("Unknown cache mode: " + mode);
+		}
+		this.maxCount = maxCount < 0L ? 0L : maxCount;
+		this.maxBytes = maxBytes < 0L ? 0L : maxBytes;
+		this.mode = mode;
+		this.sketch = new Sketch(maxCount > 0L ? maxCount : Math.max(16L, maxBytes / 1024L));
+		for (int i = 0; i < STRIPE; i++) {
+			stripes[i] = new Object();
+		}
+	}
+
+	/**
+	 * 返却モードを取得.
+	 *
+	 * @return int 返却モードが返却されます.
+	 */
+	public int getMode() {
+		return mode;
+	}
+
+	/**
+	 * キャッシュキーを生成.
+	 *
+	 * @param keyBuf
+	 *            キーのバッファを設定します.
+	 * @return Key キャッシュキーが返却されます.
+	 */
+	public Key key(JniBuffer keyBuf) {
+		return key(keyBuf.address(), keyBuf.position());
+	}
+
+	/**
+	 * キャッシュキーを生成.
+	 *
+	 * @param addr
+	 *            キーのアドレスを設定します.
+	 * @param len
+	 *            キーの長さを設定します.
+	 * @return Key キャッシュキーが返却されます.
+	 */
+	public Key key(long addr, int len) {
+		final byte[] b = new byte[len];
+		JniIO.getBinary(addr, 0, b, 0, len);
+		return new Key(b);
+	}
+
+	/**
+	 * 要素を取得.
+	 *
+	 * @param key
+	 *            キャッシュキーを設定します.
+	 * @param work
+	 *            MODE_COPY でデコードに利用するバッファを設定します.
+	 * @return Object 要素が返却されます. 存在しない場合は[null]が返却されます.
+	 * @exception Exception
+	 *                例外.
+	 */
+	public Object get(Key key, JniBuffer work) throws Exception {
+		final Node n = data.get(key);
+		if (n == null) {
+			missCount.increment();
+			return null;
+		}
+		hitCount.increment();
+		// 競合している場合は、アクセス順の更新を省略.
+		if (evictionLock.tryLock()) {
+			try {
+				sketch.increment(key.hash);
+				onHit(n);
+			} finally {
+				evictionLock.unlock();
+			}
+		}
+		if (n.binary != null) {
+			work.setBinary(n.binary);
+			return LevelValues.decode(work);
+		}
+		return n.value;
+	}
+
+	/**
+	 * 無効化のバージョンを取得.
+	 * 読み込み前に取得し、put で指定します.
+	 *
+	 * @param key
+	 *            キャッシュキーを設定します.
+	 * @return long バージョンが返却されます.
+	 */
+	public long stamp(Key key) {
+		final int s = key.hash & (STRIPE - 1);
+		synchronized (stripes[s]) {
+			return versions[s];
+		}
+	}
+
+	/**
+	 * 要素を追加.
+	 * stamp 取得以降に対象キーが無効化されている場合は追加しません.
+	 *
+	 * @param key
+	 *            キャッシュキーを設定します.
+	 * @param stamp
+	 *            読み込み前に取得したバージョンを設定します.
+	 * @param value
+	 *            デコード済みの要素を設定します.
+	 * @param binary
+	 *            MODE_COPY の場合は、デコード前のバイナリを設定します.
+	 * @param length
+	 *            デコード前のバイナリ長を設定します.
+	 */
+	public void put(Key key, long stamp, Object value, byte[] binary, int length) {
+		if (value == null || (mode == MODE_COPY && binary == null)) {
+			return;
+		}
+		final long weight = key.binary.length + length + ENTRY_OVERHEAD;
+		if (maxBytes > 0L && weight > maxBytes) {
+			return;
+		}
+		final Node n = new Node(key, mode == MODE_COPY ? null : value, mode == MODE_COPY ? binary : null, weight);
+		final Node old;
+		final int s = key.hash & (STRIPE - 1);
+		synchronized (stripes[s]) {
+			if (versions[s] != stamp) {
+				return;
+			}
+			old = data.put(key, n);
+		}
+		evictionLock.lock();
+		try {
+			if (old != null) {
+				remove(old);
+			}
+			if (!n.removed) {
+				sketch.increment(key.hash);
+				add(n);
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * 対象キーを無効化.
+	 *
+	 * @param key
+	 *            キャッシュキーを設定します.
+	 */
+	public void invalidate(Key key) {
+		final Node n;
+		final int s = key.hash & (STRIPE - 1);
+		synchronized (stripes[s]) {
+			versions[s]++;
+			n = data.remove(key);
+		}
+		invalidateCount.increment();
+		if (n != null) {
+			evictionLock.lock();
+			try {
+				remove(n);
+			} finally {
+				evictionLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * 対象キー群を無効化.
+	 *
+	 * @param keys
+	 *            キャッシュキー群を設定します.
+	 */
+	public void invalidate(List<Key> keys) {
+		final int len = keys.size();
+		for (int i = 0; i < len; i++) {
+			invalidate(keys.get(i));
+		}
+	}
+
+	/**
+	 * 全ての要素を無効化.
+	 */
+	public void clear() {
+		for (int i = 0; i < STRIPE; i++) {
+			synchronized (stripes[i]) {
+				versions[i]++;
+			}
+		}
+		data.clear();
+		evictionLock.lock();
+		try {
+			for (int q = 0; q < 3; q++) {
+				Node n = head[q];
+				while (n != null) {
+					n.removed = true;
+					n.queue = NONE;
+					n = n.next;
+				}
+				head[q] = null;
+				tail[q] = null;
+				queueCount[q] = 0L;
+				queueBytes[q] = 0L;
+			}
+			totalCount = 0L;
+			totalBytes = 0L;
+		} finally {
+			evictionLock.unlock();
+		}
+		invalidateCount.increment();
+	}
+
+	// ヒット時のキュー移動.
+	private final void onHit(Node n) {
+		switch (n.queue) {
+		case WINDOW:
+			unlink(n);
+			link(WINDOW, n);
+			break;
+		case PROBATION:
+			// 保護領域に昇格.
+			unlink(n);
+			link(PROTECTED, n);
+			while (queueCount[PROTECTED] > 1 && over(queueCount[PROTECTED], queueBytes[PROTECTED], PROTECTED_PERCENT)) {
+				final Node d = head[PROTECTED];
+				unlink(d);
+				link(PROBATION, d);
+			}
+			break;
+		case PROTECTED:
+			unlink(n);
+			link(PROTECTED, n);
+			break;
+		}
+	}
+
+	// 要素を追加して、上限を超える要素を破棄.
+	private final void add(Node n) {
+		link(WINDOW, n);
+		// ウィンドウから溢れた要素を、入場判定してメイン領域に移動.
+		while (queueCount[WINDOW] > 1 && over(queueCount[WINDOW], queueBytes[WINDOW], WINDOW_PERCENT)) {
+			final Node c = head[WINDOW];
+			unlink(c);
+			link(PROBATION, c);
+			admit(c);
+		}
+		while (totalCount > 0L && over(totalCount, totalBytes, 100)) {
+			Node v = head[PROBATION];
+			if (v == null) {
+				v = head[PROTECTED] != null ? head[PROTECTED] : head[WINDOW];
+			}
+			evict(v);
+			evictCount.increment();
+		}
+	}
+
+	// 入場判定.
+	private final void admit(Node c) {
+		while (over(totalCount, totalBytes, 100)) {
+			Node v = head[PROBATION];
+			if (v == c) {
+				v = c.next;
+			}
+			if (v == null) {
+				v = head[PROTECTED];
+			}
+			if (v == null || sketch.frequency(c.key.hash) <= sketch.frequency(v.key.hash)) {
+				evict(c);
+				rejectCount.increment();
+				return;
+			}
+			evict(v);
+			evictCount.increment();
+		}
+	}
+
+	// 要素を破棄.
+	private final void evict(Node n) {
+		remove(n);
+		data.remove(n.key, n);
+	}
+
+	// キューから削除.
+	private final void remove(Node n) {
+		if (!n.removed) {
+			n.removed = true;
+			unlink(n);
+		}
+	}
+
+	// 上限を超えているかチェック.
+	private final boolean over(long count, long bytes, int percent) {
+		return (maxCount > 0L && count * 100L > maxCount * percent)
+			|| (maxBytes > 0L && bytes * 100L > maxBytes * percent);
+	}
+
+	// キューの最後に追加.
+	private final void link(int q, Node n) {
+		n.queue = q;
+		n.prev = tail[q];
+		n.next = null;
+		if (tail[q] == null) {
+			head[q] = n;
+		} else {
+			tail[q].next = n;
+		}
+		tail[q] = n;
+		queueCount[q]++;
+		queueBytes[q] += n.weight;
+		totalCount++;
+		totalBytes += n.weight;
+	}
+
+	// キューから外す.
+	private final void unlink(Node n) {
+		final int q = n.queue;
+		if (q == NONE) {
+			return;
+		}
+		if (n.prev == null) {
+			head[q] = n.next;
+		} else {
+			n.prev.next = n.next;
+		}
+		if (n.next == null) {
+			tail[q] = n.prev;
+		} else {
+			n.next.prev = n.prev;
+		}
+		n.prev = null;
+		n.next = null;
+		n.queue = NONE;
+		queueCount[q]--;
+		queueBytes[q] -= n.weight;
+		totalCount--;
+		totalBytes -= n.weight;
+	}
+
+	/**
+	 * キャッシュ件数を取得.
+	 *
+	 * @return int キャッシュ件数が返却されます.
+	 */
+	public int size() {
+		return data.size();
+	}
+
+	/**
+	 * キャッシュの推定バイト数を取得.
+	 *
+	 * @return long 推定バイト数が返却されます.
+	 */
+	public long getBytes() {
+		evictionLock.lock();
+		try {
+			return totalBytes;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * ヒット数を取得.
+	 *
+	 * @return long ヒット数が返却されます.
+	 */
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	/**
+	 * ミス数を取得.
+	 *
+	 * @return long ミス数が返却されます.
+	 */
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	/**
+	 * ヒット率を取得.
+	 *
+	 * @return double ヒット率(0.0 - 1.0)が返却されます.
+	 */
+	public double getHitRatio() {
+		final long h = hitCount.sum();
+		final long total = h + missCount.sum();
+		return total == 0L ? 0.0d : (double) h / (double) total;
+	}
+
+	/**
+	 * 上限超過で破棄された件数を取得.
+	 *
+	 * @return long 破棄件数が返却されます.
+	 */
+	public long getEvictionCount() {
+		return evictCount.sum();
+	}
+
+	/**
+	 * 入場判定で拒否された件数を取得.
+	 *
+	 * @return long 拒否件数が返却されます.
+	 */
+	public long getRejectCount() {
+		return rejectCount.sum();
+	}
+
+	/**
+	 * 無効化の件数を取得.
+	 *
+	 * @return long 無効化件数が返却されます.
+	 */
+	public long getInvalidateCount() {
+		return invalidateCount.sum();
+	}
+
+	/**
+	 * 文字列として出力.
+	 *
+	 * @return String 文字列が返却されます.
+	 */
+	public String toString() {
+		return new StringBuilder("size:").append(size()).append(" bytes:").append(getBytes())
+			.append(" hit:").append(hitCount.sum()).append(" miss:").append(missCount.sum())
+			.append(" hitRatio:").append(getHitRatio()).append(" evict:").append(evictCount.sum())
+			.append(" reject:").append(rejectCount.sum()).append(" invalidate:").append(invalidateCount.sum())
+			.toString();
+	}
+}
@@ -11,12 +11,21 @@ import org.maachang.leveldb.util.OList;
 
 /**
  * マルチID. バイナリキー系の複数ID管理.
+ * <p>
+ * バイナリ変換結果は、compareToと同じ順序でバイナリ比較できます.
+ * </p>
  */
 public class Multi extends AbstractList<Object> implements LevelKey<Object> {
-	private static final int TYPE_STRING = 0;
-	private static final int TYPE_INT = 1;
-	private static final int TYPE_LONG = 2;
-	private static final int MAX_DATA_LENGTH = 0x00003fff;
+	// バイナリは、要素毎に [タグ][内容] で格納し、バイナリ比較で順序が保持される.
+	// 数値は符号ビットを反転したBigEndian、浮動小数点は負数の場合に全ビットを反転する.
+	// 文字列は 0x00 を 0x00 0xff にエスケープし、0x00 0x01 で終端する.
+	private static final byte TAG_INT = 0x10;
+	private static final byte TAG_LONG = 0x11;
+	private static final byte TAG_FLOAT = 0x20;
+	private static final byte TAG_DOUBLE = 0x21;
+	private static final byte TAG_STRING = 0x30;
+	private static final byte STRING_END = 0x01;
+	private static final byte STRING_ESCAPE = (byte) 0xff;
 	private OList<Object> list;
 	private int binaryLength = 0;
 
@@ -150,7 +159,7 @@ public class Multi extends AbstractList<Object> implements LevelKey<Object> {
 			n = "";
 		}
 		list.add(n);
-		binaryLength += NativeString.nativeLength(n) + 2;
+		binaryLength += stringLength(n);
 		return this;
 	}
 
@@ -166,7 +175,7 @@ public class Multi extends AbstractList<Object> implements LevelKey<Object> {
 			n = 0;
 		}
 		list.add(n);
-		binaryLength += 6;
+		binaryLength += 5;
 		return this;
 	}
 
@@ -182,7 +191,7 @@ public class Multi extends AbstractList<Object> implements LevelKey<Object> {
 			n = 0.0f;
 		}
 		list.add(n);
-		binaryLength += 6;
+		binaryLength += 5;
 		return this;
 	}
 
@@ -198,7 +207,7 @@ public class Multi extends AbstractList<Object> implements LevelKey<Object> {
 			n = 0L;
 		}
 		list.add(n);
-		binaryLength += 10;
+		binaryLength += 9;
 		return this;
 	}
 
@@ -214,7 +223,7 @@ public class Multi extends AbstractList<Object> implements LevelKey<Object> {
 			n = 0.0d;
 		}
 		list.add(n);
-		binaryLength += 10;
+		binaryLength += 9;
 		return this;
 	}
 
@@ -250,62 +259,10 @@ public class Multi extends AbstractList<Object> implements LevelKey<Object> {
 		if (len == 0) {
 			return null;
 		}
-		Object o;
-		String s;
-		int oLen;
-		byte[] ret = new byte[binaryLength + 1];
-		ret[binaryLength] = (byte) (len & 255);
+		byte[] ret = new byte[binaryLength];
 		int off = 0;
-		int endOff = binaryLength;
 		for (int i = 0; i < len; i++) {
-			o = list.get(i);
-
-			// 数値系の場合.
-			if (o instanceof Number) {
-
-				// 32bit整数セット.
-				if (o instanceof Integer) {
-					putInteger(ret, off, (Integer) o);
-					off += 4;
-					putEndLength(ret, endOff - 2, TYPE_INT, 0);
-					endOff -= 2;
-				}
-				// 64bit整数セット.
-				else if (o instanceof Long) {
-					putLong(ret, off, (Long) o);
-					off += 8;
-					putEndLength(ret, endOff - 2, TYPE_LONG, 0);
-					endOff -= 2;
-				}
-				// 32bit浮動小数点をセット.
-				else if (o instanceof Float) {
-					putInteger(ret, off, Float.floatToIntBits((Float) o));
-					off += 4;
-					putEndLength(ret, endOff - 2, TYPE_INT, 1);
-					endOff -= 2;
-				}
-				// 64bit整数セット.
-				// 64bit浮動小数点セット.
-				else {
-					putLong(ret, off, Double.doubleToLongBits((Double) o));
-					off += 8;
-					putEndLength(ret, endOff - 2, TYPE_LONG, 1);
-					endOff -= 2;
-				}
-			}
-			// 文字列セット.
-			else if (o instanceof String) {
-				s = (String) o;
-				oLen = s.length();
-				if (oLen > MAX_DATA_LENGTH) {
-					oLen = MAX_DATA_LENGTH;
-				}
-				putString(ret, off, s, oLen);
-				int nLen = NativeString.nativeLength(s);
-				off += nLen;
-				putEndLength(ret, endOff - 2, TYPE_STRING, nLen);
-				endOff -= 2;
-			}
+			off = putObject(ret, off, list.get(i));
 		}
 		return ret;
 	}
@@ -323,66 +280,11 @@ public class Multi extends AbstractList<Object> implements LevelKey<Object> {
 			return;
 		}
 		// 今回データ長をセット.
-		out.position(binaryLength + 1);
+		out.position(binaryLength);
 		long addr = out.address();
-
-		// データ数をセット.
-		JniIO.put(addr, binaryLength, (byte) (len & 255));
-
-		Object o;
-		String s;
-		int oLen;
 		int off = 0;
-		int endOff = binaryLength;
 		for (int i = 0; i < len; i++) {
-			o = list.get(i);
-
-			// 数値系の場合.
-			if (o instanceof Number) {
-
-				// 32bit整数セット.
-				if (o instanceof Integer) {
-					putInteger(addr, off, (Integer) o);
-					off += 4;
-					putEndLength(addr, endOff - 2, TYPE_INT, 0);
-					endOff -= 2;
-				}
-				// 64bit整数セット.
-				else if (o instanceof Long) {
-					putLong(addr, off, (Long) o);
-					off += 8;
-					putEndLength(addr, endOff - 2, TYPE_LONG, 0);
-					endOff -= 2;
-				}
-				// 32bit浮動小数点をセット.
-				else if (o instanceof Float) {
-					putInteger(addr, off, Float.floatToIntBits((Float) o));
-					off += 4;
-					putEndLength(addr, endOff - 2, TYPE_INT, 1);
-					endOff -= 2;
-				}
-				// 64bit整数セット.
-				// 64bit浮動小数点セット.
-				else {
-					putLong(addr, off, Double.doubleToLongBits((Double) o));
-					off += 8;
-					putEndLength(addr, endOff - 2, TYPE_LONG, 1);
-					endOff -= 2;
-				}
-			}
-			// 文字列セット.
-			else if (o instanceof String) {
-				s = (String) o;
-				oLen = s.length();
-				if (oLen > MAX_DATA_LENGTH) {
-					oLen = MAX_DATA_LENGTH;
-				}
-				putString(addr, off, s, oLen);
-				int nLen = NativeString.nativeLength(s);
-				off += nLen;
-				putEndLength(addr, endOff - 2, TYPE_STRING, nLen);
-				endOff -= 2;
-			}
+			off = putObject(addr, off, list.get(i));
 		}
 	}
 
@@ -394,78 +296,66 @@ public class Multi extends AbstractList<Object> implements LevelKey<Object> {
 	 * @return MultiId オブジェクトが返却されます.
 	 */
 	public Multi toObject(byte[] binary) {
-		if (binary == null || binary.length == 0) {
-			if (list == null) {
-				list = new OList<Object>();
-				binaryLength = 0;
-			} else {
-				clear();
-			}
-			return this;
-		}
-		int len = binary[binary.length - 1] & 255;
 		if (list == null) {
-			list = new OList<Object>(len);
+			list = new OList<Object>();
 		} else {
-			list.clear(len);
+			list.clear();
 		}
-		binaryLength = binary.length - 1;
-
-		int oneLen, off, endOff, n;
+		binaryLength = 0;
+		if (binary == null || binary.length == 0) {
+			return this;
+		}
+		int len = binary.length;
+		int off = 0;
+		int n, zero, end;
 		long l;
-		off = 0;
-		endOff = binaryLength - 1;
-		for (int i = 0; i < len; i++) {
-
-			// 長さを取得.
-			oneLen = (((binary[endOff - 1]) & 0x3f) << 8) | (binary[endOff] & 255);
-
-			// タイプを取得.
-			switch (((binary[endOff - 1] & 0xc0) >> 6) & 0x03) {
-
-			// 文字列.
-			case TYPE_STRING:
-				if (oneLen == 0) {
-					list.add("");
-				} else {
-					try {
-						list.add(NativeString.toJava(binary, off, oneLen));
-						off += oneLen;
-					} catch(Exception e) {
-						throw new LeveldbException(e);
+		while (off < len) {
+			switch (binary[off++]) {
+			case TAG_STRING:
+				// 終端位置と、エスケープ数を取得.
+				zero = 0;
+				end = off;
+				while (true) {
+					if (binary[end] == 0) {
+						if (binary[end + 1] == STRING_END) {
+							break;
+						}
+						zero++;
+						end++;
 					}
+					end++;
 				}
+				list.add(toString(binary, off, end, zero));
+				binaryLength += (end - off) + 3;
+				off = end + 2;
 				break;
-
-			// 数字(32bit).
-			case TYPE_INT:
-				n = (int) (((binary[off] & 255) << 24) | ((binary[off + 1] & 255) << 16)
-						| ((binary[off + 2] & 255) << 8) | (binary[off + 3] & 255)) ^ 0x80000000;
-				if (oneLen == 0) {
-					list.add(n);
-				} else {
-					list.add(Float.intBitsToFloat(n));
-				}
+			case TAG_INT:
+				n = getInteger(binary, off);
+				list.add(n);
 				off += 4;
+				binaryLength += 5;
 				break;
-
-			// 数字(64bit).
-			case TYPE_LONG:
-				l = (long) (((binary[off] & 255L) << 56L) | ((binary[off + 1] & 255L) << 48L)
-						| ((binary[off + 2] & 255L) << 40L) | ((binary[off + 3] & 255L) << 32L)
-						| ((binary[off + 4] & 255L) << 24L) | ((binary[off + 5] & 255L) << 16L)
-						| ((binary[off + 6] & 255L) << 8L) | (binary[off + 7] & 255L)) ^ 0x8000000000000000L;
-				if (oneLen == 0) {
-					list.add(l);
-				} else {
-					list.add(Double.longBitsToDouble(l));
-				}
+			case TAG_FLOAT:
+				n = getInteger(binary, off);
+				list.add(Float.intBitsToFloat(n < 0 ? n ^ 0x7fffffff : n));
+				off += 4;
+				binaryLength += 5;
+				break;
+			case TAG_LONG:
+				l = getLong(binary, off);
+				list.add(l);
+				off += 8;
+				binaryLength += 9;
+				break;
+			case TAG_DOUBLE:
+				l = getLong(binary, off);
+				list.add(Double.longBitsToDouble(l < 0L ? l ^ 0x7fffffffffffffffL : l));
 				off += 8;
+				binaryLength += 9;
 				break;
 			default:
 				throw new LeveldbException("Binary restore failed.");
 			}
-			endOff -= 2;
 		}
 		return this;
 	}
@@ -478,98 +368,158 @@ public class Multi extends AbstractList<Object> implements LevelKey<Object> {
 	 * @return MultiId オブジェクトが返却されます.
 	 */
 	public Multi toObject(JniBuffer buf) {
-		if (buf.position() == 0) {
-			if (list == null) {
-				list = new OList<Object>();
-				binaryLength = 0;
-			} else {
-				clear();
-			}
-			return this;
-		}
-		long addr = buf.address();
-		int len = JniIO.get(addr, buf.position() - 1) & 255;
-		if (list == null) {
-			list = new OList<Object>(len);
-		} else {
-			list.clear(len);
+		final int len = buf.position();
+		if (len == 0) {
+			return toObject((byte[]) null);
 		}
-		binaryLength = buf.position() - 1;
+		byte[] b = new byte[len];
+		JniIO.getBinary(buf.address(), 0, b, 0, len);
+		return toObject(b);
+	}
 
-		int oneLen, off, endOff, n;
-		long l;
-		off = 0;
-		endOff = binaryLength - 1;
+	/** 文字列の長さを取得. **/
+	private static final int stringLength(String s) {
+		// タグ + 文字列 + エスケープ数 + 終端.
+		int ret = NativeString.nativeLength(s) + 3;
+		int len = s.length();
 		for (int i = 0; i < len; i++) {
+			if (s.charAt(i) == 0) {
+				ret++;
+			}
+		}
+		return ret;
+	}
 
-			// 長さを取得.
-			oneLen = (((JniIO.get(addr, endOff - 1)) & 0x3f) << 8) | (JniIO.get(addr, endOff) & 255);
-
-			// タイプを取得.
-			switch (((JniIO.get(addr, endOff - 1) & 0xc0) >> 6) & 0x03) {
-
-			// 文字列.
-			case TYPE_STRING:
-				if (oneLen == 0) {
-					list.add("");
-				} else {
-					try {
-						list.add(NativeString.toJava(addr, off, oneLen));
-						off += oneLen;
-					} catch(Exception e) {
-						throw new LeveldbException(e);
-					}
+	/** エスケープされた文字列を取得. **/
+	private static final String toString(byte[] b, int off, int end, int zero) {
+		try {
+			if (zero == 0) {
+				return NativeString.toJava(b, off, end - off);
+			}
+			byte[] n = new byte[end - off - zero];
+			int p = 0;
+			for (int i = off; i < end; i++) {
+				n[p++] = b[i];
+				if (b[i] == 0) {
+					i++;
 				}
-				break;
+			}
+			return NativeString.toJava(n, 0, p);
+		} catch (Exception e) {
+			throw new LeveldbException(e);
+		}
+	}
 
-			// 数字(32bit).
-			case TYPE_INT:
-				n = (int) (((JniIO.get(addr, off) & 255) << 24) | ((JniIO.get(addr, off + 1) & 255) << 16)
-						| ((JniIO.get(addr, off + 2) & 255) << 8) | (JniIO.get(addr, off + 3) & 255)) ^ 0x80000000;
-				if (oneLen == 0) {
-					list.add(n);
-				} else {
-					list.add(Float.intBitsToFloat(n));
+	/** 要素をセット. **/
+	private static final int putObject(byte[] b, int off, Object o) {
+		// 32bit整数セット.
+		if (o instanceof Integer) {
+			b[off] = TAG_INT;
+			putInteger(b, off + 1, (Integer) o);
+			return off + 5;
+		}
+		// 64bit整数セット.
+		else if (o instanceof Long) {
+			b[off] = TAG_LONG;
+			putLong(b, off + 1, (Long) o);
+			return off + 9;
+		}
+		// 32bit浮動小数点をセット.
+		else if (o instanceof Float) {
+			b[off] = TAG_FLOAT;
+			int n = Float.floatToIntBits((Float) o);
+			putInteger(b, off + 1, n < 0 ? n ^ 0x7fffffff : n);
+			return off + 5;
+		}
+		// 64bit浮動小数点セット.
+		else if (o instanceof Double) {
+			b[off] = TAG_DOUBLE;
+			long n = Double.doubleToLongBits((Double) o);
+			putLong(b, off + 1, n < 0L ? n ^ 0x7fffffffffffffffL : n);
+			return off + 9;
+		}
+		// 文字列セット.
+		b[off++] = TAG_STRING;
+		try {
+			byte[] n = NativeString.toNative((String) o);
+			int len = n.length;
+			for (int i = 0; i < len; i++) {
+				b[off++] = n[i];
+				if (n[i] == 0) {
+					b[off++] = STRING_ESCAPE;
 				}
-				off += 4;
-				break;
-
-			// 数字(64bit).
-			case TYPE_LONG:
-				l = (long) (((JniIO.get(addr, off) & 255L) << 56L) | ((JniIO.get(addr, off + 1) & 255L) << 48L)
-						| ((JniIO.get(addr, off + 2) & 255L) << 40L) | ((JniIO.get(addr, off + 3) & 255L) << 32L)
-						| ((JniIO.get(addr, off + 4) & 255L) << 24L) | ((JniIO.get(addr, off + 5) & 255L) << 16L)
-						| ((JniIO.get(addr, off + 6) & 255L) << 8L) | (JniIO.get(addr, off + 7) & 255L))
-						^ 0x8000000000000000L;
-				if (oneLen == 0) {
-					list.add(l);
-				} else {
-					list.add(Double.longBitsToDouble(l));
+			}
+		} catch (Exception e) {
+			throw new LeveldbException(e);
+		}
+		b[off++] = 0;
+		b[off++] = STRING_END;
+		return off;
+	}
+
+	/** 要素をセット(JniBuffer). **/
+	private static final int putObject(long addr, int off, Object o) {
+		// 32bit整数セット.
+		if (o instanceof Integer) {
+			JniIO.put(addr, off, TAG_INT);
+			putInteger(addr, off + 1, (Integer) o);
+			return off + 5;
+		}
+		// 64bit整数セット.
+		else if (o instanceof Long) {
+			JniIO.put(addr, off, TAG_LONG);
+			putLong(addr, off + 1, (Long) o);
+			return off + 9;
+		}
+		// 32bit浮動小数点をセット.
+		else if (o instanceof Float) {
+			JniIO.put(addr, off, TAG_FLOAT);
+			int n = Float.floatToIntBits((Float) o);
+			putInteger(addr, off + 1, n < 0 ? n ^ 0x7fffffff : n);
+			return off + 5;
+		}
+		// 64bit浮動小数点セット.
+		else if (o instanceof Double) {
+			JniIO.put(addr, off, TAG_DOUBLE);
+			long n = Double.doubleToLongBits((Double) o);
+			putLong(addr, off + 1, n < 0L ? n ^ 0x7fffffffffffffffL : n);
+			return off + 9;
+		}
+		// 文字列セット.
+		JniIO.put(addr, off++, TAG_STRING);
+		String s = (String) o;
+		try {
+			if (s.indexOf((char) 0) == -1) {
+				off += NativeString.toNative(addr, off, s);
+			} else {
+				byte[] n = NativeString.toNative(s);
+				int len = n.length;
+				for (int i = 0; i < len; i++) {
+					JniIO.put(addr, off++, n[i]);
+					if (n[i] == 0) {
+						JniIO.put(addr, off++, STRING_ESCAPE);
+					}
 				}
-				off += 8;
-				break;
-			default:
-				throw new LeveldbException("Binary restore failed.");
 			}
-			endOff -= 2;
+		} catch (Exception e) {
+			throw new LeveldbException(e);
 		}
-		return this;
+		JniIO.put(addr, off++, (byte) 0);
+		JniIO.put(addr, off++, STRING_END);
+		return off;
 	}
 
-	/** １つのデータ長を設定. **/
-	private static final void putEndLength(byte[] b, int pos, int type, int len) {
-		b[pos] = (byte) ((type << 6) | ((((len & 0x0000ff00) >> 8)) & 0x3f));
-		b[pos + 1] = (byte) (len & 255);
+	/** 32bit整数を取得. **/
+	private static final int getInteger(byte[] b, int off) {
+		return (((b[off] & 255) << 24) | ((b[off + 1] & 255) << 16) | ((b[off + 2] & 255) << 8)
+				| (b[off + 3] & 255)) ^ 0x80000000;
 	}
 
-	/** 文字列をセット. **/
-	private static final void putString(byte[] b, int pos, String s, int len) {
-		try {
-			byte[] n = NativeString.toNative(s, 0, len);
-			System.arraycopy(n, 0, b, pos, n.length);
-		} catch(Exception e) {
-			throw new LeveldbException(e);
-		}
+	/** 64bit整数を取得. **/
+	private static final long getLong(byte[] b, int off) {
+		return (((b[off] & 255L) << 56L) | ((b[off + 1] & 255L) << 48L) | ((b[off + 2] & 255L) << 40L)
+				| ((b[off + 3] & 255L) << 32L) | ((b[off + 4] & 255L) << 24L) | ((b[off + 5] & 255L) << 16L)
+				| ((b[off + 6] & 255L) << 8L) | (b[off + 7] & 255L)) ^ 0x8000000000000000L;
 	}
 
 	/** 32bit整数をセット. **/
@@ -582,7 +532,7 @@ public class Multi extends AbstractList<Object> implements LevelKey<Object> {
 		b[pos + 3] = (byte) (n & 255);
 	}
 
-	/** 32bit整数をセット. **/
+	/** 64bit整数をセット. **/
 	private static final void putLong(byte[] b, int pos, long n) {
 		// マイナスフラグを反転.
 		n = n ^ 0x8000000000000000L;
@@ -596,21 +546,6 @@ public class Multi extends AbstractList<Object> implements LevelKey<Object> {
 		b[pos + 7] = (byte) (n & 255L);
 	}
 
-	/** １つのデータ長を設定(JniBuffer). **/
-	private static final void putEndLength(long addr, int pos, int type, int len) {
-		JniIO.put(addr, pos, (byte) ((type << 6) | ((((len & 0x0000ff00) >> 8)) & 0x3f)));
-		JniIO.put(addr, pos + 1, (byte) (len & 255));
-	}
-
-	/** 文字列をセット(JniBuffer). **/
-	private static final void putString(long addr, int pos, String s, int len) {
-		try {
-			NativeString.toNative(addr, pos, s, 0, len);
-		} catch(Exception e) {
-			throw new LeveldbException(e);
-		}
-	}
-
 	/** 32bit整数をセット(JniBuffer). **/
 	private static final void putInteger(long addr, int pos, int n) {
 		// マイナスフラグを反転.
@@ -621,7 +556,7 @@ public class Multi extends AbstractList<Object> implements LevelKey<Object> {
 		JniIO.put(addr, pos + 3, (byte) (n & 255));
 	}
 
-	/** 32bit整数をセット(JniBuffer). **/
+	/** 64bit整数をセット(JniBuffer). **/
 	private static final void putLong(long addr, int pos, long n) {
 		// マイナスフラグを反転.
 		n = n ^ 0x8000000000000000L;
@@ -651,15 +586,39 @@ public class Multi extends AbstractList<Object> implements LevelKey<Object> {
 		}
 		Multi m = (Multi)o;
 		int n;
+		Object a, b;
 		int len = list.size();
-		for(int i = 0; i < len; i ++) {
-			n = ((Comparable)list.get(i)).compareTo(m.list.get(i));
+		int mlen = m.list.size();
+		int cnt = len < mlen ? len : mlen;
+		for(int i = 0; i < cnt; i ++) {
+			a = list.get(i);
+			b = m.list.get(i);
+			// 型が異なる場合はタグ順.
+			if(a.getClass() != b.getClass()) {
+				return tag(a) - tag(b);
+			}
+			n = ((Comparable)a).compareTo(b);
 			if(n == 0) {
 				continue;
 			}
 			return n;
 		}
-		return 0;
+		// 一致する場合は要素数の少ない方が小さい.
+		return len - mlen;
+	}
+
+	/** 要素のタグを取得. **/
+	private static final int tag(Object o) {
+		if (o instanceof Integer) {
+			return TAG_INT;
+		} else if (o instanceof Long) {
+			return TAG_LONG;
+		} else if (o instanceof Float) {
+			return TAG_FLOAT;
+		} else if (o instanceof Double) {
+			return TAG_DOUBLE;
+		}
+		return TAG_STRING;
 	}
 	
 	/**